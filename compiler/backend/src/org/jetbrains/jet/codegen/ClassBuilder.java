@@ -24,6 +24,9 @@ import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.*;
 
 public abstract class ClassBuilder {
+    @Nullable
+    private ClassHierarchy classHierarchy;
+
     public static class Concrete extends ClassBuilder {
         private final ClassVisitor v;
         private final boolean stubs;
@@ -73,7 +76,17 @@ public abstract class ClassBuilder {
 
     public abstract ClassVisitor getVisitor();
 
+    /**
+     * The hierarchy learns about the class defined by this builder, and the builder may use it to compute frames
+     */
+    public void setClassHierarchy(@Nullable ClassHierarchy classHierarchy) {
+        this.classHierarchy = classHierarchy;
+    }
+
     public void defineClass(PsiElement origin, int version, int access, String name, @Nullable String signature, String superName, String[] interfaces) {
+        if (classHierarchy != null) {
+            classHierarchy.classDefined(name, access, superName);
+        }
         getVisitor().visit(version, access & ~Opcodes.ACC_STATIC, name, signature, superName, interfaces);
     }
 
@@ -16,6 +16,8 @@
 
 package org.jetbrains.jet.codegen;
 
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.util.TraceClassVisitor;
 
@@ -53,18 +55,14 @@ public class ClassBuilderFactories {
         return new ClassBuilderFactory() {
             @Override
             public ClassBuilder newClassBuilder() {
-                return new ClassBuilder.Concrete(new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS){
+                final BinaryClassWriter writer = new BinaryClassWriter();
+                return new ClassBuilder.Concrete(writer, stubs) {
                     @Override
-                    protected String getCommonSuperClass(String type1, String type2) {
-                        try {
-                            return super.getCommonSuperClass(type1, type2);
-                        }
-                        catch (Throwable t) {
-                            // @todo we might need at some point do more sofisticated handling
-                            return "java/lang/Object";
-                        }
+                    public void setClassHierarchy(@Nullable ClassHierarchy classHierarchy) {
+                        super.setClassHierarchy(classHierarchy);
+                        writer.classHierarchy = classHierarchy;
                     }
-                }, stubs);
+                };
             }
 
             @Override
@@ -79,4 +77,28 @@ public class ClassBuilderFactories {
             }
         };
     }
+
+    private static class BinaryClassWriter extends ClassWriter {
+        private static final Logger LOG = Logger.getInstance("org.jetbrains.jet.codegen.ClassBuilderFactories");
+
+        @Nullable
+        private ClassHierarchy classHierarchy;
+
+        public BinaryClassWriter() {
+            super(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        }
+
+        @Override
+        protected String getCommonSuperClass(String type1, String type2) {
+            if (classHierarchy != null) {
+                String commonSuperClass = classHierarchy.getCommonSuperClass(type1, type2);
+                if (commonSuperClass != null) {
+                    return commonSuperClass;
+                }
+            }
+            // a class on the way is not on the class path, Object is still a valid type of a frame slot holding either of them
+            LOG.warn("Can't compute common superclass of " + type1 + " and " + type2 + ", using " + ClassHierarchy.JAVA_LANG_OBJECT);
+            return ClassHierarchy.JAVA_LANG_OBJECT;
+        }
+    }
 }
@@ -33,7 +33,9 @@ public class ClassFileFactory {
 
     private final Map<FqName, NamespaceCodegen> ns2codegen = new HashMap<FqName, NamespaceCodegen>();
     private final Map<String, ClassBuilder> generators = new LinkedHashMap<String, ClassBuilder>();
+    private final ThreadLocal<Map<String, ClassBuilder>> collectedGenerators = new ThreadLocal<Map<String, ClassBuilder>>();
     private boolean isDone = false;
+    private ClassHierarchy classHierarchy;
 
 
     @Inject
@@ -51,10 +53,48 @@ public class ClassFileFactory {
     ClassBuilder newVisitor(String filePath) {
         state.getProgress().log("Emitting: " + filePath);
         final ClassBuilder answer = builderFactory.newClassBuilder();
-        generators.put(filePath, answer);
+        answer.setClassHierarchy(getClassHierarchy());
+        Map<String, ClassBuilder> collected = collectedGenerators.get();
+        if (collected != null) {
+            collected.put(filePath, answer);
+        }
+        else {
+            synchronized (generators) {
+                generators.put(filePath, answer);
+            }
+        }
         return answer;
     }
 
+    /**
+     * Until {@link #stopCollecting()} is called, builders created by the current thread are not registered in this factory,
+     * but collected separately to be later committed in a deterministic order.
+     */
+    void startCollecting() {
+        assert collectedGenerators.get() == null : "Already collecting";
+        collectedGenerators.set(new LinkedHashMap<String, ClassBuilder>());
+    }
+
+    Map<String, ClassBuilder> stopCollecting() {
+        Map<String, ClassBuilder> collected = collectedGenerators.get();
+        assert collected != null : "Not collecting";
+        collectedGenerators.remove();
+        return collected;
+    }
+
+    void commitCollected(Map<String, ClassBuilder> collected) {
+        synchronized (generators) {
+            generators.putAll(collected);
+        }
+    }
+
+    private synchronized ClassHierarchy getClassHierarchy() {
+        if (classHierarchy == null) {
+            classHierarchy = new ClassHierarchy(state.getProject(), state.getBindingContext(), state.getInjector().getJetTypeMapper());
+        }
+        return classHierarchy;
+    }
+
     ClassBuilder forAnonymousSubclass(String className) {
         return newVisitor(className + ".class");
     }
@@ -62,14 +102,16 @@ public class ClassFileFactory {
     NamespaceCodegen forNamespace(JetFile file) {
         assert !isDone : "Already done!";
         FqName fqName = JetPsiUtil.getFQName(file);
-        NamespaceCodegen codegen = ns2codegen.get(fqName);
-        if (codegen == null) {
-            final ClassBuilder builder = newVisitor(NamespaceCodegen.getJVMClassName(fqName, true) + ".class");
-            codegen = new NamespaceCodegen(builder, fqName, state, file.getContainingFile());
-            ns2codegen.put(fqName, codegen);
-        }
+        synchronized (ns2codegen) {
+            NamespaceCodegen codegen = ns2codegen.get(fqName);
+            if (codegen == null) {
+                final ClassBuilder builder = newVisitor(NamespaceCodegen.getJVMClassName(fqName, true) + ".class");
+                codegen = new NamespaceCodegen(builder, fqName, state, file.getContainingFile());
+                ns2codegen.put(fqName, codegen);
+            }
 
-        return codegen;
+            return codegen;
+        }
     }
 
     private void done() {
@@ -95,4 +137,27 @@ public class ClassFileFactory {
         done();
         return new ArrayList<String>(generators.keySet());
     }
+
+    public boolean contains(String file) {
+        done();
+        return generators.containsKey(file);
+    }
+
+    /**
+     * Produces the bytes of all generated files, letting go of each class builder as soon as its bytes are ready.
+     * Nothing can be produced by this factory after that.
+     *
+     * @return bytes by file path, in the order of {@link #files()}
+     */
+    public Map<String, byte[]> releaseBytes() {
+        done();
+        Map<String, byte[]> result = new LinkedHashMap<String, byte[]>();
+        for (Iterator<Map.Entry<String, ClassBuilder>> iterator = generators.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, ClassBuilder> entry = iterator.next();
+            result.put(entry.getKey(), builderFactory.asBytes(entry.getValue()));
+            iterator.remove();
+        }
+        ns2codegen.clear();
+        return result;
+    }
 }
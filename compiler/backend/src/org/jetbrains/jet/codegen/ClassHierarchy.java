@@ -0,0 +1,196 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.jet.codegen;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiClassType;
+import com.intellij.psi.util.ClassUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.lang.descriptors.ClassDescriptor;
+import org.jetbrains.jet.lang.descriptors.ClassKind;
+import org.jetbrains.jet.lang.descriptors.ClassifierDescriptor;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.FqName;
+import org.jetbrains.jet.lang.resolve.java.PsiClassFinderForJvm;
+import org.jetbrains.jet.lang.types.JetType;
+import org.jetbrains.jet.lang.types.lang.JetStandardLibrary;
+import org.objectweb.asm.Opcodes;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Answers the questions about superclasses that ClassWriter asks when computing stack map frames, without loading any classes.
+ *
+ * Classes are looked up among the ones already generated in this compilation, then among the Kotlin classes of the binding
+ * context by their qualified names, then among the Java classes and the library classes of the project, including the ones of
+ * the runtime, which are read from PSI, and then among the classes of the standard library. What is found is remembered for
+ * the whole compilation.
+ */
+public class ClassHierarchy {
+    public static final String JAVA_LANG_OBJECT = "java/lang/Object";
+
+    private static class ClassInfo {
+        private final boolean isInterface;
+        @Nullable
+        private final String superName;
+
+        private ClassInfo(boolean isInterface, @Nullable String superName) {
+            this.isInterface = isInterface;
+            this.superName = superName;
+        }
+    }
+
+    private static final ClassInfo UNKNOWN = new ClassInfo(false, null);
+
+    private final BindingContext bindingContext;
+    private final JetTypeMapper typeMapper;
+    private final PsiClassFinderForJvm psiClassFinder;
+    private final ConcurrentMap<String, ClassInfo> classes = new ConcurrentHashMap<String, ClassInfo>();
+
+    public ClassHierarchy(@NotNull Project project, @NotNull BindingContext bindingContext, @NotNull JetTypeMapper typeMapper) {
+        this.bindingContext = bindingContext;
+        this.typeMapper = typeMapper;
+        psiClassFinder = new PsiClassFinderForJvm();
+        psiClassFinder.setProject(project);
+        psiClassFinder.initialize();
+        classes.put(JAVA_LANG_OBJECT, new ClassInfo(false, null));
+    }
+
+    public void classDefined(@NotNull String name, int access, @Nullable String superName) {
+        classes.put(name, new ClassInfo((access & Opcodes.ACC_INTERFACE) != 0, superName));
+    }
+
+    /**
+     * @return the common superclass as ClassWriter defines it, or null if a class on the way is unknown
+     */
+    @Nullable
+    public String getCommonSuperClass(@NotNull String type1, @NotNull String type2) {
+        if (type1.equals(type2)) return type1;
+        ClassInfo info1 = getClassInfo(type1);
+        ClassInfo info2 = getClassInfo(type2);
+        if (info1 == null || info2 == null) return null;
+        if (info1.isInterface || info2.isInterface) return JAVA_LANG_OBJECT;
+
+        Set<String> superclasses1 = new HashSet<String>();
+        for (String type = type1; type != null; ) {
+            superclasses1.add(type);
+            ClassInfo info = getClassInfo(type);
+            if (info == null) return null;
+            type = info.superName;
+        }
+
+        for (String type = type2; type != null; ) {
+            if (superclasses1.contains(type)) return type;
+            ClassInfo info = getClassInfo(type);
+            if (info == null) return null;
+            type = info.superName;
+        }
+        return JAVA_LANG_OBJECT;
+    }
+
+    @Nullable
+    private ClassInfo getClassInfo(@NotNull String name) {
+        ClassInfo info = classes.get(name);
+        if (info == null) {
+            info = findClassInfo(name);
+            ClassInfo previous = classes.putIfAbsent(name, info);
+            if (previous != null) {
+                info = previous;
+            }
+        }
+        return info != UNKNOWN ? info : null;
+    }
+
+    @NotNull
+    private ClassInfo findClassInfo(@NotNull String name) {
+        FqName fqName = new FqName(name.replace('/', '.').replace('$', '.'));
+
+        ClassDescriptor descriptor = bindingContext.get(BindingContext.FQNAME_TO_CLASS_DESCRIPTOR, fqName);
+        if (descriptor != null && name.equals(getInternalName(descriptor))) {
+            return createClassInfo(descriptor);
+        }
+
+        PsiClass psiClass = psiClassFinder.findPsiClass(fqName);
+        if (psiClass != null && name.equals(getInternalName(psiClass))) {
+            descriptor = bindingContext.get(BindingContext.CLASS, psiClass);
+            return descriptor != null ? createClassInfo(descriptor) : createClassInfo(psiClass);
+        }
+
+        // the runtime is not on the class path, but its classes are still described by the standard library
+        if (!fqName.isRoot() && fqName.parent().getFqName().equals("jet")) {
+            ClassifierDescriptor classifier = JetStandardLibrary.getInstance().getLibraryScope().getClassifier(fqName.shortName());
+            if (classifier instanceof ClassDescriptor && name.equals(getInternalName((ClassDescriptor) classifier))) {
+                return createClassInfo((ClassDescriptor) classifier);
+            }
+        }
+
+        return UNKNOWN;
+    }
+
+    @NotNull
+    private ClassInfo createClassInfo(@NotNull ClassDescriptor descriptor) {
+        if (isInterface(descriptor)) {
+            return new ClassInfo(true, JAVA_LANG_OBJECT);
+        }
+        for (JetType supertype : descriptor.getTypeConstructor().getSupertypes()) {
+            ClassifierDescriptor superDescriptor = supertype.getConstructor().getDeclarationDescriptor();
+            if (superDescriptor instanceof ClassDescriptor && !isInterface((ClassDescriptor) superDescriptor)) {
+                return new ClassInfo(false, getInternalName((ClassDescriptor) superDescriptor));
+            }
+        }
+        return new ClassInfo(false, JAVA_LANG_OBJECT);
+    }
+
+    @NotNull
+    private static ClassInfo createClassInfo(@NotNull PsiClass psiClass) {
+        if (psiClass.isInterface()) {
+            return new ClassInfo(true, JAVA_LANG_OBJECT);
+        }
+        PsiClass superClass = psiClass.getSuperClass();
+        if (superClass != null) {
+            String superName = getInternalName(superClass);
+            return superName != null ? new ClassInfo(false, superName) : UNKNOWN;
+        }
+        // the superclass is not on the classpath, its name is still known from the extends list
+        PsiClassType[] extendsTypes = psiClass.getExtendsListTypes();
+        if (extendsTypes.length > 0) {
+            return new ClassInfo(false, extendsTypes[0].getCanonicalText().replace('.', '/'));
+        }
+        return JAVA_LANG_OBJECT.equals(getInternalName(psiClass)) ? new ClassInfo(false, null) : new ClassInfo(false, JAVA_LANG_OBJECT);
+    }
+
+    private static boolean isInterface(@NotNull ClassDescriptor descriptor) {
+        return descriptor.getKind() == ClassKind.TRAIT || descriptor.getKind() == ClassKind.ANNOTATION_CLASS;
+    }
+
+    @NotNull
+    private String getInternalName(@NotNull ClassDescriptor descriptor) {
+        return typeMapper.mapType(descriptor.getDefaultType(), MapTypeMode.IMPL).getInternalName();
+    }
+
+    @Nullable
+    private static String getInternalName(@NotNull PsiClass psiClass) {
+        String className = ClassUtil.getJVMClassName(psiClass);
+        return className != null ? className.replace('.', '/') : null;
+    }
+}
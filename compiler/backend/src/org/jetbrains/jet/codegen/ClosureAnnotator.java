@@ -16,11 +16,13 @@
 
 package org.jetbrains.jet.codegen;
 
+import com.intellij.psi.PsiElement;
 import com.intellij.util.containers.MultiMap;
 import org.jetbrains.jet.lang.descriptors.*;
 import org.jetbrains.jet.lang.descriptors.annotations.AnnotationDescriptor;
 import org.jetbrains.jet.lang.psi.*;
 import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.BindingContextUtils;
 import org.jetbrains.jet.lang.resolve.FqName;
 import org.jetbrains.jet.lang.resolve.java.JvmAbi;
 import org.jetbrains.jet.lang.resolve.scopes.JetScope;
@@ -39,6 +41,7 @@ public class ClosureAnnotator {
     private final Map<String, Integer> anonymousSubclassesCount = new HashMap<String, Integer>();
     private final Map<FunctionDescriptor, ClassDescriptorImpl> classesForFunctions = new HashMap<FunctionDescriptor, ClassDescriptorImpl>();
     private final Map<DeclarationDescriptor,ClassDescriptor> enclosing = new HashMap<DeclarationDescriptor, ClassDescriptor>();
+    private final Map<VariableDescriptor, Boolean> usedOnlyInInlinedClosures = new HashMap<VariableDescriptor, Boolean>();
 
     private final MultiMap<FqName, JetFile> namespaceName2Files = MultiMap.create();
 
@@ -59,10 +62,11 @@ public class ClosureAnnotator {
     public void init() {
         mapFilesToNamespaces(files);
         prepareAnonymousClasses();
+        findVariablesUsedInInlinedClosures();
     }
 
 
-    public ClassDescriptor classDescriptorForFunctionDescriptor(FunctionDescriptor funDescriptor, String name) {
+    public synchronized ClassDescriptor classDescriptorForFunctionDescriptor(FunctionDescriptor funDescriptor, String name) {
         ClassDescriptorImpl classDescriptor = classesForFunctions.get(funDescriptor);
         if(classDescriptor == null) {
             int arity = funDescriptor.getValueParameters().size();
@@ -96,6 +100,54 @@ public class ClosureAnnotator {
         }
     }
 
+    /**
+     * Local variables used in closures are wrapped in shared references, unless all these closures are inlined
+     * into the function declaring the variable, see {@link InlinedClosures}
+     */
+    public boolean isUsedOnlyInInlinedClosures(VariableDescriptor variable) {
+        Boolean result = usedOnlyInInlinedClosures.get(variable);
+        return result != null && result;
+    }
+
+    private void findVariablesUsedInInlinedClosures() {
+        JetVisitorVoid visitor = new JetVisitorVoid() {
+            @Override
+            public void visitJetElement(JetElement element) {
+                element.acceptChildren(this);
+            }
+
+            @Override
+            public void visitSimpleNameExpression(JetSimpleNameExpression expression) {
+                VariableDescriptor variable = BindingContextUtils.extractVariableDescriptorIfAny(bindingContext, expression, true);
+                if (variable != null && Boolean.TRUE.equals(bindingContext.get(BindingContext.MUST_BE_WRAPPED_IN_A_REF, variable))) {
+                    Boolean old = usedOnlyInInlinedClosures.get(variable);
+                    usedOnlyInInlinedClosures.put(variable, (old == null || old) && isUsedInDeclaringFunction(expression, variable));
+                }
+                super.visitSimpleNameExpression(expression);
+            }
+        };
+        for (JetFile file : files) {
+            file.accept(visitor);
+        }
+    }
+
+    private boolean isUsedInDeclaringFunction(JetElement reference, VariableDescriptor variable) {
+        DeclarationDescriptor container = variable.getContainingDeclaration();
+        for (PsiElement element = reference.getParent(); element != null && !(element instanceof JetFile); element = element.getParent()) {
+            if (element instanceof JetFunctionLiteral) {
+                continue;
+            }
+            if (element instanceof JetFunctionLiteralExpression) {
+                if (bindingContext.get(BindingContext.DECLARATION_TO_DESCRIPTOR, element) == container) return true;
+                if (!InlinedClosures.isInlined(bindingContext, (JetFunctionLiteralExpression) element)) return false;
+            }
+            else if (element instanceof JetDeclarationWithBody || element instanceof JetClassOrObject) {
+                return bindingContext.get(BindingContext.DECLARATION_TO_DESCRIPTOR, element) == container;
+            }
+        }
+        return false;
+    }
+
     public String classNameForAnonymousClass(JetElement expression) {
         if(expression instanceof JetObjectLiteralExpression) {
             JetObjectLiteralExpression jetObjectLiteralExpression = (JetObjectLiteralExpression) expression;
@@ -18,6 +18,7 @@ package org.jetbrains.jet.codegen;
 
 import com.intellij.psi.PsiElement;
 import gnu.trove.THashSet;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.lang.descriptors.*;
 import org.jetbrains.jet.lang.descriptors.annotations.AnnotationDescriptor;
 import org.jetbrains.jet.lang.psi.*;
@@ -85,6 +86,26 @@ public class CodegenUtil {
     }
 
 
+    /**
+     * @return the value of the string template if it has no expression entries
+     */
+    @Nullable
+    public static String getConstantString(JetStringTemplateExpression expression) {
+        StringBuilder constantValue = new StringBuilder();
+        for (JetStringTemplateEntry entry : expression.getEntries()) {
+            if (entry instanceof JetLiteralStringTemplateEntry) {
+                constantValue.append(entry.getText());
+            }
+            else if (entry instanceof JetEscapeStringTemplateEntry) {
+                constantValue.append(((JetEscapeStringTemplateEntry) entry).getUnescapedValue());
+            }
+            else {
+                return null;
+            }
+        }
+        return constantValue.toString();
+    }
+
     public static boolean isNamedFun(DeclarationDescriptor fd, BindingContext bindingContext) {
         PsiElement psiElement = bindingContext.get(BindingContext.DESCRIPTOR_TO_DECLARATION, fd);
         if(psiElement instanceof JetNamedFunction) {
@@ -24,6 +24,8 @@ import com.intellij.psi.tree.IElementType;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.codegen.intrinsics.IntrinsicMethod;
+import org.jetbrains.jet.codegen.intrinsics.IntrinsicMethods;
+import org.jetbrains.jet.codegen.intrinsics.UpTo;
 import org.jetbrains.jet.codegen.signature.JvmPropertyAccessorSignature;
 import org.jetbrains.jet.lang.descriptors.*;
 import org.jetbrains.jet.lang.diagnostics.DiagnosticUtils;
@@ -322,7 +324,7 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> {
         else {
             assert expressionType != null;
             final DeclarationDescriptor descriptor = expressionType.getConstructor().getDeclarationDescriptor();
-            if (isClass(descriptor, "IntRange")) {       // TODO IntRange subclasses (now IntRange is final)
+            if (canIterateAsPrimitiveRange(expression)) {
                 new ForInRangeLoopGenerator(expression, loopRangeType).invoke();
                 return StackValue.none();
             }
@@ -525,10 +527,131 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> {
         }
     }
 
+    /**
+     * @return the type of elements of a range class whose loops are generated without allocating the range or its iterator
+     */
+    @Nullable
+    private static Type getPrimitiveRangeElementType(@Nullable DeclarationDescriptor descriptor) {
+        // All these classes are final
+        if (isClass(descriptor, "IntRange")) return Type.INT_TYPE;
+        if (isClass(descriptor, "LongRange")) return Type.LONG_TYPE;
+        if (isClass(descriptor, "ByteRange")) return Type.BYTE_TYPE;
+        if (isClass(descriptor, "ShortRange")) return Type.SHORT_TYPE;
+        if (isClass(descriptor, "CharRange")) return Type.CHAR_TYPE;
+        return null;
+    }
+
+    @Nullable
+    private Type getPrimitiveRangeElementType(@NotNull JetExpression rangeExpression) {
+        JetType type = bindingContext.get(BindingContext.EXPRESSION_TYPE, rangeExpression);
+        if (type == null || type.isNullable()) return null;
+        return getPrimitiveRangeElementType(type.getConstructor().getDeclarationDescriptor());
+    }
+
+    /**
+     * A binary operation or a call with an explicit receiver and at most one argument, like {@code a downto b} or {@code a.indices}
+     */
+    private static class RangeOperation {
+        private final CallableDescriptor descriptor;
+        private final JetExpression receiver;
+        @Nullable
+        private final JetExpression argument;
+
+        private RangeOperation(CallableDescriptor descriptor, JetExpression receiver, @Nullable JetExpression argument) {
+            this.descriptor = descriptor;
+            this.receiver = receiver;
+            this.argument = argument;
+        }
+    }
+
+    @Nullable
+    private RangeOperation getRangeOperation(@NotNull JetExpression expression) {
+        expression = JetPsiUtil.deparenthesize(expression);
+        JetExpression callee;
+        JetExpression receiverExpression;
+        JetExpression argument;
+        if (expression instanceof JetBinaryExpression) {
+            JetBinaryExpression binaryExpression = (JetBinaryExpression) expression;
+            callee = binaryExpression.getOperationReference();
+            receiverExpression = binaryExpression.getLeft();
+            argument = binaryExpression.getRight();
+        }
+        else if (expression instanceof JetDotQualifiedExpression) {
+            JetDotQualifiedExpression qualifiedExpression = (JetDotQualifiedExpression) expression;
+            receiverExpression = qualifiedExpression.getReceiverExpression();
+            JetExpression selector = qualifiedExpression.getSelectorExpression();
+            if (selector instanceof JetCallExpression) {
+                JetCallExpression callExpression = (JetCallExpression) selector;
+                List<? extends ValueArgument> arguments = callExpression.getValueArguments();
+                if (arguments.size() != 1 || !callExpression.getFunctionLiteralArguments().isEmpty()) return null;
+                callee = callExpression.getCalleeExpression();
+                argument = arguments.get(0).getArgumentExpression();
+            }
+            else {
+                callee = selector;
+                argument = null;
+            }
+        }
+        else {
+            return null;
+        }
+        if (callee == null || receiverExpression == null) return null;
+
+        ResolvedCall<? extends CallableDescriptor> resolvedCall = bindingContext.get(BindingContext.RESOLVED_CALL, callee);
+        if (resolvedCall == null) return null;
+        return new RangeOperation(resolvedCall.getResultingDescriptor(), receiverExpression, argument);
+    }
+
+    @Nullable
+    private UpTo getRangeToIntrinsic(@NotNull RangeOperation operation) {
+        if (operation.argument == null) return null;
+        IntrinsicMethod intrinsic = state.getInjector().getIntrinsics().getIntrinsic(operation.descriptor);
+        return intrinsic instanceof UpTo ? (UpTo) intrinsic : null;
+    }
+
+    private boolean isArrayIndices(@NotNull RangeOperation operation) {
+        return operation.argument == null &&
+               state.getInjector().getIntrinsics().getIntrinsic(operation.descriptor) == IntrinsicMethods.ARRAY_INDICES;
+    }
+
+    private boolean isPrimitiveRangeStep(@NotNull RangeOperation operation) {
+        return operation.argument != null &&
+               "step".equals(operation.descriptor.getName()) &&
+               getPrimitiveRangeElementType(operation.descriptor.getContainingDeclaration()) != null &&
+               getPrimitiveRangeElementType(operation.receiver) != null;
+    }
+
+    private boolean canIterateAsPrimitiveRange(@NotNull JetForExpression expression) {
+        JetExpression loopRange = expression.getLoopRange();
+        VariableDescriptor parameterDescriptor = bindingContext.get(BindingContext.VALUE_PARAMETER, expression.getLoopParameter());
+        if (loopRange == null || parameterDescriptor == null) return false;
+
+        Type elementType = getPrimitiveRangeElementType(loopRange);
+        if (elementType == null) {
+            RangeOperation operation = getRangeOperation(loopRange);
+            if (operation == null || !isPrimitiveRangeStep(operation)) return false;
+            elementType = getPrimitiveRangeElementType(operation.receiver);
+        }
+        // The loop parameter may be declared with a supertype of the element type, e.g. Any
+        return elementType != null && elementType.equals(asmType(parameterDescriptor.getType()));
+    }
+
+    /**
+     * Iterates over an IntRange, LongRange, ByteRange, ShortRange or CharRange, or over the iterator returned by their step(),
+     * without allocating the range or the iterator when the range is written as {@code a..b}, {@code a downto b} or {@code array.indices}.
+     *
+     * The loop parameter is advanced by a delta while the count of the remaining elements is positive.
+     * For a stepped range, the count is decreased by the absolute value of the step on each iteration.
+     */
     private class ForInRangeLoopGenerator extends ForLoopGenerator {
-        private int myCountVar;
-        private int myDeltaVar;
+        private Type elementType;
+        private Type arithmeticType;
         private int myIndexVar;
+        private int myCountVar;
+        private int myDeltaVar = -1;
+        private int myConstantDelta;
+        private int myStepVar = -1;
+        private int myTempSize;
 
         public ForInRangeLoopGenerator(JetForExpression expression, Type loopRangeType) {
             super(expression, loopRangeType);
@@ -536,73 +659,225 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> {
 
         @Override
         protected void generatePrologue() {
+            JetExpression loopRange = expression.getLoopRange();
+            assert loopRange != null;
+
+            JetExpression rangeExpression = loopRange;
+            RangeOperation step = null;
+            if (getPrimitiveRangeElementType(loopRange) == null) {
+                step = getRangeOperation(loopRange);
+                assert step != null && isPrimitiveRangeStep(step) : "Not a step of a primitive range: " + loopRange.getText();
+                rangeExpression = step.receiver;
+            }
+            elementType = getPrimitiveRangeElementType(rangeExpression);
+            assert elementType != null;
+            arithmeticType = elementType == Type.LONG_TYPE ? Type.LONG_TYPE : Type.INT_TYPE;
+
             myIndexVar = lookupLocal(parameterDescriptor);
-            myCountVar = myFrameMap.enterTemp();
-            myDeltaVar = myFrameMap.enterTemp();
-            if(isIntRangeExpr(expression.getLoopRange())) {
-                JetBinaryExpression rangeExpression = (JetBinaryExpression) expression.getLoopRange();
+            myCountVar = enterTemp(arithmeticType);
+
+            generateBounds(rangeExpression);
+
+            if (step != null) {
                 //noinspection ConstantConditions
-                gen(rangeExpression.getLeft(), Type.INT_TYPE);
-                v.store(myIndexVar, Type.INT_TYPE);
-                gen(rangeExpression.getRight(), Type.INT_TYPE);
-                v.store(myCountVar, Type.INT_TYPE);
+                generateStep(step.argument);
+            }
+        }
 
-                v.load(myCountVar, Type.INT_TYPE);
-                v.load(myIndexVar, Type.INT_TYPE);
-                v.sub(Type.INT_TYPE);
-                v.iconst(1);
-                v.add(Type.INT_TYPE);
-                v.store(myCountVar, Type.INT_TYPE);
-                
-                v.load(myCountVar, Type.INT_TYPE);
-                v.iflt(end);
+        private int enterTemp(Type type) {
+            myTempSize += type.getSize();
+            return myFrameMap.enterTemp(type.getSize());
+        }
 
-                v.iconst(1);
-                v.store(myDeltaVar, Type.INT_TYPE);
+        private void generateBounds(JetExpression rangeExpression) {
+            RangeOperation operation = getRangeOperation(rangeExpression);
+            UpTo upTo = operation != null ? getRangeToIntrinsic(operation) : null;
+            if (upTo != null) {
+                //noinspection ConstantConditions
+                generateRangeTo(operation.receiver, operation.argument, upTo.isForward());
+            }
+            else if (operation != null && isArrayIndices(operation)) {
+                gen(operation.receiver, expressionType(operation.receiver));
+                v.arraylength();
+                v.store(myCountVar, Type.INT_TYPE);
+                v.iconst(0);
+                v.store(myIndexVar, Type.INT_TYPE);
+                myConstantDelta = 1;
             }
             else {
-                gen(expression.getLoopRange(), loopRangeType);
+                Type rangeType = expressionType(rangeExpression);
+                String owner = rangeType.getInternalName();
+                gen(rangeExpression, rangeType);
                 v.dup();
                 v.dup();
 
-                v.invokevirtual("jet/IntRange", "getStart", "()I");
-                v.store(myIndexVar, Type.INT_TYPE);
-                v.invokevirtual("jet/IntRange", "getSize", "()I");
-                v.store(myCountVar, Type.INT_TYPE);
+                v.invokevirtual(owner, "getStart", "()" + elementType.getDescriptor());
+                v.store(myIndexVar, elementType);
+                v.invokevirtual(owner, "getSize", "()" + arithmeticType.getDescriptor());
+                v.store(myCountVar, arithmeticType);
 
-                v.invokevirtual("jet/IntRange", "getIsReversed", "()Z");
+                myDeltaVar = enterTemp(arithmeticType);
+                v.invokevirtual(owner, "getIsReversed", "()Z");
                 Label down = new Label();
-
                 v.ifne(down);
-                v.iconst(1);
+                pushConstant(1);
                 Label initEnd = new Label();
                 v.goTo(initEnd);
                 v.mark(down);
-                v.iconst(-1);
+                pushConstant(-1);
                 v.mark(initEnd);
-                v.store(myDeltaVar, Type.INT_TYPE);
+                v.store(myDeltaVar, arithmeticType);
+            }
+        }
+
+        /**
+         * Same as jet.runtime.Ranges.upTo() and downTo(): {@code a..b} is empty if a > b, and {@code a downto b} is empty if a <= b
+         */
+        private void generateRangeTo(JetExpression from, JetExpression to, boolean forward) {
+            gen(from, arithmeticType);
+            v.store(myIndexVar, arithmeticType);
+            gen(to, arithmeticType);
+            v.store(myCountVar, arithmeticType);
+
+            if (forward) {
+                v.load(myCountVar, arithmeticType);
+                v.load(myIndexVar, arithmeticType);
+                v.sub(arithmeticType);
+                pushConstant(1);
+                v.add(arithmeticType);
+                v.store(myCountVar, arithmeticType);
+                myConstantDelta = 1;
+            }
+            else {
+                v.load(myIndexVar, arithmeticType);
+                v.load(myCountVar, arithmeticType);
+                v.sub(arithmeticType);
+                v.store(myCountVar, arithmeticType);
+
+                Label empty = new Label();
+                v.load(myCountVar, arithmeticType);
+                jumpIfNotPositive(empty);
+                v.load(myCountVar, arithmeticType);
+                pushConstant(1);
+                v.add(arithmeticType);
+                v.store(myCountVar, arithmeticType);
+                v.mark(empty);
+                myConstantDelta = -1;
+            }
+        }
+
+        /**
+         * Same as the iterator returned by step() of the range classes: a negative step starts from the end of the range
+         * and goes in the opposite direction
+         */
+        private void generateStep(JetExpression stepExpression) {
+            if (myDeltaVar < 0) {
+                myDeltaVar = enterTemp(arithmeticType);
+                pushConstant(myConstantDelta);
+                v.store(myDeltaVar, arithmeticType);
+            }
+            myStepVar = enterTemp(arithmeticType);
+            gen(stepExpression, arithmeticType);
+            v.store(myStepVar, arithmeticType);
+
+            Label positive = new Label();
+            v.load(myStepVar, arithmeticType);
+            pushConstant(0);
+            if (arithmeticType == Type.LONG_TYPE) {
+                v.lcmp();
+                v.ifge(positive);
+            }
+            else {
+                v.ificmpge(positive);
+            }
+
+            // index += delta * (count - 1)
+            Label empty = new Label();
+            v.load(myCountVar, arithmeticType);
+            jumpIfNotPositive(empty);
+            v.load(myIndexVar, arithmeticType);
+            v.load(myDeltaVar, arithmeticType);
+            v.load(myCountVar, arithmeticType);
+            pushConstant(1);
+            v.sub(arithmeticType);
+            v.mul(arithmeticType);
+            v.add(arithmeticType);
+            v.store(myIndexVar, arithmeticType);
+            v.mark(empty);
+
+            v.load(myDeltaVar, arithmeticType);
+            v.neg(arithmeticType);
+            v.store(myDeltaVar, arithmeticType);
+            v.load(myStepVar, arithmeticType);
+            v.neg(arithmeticType);
+            v.store(myStepVar, arithmeticType);
+
+            v.mark(positive);
+            v.load(myDeltaVar, arithmeticType);
+            v.load(myStepVar, arithmeticType);
+            v.mul(arithmeticType);
+            v.store(myDeltaVar, arithmeticType);
+        }
+
+        private void pushConstant(int value) {
+            if (arithmeticType == Type.LONG_TYPE) {
+                v.lconst(value);
+            }
+            else {
+                v.iconst(value);
             }
         }
 
+        private void jumpIfNotPositive(Label label) {
+            if (arithmeticType == Type.LONG_TYPE) {
+                v.lconst(0);
+                v.lcmp();
+            }
+            v.ifle(label);
+        }
+
         @Override
         protected void generateCondition(Type asmParamType, Label end) {
-            v.load(myCountVar, Type.INT_TYPE);
-            v.ifeq(end);
+            v.load(myCountVar, arithmeticType);
+            jumpIfNotPositive(end);
         }
 
         @Override
         protected void generateIncrement() {
-            v.load(myIndexVar, Type.INT_TYPE);
-            v.load(myDeltaVar, Type.INT_TYPE);
-            v.add(Type.INT_TYPE);
-            v.store(myIndexVar, Type.INT_TYPE);
-            v.iinc(myCountVar, -1);
+            if (myDeltaVar < 0 && arithmeticType == Type.INT_TYPE) {
+                v.iinc(myIndexVar, myConstantDelta);
+            }
+            else {
+                v.load(myIndexVar, arithmeticType);
+                if (myDeltaVar < 0) {
+                    pushConstant(myConstantDelta);
+                }
+                else {
+                    v.load(myDeltaVar, arithmeticType);
+                }
+                v.add(arithmeticType);
+                v.store(myIndexVar, arithmeticType);
+            }
+
+            if (myStepVar < 0 && arithmeticType == Type.INT_TYPE) {
+                v.iinc(myCountVar, -1);
+            }
+            else {
+                v.load(myCountVar, arithmeticType);
+                if (myStepVar < 0) {
+                    pushConstant(1);
+                }
+                else {
+                    v.load(myStepVar, arithmeticType);
+                }
+                v.sub(arithmeticType);
+                v.store(myCountVar, arithmeticType);
+            }
         }
 
         @Override
         protected void cleanupTemp() {
-            myFrameMap.leaveTemp();
-            myFrameMap.leaveTemp();
+            myFrameMap.leaveTemp(myTempSize);
         }
     }
 
@@ -680,40 +955,117 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> {
 
     @Override
     public StackValue visitStringTemplateExpression(JetStringTemplateExpression expression, StackValue receiver) {
-        StringBuilder constantValue = new StringBuilder("");
+        // constant entries folded together, and the expressions in between
+        List<Object> parts = new ArrayList<Object>();
+        int constantLength = 0;
         for (JetStringTemplateEntry entry : expression.getEntries()) {
-            if (entry instanceof JetLiteralStringTemplateEntry) {
-                constantValue.append(entry.getText());
+            String constant;
+            if (entry instanceof JetStringTemplateEntryWithExpression) {
+                constant = getConstantStringValue(entry.getExpression(), true);
             }
             else if (entry instanceof JetEscapeStringTemplateEntry) {
-                constantValue.append(((JetEscapeStringTemplateEntry) entry).getUnescapedValue());
+                constant = ((JetEscapeStringTemplateEntry) entry).getUnescapedValue();
             }
             else {
-                constantValue = null;
-                break;
+                constant = entry.getText();
+            }
+
+            if (constant == null) {
+                parts.add(entry.getExpression());
+            }
+            else if (!parts.isEmpty() && parts.get(parts.size() - 1) instanceof String) {
+                parts.set(parts.size() - 1, parts.get(parts.size() - 1) + constant);
+            }
+            else {
+                parts.add(constant);
+            }
+            if (constant != null) {
+                constantLength += constant.length();
             }
         }
-        if (constantValue != null) {
-            final Type type = expressionType(expression);
-            return StackValue.constant(constantValue.toString(), type);
+
+        Type type = expressionType(expression);
+        if (parts.isEmpty()) {
+            return StackValue.constant("", type);
         }
-        else {
-            generateStringBuilderConstructor();
-            for (JetStringTemplateEntry entry : expression.getEntries()) {
-                if (entry instanceof JetStringTemplateEntryWithExpression) {
-                    invokeAppend(entry.getExpression());
-                }
-                else {
-                    String text = entry instanceof JetEscapeStringTemplateEntry
-                            ? ((JetEscapeStringTemplateEntry) entry).getUnescapedValue()
-                            : entry.getText();
-                    v.aconst(text);
-                    invokeAppendMethod(JL_STRING_TYPE);
-                }
+        if (parts.size() == 1 && parts.get(0) instanceof String) {
+            return StackValue.constant(parts.get(0), type);
+        }
+        if (parts.size() <= 2) {
+            genStringValueOf(parts.get(0));
+            if (parts.size() == 2) {
+                genStringValueOf(parts.get(1));
+                v.invokevirtual("java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;");
+            }
+            return StackValue.onStack(type);
+        }
+
+        // the expressions get the headroom of the default constructor
+        generateStringBuilderConstructor(constantLength + 16);
+        for (Object part : parts) {
+            if (part instanceof String) {
+                v.aconst(part);
+                invokeAppendMethod(JL_STRING_TYPE);
             }
-            v.invokevirtual("java/lang/StringBuilder", "toString", "()Ljava/lang/String;");
-            return StackValue.onStack(expressionType(expression));
+            else {
+                invokeAppend((JetExpression) part);
+            }
+        }
+        v.invokevirtual("java/lang/StringBuilder", "toString", "()Ljava/lang/String;");
+        return StackValue.onStack(type);
+    }
+
+    /**
+     * @param followValues whether a reference to a local or top-level {@code val} is replaced with its constant initializer
+     * @return the string a template entry with the given expression is known to produce
+     */
+    @Nullable
+    private String getConstantStringValue(@Nullable JetExpression expression, boolean followValues) {
+        if (expression == null) return null;
+        expression = JetPsiUtil.deparenthesize(expression);
+        if (expression instanceof JetStringTemplateExpression) {
+            return CodegenUtil.getConstantString((JetStringTemplateExpression) expression);
+        }
+
+        CompileTimeConstant<?> compileTimeValue = bindingContext.get(BindingContext.COMPILE_TIME_VALUE, expression);
+        if (compileTimeValue != null) {
+            Object value = compileTimeValue.getValue();
+            if (value instanceof Number || value instanceof Character || value instanceof Boolean || value instanceof String) {
+                return String.valueOf(value);
+            }
+            return null;
+        }
+
+        if (followValues && expression instanceof JetSimpleNameExpression) {
+            DeclarationDescriptor descriptor = bindingContext.get(BindingContext.REFERENCE_TARGET, (JetSimpleNameExpression) expression);
+            if (!(descriptor instanceof VariableDescriptor) || ((VariableDescriptor) descriptor).isVar()) return null;
+            if (descriptor.getContainingDeclaration() instanceof ClassDescriptor) return null;
+            PsiElement declaration = bindingContext.get(BindingContext.DESCRIPTOR_TO_DECLARATION, descriptor);
+            if (!(declaration instanceof JetProperty) || ((JetProperty) declaration).getGetter() != null) return null;
+            return getConstantStringValue(((JetProperty) declaration).getInitializer(), false);
+        }
+        return null;
+    }
+
+    // puts a part of a string template on the stack as a String
+    private void genStringValueOf(Object part) {
+        if (part instanceof String) {
+            v.aconst(part);
+            return;
+        }
+
+        JetExpression expression = (JetExpression) part;
+        Type exprType = expressionType(expression);
+        gen(expression, exprType);
+        JetType jetType = bindingContext.get(BindingContext.EXPRESSION_TYPE, expression);
+        if (exprType.equals(JL_STRING_TYPE) && jetType != null && !jetType.isNullable()) {
+            return;
+        }
+        Type argumentType = stringAppendArgumentType(exprType);
+        if (argumentType.equals(JL_STRING_TYPE)) {
+            argumentType = TYPE_OBJECT;
         }
+        v.invokestatic("java/lang/String", "valueOf", "(" + argumentType.getDescriptor() + ")Ljava/lang/String;");
     }
 
     @Override
@@ -1252,6 +1604,10 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> {
         }
         else if (funDescriptor instanceof FunctionDescriptor) {
             final FunctionDescriptor fd = (FunctionDescriptor) funDescriptor;
+            InlinedClosures.Kind inlinedCallKind = InlinedClosures.getInlinedCallKind(bindingContext, expression);
+            if (inlinedCallKind != null) {
+                return generateInlinedCall(expression, inlinedCallKind, resolvedCall, receiver);
+            }
             return invokeFunction(expression, fd, receiver);
         }
         else {
@@ -1259,6 +1615,190 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> {
         }
     }
 
+    /**
+     * Generates a call whose function literal argument is not turned into a closure, see {@link InlinedClosures}
+     */
+    private StackValue generateInlinedCall(JetCallExpression expression, InlinedClosures.Kind kind,
+            ResolvedCall<? extends CallableDescriptor> resolvedCall, StackValue receiver) {
+        FunctionDescriptor fd = (FunctionDescriptor) resolvedCall.getResultingDescriptor();
+        JetFunctionLiteralExpression literal = InlinedClosures.getFunctionLiteralArgument(expression, fd.getValueParameters().size());
+        assert literal != null;
+
+        if (kind == InlinedClosures.Kind.SYNCHRONIZED) {
+            JetExpression lock = expression.getValueArguments().get(0).getArgumentExpression();
+            assert lock != null;
+            return generateInlinedSynchronized(lock, literal, expressionType(expression));
+        }
+
+        InlinedClosures.ReceiverKind receiverKind = InlinedClosures.getReceiverKind(fd);
+        assert receiverKind != null;
+        Type receiverType = asmType(fd.getReceiverParameter().getType());
+        receiver = StackValue.receiver(resolvedCall, receiver, this, null, state);
+
+        int receiverVar = myFrameMap.enterTemp();
+        receiver.put(receiverType, v);
+        v.store(receiverVar, receiverType);
+
+        int resultVar = -1;
+        if (kind != InlinedClosures.Kind.FOR_EACH) {
+            resultVar = myFrameMap.enterTemp();
+            v.anew(JU_ARRAY_LIST_TYPE);
+            v.dup();
+            if (receiverKind == InlinedClosures.ReceiverKind.ARRAY) {
+                v.load(receiverVar, receiverType);
+                v.arraylength();
+                v.invokespecial(JU_ARRAY_LIST_TYPE.getInternalName(), "<init>", "(I)V");
+            }
+            else if (receiverKind == InlinedClosures.ReceiverKind.JAVA_COLLECTION) {
+                v.load(receiverVar, receiverType);
+                v.invokeinterface("java/util/Collection", "size", "()I");
+                v.invokespecial(JU_ARRAY_LIST_TYPE.getInternalName(), "<init>", "(I)V");
+            }
+            else {
+                v.invokespecial(JU_ARRAY_LIST_TYPE.getInternalName(), "<init>", "()V");
+            }
+            v.store(resultVar, JU_ARRAY_LIST_TYPE);
+        }
+
+        // For arrays the receiver is indexed, otherwise it is replaced by its iterator
+        int indexVar = -1;
+        boolean jetIterator = receiverKind == InlinedClosures.ReceiverKind.JET_ITERABLE;
+        if (receiverKind == InlinedClosures.ReceiverKind.ARRAY) {
+            indexVar = myFrameMap.enterTemp();
+            v.iconst(0);
+            v.store(indexVar, Type.INT_TYPE);
+        }
+        else if (receiverKind != InlinedClosures.ReceiverKind.JAVA_ITERATOR) {
+            v.load(receiverVar, receiverType);
+            if (jetIterator) {
+                v.invokeinterface(receiverType.getInternalName(), "iterator", "()" + TYPE_ITERATOR.getDescriptor());
+            }
+            else {
+                v.invokeinterface("java/lang/Iterable", "iterator", "()Ljava/util/Iterator;");
+            }
+            v.store(receiverVar, TYPE_OBJECT);
+        }
+        String iteratorClass = jetIterator ? TYPE_ITERATOR.getInternalName() : "java/util/Iterator";
+
+        Label begin = new Label();
+        Label end = new Label();
+        v.mark(begin);
+        if (indexVar >= 0) {
+            v.load(indexVar, Type.INT_TYPE);
+            v.load(receiverVar, receiverType);
+            v.arraylength();
+            v.ificmpge(end);
+        }
+        else {
+            v.load(receiverVar, TYPE_OBJECT);
+            v.invokeinterface(iteratorClass, jetIterator ? "getHasNext" : "hasNext", "()Z");
+            v.ifeq(end);
+        }
+
+        FunctionDescriptor literalDescriptor = (FunctionDescriptor) bindingContext.get(BindingContext.DECLARATION_TO_DESCRIPTOR, literal);
+        assert literalDescriptor != null;
+        ValueParameterDescriptor parameter = literalDescriptor.getValueParameters().get(0);
+        Type parameterType = asmType(parameter.getType());
+        myFrameMap.enter(parameter, parameterType.getSize());
+        int parameterIndex = lookupLocal(parameter);
+        if (indexVar >= 0) {
+            Type elementType = correctElementType(receiverType);
+            v.load(receiverVar, receiverType);
+            v.load(indexVar, Type.INT_TYPE);
+            v.aload(elementType);
+            StackValue.onStack(elementType).put(parameterType, v);
+        }
+        else {
+            v.load(receiverVar, TYPE_OBJECT);
+            v.invokeinterface(iteratorClass, "next", "()Ljava/lang/Object;");
+            StackValue.onStack(TYPE_OBJECT).put(parameterType, v);
+        }
+        v.store(parameterIndex, parameterType);
+
+        Label bodyStart = new Label();
+        v.mark(bodyStart);
+        switch (kind) {
+            case FOR_EACH:
+                generateInlinedBody(literal, Type.VOID_TYPE);
+                break;
+            case MAP:
+                v.load(resultVar, JU_ARRAY_LIST_TYPE);
+                generateInlinedBody(literal, TYPE_OBJECT);
+                v.invokevirtual(JU_ARRAY_LIST_TYPE.getInternalName(), "add", "(Ljava/lang/Object;)Z");
+                v.pop();
+                break;
+            case FILTER:
+                generateInlinedBody(literal, Type.BOOLEAN_TYPE);
+                Label skip = new Label();
+                v.ifeq(skip);
+                v.load(resultVar, JU_ARRAY_LIST_TYPE);
+                StackValue.local(parameterIndex, parameterType).put(TYPE_OBJECT, v);
+                v.invokevirtual(JU_ARRAY_LIST_TYPE.getInternalName(), "add", "(Ljava/lang/Object;)Z");
+                v.pop();
+                v.mark(skip);
+                break;
+            default:
+                throw new IllegalStateException("Unexpected inlined call: " + kind);
+        }
+        if (indexVar >= 0) {
+            v.iinc(indexVar, 1);
+        }
+        v.goTo(begin);
+        v.mark(end);
+
+        myFrameMap.leave(parameter);
+        //noinspection ConstantConditions
+        v.visitLocalVariable(parameter.getName(), parameterType.getDescriptor(), null, bodyStart, end, parameterIndex);
+
+        if (indexVar >= 0) {
+            myFrameMap.leaveTemp();
+        }
+        if (resultVar >= 0) {
+            v.load(resultVar, JU_ARRAY_LIST_TYPE);
+            myFrameMap.leaveTemp(2);
+            return StackValue.onStack(JU_ARRAY_LIST_TYPE);
+        }
+        myFrameMap.leaveTemp();
+        return StackValue.none();
+    }
+
+    private StackValue generateInlinedSynchronized(JetExpression lock, JetFunctionLiteralExpression literal, Type resultType) {
+        int lockVar = myFrameMap.enterTemp();
+        gen(lock, TYPE_OBJECT);
+        v.dup();
+        v.store(lockVar, TYPE_OBJECT);
+        v.monitorenter();
+
+        Label start = new Label();
+        Label end = new Label();
+        Label handler = new Label();
+        Label exit = new Label();
+        v.mark(start);
+        // The body may be empty, but the protected range may not
+        v.nop();
+        generateInlinedBody(literal, resultType);
+        v.mark(end);
+        v.load(lockVar, TYPE_OBJECT);
+        v.monitorexit();
+        v.goTo(exit);
+
+        v.mark(handler);
+        v.load(lockVar, TYPE_OBJECT);
+        v.monitorexit();
+        v.athrow();
+        v.visitTryCatchBlock(start, end, handler, null);
+
+        v.mark(exit);
+        myFrameMap.leaveTemp();
+        return StackValue.onStack(resultType);
+    }
+
+    private void generateInlinedBody(JetFunctionLiteralExpression literal, Type type) {
+        JetBlockExpression body = literal.getBodyExpression();
+        assert body != null;
+        generateBlock(body.getStatements()).put(type, v);
+    }
+
     private StackValue invokeFunction(JetCallExpression expression, DeclarationDescriptor fd, StackValue receiver) {
         boolean superCall = false;
         if (expression.getParent() instanceof JetQualifiedExpression) {
@@ -2000,6 +2540,15 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> {
         v.invokespecial("java/lang/StringBuilder", method.getName(), method.getDescriptor());
     }
 
+    public void generateStringBuilderConstructor(int capacity) {
+        Type type = JL_STRING_BUILDER;
+        v.anew(type);
+        v.dup();
+        v.iconst(capacity);
+        Method method = new Method("<init>", Type.VOID_TYPE, new Type[] { Type.INT_TYPE });
+        v.invokespecial("java/lang/StringBuilder", method.getName(), method.getDescriptor());
+    }
+
     public void invokeAppend(final JetExpression expr) {
         if (expr instanceof JetBinaryExpression) {
             final JetBinaryExpression binaryExpression = (JetBinaryExpression) expr;
@@ -2018,15 +2567,31 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> {
         }
         Type exprType = expressionType(expr);
         gen(expr, exprType);
-        invokeAppendMethod(exprType.getSort() == Type.ARRAY ? TYPE_OBJECT : exprType);
+        invokeAppendMethod(exprType);
     }
 
     public void invokeAppendMethod(Type exprType) {
-        Method appendDescriptor = new Method("append", JL_STRING_BUILDER,
-                new Type[] { exprType.getSort() == Type.OBJECT ? TYPE_OBJECT : exprType});
+        Method appendDescriptor = new Method("append", JL_STRING_BUILDER, new Type[] { stringAppendArgumentType(exprType) });
         v.invokevirtual("java/lang/StringBuilder", "append", appendDescriptor.getDescriptor());
     }
 
+    /**
+     * @return the parameter type of the StringBuilder.append() overload that takes a value of the given type without boxing it
+     */
+    private static Type stringAppendArgumentType(Type type) {
+        switch (type.getSort()) {
+            case Type.BYTE:
+            case Type.SHORT:
+                return Type.INT_TYPE;
+            case Type.OBJECT:
+                return type.equals(JL_STRING_TYPE) ? JL_STRING_TYPE : TYPE_OBJECT;
+            case Type.ARRAY:
+                return TYPE_OBJECT;
+            default:
+                return type;
+        }
+    }
+
     private JetSimpleNameExpression targetLabel(JetExpression expression) {
         if(expression.getParent() instanceof JetPrefixExpression) {
             JetPrefixExpression parent = (JetPrefixExpression) expression.getParent();
@@ -2722,6 +3287,13 @@ If finally block is present, its last expression is the value of try expression.
         if(subjectLocal != -1) {
             gen(expr, subjectType);
             v.store(subjectLocal, subjectType);
+
+            WhenSwitch whenSwitch = WhenSwitch.create(bindingContext, expression, subjectType);
+            if (whenSwitch != null) {
+                generateSwitch(expression, whenSwitch, subjectType, subjectLocal, resultType);
+                myFrameMap.leaveTemp(subjectType.getSize());
+                return StackValue.onStack(resultType);
+            }
         }
 
         Label end = new Label();
@@ -2771,6 +3343,100 @@ If finally block is present, its last expression is the value of try expression.
         return StackValue.onStack(resultType);
     }
 
+    private void generateSwitch(JetWhenExpression expression, WhenSwitch whenSwitch, Type subjectType, int subjectLocal, Type resultType) {
+        Map<JetWhenEntry, Label> entryLabels = new LinkedHashMap<JetWhenEntry, Label>();
+        for (JetWhenEntry whenEntry : expression.getEntries()) {
+            if (!whenEntry.isElse()) {
+                entryLabels.put(whenEntry, new Label());
+            }
+        }
+        Label defaultLabel = new Label();
+        Label end = new Label();
+
+        if (whenSwitch.isStringSwitch()) {
+            SortedMap<Integer, List<String>> stringsByHashCode = new TreeMap<Integer, List<String>>();
+            for (Object constant : whenSwitch.getEntriesByConstant().keySet()) {
+                String string = (String) constant;
+                List<String> strings = stringsByHashCode.get(string.hashCode());
+                if (strings == null) {
+                    strings = new ArrayList<String>(1);
+                    stringsByHashCode.put(string.hashCode(), strings);
+                }
+                strings.add(string);
+            }
+
+            Map<Integer, Label> hashCodeLabels = new LinkedHashMap<Integer, Label>();
+            for (Integer hashCode : stringsByHashCode.keySet()) {
+                hashCodeLabels.put(hashCode, new Label());
+            }
+            v.load(subjectLocal, subjectType);
+            v.ifnull(defaultLabel);
+            v.load(subjectLocal, subjectType);
+            v.invokevirtual("java/lang/String", "hashCode", "()I");
+            generateSwitchInstruction(hashCodeLabels, defaultLabel);
+
+            for (Map.Entry<Integer, List<String>> entry : stringsByHashCode.entrySet()) {
+                v.mark(hashCodeLabels.get(entry.getKey()));
+                for (String string : entry.getValue()) {
+                    v.load(subjectLocal, subjectType);
+                    v.aconst(string);
+                    v.invokevirtual("java/lang/String", "equals", "(Ljava/lang/Object;)Z");
+                    v.ifne(entryLabels.get(whenSwitch.getEntriesByConstant().get(string)));
+                }
+                v.goTo(defaultLabel);
+            }
+        }
+        else {
+            SortedMap<Integer, Label> keyLabels = new TreeMap<Integer, Label>();
+            for (Map.Entry<Object, JetWhenEntry> entry : whenSwitch.getEntriesByConstant().entrySet()) {
+                keyLabels.put((Integer) entry.getKey(), entryLabels.get(entry.getValue()));
+            }
+            v.load(subjectLocal, subjectType);
+            generateSwitchInstruction(keyLabels, defaultLabel);
+        }
+
+        for (Map.Entry<JetWhenEntry, Label> entry : entryLabels.entrySet()) {
+            v.mark(entry.getValue());
+            FrameMap.Mark mark = myFrameMap.mark();
+            gen(entry.getKey().getExpression(), resultType);
+            mark.dropTo();
+            v.goTo(end);
+        }
+
+        v.mark(defaultLabel);
+        JetWhenEntry elseEntry = whenSwitch.getElseEntry();
+        if (elseEntry != null) {
+            FrameMap.Mark mark = myFrameMap.mark();
+            gen(elseEntry.getExpression(), resultType);
+            mark.dropTo();
+        }
+        else {
+            throwNewException(CLASS_NO_PATTERN_MATCHED_EXCEPTION);
+        }
+        v.mark(end);
+    }
+
+    // the int key is on the stack
+    private void generateSwitchInstruction(Map<Integer, Label> sortedKeyLabels, Label defaultLabel) {
+        int[] keys = new int[sortedKeyLabels.size()];
+        int i = 0;
+        for (Integer key : sortedKeyLabels.keySet()) {
+            keys[i++] = key;
+        }
+
+        if (WhenSwitch.useTableSwitch(keys)) {
+            Label[] labels = new Label[keys[keys.length - 1] - keys[0] + 1];
+            Arrays.fill(labels, defaultLabel);
+            for (Map.Entry<Integer, Label> entry : sortedKeyLabels.entrySet()) {
+                labels[entry.getKey() - keys[0]] = entry.getValue();
+            }
+            v.tableswitch(keys[0], keys[keys.length - 1], defaultLabel, labels);
+        }
+        else {
+            v.lookupswitch(defaultLabel, keys, sortedKeyLabels.values().toArray(new Label[keys.length]));
+        }
+    }
+
     private StackValue generateWhenCondition(Type subjectType, int subjectLocal, JetWhenCondition condition, @Nullable Label nextEntry) {
         if (condition instanceof JetWhenConditionInRange) {
             JetWhenConditionInRange conditionInRange = (JetWhenConditionInRange) condition;
@@ -17,12 +17,24 @@
 package org.jetbrains.jet.codegen;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.*;
 
 /**
 * @author yole
 */
 public class GeneratedClassLoader extends ClassLoader {
     private ClassFileFactory state;
+    /** Bytes of the generated files by path, when they don't come from a factory */
+    private Map<String, byte[]> classFiles;
 
     public GeneratedClassLoader(@NotNull ClassFileFactory state) {
         this(state, GeneratedClassLoader.class.getClassLoader());
@@ -33,17 +45,92 @@ public class GeneratedClassLoader extends ClassLoader {
         this.state = state;
     }
 
+    /**
+     * @param classFiles bytes by file path, as produced by {@link ClassFileFactory#releaseBytes()}
+     */
+    public GeneratedClassLoader(@NotNull Map<String, byte[]> classFiles, ClassLoader parentClassLoader) {
+        super(parentClassLoader);
+        this.classFiles = classFiles;
+    }
+
     @Override
     protected Class<?> findClass(String name) throws ClassNotFoundException {
-        String file = name.replace('.', '/') + ".class";
-        if (state.files().contains(file)) {
-            byte[] bytes = state.asBytes(file);
+        byte[] bytes = getBytes(name.replace('.', '/') + ".class");
+        if (bytes != null) {
             return defineClass(name, bytes, 0, bytes.length);
         }
         return super.findClass(name);
     }
 
+    /**
+     * Generated files are looked up before the parent's resources, by all the resource methods alike
+     */
+    @Override
+    public URL getResource(String name) {
+        URL url = findResource(name);
+        return url != null ? url : super.getResource(name);
+    }
+
+    @Override
+    public Enumeration<URL> getResources(String name) throws IOException {
+        URL url = findResource(name);
+        if (url == null) {
+            return super.getResources(name);
+        }
+        List<URL> urls = new ArrayList<URL>();
+        urls.add(url);
+        urls.addAll(Collections.list(super.getResources(name)));
+        return Collections.enumeration(urls);
+    }
+
+    @Override
+    public InputStream getResourceAsStream(String name) {
+        byte[] bytes = getBytes(name);
+        if (bytes != null) {
+            return new ByteArrayInputStream(bytes);
+        }
+        return super.getResourceAsStream(name);
+    }
+
+    @Override
+    protected URL findResource(String name) {
+        final byte[] bytes = getBytes(name);
+        if (bytes == null) return null;
+        try {
+            return new URL("kotlin-generated", null, -1, "/" + name, new URLStreamHandler() {
+                @Override
+                protected URLConnection openConnection(URL url) {
+                    return new URLConnection(url) {
+                        @Override
+                        public void connect() {
+                        }
+
+                        @Override
+                        public InputStream getInputStream() {
+                            return new ByteArrayInputStream(bytes);
+                        }
+                    };
+                }
+            });
+        }
+        catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Nullable
+    private byte[] getBytes(@NotNull String file) {
+        if (classFiles != null) {
+            return classFiles.get(file);
+        }
+        if (state != null && state.contains(file)) {
+            return state.asBytes(file);
+        }
+        return null;
+    }
+
     public void dispose() {
         state = null;
+        classFiles = null;
     }
 }
@@ -25,6 +25,7 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.di.InjectorForJvmCodegen;
 import org.jetbrains.jet.lang.descriptors.ClassDescriptor;
 import org.jetbrains.jet.lang.descriptors.ConstructorDescriptor;
@@ -33,12 +34,19 @@ import org.jetbrains.jet.lang.psi.JetExpression;
 import org.jetbrains.jet.lang.psi.JetFile;
 import org.jetbrains.jet.lang.psi.JetObjectDeclaration;
 import org.jetbrains.jet.lang.psi.JetObjectLiteralExpression;
+import org.jetbrains.jet.lang.psi.JetPsiUtil;
 import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.FqName;
 import org.jetbrains.jet.lang.resolve.java.AnalyzeExhaust;
 import org.jetbrains.jet.lang.resolve.java.CompilerSpecialMode;
+import org.jetbrains.jet.util.Profiler;
 import org.jetbrains.jet.utils.Progress;
 
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class GenerationState {
     private final Project project;
@@ -49,7 +57,7 @@ public class GenerationState {
     private final List<JetFile> files;
     @NotNull
     private final InjectorForJvmCodegen injector;
-
+    private int threadCount = 1;
 
     public GenerationState(Project project, ClassBuilderFactory builderFactory, AnalyzeExhaust analyzeExhaust, List<JetFile> files) {
         this(project, builderFactory, Progress.DEAF, analyzeExhaust, files, CompilerSpecialMode.REGULAR);
@@ -71,6 +79,16 @@ public class GenerationState {
         return getInjector().getClassFileFactory();
     }
 
+    /**
+     * Sets the number of threads used by {@link #compileCorrectFiles}.
+     * Different namespaces are generated concurrently, files of one namespace are always generated by the same thread
+     * in the order they were given, and the resulting class files are listed in the same order as in a serial run.
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) throw new IllegalArgumentException("Thread count should be positive: " + threadCount);
+        this.threadCount = threadCount;
+    }
+
     public Progress getProgress() {
         return progress;
     }
@@ -79,6 +97,10 @@ public class GenerationState {
         return injector;
     }
 
+    public Project getProject() {
+        return project;
+    }
+
     public BindingContext getBindingContext() {
         return analyzeExhaust.getBindingContext();
     }
@@ -105,25 +127,122 @@ public class GenerationState {
     }
 
     public void compileCorrectFiles(@NotNull CompilationErrorHandler errorHandler) {
+        if (threadCount > 1 && files.size() > 1) {
+            compileCorrectFilesInParallel(errorHandler);
+            return;
+        }
         for (JetFile file : this.files) {
+            Throwable error = generateFile(file);
+            if (error != null) {
+                reportException(errorHandler, file, error);
+            }
+        }
+    }
+
+    private void compileCorrectFilesInParallel(@NotNull CompilationErrorHandler errorHandler) {
+        final ClassFileFactory factory = getFactory();
+
+        // All files of a namespace are written into a single class builder, so they are never split between threads
+        Map<FqName, List<Integer>> namespaceToFiles = new LinkedHashMap<FqName, List<Integer>>();
+        for (int i = 0; i < files.size(); i++) {
+            JetFile file = files.get(i);
             if (file == null) throw new IllegalArgumentException("A null file given for compilation");
-            VirtualFile vFile = file.getVirtualFile();
-            String path = vFile != null ? vFile.getPath() : "no_virtual_file/" + file.getName();
-            progress.log("For source: " + path);
-            try {
-                generateNamespace(file);
+            FqName fqName = JetPsiUtil.getFQName(file);
+            List<Integer> namespaceFiles = namespaceToFiles.get(fqName);
+            if (namespaceFiles == null) {
+                namespaceFiles = new ArrayList<Integer>();
+                namespaceToFiles.put(fqName, namespaceFiles);
             }
-            catch (ProcessCanceledException e) {
-                throw e;
+            namespaceFiles.add(i);
+        }
+
+        final Throwable[] errors = new Throwable[files.size()];
+        final List<Map<String, ClassBuilder>> outputs = new ArrayList<Map<String, ClassBuilder>>(Collections.<Map<String, ClassBuilder>>nCopies(files.size(), null));
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, namespaceToFiles.size()));
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (final List<Integer> namespaceFiles : namespaceToFiles.values()) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int index : namespaceFiles) {
+                            factory.startCollecting();
+                            try {
+                                errors[index] = generateFile(files.get(index));
+                            }
+                            finally {
+                                outputs.set(index, factory.stopCollecting());
+                            }
+                        }
+                    }
+                }));
             }
-            catch (Throwable e) {
-                errorHandler.reportException(e, vFile == null ? "no file" : vFile.getUrl());
-                DiagnosticUtils.throwIfRunningOnServer(e);
-                if (ApplicationManager.getApplication().isInternal()) {
-                    e.printStackTrace();
-                }
+            for (Future<?> future : futures) {
+                waitFor(future);
             }
         }
+        finally {
+            executor.shutdownNow();
+        }
+
+        // Merge in the original file order, so that the output does not depend on scheduling
+        for (int i = 0; i < files.size(); i++) {
+            factory.commitCollected(outputs.get(i));
+            if (errors[i] != null) {
+                reportException(errorHandler, files.get(i), errors[i]);
+            }
+        }
+    }
+
+    private static void waitFor(@NotNull Future<?> future) {
+        try {
+            future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessCanceledException();
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * @return the exception thrown while generating the file, or null if it was generated successfully
+     */
+    @Nullable
+    private Throwable generateFile(JetFile file) {
+        if (file == null) throw new IllegalArgumentException("A null file given for compilation");
+        VirtualFile vFile = file.getVirtualFile();
+        String path = vFile != null ? vFile.getPath() : "no_virtual_file/" + file.getName();
+        progress.log("For source: " + path);
+        Profiler.Section section = Profiler.start(Profiler.CODEGEN, "file", path);
+        try {
+            generateNamespace(file);
+            return null;
+        }
+        catch (ProcessCanceledException e) {
+            throw e;
+        }
+        catch (Throwable e) {
+            return e;
+        }
+        finally {
+            section.end();
+        }
+    }
+
+    private static void reportException(@NotNull CompilationErrorHandler errorHandler, @NotNull JetFile file, @NotNull Throwable e) {
+        VirtualFile vFile = file.getVirtualFile();
+        errorHandler.reportException(e, vFile == null ? "no file" : vFile.getUrl());
+        DiagnosticUtils.throwIfRunningOnServer(e);
+        if (ApplicationManager.getApplication().isInternal()) {
+            e.printStackTrace();
+        }
     }
 
     protected void generateNamespace(JetFile namespace) {
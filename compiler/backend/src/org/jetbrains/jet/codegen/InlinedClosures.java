@@ -0,0 +1,214 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.codegen;
+
+import com.intellij.psi.PsiElement;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.lang.descriptors.*;
+import org.jetbrains.jet.lang.psi.*;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.DescriptorUtils;
+import org.jetbrains.jet.lang.resolve.calls.ResolvedCall;
+import org.jetbrains.jet.lang.types.JetType;
+import org.jetbrains.jet.lang.types.lang.PrimitiveType;
+
+import java.util.List;
+
+/**
+ * Finds calls whose function literal argument doesn't escape the call and is generated in place instead of as a closure object:
+ * {@code synchronized()} and the {@code forEach()}, {@code map()} and {@code filter()} functions of the standard library.
+ *
+ * Such a literal allocates nothing, and the local variables it uses don't need to be wrapped in shared references.
+ * Literals containing returns or declarations, except for other inlined literals, are always generated as closures.
+ *
+ * @see ExpressionCodegen#generateInlinedCall
+ */
+public class InlinedClosures {
+    public enum Kind {
+        SYNCHRONIZED,
+        FOR_EACH,
+        MAP,
+        FILTER
+    }
+
+    public enum ReceiverKind {
+        ARRAY,
+        JET_ITERABLE,
+        JAVA_ITERABLE,
+        JAVA_COLLECTION,
+        JAVA_ITERATOR
+    }
+
+    private InlinedClosures() {
+    }
+
+    /**
+     * @return the kind of the call if its function literal argument is generated in place
+     */
+    @Nullable
+    public static Kind getInlinedCallKind(@NotNull BindingContext bindingContext, @NotNull JetCallExpression call) {
+        JetExpression callee = call.getCalleeExpression();
+        if (callee == null) return null;
+        ResolvedCall<? extends CallableDescriptor> resolvedCall = bindingContext.get(BindingContext.RESOLVED_CALL, callee);
+        if (resolvedCall == null || !(resolvedCall.getResultingDescriptor() instanceof SimpleFunctionDescriptor)) return null;
+
+        FunctionDescriptor descriptor = (FunctionDescriptor) resolvedCall.getResultingDescriptor();
+        Kind kind = getKind(descriptor);
+        if (kind == null) return null;
+
+        JetFunctionLiteralExpression literal = getFunctionLiteralArgument(call, descriptor.getValueParameters().size());
+        if (literal == null) return null;
+
+        FunctionDescriptor literalDescriptor = (FunctionDescriptor) bindingContext.get(BindingContext.DECLARATION_TO_DESCRIPTOR, literal);
+        if (literalDescriptor == null || literalDescriptor.getReceiverParameter().exists()) return null;
+        if (literalDescriptor.getValueParameters().size() != (kind == Kind.SYNCHRONIZED ? 0 : 1)) return null;
+
+        return canBeInlined(bindingContext, literal.getFunctionLiteral()) ? kind : null;
+    }
+
+    public static boolean isInlined(@NotNull BindingContext bindingContext, @NotNull JetFunctionLiteralExpression literal) {
+        PsiElement parent = literal.getParent();
+        if (parent instanceof JetValueArgument) {
+            parent = parent.getParent() != null ? parent.getParent().getParent() : null;
+        }
+        if (!(parent instanceof JetCallExpression)) return false;
+
+        JetCallExpression call = (JetCallExpression) parent;
+        return getInlinedCallKind(bindingContext, call) != null &&
+               getFunctionLiteralArgument(call, getArgumentCount(call)) == literal;
+    }
+
+    /**
+     * @return the function literal passed as the last of the given number of arguments
+     */
+    @Nullable
+    public static JetFunctionLiteralExpression getFunctionLiteralArgument(@NotNull JetCallExpression call, int argumentCount) {
+        List<? extends ValueArgument> valueArguments = call.getValueArguments();
+        List<JetExpression> literalArguments = call.getFunctionLiteralArguments();
+        if (getArgumentCount(call) != argumentCount) return null;
+        for (ValueArgument argument : valueArguments) {
+            if (argument.isNamed() || argument.getSpreadElement() != null) return null;
+        }
+
+        JetExpression last = !literalArguments.isEmpty()
+                             ? literalArguments.get(literalArguments.size() - 1)
+                             : valueArguments.get(valueArguments.size() - 1).getArgumentExpression();
+        return last instanceof JetFunctionLiteralExpression ? (JetFunctionLiteralExpression) last : null;
+    }
+
+    private static int getArgumentCount(@NotNull JetCallExpression call) {
+        return call.getValueArguments().size() + call.getFunctionLiteralArguments().size();
+    }
+
+    @Nullable
+    public static ReceiverKind getReceiverKind(@NotNull FunctionDescriptor descriptor) {
+        if (!descriptor.getReceiverParameter().exists()) return null;
+        JetType type = descriptor.getReceiverParameter().getType();
+        if (type.isNullable()) return null;
+
+        ClassifierDescriptor classifier = type.getConstructor().getDeclarationDescriptor();
+        if (!(classifier instanceof ClassDescriptor)) return null;
+        String fqName = DescriptorUtils.getFQName(classifier).getFqName();
+
+        if (fqName.equals("jet.Array")) return ReceiverKind.ARRAY;
+        for (PrimitiveType primitiveType : PrimitiveType.values()) {
+            if (fqName.equals("jet." + primitiveType.getArrayTypeName())) return ReceiverKind.ARRAY;
+        }
+        if (fqName.equals("jet.Iterable")) return ReceiverKind.JET_ITERABLE;
+        if (fqName.equals("java.lang.Iterable")) return ReceiverKind.JAVA_ITERABLE;
+        if (fqName.equals("java.util.Collection") || fqName.equals("java.util.List") || fqName.equals("java.util.Set")) {
+            return ReceiverKind.JAVA_COLLECTION;
+        }
+        if (fqName.equals("java.util.Iterator")) return ReceiverKind.JAVA_ITERATOR;
+        return null;
+    }
+
+    @Nullable
+    private static Kind getKind(@NotNull FunctionDescriptor descriptor) {
+        DeclarationDescriptor container = descriptor.getContainingDeclaration();
+        if (!(container instanceof NamespaceDescriptor)) return null;
+        String namespace = DescriptorUtils.getFQName(container).getFqName();
+        String name = descriptor.getName();
+
+        if (namespace.equals("jet")) {
+            if (name.equals("synchronized") && !descriptor.getReceiverParameter().exists() && descriptor.getValueParameters().size() == 2) {
+                return Kind.SYNCHRONIZED;
+            }
+            return null;
+        }
+
+        if (!namespace.equals("kotlin") || descriptor.getValueParameters().size() != 1) return null;
+        ReceiverKind receiverKind = getReceiverKind(descriptor);
+        if (receiverKind == null) return null;
+
+        if (name.equals("forEach")) return Kind.FOR_EACH;
+        // map() and filter() of iterators are lazy
+        if (receiverKind == ReceiverKind.JAVA_ITERATOR) return null;
+        if (name.equals("map")) return Kind.MAP;
+        if (name.equals("filter")) return Kind.FILTER;
+        return null;
+    }
+
+    private static boolean canBeInlined(@NotNull final BindingContext bindingContext, @NotNull JetFunctionLiteral literal) {
+        JetBlockExpression body = literal.getBodyExpression();
+        if (body == null) return false;
+
+        final boolean[] result = new boolean[] { true };
+        body.accept(new JetVisitorVoid() {
+            @Override
+            public void visitJetElement(JetElement element) {
+                if (result[0]) {
+                    element.acceptChildren(this);
+                }
+            }
+
+            @Override
+            public void visitFunctionLiteralExpression(JetFunctionLiteralExpression expression) {
+                if (!isInlined(bindingContext, expression)) {
+                    result[0] = false;
+                }
+            }
+
+            @Override
+            public void visitReturnExpression(JetReturnExpression expression) {
+                result[0] = false;
+            }
+
+            @Override
+            public void visitObjectLiteralExpression(JetObjectLiteralExpression expression) {
+                result[0] = false;
+            }
+
+            @Override
+            public void visitNamedFunction(JetNamedFunction function) {
+                result[0] = false;
+            }
+
+            @Override
+            public void visitClass(JetClass klass) {
+                result[0] = false;
+            }
+
+            @Override
+            public void visitObjectDeclaration(JetObjectDeclaration declaration) {
+                result[0] = false;
+            }
+        });
+        return result[0];
+    }
+}
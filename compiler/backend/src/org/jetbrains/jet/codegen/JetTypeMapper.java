@@ -55,6 +55,7 @@ public class JetTypeMapper {
     public static final Type JL_STRING_BUILDER = Type.getObjectType("java/lang/StringBuilder");
     public static final Type JL_STRING_TYPE = Type.getObjectType("java/lang/String");
     public static final Type JL_CHAR_SEQUENCE_TYPE = Type.getObjectType("java/lang/CharSequence");
+    public static final Type JU_ARRAY_LIST_TYPE = Type.getObjectType("java/util/ArrayList");
     private static final Type JL_COMPARABLE_TYPE = Type.getObjectType("java/lang/Comparable");
     public static final Type JL_CLASS_TYPE = Type.getObjectType("java/lang/Class");
 
@@ -899,7 +900,7 @@ public class JetTypeMapper {
         }
         else if (descriptor instanceof VariableDescriptor) {
             Boolean aBoolean = bindingContext.get(BindingContext.MUST_BE_WRAPPED_IN_A_REF, (VariableDescriptor) descriptor);
-            if (aBoolean != null && aBoolean) {
+            if (aBoolean != null && aBoolean && !closureAnnotator.isUsedOnlyInInlinedClosures((VariableDescriptor) descriptor)) {
                 JetType outType = ((VariableDescriptor) descriptor).getType();
                 return StackValue.sharedTypeForType(mapType(outType, MapTypeMode.VALUE));
             }
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.jet.codegen;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.lang.psi.*;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.constants.CompileTimeConstant;
+import org.objectweb.asm.Type;
+
+import java.util.*;
+
+/**
+ * Finds {@code when} expressions that can be generated as a TABLESWITCH or LOOKUPSWITCH instead of a chain of comparisons:
+ * the subject is an int-like primitive or a String, and every condition is a distinct constant of the subject's type.
+ *
+ * String subjects are switched on hash codes, and the strings with the same hash code are then compared with equals().
+ *
+ * @see ExpressionCodegen#generateSwitch
+ */
+public class WhenSwitch {
+    /**
+     * A chain of comparisons is as fast for a couple of constants
+     */
+    private static final int MIN_CONSTANT_COUNT = 3;
+
+    private final boolean stringSwitch;
+    private final Map<Object, JetWhenEntry> entriesByConstant;
+    @Nullable
+    private final JetWhenEntry elseEntry;
+
+    private WhenSwitch(boolean stringSwitch, @NotNull Map<Object, JetWhenEntry> entriesByConstant, @Nullable JetWhenEntry elseEntry) {
+        this.stringSwitch = stringSwitch;
+        this.entriesByConstant = entriesByConstant;
+        this.elseEntry = elseEntry;
+    }
+
+    @Nullable
+    public static WhenSwitch create(@NotNull BindingContext bindingContext, @NotNull JetWhenExpression expression, @NotNull Type subjectType) {
+        if (expression.getSubjectExpression() == null) return null;
+        boolean stringSwitch = subjectType.equals(JetTypeMapper.JL_STRING_TYPE);
+        if (!stringSwitch && !isIntLike(subjectType)) return null;
+
+        Map<Object, JetWhenEntry> entriesByConstant = new LinkedHashMap<Object, JetWhenEntry>();
+        JetWhenEntry elseEntry = null;
+        for (JetWhenEntry entry : expression.getEntries()) {
+            if (elseEntry != null) return null;
+            if (entry.isElse()) {
+                elseEntry = entry;
+                continue;
+            }
+            for (JetWhenCondition condition : entry.getConditions()) {
+                Object constant = getConstant(bindingContext, condition, subjectType);
+                // the first of equal conditions wins, so the entries that follow may be unreachable in part
+                if (constant == null || entriesByConstant.put(constant, entry) != null) return null;
+            }
+        }
+        if (entriesByConstant.size() < MIN_CONSTANT_COUNT) return null;
+
+        return new WhenSwitch(stringSwitch, entriesByConstant, elseEntry);
+    }
+
+    public boolean isStringSwitch() {
+        return stringSwitch;
+    }
+
+    /**
+     * @return the constants in the order of the conditions, Integers for an int-like subject and Strings for a String subject
+     */
+    @NotNull
+    public Map<Object, JetWhenEntry> getEntriesByConstant() {
+        return entriesByConstant;
+    }
+
+    @Nullable
+    public JetWhenEntry getElseEntry() {
+        return elseEntry;
+    }
+
+    /**
+     * Chooses between TABLESWITCH and LOOKUPSWITCH the way javac does, comparing code size plus three times the number
+     * of instructions executed.
+     *
+     * @param keys sorted distinct keys
+     */
+    public static boolean useTableSwitch(@NotNull int[] keys) {
+        if (keys.length == 0) return false;
+        long tableSpaceCost = 4 + ((long) keys[keys.length - 1] - keys[0] + 1);
+        long tableTimeCost = 3;
+        long lookupSpaceCost = 3 + 2 * (long) keys.length;
+        long lookupTimeCost = keys.length;
+        return tableSpaceCost + 3 * tableTimeCost <= lookupSpaceCost + 3 * lookupTimeCost;
+    }
+
+    private static boolean isIntLike(@NotNull Type type) {
+        int sort = type.getSort();
+        return sort == Type.INT || sort == Type.CHAR || sort == Type.SHORT || sort == Type.BYTE;
+    }
+
+    @Nullable
+    private static Object getConstant(@NotNull BindingContext bindingContext, @NotNull JetWhenCondition condition, @NotNull Type subjectType) {
+        if (!(condition instanceof JetWhenConditionWithExpression)) return null;
+        JetPattern pattern = ((JetWhenConditionWithExpression) condition).getPattern();
+        if (!(pattern instanceof JetExpressionPattern)) return null;
+        JetExpression expression = ((JetExpressionPattern) pattern).getExpression();
+        if (expression == null) return null;
+        expression = JetPsiUtil.deparenthesize(expression);
+        if (expression == null) return null;
+
+        if (subjectType.equals(JetTypeMapper.JL_STRING_TYPE)) {
+            return expression instanceof JetStringTemplateExpression
+                   ? CodegenUtil.getConstantString((JetStringTemplateExpression) expression)
+                   : null;
+        }
+
+        CompileTimeConstant<?> compileTimeValue = bindingContext.get(BindingContext.COMPILE_TIME_VALUE, expression);
+        if (compileTimeValue == null) return null;
+        Object value = compileTimeValue.getValue();
+        if (subjectType.getSort() == Type.CHAR) {
+            return value instanceof Character ? Integer.valueOf((Character) value) : null;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).intValue();
+        }
+        return null;
+    }
+}
@@ -39,6 +39,10 @@ public class UpTo implements IntrinsicMethod {
         this.forward = forward;
     }
 
+    public boolean isForward() {
+        return forward;
+    }
+
     @Override
     public StackValue generate(ExpressionCodegen codegen, InstructionAdapter v, Type expectedType, PsiElement element, List<JetExpression> arguments, StackValue receiver, @NotNull GenerationState state) {
         if(arguments.size()==1) {
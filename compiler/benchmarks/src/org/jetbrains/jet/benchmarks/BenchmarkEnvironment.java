@@ -0,0 +1,60 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.benchmarks;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.compiler.CompileEnvironment;
+import org.jetbrains.jet.compiler.JetCoreEnvironment;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.psi.JetPsiFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BenchmarkEnvironment {
+    private final JetCoreEnvironment environment;
+    private final int size;
+
+    public BenchmarkEnvironment(@NotNull Disposable disposable, int size) {
+        this.size = size;
+        environment = new JetCoreEnvironment(disposable, true);
+        environment.addToClasspath(CompileEnvironment.findRtJar());
+    }
+
+    @NotNull
+    public Project getProject() {
+        return environment.getProject();
+    }
+
+    /**
+     * @return the number of files in each generated workload
+     */
+    public int getSize() {
+        return size;
+    }
+
+    @NotNull
+    public List<JetFile> createFiles(@NotNull String prefix, @NotNull List<String> texts) {
+        List<JetFile> files = new ArrayList<JetFile>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            files.add(JetPsiFactory.createFile(getProject(), prefix + i + ".kt", texts.get(i)));
+        }
+        return files;
+    }
+}
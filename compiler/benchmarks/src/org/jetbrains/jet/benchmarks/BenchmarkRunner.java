@@ -0,0 +1,226 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.benchmarks;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.util.Disposer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.util.Profiler;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs the compiler benchmarks and prints time and allocations per operation for each of them.
+ *
+ * Usage: BenchmarkRunner [-warmup N] [-iterations N] [-size FILES] [-filter SUBSTRING] [-phases]
+ *
+ * With -phases every benchmark is run once more with a {@link Profiler} installed, and the time and allocations
+ * of the compiler phases it went through are printed below it. These runs are excluded from the main numbers,
+ * because profiling has its own overhead.
+ */
+public class BenchmarkRunner {
+    private static volatile Object sink;
+
+    private final int warmupIterations;
+    private final int iterations;
+    private final boolean reportPhases;
+    private final PrintStream out;
+
+    public BenchmarkRunner(int warmupIterations, int iterations, boolean reportPhases, @NotNull PrintStream out) {
+        this.warmupIterations = warmupIterations;
+        this.iterations = iterations;
+        this.reportPhases = reportPhases;
+        this.out = out;
+    }
+
+    public static void main(String[] args) {
+        int warmup = 10;
+        int iterations = 20;
+        int size = 20;
+        String filter = null;
+        boolean phases = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-phases")) {
+                phases = true;
+                continue;
+            }
+            if (i + 1 == args.length) {
+                usage("Value expected after " + arg);
+            }
+            String value = args[++i];
+            if (arg.equals("-warmup")) {
+                warmup = parseInt(arg, value);
+            }
+            else if (arg.equals("-iterations")) {
+                iterations = parseInt(arg, value);
+            }
+            else if (arg.equals("-size")) {
+                size = parseInt(arg, value);
+            }
+            else if (arg.equals("-filter")) {
+                filter = value;
+            }
+            else {
+                usage("Unknown option: " + arg);
+            }
+        }
+
+        Disposable disposable = new Disposable() {
+            @Override
+            public void dispose() {
+            }
+        };
+        try {
+            BenchmarkEnvironment environment = new BenchmarkEnvironment(disposable, size);
+            new BenchmarkRunner(warmup, iterations, phases, System.out).run(environment, CompilerBenchmarks.all(), filter);
+        }
+        finally {
+            Disposer.dispose(disposable);
+        }
+    }
+
+    public void run(@NotNull BenchmarkEnvironment environment, @NotNull List<CompilerBenchmark> benchmarks, @Nullable String filter) {
+        out.println(String.format("%-24s %12s %10s %12s %12s %6s", "benchmark", "ms/op", "error", "min ms/op", "alloc MB/op", "gc"));
+        for (CompilerBenchmark benchmark : benchmarks) {
+            if (filter != null && !benchmark.getName().contains(filter)) continue;
+            out.println(measure(environment, benchmark));
+            if (reportPhases) {
+                printPhases(benchmark);
+            }
+        }
+    }
+
+    private void printPhases(@NotNull CompilerBenchmark benchmark) {
+        Profiler profiler = new Profiler();
+        Profiler.setInstance(profiler);
+        try {
+            for (int i = 0; i < iterations; i++) {
+                sink = benchmark.run();
+            }
+        }
+        finally {
+            Profiler.setInstance(null);
+        }
+
+        Map<String, long[]> totals = new TreeMap<String, long[]>();
+        for (Profiler.Event event : profiler.getEvents()) {
+            if (event.isNested()) continue;
+            String phase = event.getCategory() + "/" + event.getName();
+            long[] total = totals.get(phase);
+            if (total == null) {
+                total = new long[2];
+                totals.put(phase, total);
+            }
+            total[0] += event.getWallTime();
+            total[1] += event.getAllocatedBytes();
+        }
+        for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+            long[] total = entry.getValue();
+            out.println(String.format("  %-22s %12.3f %10s %12s %12.2f", entry.getKey(), total[0] / 1e6 / iterations, "", "",
+                                      total[1] / 1024.0 / 1024.0 / iterations));
+        }
+    }
+
+    @NotNull
+    private String measure(@NotNull BenchmarkEnvironment environment, @NotNull CompilerBenchmark benchmark) {
+        benchmark.setUp(environment);
+        for (int i = 0; i < warmupIterations; i++) {
+            sink = benchmark.run();
+        }
+
+        List<Long> times = new ArrayList<Long>(iterations);
+        long allocated = 0;
+        long collections = 0;
+        for (int i = 0; i < iterations; i++) {
+            long allocatedBefore = getAllocatedBytes();
+            long collectionsBefore = getCollectionCount();
+            long start = System.nanoTime();
+
+            sink = benchmark.run();
+
+            times.add(System.nanoTime() - start);
+            allocated += getAllocatedBytes() - allocatedBefore;
+            collections += getCollectionCount() - collectionsBefore;
+        }
+
+        double mean = 0;
+        long min = Long.MAX_VALUE;
+        for (long time : times) {
+            mean += time;
+            min = Math.min(min, time);
+        }
+        mean /= times.size();
+        double variance = 0;
+        for (long time : times) {
+            variance += (time - mean) * (time - mean);
+        }
+        double deviation = times.size() > 1 ? Math.sqrt(variance / (times.size() - 1)) : 0;
+
+        String allocatedPerOperation = getAllocatedBytes() >= 0
+                                       ? String.format("%.2f", allocated / 1024.0 / 1024.0 / iterations)
+                                       : "n/a";
+        return String.format("%-24s %12.3f %10.3f %12.3f %12s %6d", benchmark.getName(), mean / 1e6, deviation / 1e6, min / 1e6,
+                             allocatedPerOperation, collections);
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far, or a negative value if the JVM can't tell
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    private static long getCollectionCount() {
+        long result = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result += Math.max(0, bean.getCollectionCount());
+        }
+        return result;
+    }
+
+    private static int parseInt(String option, String value) {
+        try {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e) {
+            usage("Number expected after " + option + ": " + value);
+            return 0;
+        }
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Usage: BenchmarkRunner [-warmup N] [-iterations N] [-size FILES] [-filter SUBSTRING] [-phases]");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.benchmarks;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A single measured operation, run repeatedly by {@link BenchmarkRunner}. Everything that shouldn't be measured
+ * (creating the workload, analyzing it for codegen etc.) belongs to {@link #setUp(BenchmarkEnvironment)}.
+ */
+public abstract class CompilerBenchmark {
+    private final String name;
+
+    protected CompilerBenchmark(@NotNull String name) {
+        this.name = name;
+    }
+
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    public void setUp(@NotNull BenchmarkEnvironment environment) {
+    }
+
+    /**
+     * @return anything computed by the operation, so that it can't be optimized away
+     */
+    public abstract Object run();
+}
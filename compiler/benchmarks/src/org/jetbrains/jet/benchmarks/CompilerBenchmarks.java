@@ -0,0 +1,246 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.benchmarks;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiElementVisitor;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.codegen.ClassBuilderFactories;
+import org.jetbrains.jet.codegen.CompilationErrorHandler;
+import org.jetbrains.jet.codegen.GenerationState;
+import org.jetbrains.jet.di.InjectorForJavaSemanticServices;
+import org.jetbrains.jet.lang.cfg.pseudocode.JetControlFlowDataTraceFactory;
+import org.jetbrains.jet.lang.descriptors.ClassDescriptor;
+import org.jetbrains.jet.lang.diagnostics.Diagnostic;
+import org.jetbrains.jet.lang.diagnostics.Severity;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.resolve.FqName;
+import org.jetbrains.jet.lang.resolve.java.AnalyzeExhaust;
+import org.jetbrains.jet.lang.resolve.java.AnalyzerFacadeForJVM;
+import org.jetbrains.jet.lang.resolve.java.CompilerSpecialMode;
+import org.jetbrains.jet.lang.resolve.java.DescriptorSearchRule;
+import org.jetbrains.jet.lang.resolve.java.JavaDescriptorResolver;
+import org.jetbrains.jet.lexer.JetLexer;
+import org.jetbrains.jet.utils.Progress;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The benchmarks of the compiler pipeline, one per phase.
+ */
+public class CompilerBenchmarks {
+    private static final List<String> JAVA_CLASSES = Arrays.asList(
+            "java.lang.String", "java.lang.StringBuilder", "java.lang.Thread", "java.lang.Class", "java.lang.Math",
+            "java.util.ArrayList", "java.util.HashMap", "java.util.TreeMap", "java.util.LinkedList", "java.util.Collections",
+            "java.util.concurrent.ConcurrentHashMap", "java.util.concurrent.ThreadPoolExecutor",
+            "java.io.File", "java.io.BufferedReader", "java.io.PrintStream", "java.net.URL");
+
+    private CompilerBenchmarks() {
+    }
+
+    @NotNull
+    public static List<CompilerBenchmark> all() {
+        return Arrays.asList(
+                new Lexing(),
+                new Parsing(),
+                new Analysis("analyze.declarations", false),
+                new Analysis("analyze.full", true),
+                new OverloadResolution(),
+                new JavaClassResolution(),
+                new Codegen());
+    }
+
+    private static class Lexing extends CompilerBenchmark {
+        private List<String> texts;
+
+        public Lexing() {
+            super("lexer");
+        }
+
+        @Override
+        public void setUp(@NotNull BenchmarkEnvironment environment) {
+            texts = Workloads.declarations(environment.getSize());
+        }
+
+        @Override
+        public Object run() {
+            int tokens = 0;
+            JetLexer lexer = new JetLexer();
+            for (String text : texts) {
+                lexer.start(text);
+                while (lexer.getTokenType() != null) {
+                    tokens++;
+                    lexer.advance();
+                }
+            }
+            return tokens;
+        }
+    }
+
+    private static class Parsing extends CompilerBenchmark {
+        private BenchmarkEnvironment environment;
+        private List<String> texts;
+
+        public Parsing() {
+            super("parser");
+        }
+
+        @Override
+        public void setUp(@NotNull BenchmarkEnvironment environment) {
+            this.environment = environment;
+            texts = Workloads.declarations(environment.getSize());
+        }
+
+        @Override
+        public Object run() {
+            final int[] elements = new int[1];
+            PsiElementVisitor visitor = new PsiElementVisitor() {
+                @Override
+                public void visitElement(PsiElement element) {
+                    elements[0]++;
+                    element.acceptChildren(this);
+                }
+            };
+            // PSI is built lazily, so the whole tree is visited to parse everything
+            for (JetFile file : environment.createFiles("parse", texts)) {
+                file.accept(visitor);
+            }
+            return elements[0];
+        }
+    }
+
+    private static class Analysis extends CompilerBenchmark {
+        private final boolean analyzeBodies;
+        private Project project;
+        private List<JetFile> files;
+
+        public Analysis(@NotNull String name, boolean analyzeBodies) {
+            super(name);
+            this.analyzeBodies = analyzeBodies;
+        }
+
+        @Override
+        public void setUp(@NotNull BenchmarkEnvironment environment) {
+            project = environment.getProject();
+            files = environment.createFiles("analyze", Workloads.declarations(environment.getSize()));
+            checkNoErrors(analyze(project, files, Predicates.<PsiFile>alwaysTrue()));
+        }
+
+        @Override
+        public Object run() {
+            // Without complete analysis control flow analysis and declaration checks are skipped
+            return analyze(project, files, analyzeBodies ? Predicates.<PsiFile>alwaysTrue() : Predicates.<PsiFile>alwaysFalse());
+        }
+    }
+
+    private static class OverloadResolution extends CompilerBenchmark {
+        private Project project;
+        private List<JetFile> files;
+
+        public OverloadResolution() {
+            super("resolve.overloads");
+        }
+
+        @Override
+        public void setUp(@NotNull BenchmarkEnvironment environment) {
+            project = environment.getProject();
+            files = environment.createFiles("calls", Workloads.overloadedCalls(environment.getSize()));
+            checkNoErrors(analyze(project, files, Predicates.<PsiFile>alwaysTrue()));
+        }
+
+        @Override
+        public Object run() {
+            return analyze(project, files, Predicates.<PsiFile>alwaysTrue());
+        }
+    }
+
+    private static class JavaClassResolution extends CompilerBenchmark {
+        private Project project;
+
+        public JavaClassResolution() {
+            super("resolve.javaClasses");
+        }
+
+        @Override
+        public void setUp(@NotNull BenchmarkEnvironment environment) {
+            project = environment.getProject();
+        }
+
+        @Override
+        public Object run() {
+            // A new resolver has empty caches, so each run loads the classes and their members from scratch
+            JavaDescriptorResolver resolver = new InjectorForJavaSemanticServices(project).getJavaDescriptorResolver();
+            int members = 0;
+            for (String name : JAVA_CLASSES) {
+                ClassDescriptor descriptor = resolver.resolveClass(new FqName(name), DescriptorSearchRule.INCLUDE_KOTLIN);
+                if (descriptor == null) {
+                    throw new IllegalStateException("Class not found: " + name);
+                }
+                members += descriptor.getDefaultType().getMemberScope().getAllDescriptors().size();
+            }
+            return members;
+        }
+    }
+
+    private static class Codegen extends CompilerBenchmark {
+        private Project project;
+        private List<JetFile> files;
+        private AnalyzeExhaust analyzeExhaust;
+
+        public Codegen() {
+            super("codegen");
+        }
+
+        @Override
+        public void setUp(@NotNull BenchmarkEnvironment environment) {
+            project = environment.getProject();
+            files = environment.createFiles("codegen", Workloads.declarations(environment.getSize()));
+            analyzeExhaust = analyze(project, files, Predicates.<PsiFile>alwaysTrue());
+            checkNoErrors(analyzeExhaust);
+        }
+
+        @Override
+        public Object run() {
+            GenerationState state = new GenerationState(project, ClassBuilderFactories.binaries(false), Progress.DEAF, analyzeExhaust,
+                                                        files, CompilerSpecialMode.REGULAR);
+            // Allocations are measured on the current thread only
+            state.setThreadCount(1);
+            state.compileCorrectFiles(CompilationErrorHandler.THROW_EXCEPTION);
+            return state.getFactory().files().size();
+        }
+    }
+
+    @NotNull
+    private static AnalyzeExhaust analyze(@NotNull Project project, @NotNull List<JetFile> files, @NotNull Predicate<PsiFile> analyzeCompletely) {
+        return AnalyzerFacadeForJVM.analyzeFilesWithJavaIntegration(
+                project, files, analyzeCompletely, JetControlFlowDataTraceFactory.EMPTY, CompilerSpecialMode.REGULAR);
+    }
+
+    private static void checkNoErrors(@NotNull AnalyzeExhaust analyzeExhaust) {
+        for (Diagnostic diagnostic : analyzeExhaust.getBindingContext().getDiagnostics()) {
+            if (diagnostic.getSeverity() == Severity.ERROR) {
+                throw new IllegalStateException("Workload doesn't compile: " + diagnostic.getFactory().getName() + " in " +
+                                                diagnostic.getPsiFile().getName());
+            }
+        }
+    }
+}
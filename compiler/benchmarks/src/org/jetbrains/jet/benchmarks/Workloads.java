@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates the sources the benchmarks are run on. The same size always produces the same text.
+ */
+public class Workloads {
+    private Workloads() {
+    }
+
+    /**
+     * Class hierarchies with overrides, properties and statement-heavy bodies
+     */
+    public static List<String> declarations(int fileCount) {
+        List<String> result = new ArrayList<String>(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("namespace bench.declarations").append(i).append("\n\n");
+            sb.append("trait Shape {\n");
+            sb.append("    fun area() : Double\n");
+            sb.append("}\n\n");
+            sb.append("open class Base(val id : Int) {\n");
+            sb.append("    open fun describe() : String = \"base $id\"\n");
+            sb.append("}\n\n");
+            for (int j = 0; j < 10; j++) {
+                sb.append("class Impl").append(j).append("(id : Int, val name : String) : Base(id), Shape {\n");
+                sb.append("    var counter : Int = 0\n");
+                sb.append("    override fun area() : Double = id * ").append(j).append(".5\n");
+                sb.append("    override fun describe() : String = \"impl $name ${area()}\"\n");
+                sb.append("    fun compute(x : Int) : Int {\n");
+                sb.append("        var sum = 0\n");
+                sb.append("        for (k in 0..x) {\n");
+                sb.append("            if (k % 3 == ").append(j % 3).append(") sum += k else sum -= 1\n");
+                sb.append("        }\n");
+                sb.append("        counter++\n");
+                sb.append("        return when (sum) {\n");
+                sb.append("            0 -> 1\n");
+                sb.append("            1 -> ").append(j).append("\n");
+                sb.append("            else -> sum * id\n");
+                sb.append("        }\n");
+                sb.append("    }\n");
+                sb.append("}\n\n");
+                sb.append("fun use").append(j).append("(list : java.util.ArrayList<Base>) : Int {\n");
+                sb.append("    var total = 0\n");
+                sb.append("    for (b in list) {\n");
+                sb.append("        total += b.id\n");
+                sb.append("        if (b is Impl").append(j).append(") total += b.compute(total % 10)\n");
+                sb.append("    }\n");
+                sb.append("    return total\n");
+                sb.append("}\n\n");
+            }
+            result.add(sb.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Calls of heavily overloaded functions, including extensions and generic ones
+     */
+    public static List<String> overloadedCalls(int fileCount) {
+        List<String> result = new ArrayList<String>(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("namespace bench.calls").append(i).append("\n\n");
+            sb.append("fun f(x : Int) : Int = x\n");
+            sb.append("fun f(x : Long) : Long = x\n");
+            sb.append("fun f(x : Double) : Double = x\n");
+            sb.append("fun f(x : String) : String = x\n");
+            sb.append("fun f(x : Any?) : Any? = x\n");
+            sb.append("fun f(x : Int, y : Int) : Int = x + y\n");
+            sb.append("fun <T> f(x : T, y : String) : T = x\n");
+            sb.append("fun Int.g(y : Int) : Int = this + y\n");
+            sb.append("fun String.g(y : Int) : String = this + y\n\n");
+            for (int j = 0; j < 10; j++) {
+                sb.append("fun calls").append(j).append("(a : Int, s : String) : Int {\n");
+                sb.append("    f(a)\n");
+                sb.append("    f(a.toLong())\n");
+                sb.append("    f(a * 1.0)\n");
+                sb.append("    f(s)\n");
+                sb.append("    f(null)\n");
+                sb.append("    f(a, ").append(j).append(")\n");
+                sb.append("    f(s, \"").append(j).append("\")\n");
+                sb.append("    s.g(a)\n");
+                sb.append("    f(f(f(a), f(a)), a.g(f(a + ").append(j).append(")))\n");
+                sb.append("    return a.g(").append(j).append(").g(f(a)).g(s.length)\n");
+                sb.append("}\n\n");
+            }
+            result.add(sb.toString());
+        }
+        return result;
+    }
+}
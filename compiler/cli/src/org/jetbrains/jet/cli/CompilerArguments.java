@@ -58,6 +58,21 @@ public class CompilerArguments {
     @Argument(value = "includeRuntime", description = "include Kotlin runtime in to resulting jar")
     public boolean includeRuntime;
 
+    @Argument(value = "threads", description = "number of threads to use for analysis and code generation")
+    public int threads = 1;
+
+    @Argument(value = "classpathIndexCache", description = "directory to keep the lists of classes in class path jars in between compiler runs; it only speeds up lookups of absent classes, descriptors of the classes used are still built from the jars on every run")
+    public String classpathIndexCache;
+
+    @Argument(value = "incremental", description = "recompile only the namespaces affected by changes since the previous build (modules compiled to an output directory only)")
+    public boolean incremental;
+
+    @Argument(value = "profile", description = "file to write the time and allocations of compiler phases to")
+    public String profile;
+
+    @Argument(value = "profileFormat", description = "format of the profile: json (default) or chrome (a trace for chrome://tracing)")
+    public String profileFormat;
+
     @Argument(value = "stdlib", description = "Path to the stdlib.jar")
     public String stdlib;
 
@@ -141,6 +156,46 @@ public class CompilerArguments {
         this.stdlib = stdlib;
     }
 
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public String getClasspathIndexCache() {
+        return classpathIndexCache;
+    }
+
+    public void setClasspathIndexCache(String classpathIndexCache) {
+        this.classpathIndexCache = classpathIndexCache;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public void setProfile(String profile) {
+        this.profile = profile;
+    }
+
+    public String getProfileFormat() {
+        return profileFormat;
+    }
+
+    public void setProfileFormat(String profileFormat) {
+        this.profileFormat = profileFormat;
+    }
+
     public boolean isTags() {
         return tags;
     }
@@ -25,9 +25,9 @@ import org.jetbrains.jet.compiler.CompilerPlugin;
 import org.jetbrains.jet.compiler.MessageRenderer;
 import org.jetbrains.jet.lang.diagnostics.Severity;
 import org.jetbrains.jet.lang.resolve.java.CompilerSpecialMode;
+import org.jetbrains.jet.util.Profiler;
 
-import java.io.File;
-import java.io.PrintStream;
+import java.io.*;
 import java.util.List;
 
 import static org.jetbrains.jet.cli.KotlinCompiler.ExitCode.*;
@@ -103,20 +103,21 @@ public class KotlinCompiler {
             errStream.println(messageRenderer.render(Severity.INFO, "Kotlin Compiler version " + CompilerVersion.VERSION, null, -1, -1));
         }
 
-        CompilerSpecialMode mode;
-        if (arguments.mode == null) {
-            mode = CompilerSpecialMode.REGULAR;
-        } else if (arguments.mode.equals("jdkHeaders")) {
-            mode = CompilerSpecialMode.JDK_HEADERS;
-        } else if (arguments.mode.equals("builtins")) {
-            mode = CompilerSpecialMode.BUILTINS;
-        } else {
-            throw new IllegalArgumentException("unknown compiler mode: " + arguments.mode);
+        CompilerSpecialMode mode = parseMode(arguments);
+
+        Profiler profiler = null;
+        if (arguments.profile != null) {
+            if (arguments.profileFormat != null && !arguments.profileFormat.equals("json") && !arguments.profileFormat.equals("chrome")) {
+                errStream.println(messageRenderer.render(Severity.ERROR, "Unknown profile format: " + arguments.profileFormat, null, -1, -1));
+                return INTERNAL_ERROR;
+            }
+            profiler = new Profiler();
+            Profiler.setInstance(profiler);
         }
 
-        CompileEnvironment environment = new CompileEnvironment(messageRenderer, arguments.verbose, mode);
+        CompileEnvironment environment = null;
         try {
-            configureEnvironment(environment, arguments, errStream);
+            environment = createEnvironment(arguments, errStream, messageRenderer, mode);
 
             boolean noErrors;
             if (arguments.module != null) {
@@ -137,8 +138,68 @@ public class KotlinCompiler {
             return INTERNAL_ERROR;
         }
         finally {
+            if (environment != null) {
+                releaseEnvironment(environment);
+            }
+            if (profiler != null) {
+                Profiler.setInstance(null);
+                writeProfile(profiler, arguments, errStream, messageRenderer);
+            }
+        }
+    }
+
+    private static void writeProfile(Profiler profiler, CompilerArguments arguments, PrintStream errStream, MessageRenderer messageRenderer) {
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(arguments.profile), "UTF-8"));
+            try {
+                if ("chrome".equals(arguments.profileFormat)) {
+                    profiler.writeChromeTrace(writer);
+                }
+                else {
+                    profiler.writeJson(writer);
+                }
+            }
+            finally {
+                writer.close();
+            }
+        }
+        catch (IOException e) {
+            errStream.println(messageRenderer.render(Severity.ERROR, "Cannot write profile to " + arguments.profile + ": " + e.getMessage(), null, -1, -1));
+        }
+    }
+
+    protected static CompilerSpecialMode parseMode(CompilerArguments arguments) {
+        if (arguments.mode == null) {
+            return CompilerSpecialMode.REGULAR;
+        } else if (arguments.mode.equals("jdkHeaders")) {
+            return CompilerSpecialMode.JDK_HEADERS;
+        } else if (arguments.mode.equals("builtins")) {
+            return CompilerSpecialMode.BUILTINS;
+        } else {
+            throw new IllegalArgumentException("unknown compiler mode: " + arguments.mode);
+        }
+    }
+
+    /**
+     * Creates and configures the environment for a single compiler run
+     */
+    protected CompileEnvironment createEnvironment(CompilerArguments arguments, PrintStream errStream, MessageRenderer messageRenderer, CompilerSpecialMode mode) {
+        CompileEnvironment environment = new CompileEnvironment(messageRenderer, arguments.verbose, mode);
+        try {
+            configureEnvironment(environment, arguments, errStream);
+        }
+        catch (RuntimeException e) {
             environment.dispose();
+            throw e;
         }
+        return environment;
+    }
+
+    /**
+     * Called when the compiler run is finished with the environment created by {@link #createEnvironment}
+     */
+    protected void releaseEnvironment(CompileEnvironment environment) {
+        environment.dispose();
     }
 
     /**
@@ -190,6 +251,11 @@ public class KotlinCompiler {
     protected void configureEnvironment(CompileEnvironment environment, CompilerArguments arguments, PrintStream errStream) {
         environment.setIgnoreErrors(false);
         environment.setErrorStream(errStream);
+        environment.setThreadCount(arguments.threads);
+        environment.setIncremental(arguments.incremental);
+        if (arguments.classpathIndexCache != null) {
+            environment.setClassPathIndexCache(new File(arguments.classpathIndexCache));
+        }
 
         // install any compiler plugins
         List<CompilerPlugin> plugins = arguments.getCompilerPlugins();
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.jet.cli;
+
+import com.google.common.base.Splitter;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.compiler.CompileEnvironment;
+import org.jetbrains.jet.compiler.CompilerPlugin;
+import org.jetbrains.jet.compiler.MessageRenderer;
+import org.jetbrains.jet.lang.resolve.java.CompilerSpecialMode;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.List;
+
+/**
+ * A long-lived compiler process that serves {@link KotlinCompiler} runs requested over a local socket.
+ *
+ * The standard library is analyzed once per process, and the compile environment (with the loaded class path)
+ * is reused by subsequent requests, as long as the settings, the plugins, the source roots, the class path and the files
+ * in it are not changed. Sources are parsed again by every request.
+ *
+ * Protocol: the client sends the secret of the daemon, the number of arguments and the arguments (as
+ * {@link DataOutput#writeUTF}), the daemon responds with the length and bytes of the compiler output, followed by
+ * the exit code. Requests with a wrong secret are dropped. A request with no arguments stops the daemon.
+ * The secret is written to a file only the user who started the daemon can read.
+ */
+@SuppressWarnings("UseOfSystemOutOrSystemErr")
+public class KotlinCompilerDaemon extends KotlinCompiler {
+    private static final int REQUEST_TIMEOUT_MILLIS = 10000;
+
+    public static void main(String... args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: KotlinCompilerDaemon <port> <secret file>");
+            System.exit(ExitCode.INTERNAL_ERROR.getCode());
+        }
+        String secret = createSecret(new File(args[1]));
+        new KotlinCompilerDaemon().serve(new ServerSocket(Integer.parseInt(args[0]), 0, InetAddress.getByName(null)), secret);
+    }
+
+    /**
+     * Generates a new secret and writes it to the given file, which is made readable by its owner only
+     */
+    @NotNull
+    public static String createSecret(@NotNull File file) throws IOException {
+        String secret = new BigInteger(128, new SecureRandom()).toString(16);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete " + file);
+        }
+        if (!file.createNewFile() ||
+            !file.setReadable(false, false) || !file.setReadable(true, true) ||
+            !file.setWritable(false, false) || !file.setWritable(true, true)) {
+            throw new IOException("Cannot create " + file + " readable by its owner only");
+        }
+        FileUtil.writeToFile(file, secret);
+        return secret;
+    }
+
+    @NotNull
+    public static String readSecret(@NotNull File file) throws IOException {
+        return FileUtil.loadFile(file).trim();
+    }
+
+    @Nullable
+    private CompileEnvironment environment;
+    @Nullable
+    private String environmentKey;
+
+    public void serve(@NotNull ServerSocket serverSocket, @NotNull String secret) throws IOException {
+        try {
+            while (true) {
+                Socket socket = serverSocket.accept();
+                try {
+                    // A client that connects and sends nothing must not block the daemon
+                    socket.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+                    if (!processRequest(socket, secret)) {
+                        break;
+                    }
+                }
+                catch (IOException e) {
+                    // A broken connection only fails its own request
+                    System.err.println("Request dropped: " + e);
+                }
+                finally {
+                    socket.close();
+                }
+            }
+        }
+        finally {
+            serverSocket.close();
+            disposeEnvironment();
+        }
+    }
+
+    private boolean processRequest(@NotNull Socket socket, @NotNull String secret) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        if (!MessageDigest.isEqual(secret.getBytes("UTF-8"), input.readUTF().getBytes("UTF-8"))) {
+            return true;
+        }
+        String[] args = new String[input.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = input.readUTF();
+        }
+        if (args.length == 0) {
+            return false;
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream errStream = new PrintStream(output, true);
+        ExitCode exitCode;
+        try {
+            exitCode = exec(errStream, args);
+        }
+        catch (Throwable t) {
+            errStream.println(MessageRenderer.PLAIN.renderException(t));
+            exitCode = ExitCode.INTERNAL_ERROR;
+        }
+        errStream.flush();
+
+        DataOutputStream result = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        byte[] bytes = output.toByteArray();
+        result.writeInt(bytes.length);
+        result.write(bytes);
+        result.writeInt(exitCode.getCode());
+        result.flush();
+        return true;
+    }
+
+    /**
+     * Runs the compiler with the given arguments on a daemon listening on the given port
+     *
+     * @throws IOException if the daemon dropped the request because of a wrong secret
+     */
+    public static ExitCode compileOnDaemon(int port, @NotNull String secret, @NotNull PrintStream out, @NotNull String... args)
+            throws IOException {
+        Socket socket = new Socket(InetAddress.getByName(null), port);
+        try {
+            DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            request.writeUTF(secret);
+            request.writeInt(args.length);
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+
+            if (args.length == 0) {
+                return ExitCode.OK;
+            }
+
+            DataInputStream response = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            byte[] bytes = new byte[response.readInt()];
+            response.readFully(bytes);
+            out.write(bytes);
+            int code = response.readInt();
+            for (ExitCode exitCode : ExitCode.values()) {
+                if (exitCode.getCode() == code) {
+                    return exitCode;
+                }
+            }
+            throw new IllegalStateException("Unknown exit code: " + code);
+        }
+        finally {
+            socket.close();
+        }
+    }
+
+    @Override
+    protected CompileEnvironment createEnvironment(CompilerArguments arguments, PrintStream errStream, MessageRenderer messageRenderer, CompilerSpecialMode mode) {
+        String key = environmentKey(arguments, mode);
+        if (environment != null && !key.equals(environmentKey)) {
+            disposeEnvironment();
+        }
+        if (environment == null) {
+            environment = super.createEnvironment(arguments, errStream, messageRenderer, mode);
+            environmentKey = key;
+        }
+        else {
+            environment.setErrorStream(errStream);
+            environment.setThreadCount(arguments.threads);
+            environment.setIncremental(arguments.incremental);
+            List<CompilerPlugin> plugins = environment.getEnvironment().getCompilerPlugins();
+            plugins.clear();
+            if (arguments.getCompilerPlugins() != null) {
+                plugins.addAll(arguments.getCompilerPlugins());
+            }
+        }
+        return environment;
+    }
+
+    @Override
+    protected void releaseEnvironment(CompileEnvironment environment) {
+        // Kept for the next request
+    }
+
+    /**
+     * Releases the environment kept for the next request
+     */
+    public void disposeEnvironment() {
+        if (environment != null) {
+            environment.dispose();
+            environment = null;
+            environmentKey = null;
+        }
+    }
+
+    /**
+     * Two runs may share an environment only if they have equal keys: same settings, plugins and source roots,
+     * and unchanged class path
+     */
+    @NotNull
+    private static String environmentKey(@NotNull CompilerArguments arguments, @NotNull CompilerSpecialMode mode) {
+        StringBuilder key = new StringBuilder();
+        key.append(mode).append('|').append(arguments.tags).append('|').append(arguments.verbose);
+        key.append('|').append(arguments.classpathIndexCache);
+        if (arguments.getCompilerPlugins() != null) {
+            for (CompilerPlugin plugin : arguments.getCompilerPlugins()) {
+                key.append('|').append(plugin.getClass().getName());
+            }
+        }
+        key.append('|').append(arguments.module).append('|').append(arguments.src).append('|').append(arguments.getSourceDirs());
+        if (arguments.stdlib != null) {
+            appendFingerprint(key, new File(arguments.stdlib));
+        }
+        if (arguments.classpath != null) {
+            for (String path : Splitter.on(File.pathSeparatorChar).split(arguments.classpath)) {
+                appendFingerprint(key, new File(path));
+            }
+        }
+        return key.toString();
+    }
+
+    private static void appendFingerprint(@NotNull StringBuilder key, @NotNull File root) {
+        key.append('|').append(root.getAbsolutePath());
+        if (root.isDirectory()) {
+            long[] countAndLastModified = new long[2];
+            collectDirectoryFingerprint(root, countAndLastModified);
+            key.append(':').append(countAndLastModified[0]).append(':').append(countAndLastModified[1]);
+        }
+        else {
+            key.append(':').append(root.length()).append(':').append(root.lastModified());
+        }
+    }
+
+    private static void collectDirectoryFingerprint(@NotNull File directory, @NotNull long[] countAndLastModified) {
+        countAndLastModified[1] = Math.max(countAndLastModified[1], directory.lastModified());
+        File[] children = directory.listFiles();
+        if (children == null) return;
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collectDirectoryFingerprint(child, countAndLastModified);
+            }
+            else {
+                countAndLastModified[0]++;
+                countAndLastModified[1] = Math.max(countAndLastModified[1], child.lastModified());
+            }
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.jet.compiler;
+
+import com.intellij.lang.java.lexer.JavaLexer;
+import com.intellij.lexer.Lexer;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.pom.java.LanguageLevel;
+import com.intellij.psi.JavaTokenType;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.lang.resolve.FqName;
+import org.jetbrains.jet.lang.resolve.java.JavaClassPathIndex;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Index of class names available in the class path roots of a {@link JetCoreEnvironment}. It only lets lookups of classes
+ * that are not on the class path skip PSI: the classes that are found are still read from PSI on every run.
+ *
+ * The contents of every jar are stored in the cache directory and reused by later compiler runs
+ * as long as the jar's size and modification time stay the same. Directories are scanned on every run; the Java sources
+ * found in them are indexed by the top-level classes they declare, since a source file may declare package-private classes
+ * besides the one it is named after.
+ */
+public class CliClassPathIndex extends JavaClassPathIndex {
+    private static final int VERSION = 1;
+
+    private final List<File> roots = new ArrayList<File>();
+    private final Map<File, Collection<String>> rootContents = new HashMap<File, Collection<String>>();
+    @Nullable
+    private File cacheDirectory;
+    @Nullable
+    private Set<String> classNames;
+
+    public synchronized void setCacheDirectory(@Nullable File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public synchronized void addRoot(@NotNull File root) {
+        roots.add(root);
+        classNames = null;
+    }
+
+    @Override
+    public synchronized boolean mayContainClass(@NotNull FqName qualifiedName) {
+        if (classNames == null) {
+            classNames = new HashSet<String>();
+            for (File root : roots) {
+                classNames.addAll(getRootContents(root));
+            }
+        }
+
+        // Nested classes are looked up by their outer class name
+        String name = qualifiedName.getFqName();
+        while (true) {
+            if (classNames.contains(name)) return true;
+            int dot = name.lastIndexOf('.');
+            if (dot < 0) return false;
+            name = name.substring(0, dot);
+        }
+    }
+
+    @NotNull
+    private Collection<String> getRootContents(@NotNull File root) {
+        Collection<String> contents = rootContents.get(root);
+        if (contents == null) {
+            contents = new ArrayList<String>();
+            if (root.isDirectory()) {
+                collectFromDirectory(root, "", contents);
+            }
+            else if (root.isFile()) {
+                contents = loadJarContents(root);
+            }
+            rootContents.put(root, contents);
+        }
+        return contents;
+    }
+
+    private static void collectFromDirectory(@NotNull File directory, @NotNull String packagePrefix, @NotNull Collection<String> result) {
+        File[] children = directory.listFiles();
+        if (children == null) return;
+        for (File child : children) {
+            String name = child.getName();
+            if (child.isDirectory()) {
+                collectFromDirectory(child, packagePrefix + name + ".", result);
+            }
+            else if (name.endsWith(".class")) {
+                addClassName(packagePrefix + FileUtil.getNameWithoutExtension(name), result);
+            }
+            else if (name.endsWith(".java")) {
+                result.add(packagePrefix + FileUtil.getNameWithoutExtension(name));
+                collectFromSourceFile(child, packagePrefix, result);
+            }
+        }
+    }
+
+    private static void collectFromSourceFile(@NotNull File file, @NotNull String packagePrefix, @NotNull Collection<String> result) {
+        String text;
+        try {
+            text = FileUtil.loadFile(file);
+        }
+        catch (IOException e) {
+            throw new CompileEnvironmentException("Failed to read " + file, e);
+        }
+
+        // Names following class keywords outside of any braces are the top-level classes. Annotation arguments
+        // like Foo.class may add a few names that are not classes, which is fine for an index answering "may contain"
+        Lexer lexer = new JavaLexer(LanguageLevel.HIGHEST);
+        lexer.start(text);
+        int depth = 0;
+        boolean nameExpected = false;
+        for (IElementType type = lexer.getTokenType(); type != null; lexer.advance(), type = lexer.getTokenType()) {
+            if (type == JavaTokenType.LBRACE) {
+                depth++;
+            }
+            else if (type == JavaTokenType.RBRACE) {
+                depth--;
+            }
+            else if (depth == 0) {
+                if (type == JavaTokenType.CLASS_KEYWORD || type == JavaTokenType.INTERFACE_KEYWORD || type == JavaTokenType.ENUM_KEYWORD) {
+                    nameExpected = true;
+                }
+                else if (nameExpected && type == JavaTokenType.IDENTIFIER) {
+                    result.add(packagePrefix + lexer.getTokenText());
+                    nameExpected = false;
+                }
+            }
+        }
+    }
+
+    @NotNull
+    private Collection<String> loadJarContents(@NotNull File jar) {
+        File cacheFile = getCacheFile(jar);
+        if (cacheFile != null && cacheFile.exists()) {
+            try {
+                Collection<String> cached = readCache(cacheFile, jar);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            catch (IOException e) {
+                // Broken cache file, will be rewritten below
+            }
+        }
+
+        Collection<String> contents = new ArrayList<String>();
+        try {
+            ZipFile zipFile = new ZipFile(jar);
+            try {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    String entryName = entries.nextElement().getName();
+                    if (entryName.endsWith(".class")) {
+                        addClassName(entryName.substring(0, entryName.length() - ".class".length()).replace('/', '.'), contents);
+                    }
+                }
+            }
+            finally {
+                zipFile.close();
+            }
+        }
+        catch (IOException e) {
+            throw new CompileEnvironmentException("Failed to read " + jar, e);
+        }
+
+        if (cacheFile != null) {
+            try {
+                writeCache(cacheFile, jar, contents);
+            }
+            catch (IOException e) {
+                // The cache is an optimization only, so the compilation goes on without it
+            }
+        }
+        return contents;
+    }
+
+    private static void addClassName(@NotNull String binaryName, @NotNull Collection<String> result) {
+        result.add(binaryName);
+        int dollar = binaryName.indexOf('$');
+        if (dollar > 0) {
+            result.add(binaryName.substring(0, dollar));
+        }
+    }
+
+    @Nullable
+    private File getCacheFile(@NotNull File jar) {
+        if (cacheDirectory == null) return null;
+        String path = jar.getAbsolutePath();
+        return new File(cacheDirectory, jar.getName() + "-" + Integer.toHexString(path.hashCode()) + ".index");
+    }
+
+    @Nullable
+    private static Collection<String> readCache(@NotNull File cacheFile, @NotNull File jar) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+        try {
+            if (input.readInt() != VERSION
+                || !input.readUTF().equals(jar.getAbsolutePath())
+                || input.readLong() != jar.length()
+                || input.readLong() != jar.lastModified()) {
+                return null;
+            }
+            int size = input.readInt();
+            if (size < 0) return null;
+            List<String> result = new ArrayList<String>();
+            for (int i = 0; i < size; i++) {
+                result.add(input.readUTF());
+            }
+            // Trailing bytes mean the file was not written by writeCache()
+            return input.read() == -1 ? result : null;
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Writes the cache file through a temporary file of its own, so that compilers running at once with the same cache
+     * directory never see each other's half-written files
+     */
+    private static void writeCache(@NotNull File cacheFile, @NotNull File jar, @NotNull Collection<String> contents) throws IOException {
+        FileUtil.createParentDirs(cacheFile);
+        File tempFile = File.createTempFile(cacheFile.getName(), ".tmp", cacheFile.getParentFile());
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                output.writeInt(VERSION);
+                output.writeUTF(jar.getAbsolutePath());
+                output.writeLong(jar.length());
+                output.writeLong(jar.lastModified());
+                output.writeInt(contents.size());
+                for (String name : contents) {
+                    output.writeUTF(name);
+                }
+            }
+            finally {
+                output.close();
+            }
+            // Fails if another compiler has just put its file in place, which is as good as ours
+            tempFile.renameTo(cacheFile);
+        }
+        finally {
+            if (tempFile.exists()) {
+                FileUtil.delete(tempFile);
+            }
+        }
+    }
+}
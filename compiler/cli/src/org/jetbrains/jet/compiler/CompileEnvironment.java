@@ -16,6 +16,7 @@
 
 package org.jetbrains.jet.compiler;
 
+import com.google.common.base.Predicate;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Disposer;
@@ -47,7 +48,10 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.jar.*;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
 
 /**
  * The environment for compiling a bunch of source files or
@@ -63,6 +67,9 @@ public class CompileEnvironment {
     private URL stdlibUrl;
 
     private boolean ignoreErrors = false;
+    private int threadCount = 1;
+    private File classPathIndexCache = null;
+    private boolean incremental = false;
     private final CompilerSpecialMode mode;
     private final boolean verbose;
 
@@ -97,6 +104,37 @@ public class CompileEnvironment {
         this.ignoreErrors = ignoreErrors;
     }
 
+    public boolean isIgnoreErrors() {
+        return ignoreErrors;
+    }
+
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Enables the persistent index of class path contents, stored in the given directory
+     */
+    public void setClassPathIndexCache(@Nullable File classPathIndexCache) {
+        this.classPathIndexCache = classPathIndexCache;
+        if (classPathIndexCache != null) {
+            environment.enableClassPathIndex(classPathIndexCache);
+        }
+    }
+
+    /**
+     * When enabled, modules compiled into an output directory only recompile the namespaces affected by changes since the previous build
+     * @see IncrementalModuleCompiler
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    @NotNull
+    public CompilerSpecialMode getMode() {
+        return mode;
+    }
+
     public void dispose() {
         Disposer.dispose(rootDisposable);
     }
@@ -204,6 +242,12 @@ public class CompileEnvironment {
 
             final String directory = new File(moduleScriptFile).getParent();
             for (Module moduleBuilder : modules) {
+                if (incremental && outputDir != null) {
+                    if (!new IncrementalModuleCompiler(this, moduleBuilder, directory, new File(outputDir)).compile()) {
+                        return false;
+                    }
+                    continue;
+                }
                 CompileEnvironment compileEnvironment = copyEnvironment(verbose);
                 try {
                     ClassFileFactory moduleFactory = compileEnvironment.compileModule(moduleBuilder, directory);
@@ -231,10 +275,17 @@ public class CompileEnvironment {
         }
     }
 
+    CompileEnvironment copyEnvironment() {
+        return copyEnvironment(verbose);
+    }
+
     private CompileEnvironment copyEnvironment(boolean verbose) {
         CompileEnvironment compileEnvironment = new CompileEnvironment(messageRenderer, verbose, mode);
         compileEnvironment.setIgnoreErrors(ignoreErrors);
         compileEnvironment.setErrorStream(errorStream);
+        compileEnvironment.setThreadCount(threadCount);
+        compileEnvironment.setClassPathIndexCache(classPathIndexCache);
+        compileEnvironment.setIncremental(incremental);
         // copy across any compiler plugins
         compileEnvironment.getEnvironment().getCompilerPlugins().addAll(environment.getCompilerPlugins());
         return compileEnvironment;
@@ -254,8 +305,9 @@ public class CompileEnvironment {
     }
 
     private List<Module> runDefineModules(String moduleFile, ClassFileFactory factory) {
-        GeneratedClassLoader loader = stdlibUrl != null ? new GeneratedClassLoader(factory, new URLClassLoader(new URL[] {stdlibUrl}, AllModules.class.getClassLoader()))
-                                                       : new GeneratedClassLoader(factory, CompileEnvironment.class.getClassLoader());
+        Map<String, byte[]> classFiles = factory.releaseBytes();
+        GeneratedClassLoader loader = stdlibUrl != null ? new GeneratedClassLoader(classFiles, new URLClassLoader(new URL[] {stdlibUrl}, AllModules.class.getClassLoader()))
+                                                       : new GeneratedClassLoader(classFiles, CompileEnvironment.class.getClassLoader());
         try {
             Class namespaceClass = loader.loadClass(JvmAbi.PACKAGE_CLASS);
             final Method method = namespaceClass.getDeclaredMethod("project");
@@ -310,7 +362,7 @@ public class CompileEnvironment {
         return moduleCompileSession.generate(false).getFactory();
     }
 
-    public static void writeToJar(ClassFileFactory factory, final OutputStream fos, @Nullable FqName mainClass, boolean includeRuntime) {
+    public static void writeToJar(final ClassFileFactory factory, final OutputStream fos, @Nullable FqName mainClass, boolean includeRuntime) {
         try {
             Manifest manifest = new Manifest();
             final Attributes mainAttributes = manifest.getMainAttributes();
@@ -319,19 +371,24 @@ public class CompileEnvironment {
             if (mainClass != null) {
                 mainAttributes.putValue("Main-Class", mainClass.getFqName());
             }
-            JarOutputStream stream = new JarOutputStream(fos, manifest);
+            StreamingJarWriter writer = new StreamingJarWriter(fos, Runtime.getRuntime().availableProcessors());
             try {
-                for (String file : factory.files()) {
-                    stream.putNextEntry(new JarEntry(file));
-                    stream.write(factory.asBytes(file));
+                writer.addManifest(manifest);
+                for (final String file : factory.files()) {
+                    // Class files are serialized and compressed on the writer's threads
+                    writer.addEntry(file, new Callable<byte[]>() {
+                        @Override
+                        public byte[] call() {
+                            return factory.asBytes(file);
+                        }
+                    });
                 }
                 if (includeRuntime) {
-                    writeRuntimeToJar(stream);
+                    writeRuntimeToJar(writer);
                 }
             }
             finally {
-                stream.close();
-                fos.close();
+                writer.close();
             }
 
         } catch (IOException e) {
@@ -339,7 +396,7 @@ public class CompileEnvironment {
         }
     }
 
-    private static void writeRuntimeToJar(final JarOutputStream stream) throws IOException {
+    private static void writeRuntimeToJar(final StreamingJarWriter writer) throws IOException {
         final File unpackedRuntimePath = getUnpackedRuntimePath();
         if (unpackedRuntimePath != null) {
             FileUtil.processFilesRecursively(unpackedRuntimePath, new Processor<File>() {
@@ -348,13 +405,7 @@ public class CompileEnvironment {
                     if (file.isDirectory()) return true;
                     final String relativePath = FileUtil.getRelativePath(unpackedRuntimePath, file);
                     try {
-                        stream.putNextEntry(new JarEntry(FileUtil.toSystemIndependentName(relativePath)));
-                        FileInputStream fis = new FileInputStream(file);
-                        try {
-                            FileUtil.copy(fis, stream);
-                        } finally {
-                            fis.close();
-                        }
+                        writer.addEntry(FileUtil.toSystemIndependentName(relativePath), FileUtil.loadFileBytes(file));
                     } catch (IOException e) {
                         throw new RuntimeException(e);
                     }
@@ -365,21 +416,12 @@ public class CompileEnvironment {
         else {
             File runtimeJarPath = getRuntimeJarPath();
             if (runtimeJarPath != null) {
-                JarInputStream jis = new JarInputStream(new FileInputStream(runtimeJarPath));
-                try {
-                    while (true) {
-                        JarEntry e = jis.getNextJarEntry();
-                        if (e == null) {
-                            break;
-                        }
-                        if (FileUtil.getExtension(e.getName()).equals("class")) {
-                            stream.putNextEntry(e);
-                            FileUtil.copy(jis, stream);
-                        }
+                writer.copyRawEntries(runtimeJarPath, new Predicate<String>() {
+                    @Override
+                    public boolean apply(String name) {
+                        return FileUtil.getExtension(name).equals("class");
                     }
-                } finally {
-                    jis.close();
-                }
+                });
             }
             else {
                 throw new CompileEnvironmentException("Couldn't find runtime library");
@@ -396,7 +438,7 @@ public class CompileEnvironment {
         }
 
         ClassFileFactory factory = session.generate(false).getFactory();
-        return new GeneratedClassLoader(factory);
+        return new GeneratedClassLoader(factory.releaseBytes(), GeneratedClassLoader.class.getClassLoader());
     }
 
     public boolean compileBunchOfSources(String sourceFileOrDir, String jar, String outputDir, boolean includeRuntime) {
@@ -452,8 +494,9 @@ public class CompileEnvironment {
         return true;
     }
 
-    private CompileSession newCompileSession() {
+    CompileSession newCompileSession() {
         CompileSession answer = new CompileSession(environment, messageRenderer, errorStream, verbose, mode);
+        answer.setThreadCount(threadCount);
         environment.setSession(answer);
         return answer;
     }
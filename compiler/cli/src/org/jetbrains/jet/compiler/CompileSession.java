@@ -25,7 +25,9 @@ import com.intellij.psi.PsiErrorElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import com.intellij.psi.PsiRecursiveElementWalkingVisitor;
+import com.intellij.psi.impl.PsiManagerEx;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.codegen.ClassBuilderFactories;
 import org.jetbrains.jet.codegen.CompilationErrorHandler;
 import org.jetbrains.jet.codegen.GenerationState;
@@ -65,6 +67,7 @@ public class CompileSession {
     private final List<JetFile> sourceFiles = new ArrayList<JetFile>();
     private List<String> errors = new ArrayList<String>();
     private boolean stubs = false;
+    private int threadCount = 1;
     private final MessageRenderer messageRenderer;
     private final PrintStream errorStream;
     private final boolean isVerbose;
@@ -89,6 +92,10 @@ public class CompileSession {
         this.stubs = stubs;
     }
 
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
     public void addSources(String path) {
         if(path == null)
             return;
@@ -118,7 +125,7 @@ public class CompileSession {
         else {
             VirtualFile fileByPath = environment.getLocalFileSystem().findFileByPath(file.getAbsolutePath());
             if (fileByPath != null) {
-                PsiFile psiFile = PsiManager.getInstance(environment.getProject()).findFile(fileByPath);
+                PsiFile psiFile = findFreshPsiFile(fileByPath);
                 if(psiFile instanceof JetFile) {
                     sourceFiles.add((JetFile)psiFile);
                 }
@@ -134,7 +141,7 @@ public class CompileSession {
         }
         else {
             if (vFile.getFileType() == JetFileType.INSTANCE) {
-                PsiFile psiFile = PsiManager.getInstance(environment.getProject()).findFile(vFile);
+                PsiFile psiFile = findFreshPsiFile(vFile);
                 if (psiFile instanceof JetFile) {
                     sourceFiles.add((JetFile)psiFile);
                 }
@@ -142,6 +149,17 @@ public class CompileSession {
         }
     }
 
+    /**
+     * The environment may outlive a compilation (see KotlinCompilerDaemon), so the PSI it keeps for a file is dropped
+     * and the file is parsed again from its current contents
+     */
+    @Nullable
+    private PsiFile findFreshPsiFile(@NotNull VirtualFile vFile) {
+        PsiManager psiManager = PsiManager.getInstance(environment.getProject());
+        ((PsiManagerEx) psiManager).getFileManager().setViewProvider(vFile, null);
+        return psiManager.findFile(vFile);
+    }
+
     public List<JetFile> getSourceFiles() {
         return sourceFiles;
     }
@@ -176,7 +194,8 @@ public class CompileSession {
         Predicate<PsiFile> filesToAnalyzeCompletely =
                 stubs ? Predicates.<PsiFile>alwaysFalse() : Predicates.<PsiFile>alwaysTrue();
         bindingContext = AnalyzerFacadeForJVM.analyzeFilesWithJavaIntegration(
-                environment.getProject(), sourceFiles, filesToAnalyzeCompletely, JetControlFlowDataTraceFactory.EMPTY, compilerSpecialMode);
+                environment.getProject(), sourceFiles, filesToAnalyzeCompletely, JetControlFlowDataTraceFactory.EMPTY, compilerSpecialMode,
+                threadCount > 1, threadCount);
 
         for (Diagnostic diagnostic : bindingContext.getBindingContext().getDiagnostics()) {
             reportDiagnostic(messageCollector, diagnostic);
@@ -222,6 +241,7 @@ public class CompileSession {
         Project project = environment.getProject();
         GenerationState generationState = new GenerationState(project, ClassBuilderFactories.binaries(stubs),
                 isVerbose ? new BackendProgress() : Progress.DEAF, bindingContext, sourceFiles, compilerSpecialMode);
+        generationState.setThreadCount(threadCount);
         generationState.compileCorrectFiles(CompilationErrorHandler.THROW_EXCEPTION);
 
         List<CompilerPlugin> plugins = environment.getCompilerPlugins();
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.jet.compiler;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * What an incremental build of a module needs to know about the previous build:
+ * for every namespace, its source files with their content hashes, a hash of its ABI,
+ * the namespaces it depends on and the class files generated for it.
+ */
+public class IncrementalCompilationState {
+    private static final int VERSION = 1;
+
+    public static class NamespaceState {
+        @NotNull
+        public final Map<String, String> fileHashes = new TreeMap<String, String>();
+        @NotNull
+        public String abiHash = "";
+        @NotNull
+        public final Set<String> dependencies = new TreeSet<String>();
+        @NotNull
+        public final List<String> outputs = new ArrayList<String>();
+    }
+
+    @NotNull
+    private final String configuration;
+    @NotNull
+    private final Map<String, NamespaceState> namespaces = new TreeMap<String, NamespaceState>();
+
+    public IncrementalCompilationState(@NotNull String configuration) {
+        this.configuration = configuration;
+    }
+
+    @NotNull
+    public Map<String, NamespaceState> getNamespaces() {
+        return namespaces;
+    }
+
+    /**
+     * @return the namespace each source file belonged to
+     */
+    @NotNull
+    public Map<String, String> getFileToNamespace() {
+        Map<String, String> result = new HashMap<String, String>();
+        for (Map.Entry<String, NamespaceState> entry : namespaces.entrySet()) {
+            for (String path : entry.getValue().fileHashes.keySet()) {
+                result.put(path, entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the state saved by the previous build, or null if there's none or it was made with a different configuration
+     */
+    @Nullable
+    public static IncrementalCompilationState load(@NotNull File file, @NotNull String configuration) {
+        if (!file.exists()) return null;
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (input.readInt() != VERSION || !input.readUTF().equals(configuration)) {
+                    return null;
+                }
+                IncrementalCompilationState state = new IncrementalCompilationState(configuration);
+                int namespaceCount = input.readInt();
+                for (int i = 0; i < namespaceCount; i++) {
+                    String fqName = input.readUTF();
+                    NamespaceState namespace = new NamespaceState();
+                    int fileCount = input.readInt();
+                    for (int j = 0; j < fileCount; j++) {
+                        namespace.fileHashes.put(input.readUTF(), input.readUTF());
+                    }
+                    namespace.abiHash = input.readUTF();
+                    int dependencyCount = input.readInt();
+                    for (int j = 0; j < dependencyCount; j++) {
+                        namespace.dependencies.add(input.readUTF());
+                    }
+                    int outputCount = input.readInt();
+                    for (int j = 0; j < outputCount; j++) {
+                        namespace.outputs.add(input.readUTF());
+                    }
+                    state.namespaces.put(fqName, namespace);
+                }
+                return state;
+            }
+            finally {
+                input.close();
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    public void save(@NotNull File file) {
+        try {
+            FileUtil.createParentDirs(file);
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            try {
+                output.writeInt(VERSION);
+                output.writeUTF(configuration);
+                output.writeInt(namespaces.size());
+                for (Map.Entry<String, NamespaceState> entry : namespaces.entrySet()) {
+                    NamespaceState namespace = entry.getValue();
+                    output.writeUTF(entry.getKey());
+                    output.writeInt(namespace.fileHashes.size());
+                    for (Map.Entry<String, String> fileHash : namespace.fileHashes.entrySet()) {
+                        output.writeUTF(fileHash.getKey());
+                        output.writeUTF(fileHash.getValue());
+                    }
+                    output.writeUTF(namespace.abiHash);
+                    output.writeInt(namespace.dependencies.size());
+                    for (String dependency : namespace.dependencies) {
+                        output.writeUTF(dependency);
+                    }
+                    output.writeInt(namespace.outputs.size());
+                    for (String path : namespace.outputs) {
+                        output.writeUTF(path);
+                    }
+                }
+            }
+            finally {
+                output.close();
+            }
+        }
+        catch (IOException e) {
+            throw new CompileEnvironmentException("Failed to save incremental compilation state to " + file, e);
+        }
+    }
+
+    @NotNull
+    public static String hash(@NotNull byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(bytes);
+            return new BigInteger(1, digest).toString(16);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,430 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.jet.compiler;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.psi.PsiRecursiveElementWalkingVisitor;
+import com.intellij.psi.PsiElement;
+import jet.modules.Module;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.codegen.ClassFileFactory;
+import org.jetbrains.jet.lang.descriptors.*;
+import org.jetbrains.jet.lang.psi.*;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.DescriptorUtils;
+import org.jetbrains.jet.lang.types.JetType;
+import org.jetbrains.jet.lang.types.TypeProjection;
+import org.jetbrains.jet.resolve.DescriptorRenderer;
+import org.jetbrains.jet.utils.PathUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Compiles a module into an output directory, recompiling only the namespaces affected by changes since the previous build.
+ *
+ * A namespace is recompiled if any of its source files changed, or if it depends on a recompiled namespace whose ABI changed.
+ * A namespace depends on the namespaces of the declarations it refers to, of the types it declares or infers, of the supertypes
+ * of its classes and of the members its declarations override. The ABI of a class includes its supertypes and inherited members.
+ * All files of a namespace are always recompiled together, because they share the namespace class.
+ * Untouched namespaces are not analyzed from sources: their class files from the previous build are put on the class path.
+ * Every module keeps its own state next to the output directory, so modules sharing an output directory only delete their own outputs.
+ */
+public class IncrementalModuleCompiler {
+    private static final Set<String> KOTLIN_EXTENSIONS = new HashSet<String>(Arrays.asList("kt", "kts", "ktm", "jet"));
+
+    private final CompileEnvironment parentEnvironment;
+    private final Module module;
+    private final String directory;
+    private final File outputDir;
+    private final File stateFile;
+
+    public IncrementalModuleCompiler(@NotNull CompileEnvironment parentEnvironment, @NotNull Module module, @NotNull String directory, @NotNull File outputDir) {
+        this.parentEnvironment = parentEnvironment;
+        this.module = module;
+        this.directory = directory;
+        this.outputDir = outputDir;
+        this.stateFile = new File(outputDir.getParentFile(), outputDir.getName() + "." + module.getModuleName() + ".kotlin-incremental");
+    }
+
+    public boolean compile() {
+        Map<String, String> fileHashes = new TreeMap<String, String>();
+        for (File file : collectSourceFiles()) {
+            try {
+                fileHashes.put(getPath(file), IncrementalCompilationState.hash(FileUtil.loadFileBytes(file)));
+            }
+            catch (IOException e) {
+                throw new CompileEnvironmentException("Failed to read " + file, e);
+            }
+        }
+
+        String configuration = configuration();
+        IncrementalCompilationState oldState = IncrementalCompilationState.load(stateFile, configuration);
+        if (oldState == null) {
+            oldState = new IncrementalCompilationState(configuration);
+        }
+        Map<String, String> oldFileToNamespace = oldState.getFileToNamespace();
+
+        CompileEnvironment environment = parentEnvironment.copyEnvironment();
+        try {
+            // Only changed files have to be parsed to learn their namespaces
+            Set<String> compileSet = new HashSet<String>();
+            Map<String, String> fileToNamespace = new HashMap<String, String>();
+            CompileSession parsingSession = environment.newCompileSession();
+            for (Map.Entry<String, String> entry : fileHashes.entrySet()) {
+                String path = entry.getKey();
+                String oldNamespace = oldFileToNamespace.get(path);
+                if (oldNamespace != null && entry.getValue().equals(oldState.getNamespaces().get(oldNamespace).fileHashes.get(path))) {
+                    fileToNamespace.put(path, oldNamespace);
+                    continue;
+                }
+                if (oldNamespace != null) {
+                    compileSet.add(oldNamespace);
+                }
+                parsingSession.addSources(path);
+            }
+            for (JetFile file : parsingSession.getSourceFiles()) {
+                String namespace = JetPsiUtil.getFQName(file).getFqName();
+                fileToNamespace.put(getPath(file), namespace);
+                compileSet.add(namespace);
+            }
+            for (String path : oldFileToNamespace.keySet()) {
+                if (!fileHashes.containsKey(path)) {
+                    compileSet.add(oldFileToNamespace.get(path));
+                }
+            }
+
+            if (compileSet.isEmpty()) {
+                return true;
+            }
+
+            while (true) {
+                deleteOutputs(oldState, compileSet);
+
+                CompileSession session = environment.newCompileSession();
+                Map<String, List<String>> namespaceFiles = new TreeMap<String, List<String>>();
+                for (Map.Entry<String, String> entry : fileToNamespace.entrySet()) {
+                    if (compileSet.contains(entry.getValue())) {
+                        session.addSources(entry.getKey());
+                        List<String> files = namespaceFiles.get(entry.getValue());
+                        if (files == null) {
+                            files = new ArrayList<String>();
+                            namespaceFiles.put(entry.getValue(), files);
+                        }
+                        files.add(entry.getKey());
+                    }
+                }
+                for (String classpathRoot : module.getClasspathRoots()) {
+                    environment.addToClasspath(new File(classpathRoot));
+                }
+                if (outputDir.exists()) {
+                    environment.addToClasspath(outputDir);
+                }
+                environment.ensureRuntime();
+
+                boolean analyzed = session.analyze();
+                if (!analyzed && !parentEnvironment.isIgnoreErrors()) {
+                    // Outputs of the namespaces in the compile set are already deleted, so the next build has to start from scratch
+                    FileUtil.delete(stateFile);
+                    return false;
+                }
+
+                IncrementalCompilationState newState = new IncrementalCompilationState(configuration);
+                BindingContext bindingContext = session.getBindingContext().getBindingContext();
+                for (JetFile file : session.getSourceFiles()) {
+                    String path = getPath(file);
+                    String namespace = fileToNamespace.get(path);
+                    IncrementalCompilationState.NamespaceState namespaceState = newState.getNamespaces().get(namespace);
+                    if (namespaceState == null) {
+                        namespaceState = new IncrementalCompilationState.NamespaceState();
+                        newState.getNamespaces().put(namespace, namespaceState);
+                    }
+                    namespaceState.fileHashes.put(path, fileHashes.get(path));
+                    collectDependencies(file, bindingContext, namespace, namespaceState.dependencies);
+                }
+                for (Map.Entry<String, IncrementalCompilationState.NamespaceState> entry : newState.getNamespaces().entrySet()) {
+                    entry.getValue().abiHash = abiHash(session.getSourceFiles(), bindingContext, entry.getKey());
+                }
+
+                Set<String> changedAbi = new HashSet<String>();
+                for (String namespace : compileSet) {
+                    IncrementalCompilationState.NamespaceState oldNamespace = oldState.getNamespaces().get(namespace);
+                    IncrementalCompilationState.NamespaceState newNamespace = newState.getNamespaces().get(namespace);
+                    if (oldNamespace == null || newNamespace == null || !oldNamespace.abiHash.equals(newNamespace.abiHash)) {
+                        changedAbi.add(namespace);
+                    }
+                }
+                Set<String> dependents = new HashSet<String>();
+                for (Map.Entry<String, IncrementalCompilationState.NamespaceState> entry : oldState.getNamespaces().entrySet()) {
+                    if (compileSet.contains(entry.getKey())) continue;
+                    for (String dependency : entry.getValue().dependencies) {
+                        if (changedAbi.contains(dependency)) {
+                            dependents.add(entry.getKey());
+                            break;
+                        }
+                    }
+                }
+
+                if (!dependents.isEmpty()) {
+                    // The class path of this environment still has the outputs of the dependents, so start over in a new one
+                    compileSet.addAll(dependents);
+                    environment.dispose();
+                    environment = parentEnvironment.copyEnvironment();
+                    continue;
+                }
+
+                ClassFileFactory factory = session.generate(false).getFactory();
+                for (String output : factory.files()) {
+                    int slash = output.lastIndexOf('/');
+                    String namespace = slash < 0 ? "" : output.substring(0, slash).replace('/', '.');
+                    IncrementalCompilationState.NamespaceState namespaceState = newState.getNamespaces().get(namespace);
+                    if (namespaceState != null) {
+                        namespaceState.outputs.add(output);
+                    }
+                }
+                CompileEnvironment.writeToOutputDirectory(factory, outputDir.getPath());
+
+                if (!analyzed) {
+                    // Dependencies of erroneous code can't be trusted, so the next build starts from scratch
+                    FileUtil.delete(stateFile);
+                    return true;
+                }
+                for (Map.Entry<String, IncrementalCompilationState.NamespaceState> entry : oldState.getNamespaces().entrySet()) {
+                    if (!compileSet.contains(entry.getKey())) {
+                        newState.getNamespaces().put(entry.getKey(), entry.getValue());
+                    }
+                }
+                newState.save(stateFile);
+                return true;
+            }
+        }
+        finally {
+            environment.dispose();
+        }
+    }
+
+    @NotNull
+    private static String getPath(@NotNull JetFile file) {
+        return getPath(new File(file.getVirtualFile().getPath()));
+    }
+
+    @NotNull
+    private static String getPath(@NotNull File file) {
+        try {
+            return file.getCanonicalPath();
+        }
+        catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    private void deleteOutputs(@NotNull IncrementalCompilationState state, @NotNull Set<String> namespaces) {
+        for (String namespace : namespaces) {
+            IncrementalCompilationState.NamespaceState namespaceState = state.getNamespaces().get(namespace);
+            if (namespaceState != null) {
+                for (String output : namespaceState.outputs) {
+                    FileUtil.delete(new File(outputDir, output));
+                }
+            }
+        }
+    }
+
+    @NotNull
+    private List<File> collectSourceFiles() {
+        if (module.getSourceFiles().isEmpty()) {
+            throw new CompileEnvironmentException("No source files where defined");
+        }
+
+        List<File> result = new ArrayList<File>();
+        for (String sourceFile : module.getSourceFiles()) {
+            File source = new File(sourceFile);
+            if (!source.isAbsolute()) {
+                source = new File(directory, sourceFile);
+            }
+
+            if (!source.exists()) {
+                throw new CompileEnvironmentException("'" + source + "' does not exist");
+            }
+
+            collectSourceFiles(source, result);
+        }
+        return result;
+    }
+
+    private static void collectSourceFiles(@NotNull File file, @NotNull List<File> result) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    collectSourceFiles(child, result);
+                }
+            }
+        }
+        else if (KOTLIN_EXTENSIONS.contains(FileUtil.getExtension(file.getName()))) {
+            result.add(file);
+        }
+    }
+
+    /**
+     * Previous build results can be reused only if the compiler and the libraries the module is compiled against did not change
+     */
+    @NotNull
+    private String configuration() {
+        StringBuilder result = new StringBuilder(parentEnvironment.getMode().toString());
+        List<File> roots = new ArrayList<File>();
+        for (String classpathRoot : module.getClasspathRoots()) {
+            roots.add(new File(classpathRoot));
+        }
+        roots.add(new File(PathUtil.getJarPathForClass(IncrementalModuleCompiler.class)));
+        for (File root : roots) {
+            result.append('|').append(root.getAbsolutePath()).append(':').append(root.length()).append(':').append(root.lastModified());
+        }
+        return result.toString();
+    }
+
+    private static void collectDependencies(
+            @NotNull JetFile file,
+            @NotNull final BindingContext bindingContext,
+            @NotNull final String ownNamespace,
+            @NotNull final Set<String> dependencies
+    ) {
+        file.accept(new PsiRecursiveElementWalkingVisitor() {
+            @Override
+            public void visitElement(PsiElement element) {
+                if (element instanceof JetReferenceExpression) {
+                    DeclarationDescriptor target = bindingContext.get(BindingContext.REFERENCE_TARGET, (JetReferenceExpression) element);
+                    addDependency(target, ownNamespace, dependencies);
+                }
+                if (element instanceof JetExpression) {
+                    JetType type = bindingContext.get(BindingContext.EXPRESSION_TYPE, (JetExpression) element);
+                    addTypeDependencies(type, ownNamespace, dependencies);
+                }
+                if (element instanceof JetDeclaration) {
+                    DeclarationDescriptor descriptor = bindingContext.get(BindingContext.DECLARATION_TO_DESCRIPTOR, element);
+                    addDeclarationDependencies(descriptor, ownNamespace, dependencies);
+                }
+                super.visitElement(element);
+            }
+        });
+    }
+
+    private static void addDeclarationDependencies(
+            @Nullable DeclarationDescriptor descriptor,
+            @NotNull String ownNamespace,
+            @NotNull Set<String> dependencies
+    ) {
+        if (descriptor instanceof ClassDescriptor) {
+            for (JetType supertype : ((ClassDescriptor) descriptor).getTypeConstructor().getSupertypes()) {
+                addTypeDependencies(supertype, ownNamespace, dependencies);
+            }
+        }
+        if (descriptor instanceof CallableDescriptor) {
+            CallableDescriptor callable = (CallableDescriptor) descriptor;
+            addTypeDependencies(callable.getReturnType(), ownNamespace, dependencies);
+            if (callable.getReceiverParameter().exists()) {
+                addTypeDependencies(callable.getReceiverParameter().getType(), ownNamespace, dependencies);
+            }
+            for (ValueParameterDescriptor parameter : callable.getValueParameters()) {
+                addTypeDependencies(parameter.getType(), ownNamespace, dependencies);
+            }
+            for (CallableDescriptor overridden : callable.getOverriddenDescriptors()) {
+                addDependency(overridden, ownNamespace, dependencies);
+            }
+        }
+    }
+
+    private static void addTypeDependencies(@Nullable JetType type, @NotNull String ownNamespace, @NotNull Set<String> dependencies) {
+        if (type == null) return;
+        addDependency(type.getConstructor().getDeclarationDescriptor(), ownNamespace, dependencies);
+        for (TypeProjection argument : type.getArguments()) {
+            addTypeDependencies(argument.getType(), ownNamespace, dependencies);
+        }
+    }
+
+    private static void addDependency(@Nullable DeclarationDescriptor target, @NotNull String ownNamespace, @NotNull Set<String> dependencies) {
+        String namespace = target != null ? getNamespaceName(target) : null;
+        if (namespace != null && !namespace.equals(ownNamespace)) {
+            dependencies.add(namespace);
+        }
+    }
+
+    @Nullable
+    private static String getNamespaceName(@NotNull DeclarationDescriptor descriptor) {
+        NamespaceDescriptor namespace = descriptor instanceof NamespaceDescriptor
+                                        ? (NamespaceDescriptor) descriptor
+                                        : DescriptorUtils.getParentOfType(descriptor, NamespaceDescriptor.class);
+        return namespace != null ? DescriptorUtils.getFQName(namespace).getFqName() : null;
+    }
+
+    @NotNull
+    private static String abiHash(@NotNull List<JetFile> files, @NotNull BindingContext bindingContext, @NotNull String namespace) {
+        List<String> signatures = new ArrayList<String>();
+        for (JetFile file : files) {
+            if (JetPsiUtil.getFQName(file).getFqName().equals(namespace)) {
+                for (JetDeclaration declaration : file.getDeclarations()) {
+                    collectSignatures(declaration, bindingContext, signatures);
+                }
+            }
+        }
+        Collections.sort(signatures);
+        StringBuilder text = new StringBuilder();
+        for (String signature : signatures) {
+            text.append(signature).append('\n');
+        }
+        return IncrementalCompilationState.hash(text.toString().getBytes());
+    }
+
+    private static void collectSignatures(@NotNull JetDeclaration declaration, @NotNull BindingContext bindingContext, @NotNull List<String> signatures) {
+        if (declaration instanceof JetClassObject) {
+            collectSignatures(((JetClassObject) declaration).getObjectDeclaration(), bindingContext, signatures);
+            return;
+        }
+        DeclarationDescriptor descriptor = bindingContext.get(BindingContext.DECLARATION_TO_DESCRIPTOR, declaration);
+        if (descriptor == null) return;
+        if (descriptor instanceof DeclarationDescriptorWithVisibility
+            && ((DeclarationDescriptorWithVisibility) descriptor).getVisibility() == Visibilities.PRIVATE) {
+            return;
+        }
+        String prefix = DescriptorUtils.getFQName(descriptor).getFqName() + ": ";
+        signatures.add(prefix + DescriptorRenderer.TEXT.render(descriptor));
+        if (descriptor instanceof ClassDescriptor) {
+            ClassDescriptor classDescriptor = (ClassDescriptor) descriptor;
+            for (ConstructorDescriptor constructor : classDescriptor.getConstructors()) {
+                signatures.add(prefix + DescriptorRenderer.TEXT.render(constructor));
+            }
+            for (JetType supertype : classDescriptor.getTypeConstructor().getSupertypes()) {
+                signatures.add(prefix + "supertype " + DescriptorRenderer.TEXT.renderType(supertype));
+            }
+            // members inherited from the supertypes are part of the ABI of the class too
+            for (DeclarationDescriptor member : classDescriptor.getDefaultType().getMemberScope().getAllDescriptors()) {
+                if (member instanceof CallableMemberDescriptor
+                    && ((CallableMemberDescriptor) member).getKind() == CallableMemberDescriptor.Kind.FAKE_OVERRIDE
+                    && ((CallableMemberDescriptor) member).getVisibility() != Visibilities.PRIVATE) {
+                    signatures.add(prefix + "inherited " + DescriptorRenderer.TEXT.render(member));
+                }
+            }
+        }
+        if (declaration instanceof JetClassOrObject) {
+            for (JetDeclaration member : ((JetClassOrObject) declaration).getDeclarations()) {
+                collectSignatures(member, bindingContext, signatures);
+            }
+        }
+    }
+}
@@ -23,8 +23,11 @@ import com.intellij.openapi.Disposable;
 import com.intellij.openapi.extensions.Extensions;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElementFinder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.asJava.JavaElementFinder;
 import org.jetbrains.jet.lang.parsing.JetParserDefinition;
+import org.jetbrains.jet.lang.resolve.java.JavaClassPathIndex;
 import org.jetbrains.jet.lang.resolve.java.JetFilesProvider;
 import org.jetbrains.jet.lang.types.lang.JetStandardLibrary;
 import org.jetbrains.jet.plugin.JetFileType;
@@ -42,6 +45,8 @@ import java.util.List;
 public class JetCoreEnvironment extends JavaCoreEnvironment {
     private List<CompilerPlugin> compilerPlugins = new ArrayList<CompilerPlugin>();
     private CompileSession session;
+    private final CliClassPathIndex classPathIndex = new CliClassPathIndex();
+    private boolean classPathIndexEnabled = false;
 
     public JetCoreEnvironment(Disposable parentDisposable, boolean includeJdkHeaders) {
         super(parentDisposable);
@@ -62,11 +67,40 @@ public class JetCoreEnvironment extends JavaCoreEnvironment {
             for (VirtualFile root : PathUtil.getAltHeadersRoots()) {
                 addLibraryRoot(root);
             }
+            File altHeadersPath = PathUtil.getAltHeadersPath();
+            if (altHeadersPath != null) {
+                for (File root : altHeadersPath.listFiles()) {
+                    classPathIndex.addRoot(root);
+                }
+            }
         }
 
         JetStandardLibrary.initialize(getProject());
     }
 
+    @Override
+    public void addToClasspath(File path) {
+        super.addToClasspath(path);
+        classPathIndex.addRoot(path);
+    }
+
+    /**
+     * Makes Java class lookups consult an index of class path contents, which is persisted in the given directory
+     * (or kept in memory only, if the directory is null).
+     */
+    public void enableClassPathIndex(@Nullable File cacheDirectory) {
+        classPathIndex.setCacheDirectory(cacheDirectory);
+        if (!classPathIndexEnabled) {
+            classPathIndexEnabled = true;
+            myProject.registerService(JavaClassPathIndex.class, classPathIndex);
+        }
+    }
+
+    @NotNull
+    public CliClassPathIndex getClassPathIndex() {
+        return classPathIndex;
+    }
+
     public MockApplication getApplication() {
         return myApplication;
     }
@@ -0,0 +1,422 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.compiler;
+
+import com.google.common.base.Predicate;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a jar file, compressing entries on worker threads.
+ *
+ * Entries are written in the order they were added. At most a bounded number of entries are waiting to be written,
+ * so the contents of an entry are computed and compressed while the preceding entries are being written out.
+ * Entries of another zip file can be copied without being inflated and deflated again.
+ *
+ * Zip64 is not supported, so neither the written nor the copied archives may exceed 65535 entries or 4 Gb.
+ */
+public class StreamingJarWriter implements Closeable {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIZE = 22;
+
+    private static final int VERSION = 20;
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    private static final int FLAG_UTF8 = 1 << 11;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private static final int MAX_ENTRIES = 0xFFFF;
+
+    private static class Entry {
+        final byte[] name;
+        int flags = FLAG_UTF8;
+        int method;
+        int crc;
+        long compressedSize;
+        long size;
+        long offset;
+
+        Entry(byte[] name) {
+            this.name = name;
+        }
+    }
+
+    private final OutputStream out;
+    private final int dosTime;
+    private final ExecutorService executor;
+    private final int maxPendingEntries;
+    private final LinkedList<Future<CompressedEntry>> pendingEntries = new LinkedList<Future<CompressedEntry>>();
+    private final List<Entry> writtenEntries = new ArrayList<Entry>();
+    private final Set<String> names = new HashSet<String>();
+    private long position;
+    private boolean closed;
+
+    public StreamingJarWriter(@NotNull OutputStream out, int threadCount) {
+        this.out = new BufferedOutputStream(out, 64 * 1024);
+        this.dosTime = toDosTime(System.currentTimeMillis());
+        this.executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Jar writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.maxPendingEntries = 4 * threadCount;
+    }
+
+    public void addManifest(@NotNull Manifest manifest) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        manifest.write(bytes);
+        addEntry(JarFile.MANIFEST_NAME, bytes.toByteArray());
+    }
+
+    public void addEntry(@NotNull String name, @NotNull final byte[] contents) throws IOException {
+        addEntry(name, new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return contents;
+            }
+        });
+    }
+
+    /**
+     * Schedules the entry to be compressed on a worker thread. The contents are computed on the worker thread too.
+     */
+    public void addEntry(@NotNull String name, @NotNull final Callable<byte[]> contents) throws IOException {
+        final Entry entry = newEntry(name);
+        pendingEntries.add(executor.submit(new Callable<CompressedEntry>() {
+            @Override
+            public CompressedEntry call() throws Exception {
+                return compress(entry, contents.call());
+            }
+        }));
+        while (pendingEntries.size() > maxPendingEntries) {
+            writePendingEntry();
+        }
+    }
+
+    /**
+     * Copies the entries of the zip file accepted by the filter as they are, without recompressing them.
+     */
+    public void copyRawEntries(@NotNull File zipFile, @NotNull Predicate<String> nameFilter) throws IOException {
+        flushPendingEntries();
+
+        RandomAccessFile file = new RandomAccessFile(zipFile, "r");
+        try {
+            for (Entry entry : readCentralDirectory(file, zipFile)) {
+                String name = new String(entry.name, UTF8);
+                if (!nameFilter.apply(name)) continue;
+                if (!names.add(name)) {
+                    throw new ZipException("duplicate entry: " + name);
+                }
+
+                long sourceOffset = entry.offset;
+                file.seek(sourceOffset + 26);
+                int localNameLength = readShort(file);
+                int localExtraLength = readShort(file);
+                file.seek(sourceOffset + LOCAL_HEADER_SIZE + localNameLength + localExtraLength);
+
+                // Sizes and the checksum are known from the central directory, so the copy doesn't need a data descriptor
+                entry.flags &= ~FLAG_DATA_DESCRIPTOR;
+                writeLocalHeader(entry);
+
+                byte[] buffer = new byte[8192];
+                long remaining = entry.compressedSize;
+                while (remaining > 0) {
+                    int read = file.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        throw new ZipException("Unexpected end of file " + zipFile);
+                    }
+                    write(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            flushPendingEntries();
+            writeCentralDirectory();
+            out.flush();
+        }
+        finally {
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    @NotNull
+    private Entry newEntry(@NotNull String name) throws IOException {
+        if (closed) {
+            throw new IOException("Jar writer is closed");
+        }
+        if (!names.add(name)) {
+            throw new ZipException("duplicate entry: " + name);
+        }
+        return new Entry(name.getBytes(UTF8));
+    }
+
+    private void flushPendingEntries() throws IOException {
+        while (!pendingEntries.isEmpty()) {
+            writePendingEntry();
+        }
+    }
+
+    private void writePendingEntry() throws IOException {
+        CompressedEntry compressed = waitFor(pendingEntries.removeFirst());
+        writeLocalHeader(compressed.entry);
+        write(compressed.data, 0, compressed.dataLength);
+    }
+
+    private static class CompressedEntry {
+        final Entry entry;
+        final byte[] data;
+        final int dataLength;
+
+        CompressedEntry(Entry entry, byte[] data, int dataLength) {
+            this.entry = entry;
+            this.data = data;
+            this.dataLength = dataLength;
+        }
+    }
+
+    @NotNull
+    private static CompressedEntry compress(@NotNull Entry entry, @NotNull byte[] contents) {
+        CRC32 crc = new CRC32();
+        crc.update(contents);
+        entry.crc = (int) crc.getValue();
+        entry.size = contents.length;
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        byte[] buffer = new byte[contents.length + contents.length / 1000 + 64];
+        int length = 0;
+        try {
+            deflater.setInput(contents);
+            deflater.finish();
+            while (!deflater.finished() && length < buffer.length) {
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+        }
+        finally {
+            deflater.end();
+        }
+
+        // Store the entry if compression doesn't pay off
+        if (length >= contents.length) {
+            entry.method = STORED;
+            entry.compressedSize = contents.length;
+            return new CompressedEntry(entry, contents, contents.length);
+        }
+        entry.method = DEFLATED;
+        entry.compressedSize = length;
+        return new CompressedEntry(entry, buffer, length);
+    }
+
+    @NotNull
+    private static CompressedEntry waitFor(@NotNull Future<CompressedEntry> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessCanceledException();
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private void writeLocalHeader(@NotNull Entry entry) throws IOException {
+        if (writtenEntries.size() >= MAX_ENTRIES) {
+            throw new ZipException("Too many entries in a jar file");
+        }
+        entry.offset = position;
+        writtenEntries.add(entry);
+
+        writeInt(LOCAL_HEADER_SIGNATURE);
+        writeShort(VERSION);
+        writeShort(entry.flags);
+        writeShort(entry.method);
+        writeInt(dosTime);
+        writeInt(entry.crc);
+        writeInt(entry.compressedSize);
+        writeInt(entry.size);
+        writeShort(entry.name.length);
+        writeShort(0);
+        write(entry.name, 0, entry.name.length);
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        long start = position;
+        for (Entry entry : writtenEntries) {
+            writeInt(CENTRAL_HEADER_SIGNATURE);
+            writeShort(VERSION);
+            writeShort(VERSION);
+            writeShort(entry.flags);
+            writeShort(entry.method);
+            writeInt(dosTime);
+            writeInt(entry.crc);
+            writeInt(entry.compressedSize);
+            writeInt(entry.size);
+            writeShort(entry.name.length);
+            writeShort(0); // extra length
+            writeShort(0); // comment length
+            writeShort(0); // disk number
+            writeShort(0); // internal attributes
+            writeInt(0);   // external attributes
+            writeInt(entry.offset);
+            write(entry.name, 0, entry.name.length);
+        }
+        long size = position - start;
+
+        writeInt(END_SIGNATURE);
+        writeShort(0);
+        writeShort(0);
+        writeShort(writtenEntries.size());
+        writeShort(writtenEntries.size());
+        writeInt(size);
+        writeInt(start);
+        writeShort(0);
+    }
+
+    @NotNull
+    private static List<Entry> readCentralDirectory(@NotNull RandomAccessFile file, @NotNull File zipFile) throws IOException {
+        // The end of central directory record is followed by a comment of at most 64 Kb
+        long length = file.length();
+        int tailLength = (int) Math.min(length, END_SIZE + 0xFFFF);
+        byte[] tail = new byte[tailLength];
+        file.seek(length - tailLength);
+        file.readFully(tail);
+
+        int end = -1;
+        for (int i = tailLength - END_SIZE; i >= 0; i--) {
+            if (getInt(tail, i) == END_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new ZipException("Not a zip file: " + zipFile);
+        }
+
+        int count = getShort(tail, end + 10);
+        long directoryOffset = getInt(tail, end + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || directoryOffset == 0xFFFFFFFFL) {
+            throw new ZipException("Zip64 archives are not supported: " + zipFile);
+        }
+
+        List<Entry> entries = new ArrayList<Entry>(count);
+        file.seek(directoryOffset);
+        for (int i = 0; i < count; i++) {
+            byte[] header = new byte[CENTRAL_HEADER_SIZE];
+            file.readFully(header);
+            if (getInt(header, 0) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory in " + zipFile);
+            }
+            byte[] name = new byte[getShort(header, 28)];
+            file.readFully(name);
+            file.skipBytes(getShort(header, 30) + getShort(header, 32));
+
+            Entry entry = new Entry(name);
+            entry.flags = getShort(header, 8);
+            entry.method = getShort(header, 10);
+            entry.crc = getInt(header, 16);
+            entry.compressedSize = getInt(header, 20) & 0xFFFFFFFFL;
+            entry.size = getInt(header, 24) & 0xFFFFFFFFL;
+            entry.offset = getInt(header, 42) & 0xFFFFFFFFL;
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private static int readShort(@NotNull RandomAccessFile file) throws IOException {
+        int b1 = file.read();
+        int b2 = file.read();
+        if ((b1 | b2) < 0) {
+            throw new EOFException();
+        }
+        return b1 | (b2 << 8);
+    }
+
+    private static int getShort(@NotNull byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8);
+    }
+
+    private static int getInt(@NotNull byte[] bytes, int offset) {
+        return getShort(bytes, offset) | (getShort(bytes, offset + 2) << 16);
+    }
+
+    private void writeShort(int value) throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+        position += 2;
+    }
+
+    private void writeInt(long value) throws IOException {
+        writeShort((int) (value & 0xFFFF));
+        writeShort((int) ((value >>> 16) & 0xFFFF));
+    }
+
+    private void write(@NotNull byte[] bytes, int offset, int length) throws IOException {
+        out.write(bytes, offset, length);
+        position += length;
+    }
+
+    private static int toDosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((year - 1980) << 25)
+               | ((calendar.get(Calendar.MONTH) + 1) << 21)
+               | (calendar.get(Calendar.DAY_OF_MONTH) << 16)
+               | (calendar.get(Calendar.HOUR_OF_DAY) << 11)
+               | (calendar.get(Calendar.MINUTE) << 5)
+               | (calendar.get(Calendar.SECOND) >> 1);
+    }
+}
@@ -166,12 +166,34 @@ public class AnalyzerFacadeForJVM {
             Project project, Collection<JetFile> files, Predicate<PsiFile> filesToAnalyzeCompletely,
             JetControlFlowDataTraceFactory flowDataTraceFactory,
             CompilerSpecialMode compilerSpecialMode) {
-        BindingTraceContext bindingTraceContext = new BindingTraceContext();
+        return analyzeFilesWithJavaIntegration(project, files, filesToAnalyzeCompletely, flowDataTraceFactory, compilerSpecialMode, false);
+    }
+
+    /**
+     * @param freezeBindingContext if true, the resulting binding context is immutable and can be read from many threads
+     */
+    public static AnalyzeExhaust analyzeFilesWithJavaIntegration(
+            Project project, Collection<JetFile> files, Predicate<PsiFile> filesToAnalyzeCompletely,
+            JetControlFlowDataTraceFactory flowDataTraceFactory,
+            CompilerSpecialMode compilerSpecialMode, boolean freezeBindingContext) {
+        return analyzeFilesWithJavaIntegration(project, files, filesToAnalyzeCompletely, flowDataTraceFactory, compilerSpecialMode,
+                                               freezeBindingContext, 1);
+    }
+
+    /**
+     * @param freezeBindingContext if true, the resulting binding context is immutable and can be read from many threads
+     * @param threadCount the number of threads resolving and checking the bodies of declarations
+     */
+    public static AnalyzeExhaust analyzeFilesWithJavaIntegration(
+            Project project, Collection<JetFile> files, Predicate<PsiFile> filesToAnalyzeCompletely,
+            JetControlFlowDataTraceFactory flowDataTraceFactory,
+            CompilerSpecialMode compilerSpecialMode, boolean freezeBindingContext, int threadCount) {
+        BindingTraceContext bindingTraceContext = new BindingTraceContext(threadCount > 1);
 
         final ModuleDescriptor owner = new ModuleDescriptor("<module>");
 
         TopDownAnalysisParameters topDownAnalysisParameters = new TopDownAnalysisParameters(
-                filesToAnalyzeCompletely, false, false);
+                filesToAnalyzeCompletely, false, false, threadCount);
 
 
         InjectorForTopDownAnalyzerForJvm injector = new InjectorForTopDownAnalyzerForJvm(
@@ -181,6 +203,9 @@ public class AnalyzerFacadeForJVM {
 
 
         injector.getTopDownAnalyzer().analyzeFiles(files);
+        if (freezeBindingContext) {
+            bindingTraceContext.freeze();
+        }
         return new AnalyzeExhaust(bindingTraceContext.getBindingContext(), JetStandardLibrary.getInstance());
     }
 
@@ -62,12 +62,14 @@ public class JavaClassMembersScope extends JavaClassOrPackageScope {
 
     @Override
     public ClassifierDescriptor getClassifier(@NotNull String name) {
-        ClassifierDescriptor classifierDescriptor = classifiers.get(name);
-        if (classifierDescriptor == null) {
-            classifierDescriptor = doGetClassifierDescriptor(name);
-            classifiers.put(name, classifierDescriptor);
+        synchronized (semanticServices.getDescriptorResolver()) {
+            ClassifierDescriptor classifierDescriptor = classifiers.get(name);
+            if (classifierDescriptor == null) {
+                classifierDescriptor = doGetClassifierDescriptor(name);
+                classifiers.put(name, classifierDescriptor);
+            }
+            return classifierDescriptor;
         }
-        return classifierDescriptor;
     }
 
     @Override
@@ -87,16 +89,18 @@ public class JavaClassMembersScope extends JavaClassOrPackageScope {
     @NotNull
     @Override
     public Collection<DeclarationDescriptor> getAllDescriptors() {
-        if (allDescriptors == null) {
-            allDescriptors = Sets.newHashSet();
+        synchronized (semanticServices.getDescriptorResolver()) {
+            if (allDescriptors == null) {
+                allDescriptors = Sets.newHashSet();
 
-            allDescriptors.addAll(semanticServices.getDescriptorResolver().resolveMethods(psiClass, descriptor));
+                allDescriptors.addAll(semanticServices.getDescriptorResolver().resolveMethods(psiClass, descriptor));
 
-            allDescriptors.addAll(semanticServices.getDescriptorResolver().resolveFieldGroup(descriptor, psiClass, staticMembers));
+                allDescriptors.addAll(semanticServices.getDescriptorResolver().resolveFieldGroup(descriptor, psiClass, staticMembers));
 
-            allDescriptors.addAll(semanticServices.getDescriptorResolver().resolveInnerClasses(descriptor, psiClass, staticMembers));
+                allDescriptors.addAll(semanticServices.getDescriptorResolver().resolveInnerClasses(descriptor, psiClass, staticMembers));
+            }
+            return allDescriptors;
         }
-        return allDescriptors;
     }
 
     private ClassifierDescriptor doGetClassifierDescriptor(String name) {
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.jet.lang.resolve.java;
+
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.lang.resolve.FqName;
+
+/**
+ * Knows which classes are present on the Java class path, so that lookups of absent classes do not have to search PSI.
+ */
+public abstract class JavaClassPathIndex {
+    @Nullable
+    public static JavaClassPathIndex getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, JavaClassPathIndex.class);
+    }
+
+    /**
+     * @return false only if there's definitely no class with the given name on the class path
+     */
+    public abstract boolean mayContainClass(@NotNull FqName qualifiedName);
+}
@@ -38,6 +38,7 @@ import org.jetbrains.jet.rt.signature.JetSignatureAdapter;
 import org.jetbrains.jet.rt.signature.JetSignatureExceptionsAdapter;
 import org.jetbrains.jet.rt.signature.JetSignatureReader;
 import org.jetbrains.jet.rt.signature.JetSignatureVisitor;
+import org.jetbrains.jet.util.Profiler;
 
 import javax.inject.Inject;
 import java.util.*;
@@ -132,7 +133,9 @@ public class JavaDescriptorResolver {
     private static abstract class ResolverScopeData {
         protected boolean kotlin;
         
-        private Map<String, NamedMembers> namedMembersMap;
+        /** Member groups resolved so far, a null value means there are no members of that name */
+        private Map<String, NamedMembers> namedMembersMap = new HashMap<String, NamedMembers>();
+        private boolean allNamedMembersResolved;
         
         @NotNull
         public abstract List<TypeParameterDescriptor> getTypeParameters();
@@ -198,6 +201,8 @@ public class JavaDescriptorResolver {
         }
     }
 
+    // Guarded by this, as well as the caches of the Java scopes: a parallel analysis resolves Java declarations on several threads.
+    // It's the only lock held while other scopes are read, so that threads reading scopes and resolving Java classes can't deadlock
     protected final Map<FqName, ResolverBinaryClassData> classDescriptorCache = Maps.newHashMap();
     protected final Map<FqName, ResolverNamespaceData> namespaceDescriptorCacheByFqn = Maps.newHashMap();
     protected final Map<PsiElement, ResolverNamespaceData> namespaceDescriptorCache = Maps.newHashMap();
@@ -236,7 +241,7 @@ public class JavaDescriptorResolver {
 
 
     @Nullable
-    public ClassDescriptor resolveClass(@NotNull FqName qualifiedName, @NotNull DescriptorSearchRule searchRule) {
+    public synchronized ClassDescriptor resolveClass(@NotNull FqName qualifiedName, @NotNull DescriptorSearchRule searchRule) {
 
         if (qualifiedName.getFqName().endsWith(JvmAbi.TRAIT_IMPL_SUFFIX)) {
             // TODO: only if -$$TImpl class is created by Kotlin
@@ -265,11 +270,17 @@ public class JavaDescriptorResolver {
         // Not let's take a descriptor of a Java class
         ResolverBinaryClassData classData = classDescriptorCache.get(qualifiedName);
         if (classData == null) {
-            PsiClass psiClass = psiClassFinder.findPsiClass(qualifiedName);
-            if (psiClass == null) {
-                return null;
+            Profiler.Section section = Profiler.start(Profiler.JAVA, "class", qualifiedName.getFqName());
+            try {
+                PsiClass psiClass = psiClassFinder.findPsiClass(qualifiedName);
+                if (psiClass == null) {
+                    return null;
+                }
+                classData = createJavaClassDescriptor(psiClass);
+            }
+            finally {
+                section.end();
             }
-            classData = createJavaClassDescriptor(psiClass);
         }
         return classData.getClassDescriptor();
     }
@@ -777,7 +788,7 @@ public class JavaDescriptorResolver {
     }
 
     @Nullable
-    public NamespaceDescriptor resolveNamespace(@NotNull FqName qualifiedName, @NotNull DescriptorSearchRule searchRule) {
+    public synchronized NamespaceDescriptor resolveNamespace(@NotNull FqName qualifiedName, @NotNull DescriptorSearchRule searchRule) {
         // First, let's check that there is no Kotlin package:
         NamespaceDescriptor kotlinNamespaceDescriptor = semanticServices.getKotlinNamespaceDescriptor(qualifiedName);
         if (kotlinNamespaceDescriptor != null) {
@@ -979,10 +990,21 @@ public class JavaDescriptorResolver {
         }
     }
 
-    public Set<VariableDescriptor> resolveFieldGroupByName(@NotNull ClassOrNamespaceDescriptor owner, @NotNull PsiClass psiClass, String fieldName, boolean staticMembers) {
-        ResolverScopeData scopeData = getResolverScopeData(owner, new PsiClassWrapper(psiClass));
+    public synchronized Set<VariableDescriptor> resolveFieldGroupByName(@NotNull ClassOrNamespaceDescriptor owner, @NotNull PsiClass psiClass, String fieldName, boolean staticMembers) {
+        Profiler.Section section = Profiler.start(Profiler.JAVA, "fields", psiClass.getQualifiedName());
+        try {
+            return doResolveFieldGroupByName(owner, psiClass, fieldName, staticMembers);
+        }
+        finally {
+            section.end();
+        }
+    }
 
-        NamedMembers namedMembers = scopeData.namedMembersMap.get(fieldName);
+    private Set<VariableDescriptor> doResolveFieldGroupByName(@NotNull ClassOrNamespaceDescriptor owner, @NotNull PsiClass psiClass, String fieldName, boolean staticMembers) {
+        PsiClassWrapper psiClassWrapper = new PsiClassWrapper(psiClass);
+        ResolverScopeData scopeData = getResolverScopeData(owner, psiClassWrapper);
+
+        NamedMembers namedMembers = getNamedMembers(owner, scopeData, psiClassWrapper, fieldName);
         if (namedMembers == null) {
             return Collections.emptySet();
         }
@@ -1000,12 +1022,13 @@ public class JavaDescriptorResolver {
     }
     
     @NotNull
-    public Set<VariableDescriptor> resolveFieldGroup(@NotNull ClassOrNamespaceDescriptor owner, @NotNull PsiClass psiClass, boolean staticMembers) {
+    public synchronized Set<VariableDescriptor> resolveFieldGroup(@NotNull ClassOrNamespaceDescriptor owner, @NotNull PsiClass psiClass, boolean staticMembers) {
 
-        ResolverScopeData scopeData = getResolverScopeData(owner, new PsiClassWrapper(psiClass));
+        PsiClassWrapper psiClassWrapper = new PsiClassWrapper(psiClass);
+        ResolverScopeData scopeData = getResolverScopeData(owner, psiClassWrapper);
         
         Set<VariableDescriptor> descriptors = Sets.newHashSet();
-        Map<String, NamedMembers> membersForProperties = scopeData.namedMembersMap;
+        Map<String, NamedMembers> membersForProperties = getAllNamedMembers(owner, scopeData, psiClassWrapper);
         for (Map.Entry<String, NamedMembers> entry : membersForProperties.entrySet()) {
             NamedMembers namedMembers = entry.getValue();
             String propertyName = entry.getKey();
@@ -1329,13 +1352,10 @@ public class JavaDescriptorResolver {
     private ResolverScopeData getResolverScopeData(@NotNull ClassOrNamespaceDescriptor owner, PsiClassWrapper psiClass) {
         // TODO: store scopeData in Java*Scope
         ResolverScopeData scopeData;
-        boolean staticMembers;
         if (owner instanceof JavaNamespaceDescriptor) {
             scopeData = namespaceDescriptorCacheByFqn.get(((JavaNamespaceDescriptor) owner).getQualifiedName());
-            staticMembers = true;
         } else if (owner instanceof ClassDescriptor) {
             scopeData = classDescriptorCache.get(new FqName(psiClass.getQualifiedName()));
-            staticMembers = false;
         } else {
             throw new IllegalStateException("unknown owner: " + owner.getClass().getName());
         }
@@ -1343,21 +1363,65 @@ public class JavaDescriptorResolver {
             throw new IllegalStateException();
         }
         
-        if (scopeData.namedMembersMap == null) {
-            scopeData.namedMembersMap = JavaDescriptorResolverHelper.getNamedMembers(psiClass, staticMembers, scopeData.kotlin);
-        }
-        
         return scopeData;
     }
 
+    /**
+     * Groups the members of the given name only, so that a lookup in a big class doesn't process all of its members.
+     */
+    @Nullable
+    private static NamedMembers getNamedMembers(
+            @NotNull ClassOrNamespaceDescriptor owner, @NotNull ResolverScopeData scopeData, @NotNull PsiClassWrapper psiClass,
+            @NotNull String name
+    ) {
+        if (scopeData.allNamedMembersResolved || scopeData.namedMembersMap.containsKey(name)) {
+            return scopeData.namedMembersMap.get(name);
+        }
+        NamedMembers namedMembers = JavaDescriptorResolverHelper.getNamedMembers(psiClass, name, isStaticMembersOwner(owner), scopeData.kotlin);
+        scopeData.namedMembersMap.put(name, namedMembers);
+        return namedMembers;
+    }
+
     @NotNull
-    public Set<FunctionDescriptor> resolveFunctionGroup(@NotNull ClassOrNamespaceDescriptor descriptor, @NotNull PsiClass psiClass, @NotNull String methodName, boolean staticMembers) {
+    private static Map<String, NamedMembers> getAllNamedMembers(
+            @NotNull ClassOrNamespaceDescriptor owner, @NotNull ResolverScopeData scopeData, @NotNull PsiClassWrapper psiClass
+    ) {
+        if (!scopeData.allNamedMembersResolved) {
+            Map<String, NamedMembers> namedMembersMap =
+                    JavaDescriptorResolverHelper.getNamedMembers(psiClass, isStaticMembersOwner(owner), scopeData.kotlin);
+            // groups resolved by name may already hold descriptors
+            for (Map.Entry<String, NamedMembers> entry : scopeData.namedMembersMap.entrySet()) {
+                if (entry.getValue() != null) {
+                    namedMembersMap.put(entry.getKey(), entry.getValue());
+                }
+            }
+            scopeData.namedMembersMap = namedMembersMap;
+            scopeData.allNamedMembersResolved = true;
+        }
+        return scopeData.namedMembersMap;
+    }
 
-        ResolverScopeData resolverScopeData = getResolverScopeData(descriptor, new PsiClassWrapper(psiClass));
+    private static boolean isStaticMembersOwner(@NotNull ClassOrNamespaceDescriptor owner) {
+        return owner instanceof JavaNamespaceDescriptor;
+    }
 
-        Map<String, NamedMembers> namedMembersMap = resolverScopeData.namedMembersMap;
+    @NotNull
+    public synchronized Set<FunctionDescriptor> resolveFunctionGroup(@NotNull ClassOrNamespaceDescriptor descriptor, @NotNull PsiClass psiClass, @NotNull String methodName, boolean staticMembers) {
+        Profiler.Section section = Profiler.start(Profiler.JAVA, "functions", psiClass.getQualifiedName());
+        try {
+            return doResolveFunctionGroup(descriptor, psiClass, methodName, staticMembers);
+        }
+        finally {
+            section.end();
+        }
+    }
+
+    @NotNull
+    private Set<FunctionDescriptor> doResolveFunctionGroup(@NotNull ClassOrNamespaceDescriptor descriptor, @NotNull PsiClass psiClass, @NotNull String methodName, boolean staticMembers) {
+        PsiClassWrapper psiClassWrapper = new PsiClassWrapper(psiClass);
+        ResolverScopeData resolverScopeData = getResolverScopeData(descriptor, psiClassWrapper);
 
-        NamedMembers namedMembers = namedMembersMap.get(methodName);
+        NamedMembers namedMembers = getNamedMembers(descriptor, resolverScopeData, psiClassWrapper, methodName);
         if (namedMembers != null && namedMembers.methods != null) {
             TypeSubstitutor typeSubstitutor = typeSubstitutorForGenericSupertypes(resolverScopeData);
 
@@ -1549,14 +1613,15 @@ public class JavaDescriptorResolver {
         return annotation;
     }
 
-    public List<FunctionDescriptor> resolveMethods(@NotNull PsiClass psiClass, @NotNull ClassOrNamespaceDescriptor containingDeclaration) {
-        ResolverScopeData scopeData = getResolverScopeData(containingDeclaration, new PsiClassWrapper(psiClass));
+    public synchronized List<FunctionDescriptor> resolveMethods(@NotNull PsiClass psiClass, @NotNull ClassOrNamespaceDescriptor containingDeclaration) {
+        PsiClassWrapper psiClassWrapper = new PsiClassWrapper(psiClass);
+        ResolverScopeData scopeData = getResolverScopeData(containingDeclaration, psiClassWrapper);
 
         TypeSubstitutor substitutorForGenericSupertypes = typeSubstitutorForGenericSupertypes(scopeData);
 
         List<FunctionDescriptor> functions = new ArrayList<FunctionDescriptor>();
 
-        for (Map.Entry<String, NamedMembers> entry : scopeData.namedMembersMap.entrySet()) {
+        for (Map.Entry<String, NamedMembers> entry : getAllNamedMembers(containingDeclaration, scopeData, psiClassWrapper).entrySet()) {
             String methodName = entry.getKey();
             NamedMembers namedMembers = entry.getValue();
             resolveNamedGroupFunctions(containingDeclaration, psiClass, substitutorForGenericSupertypes, namedMembers, methodName, scopeData);
@@ -1649,7 +1714,7 @@ public class JavaDescriptorResolver {
                  PACKAGE_VISIBILITY));
     }
 
-    public List<ClassDescriptor> resolveInnerClasses(DeclarationDescriptor owner, PsiClass psiClass, boolean staticMembers) {
+    public synchronized List<ClassDescriptor> resolveInnerClasses(DeclarationDescriptor owner, PsiClass psiClass, boolean staticMembers) {
         if (staticMembers) {
             return new ArrayList<ClassDescriptor>(0);
         }
@@ -17,16 +17,15 @@
 package org.jetbrains.jet.lang.resolve.java;
 
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiField;
 import com.intellij.psi.PsiMember;
 import com.intellij.psi.PsiMethod;
 import com.intellij.psi.PsiParameter;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 /**
  * @author Stepan Koltsov
@@ -52,6 +51,37 @@ class JavaDescriptorResolverHelper {
             processFields();
             processMethods();
         }
+
+        /**
+         * Only looks at the fields and methods that may contribute to the group of the given name.
+         * The group is the same as the one {@link #run()} would build.
+         */
+        @Nullable
+        public NamedMembers run(@NotNull String name) {
+            PsiClass aClass = psiClass.getPsiClass();
+            if (!kotlin) {
+                PsiField field = aClass.findFieldByName(name, true);
+                if (field != null) {
+                    processField(field);
+                }
+            }
+
+            if (aClass.findMethodsByName(name, true).length > 0) {
+                getNamedMembers(name);
+            }
+
+            Set<PsiMethod> methods = new LinkedHashSet<PsiMethod>();
+            Collections.addAll(methods, aClass.findMethodsByName(name, false));
+            for (String accessorSuffix : new LinkedHashSet<String>(Arrays.asList(name, StringUtil.capitalize(name)))) {
+                Collections.addAll(methods, aClass.findMethodsByName(JvmAbi.GETTER_PREFIX + accessorSuffix, false));
+                Collections.addAll(methods, aClass.findMethodsByName(JvmAbi.SETTER_PREFIX + accessorSuffix, false));
+            }
+            for (PsiMethod method : methods) {
+                processMethod(method);
+            }
+
+            return namedMembersMap.get(name);
+        }
         
         private NamedMembers getNamedMembers(String name) {
             if (name.length() == 0) {
@@ -84,20 +114,28 @@ class JavaDescriptorResolverHelper {
         
         private void processFields() {
             if (!kotlin) {
-                for (PsiField field0 : psiClass.getPsiClass().getAllFields()) {
-                    PsiFieldWrapper field = new PsiFieldWrapper(field0);
+                Set<String> names = new HashSet<String>();
+                for (PsiField field : psiClass.getPsiClass().getAllFields()) {
+                    // a field hides fields of the same name that come later, i.e. from supertypes
+                    if (names.add(field.getName())) {
+                        processField(field);
+                    }
+                }
+            }
+        }
 
-                    // group must be created even for excluded field
-                    NamedMembers namedMembers = getNamedMembers(field.getName());
+        private void processField(PsiField field0) {
+            PsiFieldWrapper field = new PsiFieldWrapper(field0);
 
-                    if (!includeMember(field)) {
-                        continue;
-                    }
+            // group must be created even for excluded field
+            NamedMembers namedMembers = getNamedMembers(field.getName());
 
-                    TypeSource type = new TypeSource("", field.getType(), field0);
-                    namedMembers.addPropertyAccessor(new PropertyAccessorData(field, type, null));
-                }
+            if (!includeMember(field)) {
+                return;
             }
+
+            TypeSource type = new TypeSource("", field.getType(), field0);
+            namedMembers.addPropertyAccessor(new PropertyAccessorData(field, type, null));
         }
 
         private void processMethods() {
@@ -107,101 +145,105 @@ class JavaDescriptorResolverHelper {
             }
 
             
-            for (PsiMethod method0 : psiClass.getPsiClass().getMethods()) {
-                PsiMethodWrapper method = new PsiMethodWrapper(method0);
-                
-                if (!includeMember(method)) {
-                    continue;
-                }
+            for (PsiMethod method : psiClass.getPsiClass().getMethods()) {
+                processMethod(method);
+            }
+        }
 
-                // TODO: "is" prefix
-                // TODO: remove getJavaClass
-                if (method.getName().startsWith(JvmAbi.GETTER_PREFIX) && method.getName().length() > JvmAbi.GETTER_PREFIX.length()) {
-
-                    String propertyName = StringUtil.decapitalize(method.getName().substring(JvmAbi.GETTER_PREFIX.length()));
-                    NamedMembers members = getNamedMembers(propertyName);
-
-                    // TODO: some java properties too
-                    if (method.getJetMethod().kind() == JvmStdlibNames.JET_METHOD_KIND_PROPERTY) {
-
-                        int i = 0;
-
-                        TypeSource receiverType;
-                        if (i < method.getParameters().size() && method.getParameter(i).getJetValueParameter().receiver()) {
-                            PsiParameterWrapper receiverParameter = method.getParameter(i);
-                            receiverType = new TypeSource(receiverParameter.getJetValueParameter().type(), receiverParameter.getPsiParameter().getType(), receiverParameter.getPsiParameter());
-                            ++i;
-                        } else {
-                            receiverType = null;
-                        }
-
-                        while (i < method.getParameters().size() && method.getParameter(i).getJetTypeParameter().isDefined()) {
-                            // TODO: store is reified
-                            ++i;
-                        }
-
-                        if (i != method.getParameters().size()) {
-                            // TODO: report error properly
-                            throw new IllegalStateException("something is wrong with method " + method0);
-                        }
-
-                        // TODO: what if returnType == null?
-                        TypeSource propertyType = new TypeSource(method.getJetMethod().propertyType(), method.getReturnType(), method.getPsiMethod());
-
-                        members.addPropertyAccessor(new PropertyAccessorData(method, true, propertyType, receiverType));
-                    } else if (!kotlin && false) {
-                        if (method.getParameters().size() == 0) {
-                            TypeSource propertyType = new TypeSource("", method.getReturnType(), method.getPsiMethod());
-                            members.addPropertyAccessor(new PropertyAccessorData(method, true, propertyType, null));
-                        }
-                    }
+        private void processMethod(PsiMethod method0) {
+            PsiMethodWrapper method = new PsiMethodWrapper(method0);
+            
+            if (!includeMember(method)) {
+                return;
+            }
 
-                } else if (method.getName().startsWith(JvmAbi.SETTER_PREFIX) && method.getName().length() > JvmAbi.SETTER_PREFIX.length()) {
+            // TODO: "is" prefix
+            // TODO: remove getJavaClass
+            if (method.getName().startsWith(JvmAbi.GETTER_PREFIX) && method.getName().length() > JvmAbi.GETTER_PREFIX.length()) {
 
-                    String propertyName = StringUtil.decapitalize(method.getName().substring(JvmAbi.SETTER_PREFIX.length()));
-                    NamedMembers members = getNamedMembers(propertyName);
+                String propertyName = StringUtil.decapitalize(method.getName().substring(JvmAbi.GETTER_PREFIX.length()));
+                NamedMembers members = getNamedMembers(propertyName);
 
-                    if (method.getJetMethod().kind() == JvmStdlibNames.JET_METHOD_KIND_PROPERTY) {
-                        if (method.getParameters().size() == 0) {
-                            // TODO: report error properly
-                            throw new IllegalStateException();
-                        }
+                // TODO: some java properties too
+                if (method.getJetMethod().kind() == JvmStdlibNames.JET_METHOD_KIND_PROPERTY) {
 
-                        int i = 0;
+                    int i = 0;
 
-                        TypeSource receiverType = null;
-                        PsiParameterWrapper p1 = method.getParameter(0);
-                        if (p1.getJetValueParameter().receiver()) {
-                            receiverType = new TypeSource(p1.getJetValueParameter().type(), p1.getPsiParameter().getType(), p1.getPsiParameter());
-                            ++i;
-                        }
+                    TypeSource receiverType;
+                    if (i < method.getParameters().size() && method.getParameter(i).getJetValueParameter().receiver()) {
+                        PsiParameterWrapper receiverParameter = method.getParameter(i);
+                        receiverType = new TypeSource(receiverParameter.getJetValueParameter().type(), receiverParameter.getPsiParameter().getType(), receiverParameter.getPsiParameter());
+                        ++i;
+                    } else {
+                        receiverType = null;
+                    }
 
-                        while (i < method.getParameters().size() && method.getParameter(i).getJetTypeParameter().isDefined()) {
-                            ++i;
-                        }
+                    while (i < method.getParameters().size() && method.getParameter(i).getJetTypeParameter().isDefined()) {
+                        // TODO: store is reified
+                        ++i;
+                    }
 
-                        if (i + 1 != method.getParameters().size()) {
-                            throw new IllegalStateException();
-                        }
+                    if (i != method.getParameters().size()) {
+                        // TODO: report error properly
+                        throw new IllegalStateException("something is wrong with method " + method0);
+                    }
 
-                        PsiParameterWrapper propertyTypeParameter = method.getParameter(i);
-                        TypeSource propertyType = new TypeSource(method.getJetMethod().propertyType(), propertyTypeParameter.getPsiParameter().getType(), propertyTypeParameter.getPsiParameter());
+                    // TODO: what if returnType == null?
+                    TypeSource propertyType = new TypeSource(method.getJetMethod().propertyType(), method.getReturnType(), method.getPsiMethod());
 
-                        members.addPropertyAccessor(new PropertyAccessorData(method, false, propertyType, receiverType));
-                    } else if (!kotlin && false) {
-                        if (method.getParameters().size() == 1) {
-                            PsiParameter psiParameter = method.getParameters().get(0).getPsiParameter();
-                            TypeSource propertyType = new TypeSource("", psiParameter.getType(), psiParameter);
-                            members.addPropertyAccessor(new PropertyAccessorData(method, false, propertyType, null));
-                        }
+                    members.addPropertyAccessor(new PropertyAccessorData(method, true, propertyType, receiverType));
+                } else if (!kotlin && false) {
+                    if (method.getParameters().size() == 0) {
+                        TypeSource propertyType = new TypeSource("", method.getReturnType(), method.getPsiMethod());
+                        members.addPropertyAccessor(new PropertyAccessorData(method, true, propertyType, null));
                     }
                 }
-                
-                if (method.getJetMethod().kind() != JvmStdlibNames.JET_METHOD_KIND_PROPERTY) {
-                    NamedMembers namedMembers = getNamedMembers(method.getName());
-                    namedMembers.addMethod(method);
+
+            } else if (method.getName().startsWith(JvmAbi.SETTER_PREFIX) && method.getName().length() > JvmAbi.SETTER_PREFIX.length()) {
+
+                String propertyName = StringUtil.decapitalize(method.getName().substring(JvmAbi.SETTER_PREFIX.length()));
+                NamedMembers members = getNamedMembers(propertyName);
+
+                if (method.getJetMethod().kind() == JvmStdlibNames.JET_METHOD_KIND_PROPERTY) {
+                    if (method.getParameters().size() == 0) {
+                        // TODO: report error properly
+                        throw new IllegalStateException();
+                    }
+
+                    int i = 0;
+
+                    TypeSource receiverType = null;
+                    PsiParameterWrapper p1 = method.getParameter(0);
+                    if (p1.getJetValueParameter().receiver()) {
+                        receiverType = new TypeSource(p1.getJetValueParameter().type(), p1.getPsiParameter().getType(), p1.getPsiParameter());
+                        ++i;
+                    }
+
+                    while (i < method.getParameters().size() && method.getParameter(i).getJetTypeParameter().isDefined()) {
+                        ++i;
+                    }
+
+                    if (i + 1 != method.getParameters().size()) {
+                        throw new IllegalStateException();
+                    }
+
+                    PsiParameterWrapper propertyTypeParameter = method.getParameter(i);
+                    TypeSource propertyType = new TypeSource(method.getJetMethod().propertyType(), propertyTypeParameter.getPsiParameter().getType(), propertyTypeParameter.getPsiParameter());
+
+                    members.addPropertyAccessor(new PropertyAccessorData(method, false, propertyType, receiverType));
+                } else if (!kotlin && false) {
+                    if (method.getParameters().size() == 1) {
+                        PsiParameter psiParameter = method.getParameters().get(0).getPsiParameter();
+                        TypeSource propertyType = new TypeSource("", psiParameter.getType(), psiParameter);
+                        members.addPropertyAccessor(new PropertyAccessorData(method, false, propertyType, null));
+                    }
                 }
             }
+            
+            if (method.getJetMethod().kind() != JvmStdlibNames.JET_METHOD_KIND_PROPERTY) {
+                NamedMembers namedMembers = getNamedMembers(method.getName());
+                namedMembers.addMethod(method);
+            }
         }
     }
 
@@ -212,5 +254,10 @@ class JavaDescriptorResolverHelper {
         return builder.namedMembersMap;
     }
 
+    @Nullable
+    static NamedMembers getNamedMembers(@NotNull PsiClassWrapper psiClass, @NotNull String name, boolean staticMembers, boolean kotlin) {
+        return new Builder(psiClass, staticMembers, kotlin).run(name);
+    }
+
 
 }
@@ -98,54 +98,56 @@ public class JavaPackageScope extends JavaClassOrPackageScope {
     @NotNull
     @Override
     public Collection<DeclarationDescriptor> getAllDescriptors() {
-        if (allDescriptors == null) {
-            allDescriptors = Sets.newHashSet();
+        synchronized (semanticServices.getDescriptorResolver()) {
+            if (allDescriptors == null) {
+                allDescriptors = Sets.newHashSet();
 
-            if (psiClass != null) {
-                allDescriptors.addAll(semanticServices.getDescriptorResolver().resolveMethods(psiClass, descriptor));
+                if (psiClass != null) {
+                    allDescriptors.addAll(semanticServices.getDescriptorResolver().resolveMethods(psiClass, descriptor));
 
-                allDescriptors.addAll(semanticServices.getDescriptorResolver().resolveFieldGroup(descriptor, psiClass, staticMembers()));
-            }
+                    allDescriptors.addAll(semanticServices.getDescriptorResolver().resolveFieldGroup(descriptor, psiClass, staticMembers()));
+                }
 
-            final PsiPackage javaPackage = semanticServices.getPsiClassFinder().findPsiPackage(packageFQN);
+                final PsiPackage javaPackage = semanticServices.getPsiClassFinder().findPsiPackage(packageFQN);
 
-            if (javaPackage != null) {
-                boolean isKotlinNamespace = semanticServices.getKotlinNamespaceDescriptor(new FqName(javaPackage.getQualifiedName())) != null;
-                final JavaDescriptorResolver descriptorResolver = semanticServices.getDescriptorResolver();
+                if (javaPackage != null) {
+                    boolean isKotlinNamespace = semanticServices.getKotlinNamespaceDescriptor(new FqName(javaPackage.getQualifiedName())) != null;
+                    final JavaDescriptorResolver descriptorResolver = semanticServices.getDescriptorResolver();
 
-                for (PsiPackage psiSubPackage : javaPackage.getSubPackages()) {
-                    NamespaceDescriptor childNs = descriptorResolver.resolveNamespace(new FqName(psiSubPackage.getQualifiedName()), DescriptorSearchRule.IGNORE_IF_FOUND_IN_KOTLIN);
-                    if (childNs != null) {
-                        allDescriptors.add(childNs);
+                    for (PsiPackage psiSubPackage : javaPackage.getSubPackages()) {
+                        NamespaceDescriptor childNs = descriptorResolver.resolveNamespace(new FqName(psiSubPackage.getQualifiedName()), DescriptorSearchRule.IGNORE_IF_FOUND_IN_KOTLIN);
+                        if (childNs != null) {
+                            allDescriptors.add(childNs);
+                        }
                     }
-                }
 
-                for (PsiClass psiClass : javaPackage.getClasses()) {
-                    if (isKotlinNamespace && JvmAbi.PACKAGE_CLASS.equals(psiClass.getName())) {
-                        continue;
-                    }
+                    for (PsiClass psiClass : javaPackage.getClasses()) {
+                        if (isKotlinNamespace && JvmAbi.PACKAGE_CLASS.equals(psiClass.getName())) {
+                            continue;
+                        }
                     
-                    if (psiClass instanceof JetJavaMirrorMarker) {
-                        continue;
-                    }
+                        if (psiClass instanceof JetJavaMirrorMarker) {
+                            continue;
+                        }
 
-                    // TODO: Temp hack for collection function descriptors from java
-                    if (JvmAbi.PACKAGE_CLASS.equals(psiClass.getName())) {
-                        continue;
-                    }
+                        // TODO: Temp hack for collection function descriptors from java
+                        if (JvmAbi.PACKAGE_CLASS.equals(psiClass.getName())) {
+                            continue;
+                        }
 
-                    if (psiClass.hasModifierProperty(PsiModifier.PUBLIC)) {
-                        ClassDescriptor classDescriptor = descriptorResolver
-                                .resolveClass(new FqName(psiClass.getQualifiedName()), DescriptorSearchRule.IGNORE_IF_FOUND_IN_KOTLIN);
-                        if (classDescriptor != null) {
-                            allDescriptors.add(classDescriptor);
+                        if (psiClass.hasModifierProperty(PsiModifier.PUBLIC)) {
+                            ClassDescriptor classDescriptor = descriptorResolver
+                                    .resolveClass(new FqName(psiClass.getQualifiedName()), DescriptorSearchRule.IGNORE_IF_FOUND_IN_KOTLIN);
+                            if (classDescriptor != null) {
+                                allDescriptors.add(classDescriptor);
+                            }
                         }
                     }
                 }
             }
-        }
 
-        return allDescriptors;
+            return allDescriptors;
+        }
     }
 
     @NotNull
@@ -43,6 +43,8 @@ public class PsiClassFinderForJvm implements PsiClassFinder {
     private AltClassFinder altClassFinder;
     private GlobalSearchScope javaSearchScope;
     private JavaPsiFacade javaFacade;
+    @Nullable
+    private JavaClassPathIndex classPathIndex;
 
     @Inject
     public void setProject(Project project) {
@@ -59,13 +61,16 @@ public class PsiClassFinderForJvm implements PsiClassFinder {
             }
         };
         this.javaFacade = JavaPsiFacade.getInstance(project);
+        this.classPathIndex = JavaClassPathIndex.getInstance(project);
     }
 
 
     @Override
     @Nullable
     public PsiClass findPsiClass(@NotNull FqName qualifiedName) {
-        PsiClass original = javaFacade.findClass(qualifiedName.getFqName(), javaSearchScope);
+        PsiClass original = classPathIndex == null || classPathIndex.mayContainClass(qualifiedName)
+                            ? javaFacade.findClass(qualifiedName.getFqName(), javaSearchScope)
+                            : null;
         PsiClass altClass = altClassFinder.findClass(qualifiedName);
         PsiClass result = original;
         if (altClass != null) {
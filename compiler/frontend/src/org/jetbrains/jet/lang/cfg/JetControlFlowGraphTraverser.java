@@ -24,19 +24,23 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.lang.cfg.pseudocode.*;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 /**
+ * Solves dataflow problems on pseudocode with a worklist: every instruction (including the instructions of local declarations,
+ * if {@code lookInside} is set) gets an index in reverse postorder of the dataflow graph, the data is kept in arrays by these
+ * indices, and only the instructions whose inputs changed are recomputed, in reverse postorder, until nothing changes.
+ *
  * @author svtk
  */
 public class JetControlFlowGraphTraverser<D> {
     private final Pseudocode pseudocode;
     private final boolean lookInside;
     private final boolean straightDirection;
-    private final Map<Instruction, Pair<D, D>> dataMap = Maps.newLinkedHashMap();
+
+    private final Map<Instruction, Integer> indices = Maps.newHashMap();
+    private Instruction[] instructions;
+    private Pair<D, D>[] data;
 
     public static <D> JetControlFlowGraphTraverser<D> create(@NotNull Pseudocode pseudocode, boolean lookInside, boolean straightDirection) {
         return new JetControlFlowGraphTraverser<D>(pseudocode, lookInside, straightDirection);
@@ -53,93 +57,196 @@ public class JetControlFlowGraphTraverser<D> {
         return straightDirection ? pseudocode.getEnterInstruction() : pseudocode.getSinkInstruction();
     }
 
+    @NotNull
+    private Instruction getLastInstruction(@NotNull Pseudocode pseudocode) {
+        return straightDirection ? pseudocode.getSinkInstruction() : pseudocode.getEnterInstruction();
+    }
+
+    @NotNull
+    private Collection<Instruction> getPreviousInstructions(@NotNull Instruction instruction) {
+        return straightDirection ? instruction.getPreviousInstructions() : instruction.getNextInstructions();
+    }
+
     public void collectInformationFromInstructionGraph(
             @NotNull D initialDataValue,
             @NotNull D initialDataValueForEnterInstruction,
             @NotNull InstructionDataMergeStrategy<D> instructionDataMergeStrategy) {
-        initializeDataMap(pseudocode, initialDataValue);
-        dataMap.put(getStartInstruction(pseudocode),
-                    Pair.create(initialDataValueForEnterInstruction, initialDataValueForEnterInstruction));
-
-        boolean[] changed = new boolean[1];
-        changed[0] = true;
-        while (changed[0]) {
-            changed[0] = false;
-            traverseSubGraph(pseudocode, instructionDataMergeStrategy, Collections.<Instruction>emptyList(), changed, false);
+        // Inputs of an instruction are the instructions whose exit data is merged into its enter data
+        List<Instruction> linearOrder = Lists.newArrayList();
+        Map<Instruction, Collection<Instruction>> inputs = Maps.newHashMap();
+        collectInputs(pseudocode, Collections.<Instruction>emptyList(), linearOrder, inputs);
+        Instruction start = getStartInstruction(pseudocode);
+
+        computeReversePostorder(start, linearOrder, inputs);
+        int count = instructions.length;
+
+        int[][] inputIndices = new int[count][];
+        List<List<Integer>> dependents = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            dependents.add(Lists.<Integer>newArrayList());
+        }
+        for (int i = 0; i < count; i++) {
+            Collection<Instruction> instructionInputs = inputs.get(instructions[i]);
+            List<Integer> known = Lists.newArrayListWithCapacity(instructionInputs.size());
+            for (Instruction input : instructionInputs) {
+                Integer index = indices.get(input);
+                if (index != null) {
+                    known.add(index);
+                    dependents.get(index).add(i);
+                }
+            }
+            inputIndices[i] = toArray(known);
+        }
+
+        //noinspection unchecked
+        data = new Pair[count];
+        Arrays.fill(data, Pair.create(initialDataValue, initialDataValue));
+        int startIndex = indices.get(start);
+        data[startIndex] = Pair.create(initialDataValueForEnterInstruction, initialDataValueForEnterInstruction);
+
+        BitSet pending = new BitSet(count);
+        pending.set(0, count);
+        pending.clear(startIndex);
+        while (!pending.isEmpty()) {
+            for (int i = pending.nextSetBit(0); i >= 0; i = pending.nextSetBit(i + 1)) {
+                pending.clear(i);
+                Pair<D, D> newValue = computeData(i, inputIndices[i], instructionDataMergeStrategy);
+                if (!newValue.equals(data[i])) {
+                    data[i] = newValue;
+                    for (int dependent : dependents.get(i)) {
+                        if (dependent != startIndex) {
+                            pending.set(dependent);
+                        }
+                    }
+                }
+            }
         }
     }
 
-    private void initializeDataMap(
-            @NotNull Pseudocode pseudocode,
-            @NotNull D initialDataValue) {
-        List<Instruction> instructions = pseudocode.getInstructions();
-        Pair<D, D> initialPair = Pair.create(initialDataValue, initialDataValue);
-        for (Instruction instruction : instructions) {
-            dataMap.put(instruction, initialPair);
-            if (lookInside && instruction instanceof LocalDeclarationInstruction) {
-                initializeDataMap(((LocalDeclarationInstruction) instruction).getBody(), initialDataValue);
+    @NotNull
+    private Pair<D, D> computeData(int index, @NotNull int[] inputIndices, @NotNull InstructionDataMergeStrategy<D> instructionDataMergeStrategy) {
+        Instruction instruction = instructions[index];
+        if (lookInside && instruction instanceof LocalDeclarationInstruction) {
+            // The only input is the last instruction of the local declaration, its data passes through
+            return data[inputIndices[0]];
+        }
+
+        // The merge is idempotent, so equal data coming from several edges is passed once (comparing by identity is enough)
+        List<D> incomingEdgesData = Lists.newArrayListWithCapacity(inputIndices.length);
+        for (int inputIndex : inputIndices) {
+            D incoming = data[inputIndex].getSecond();
+            if (!containsIdentical(incomingEdgesData, incoming)) {
+                incomingEdgesData.add(incoming);
             }
         }
+        return instructionDataMergeStrategy.execute(instruction, incomingEdgesData);
     }
 
-    private void traverseSubGraph(
+    private static <D> boolean containsIdentical(@NotNull List<D> list, @NotNull D value) {
+        for (D d : list) {
+            if (d == value) return true;
+        }
+        return false;
+    }
+
+    private void collectInputs(
             @NotNull Pseudocode pseudocode,
-            @NotNull InstructionDataMergeStrategy<D> instructionDataMergeStrategy,
             @NotNull Collection<Instruction> previousSubGraphInstructions,
-            boolean[] changed,
-            boolean isLocal) {
-        List<Instruction> instructions = pseudocode.getInstructions();
-        Instruction startInstruction = getStartInstruction(pseudocode);
-
+            @NotNull List<Instruction> linearOrder,
+            @NotNull Map<Instruction, Collection<Instruction>> inputs) {
+        List<Instruction> pseudocodeInstructions = pseudocode.getInstructions();
         if (!straightDirection) {
-            instructions = Lists.newArrayList(instructions);
-            Collections.reverse(instructions);
+            pseudocodeInstructions = Lists.newArrayList(pseudocodeInstructions);
+            Collections.reverse(pseudocodeInstructions);
         }
-        for (Instruction instruction : instructions) {
-            boolean isStart = straightDirection ? instruction instanceof SubroutineEnterInstruction : instruction instanceof SubroutineSinkInstruction;
-            if (!isLocal && isStart) continue;
-
-            Collection<Instruction> allPreviousInstructions;
-            Collection<Instruction> previousInstructions = straightDirection
-                                                           ? instruction.getPreviousInstructions()
-                                                           : instruction.getNextInstructions();
-
-            if (instruction == startInstruction && !previousSubGraphInstructions.isEmpty()) {
-                allPreviousInstructions = Lists.newArrayList(previousInstructions);
+        Instruction startInstruction = getStartInstruction(pseudocode);
+        for (Instruction instruction : pseudocodeInstructions) {
+            linearOrder.add(instruction);
+            Collection<Instruction> previousInstructions = getPreviousInstructions(instruction);
+            if (lookInside && instruction instanceof LocalDeclarationInstruction) {
+                Pseudocode subroutinePseudocode = ((LocalDeclarationInstruction) instruction).getBody();
+                collectInputs(subroutinePseudocode, previousInstructions, linearOrder, inputs);
+                inputs.put(instruction, Collections.singletonList(getLastInstruction(subroutinePseudocode)));
+            }
+            else if (instruction == startInstruction && !previousSubGraphInstructions.isEmpty()) {
+                Collection<Instruction> allPreviousInstructions = Lists.newArrayList(previousInstructions);
                 allPreviousInstructions.addAll(previousSubGraphInstructions);
+                inputs.put(instruction, allPreviousInstructions);
             }
             else {
-                allPreviousInstructions = previousInstructions;
+                inputs.put(instruction, previousInstructions);
             }
+        }
+    }
 
-            if (lookInside && instruction instanceof LocalDeclarationInstruction) {
-                Pseudocode subroutinePseudocode = ((LocalDeclarationInstruction) instruction).getBody();
-                traverseSubGraph(subroutinePseudocode, instructionDataMergeStrategy, previousInstructions, changed, true);
-                Instruction lastInstruction = straightDirection ? subroutinePseudocode.getSinkInstruction() : subroutinePseudocode.getEnterInstruction();
-                Pair<D, D> previousValue = dataMap.get(instruction);
-                Pair<D, D> newValue = dataMap.get(lastInstruction);
-                if (!previousValue.equals(newValue)) {
-                    changed[0] = true;
-                    dataMap.put(instruction, newValue);
+    /**
+     * Numbers the instructions in reverse postorder of the graph where the edges go from inputs to the instructions using them.
+     * Instructions unreachable from the start (dead code) follow in their linear order.
+     */
+    private void computeReversePostorder(
+            @NotNull Instruction start,
+            @NotNull List<Instruction> linearOrder,
+            @NotNull Map<Instruction, Collection<Instruction>> inputs) {
+        Map<Instruction, List<Instruction>> dependents = Maps.newHashMap();
+        for (Instruction instruction : linearOrder) {
+            for (Instruction input : inputs.get(instruction)) {
+                List<Instruction> list = dependents.get(input);
+                if (list == null) {
+                    list = Lists.newArrayList();
+                    dependents.put(input, list);
                 }
-                continue;
+                list.add(instruction);
             }
-            Pair<D, D> previousDataValue = dataMap.get(instruction);
-
-            Collection<D> incomingEdgesData = Sets.newHashSet();
+        }
 
-            for (Instruction previousInstruction : allPreviousInstructions) {
-                Pair<D, D> previousData = dataMap.get(previousInstruction);
-                if (previousData != null) {
-                    incomingEdgesData.add(previousData.getSecond());
+        List<Instruction> postorder = Lists.newArrayListWithCapacity(linearOrder.size());
+        Set<Instruction> visited = Sets.newHashSet();
+        // Iterative depth-first search: the stack holds instructions and the positions of their next dependents
+        List<Instruction> stack = Lists.newArrayList();
+        List<Integer> positions = Lists.newArrayList();
+        visited.add(start);
+        stack.add(start);
+        positions.add(0);
+        while (!stack.isEmpty()) {
+            int top = stack.size() - 1;
+            Instruction instruction = stack.get(top);
+            List<Instruction> next = dependents.get(instruction);
+            int position = positions.get(top);
+            if (next != null && position < next.size()) {
+                positions.set(top, position + 1);
+                Instruction dependent = next.get(position);
+                if (inputs.containsKey(dependent) && visited.add(dependent)) {
+                    stack.add(dependent);
+                    positions.add(0);
                 }
             }
-            Pair<D, D> mergedData = instructionDataMergeStrategy.execute(instruction, incomingEdgesData);
-            if (!mergedData.equals(previousDataValue)) {
-                changed[0] = true;
-                dataMap.put(instruction, mergedData);
+            else {
+                stack.remove(top);
+                positions.remove(top);
+                postorder.add(instruction);
             }
         }
+        Collections.reverse(postorder);
+
+        for (Instruction instruction : linearOrder) {
+            if (!visited.contains(instruction)) {
+                postorder.add(instruction);
+            }
+        }
+
+        instructions = postorder.toArray(new Instruction[postorder.size()]);
+        for (int i = 0; i < instructions.length; i++) {
+            indices.put(instructions[i], i);
+        }
+    }
+
+    @NotNull
+    private static int[] toArray(@NotNull List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
     }
 
     public void traverseAndAnalyzeInstructionGraph(
@@ -159,15 +266,24 @@ public class JetControlFlowGraphTraverser<D> {
             if (lookInside && instruction instanceof LocalDeclarationInstruction) {
                 traverseAndAnalyzeInstructionGraph(((LocalDeclarationInstruction) instruction).getBody(), instructionDataAnalyzeStrategy);
             }
-            Pair<D, D> pair = dataMap.get(instruction);
+            Pair<D, D> pair = getData(instruction);
             instructionDataAnalyzeStrategy.execute(instruction,
                                                    pair != null ? pair.getFirst() : null,
                                                    pair != null ? pair.getSecond() : null);
         }
     }
 
+    @Nullable
+    private Pair<D, D> getData(@NotNull Instruction instruction) {
+        if (data == null) return null;
+        Integer index = indices.get(instruction);
+        return index != null ? data[index] : null;
+    }
+
     public D getResultInfo() {
-        return dataMap.get(pseudocode.getExitInstruction()).getFirst();
+        Pair<D, D> exitData = getData(pseudocode.getExitInstruction());
+        assert exitData != null : "No data for the exit instruction";
+        return exitData.getFirst();
     }
     
     interface InstructionDataMergeStrategy<D> {
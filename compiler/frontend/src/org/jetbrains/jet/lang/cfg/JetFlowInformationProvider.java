@@ -455,12 +455,14 @@ public class JetFlowInformationProvider {
         }
     }
 
+    // The maps are never modified once created, so an instruction not changing anything shares its data with the previous one
     private Map<VariableDescriptor, VariableInitializers> addVariableInitializerFromCurrentInstructionIfAny(Instruction instruction, Map<VariableDescriptor, VariableInitializers> enterInstructionData) {
-        Map<VariableDescriptor, VariableInitializers> exitInstructionData = Maps.newHashMap(enterInstructionData);
+        Map<VariableDescriptor, VariableInitializers> exitInstructionData = enterInstructionData;
         if (instruction instanceof WriteValueInstruction) {
             VariableDescriptor variable = extractVariableDescriptorIfAny(instruction, false);
             VariableInitializers enterInitializers = enterInstructionData.get(variable);
             VariableInitializers initializationAtThisElement = new VariableInitializers(((WriteValueInstruction) instruction).getElement(), enterInitializers);
+            exitInstructionData = Maps.newHashMap(enterInstructionData);
             exitInstructionData.put(variable, initializationAtThisElement);
         }
         else if (instruction instanceof VariableDeclarationInstruction) {
@@ -473,6 +475,7 @@ public class JetFlowInformationProvider {
                     if (property.getInitializer() == null) {
                         boolean isInitialized = enterInitializers != null && enterInitializers.isInitialized();
                         VariableInitializers variableDeclarationInfo = new VariableInitializers(isInitialized, true);
+                        exitInstructionData = Maps.newHashMap(enterInstructionData);
                         exitInstructionData.put(variable, variableDeclarationInfo);
                     }
                 }
@@ -482,6 +485,9 @@ public class JetFlowInformationProvider {
     }
 
     private Map<VariableDescriptor, VariableInitializers> mergeIncomingEdgesData(Collection<Map<VariableDescriptor, VariableInitializers>> incomingEdgesData) {
+        if (incomingEdgesData.size() == 1) {
+            return incomingEdgesData.iterator().next();
+        }
         Set<VariableDescriptor> variablesInScope = Sets.newHashSet();
         for (Map<VariableDescriptor, VariableInitializers> edgeData : incomingEdgesData) {
             variablesInScope.addAll(edgeData.keySet());
@@ -559,19 +565,26 @@ public class JetFlowInformationProvider {
         traverser.collectInformationFromInstructionGraph(Collections.<VariableDescriptor, VariableStatus>emptyMap(), sinkInstructionData, new JetControlFlowGraphTraverser.InstructionDataMergeStrategy<Map<VariableDescriptor, VariableStatus>>() {
             @Override
             public Pair<Map<VariableDescriptor, VariableStatus>, Map<VariableDescriptor, VariableStatus>> execute(@NotNull Instruction instruction, @NotNull Collection<Map<VariableDescriptor, VariableStatus>> incomingEdgesData) {
-                Map<VariableDescriptor, VariableStatus> enterResult = Maps.newHashMap();
-                for (Map<VariableDescriptor, VariableStatus> edgeData : incomingEdgesData) {
-                    for (Map.Entry<VariableDescriptor, VariableStatus> entry : edgeData.entrySet()) {
-                        VariableDescriptor variableDescriptor = entry.getKey();
-                        VariableStatus variableStatus = entry.getValue();
-                        enterResult.put(variableDescriptor, variableStatus.merge(enterResult.get(variableDescriptor)));
+                // As with the initializers, the maps are never modified once created and are shared when nothing changes
+                Map<VariableDescriptor, VariableStatus> enterResult;
+                if (incomingEdgesData.size() == 1) {
+                    enterResult = incomingEdgesData.iterator().next();
+                }
+                else {
+                    enterResult = Maps.newHashMap();
+                    for (Map<VariableDescriptor, VariableStatus> edgeData : incomingEdgesData) {
+                        for (Map.Entry<VariableDescriptor, VariableStatus> entry : edgeData.entrySet()) {
+                            VariableDescriptor variableDescriptor = entry.getKey();
+                            VariableStatus variableStatus = entry.getValue();
+                            enterResult.put(variableDescriptor, variableStatus.merge(enterResult.get(variableDescriptor)));
+                        }
                     }
                 }
-                Map<VariableDescriptor, VariableStatus> exitResult = Maps.newHashMap(enterResult);
+                VariableStatus exitStatus = null;
                 VariableDescriptor variableDescriptor = extractVariableDescriptorIfAny(instruction, true);
                 if (variableDescriptor != null) {
                     if (instruction instanceof ReadValueInstruction) {
-                        exitResult.put(variableDescriptor, VariableStatus.READ);
+                        exitStatus = VariableStatus.READ;
                     }
                     else if (instruction instanceof WriteValueInstruction) {
                         VariableStatus variableStatus = enterResult.get(variableDescriptor);
@@ -579,14 +592,19 @@ public class JetFlowInformationProvider {
                         switch(variableStatus) {
                             case UNUSED:
                             case ONLY_WRITTEN:
-                                exitResult.put(variableDescriptor, VariableStatus.ONLY_WRITTEN);
+                                exitStatus = VariableStatus.ONLY_WRITTEN;
                                 break;
                             case WRITTEN:
                             case READ:
-                                exitResult.put(variableDescriptor, VariableStatus.WRITTEN);
+                                exitStatus = VariableStatus.WRITTEN;
                         }
                     }
                 }
+                Map<VariableDescriptor, VariableStatus> exitResult = enterResult;
+                if (exitStatus != null && exitStatus != enterResult.get(variableDescriptor)) {
+                    exitResult = Maps.newHashMap(enterResult);
+                    exitResult.put(variableDescriptor, exitStatus);
+                }
                 return new Pair<Map<VariableDescriptor, VariableStatus>, Map<VariableDescriptor, VariableStatus>>(enterResult, exitResult);
             }
         });
@@ -18,22 +18,27 @@ package org.jetbrains.jet.lang.resolve;
 
 import com.google.common.collect.Lists;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.lang.diagnostics.Diagnostic;
-import org.jetbrains.jet.util.slicedmap.MutableSlicedMap;
-import org.jetbrains.jet.util.slicedmap.ReadOnlySlice;
-import org.jetbrains.jet.util.slicedmap.SlicedMapImpl;
-import org.jetbrains.jet.util.slicedmap.WritableSlice;
+import org.jetbrains.jet.util.slicedmap.*;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * @author abreslav
  */
 public class BindingTraceContext implements BindingTrace {
-    private final List<Diagnostic> diagnostics = Lists.newArrayList();
+    private List<Diagnostic> diagnostics = Lists.newArrayList();
 
-    private final MutableSlicedMap map = SlicedMapImpl.create();
+    private MutableSlicedMap map = SlicedMapImpl.create();
+    private SlicedMap frozenMap = null;
+    @Nullable
+    private final ReadWriteLock lock;
 
     private final BindingContext bindingContext = new BindingContext() {
 
@@ -54,9 +59,46 @@ public class BindingTraceContext implements BindingTrace {
         }
     };
 
+    public BindingTraceContext() {
+        this(false);
+    }
+
+    /**
+     * @param threadSafe if true, the trace can be read and written by many threads at once (e.g. by a parallel analysis)
+     */
+    public BindingTraceContext(boolean threadSafe) {
+        lock = threadSafe ? new ReentrantReadWriteLock() : null;
+    }
+
+    /**
+     * Makes this trace immutable: nothing can be recorded or reported after this call.
+     * The binding context of a frozen trace can be safely read from many threads.
+     */
+    public void freeze() {
+        if (frozenMap != null) return;
+        frozenMap = FrozenSlicedMap.copyOf(map);
+        map = null;
+        diagnostics = Collections.unmodifiableList(diagnostics);
+    }
+
+    public boolean isFrozen() {
+        return frozenMap != null;
+    }
+
     @Override
     public void report(@NotNull Diagnostic diagnostic) {
-        diagnostics.add(diagnostic);
+        checkNotFrozen();
+        if (lock == null) {
+            diagnostics.add(diagnostic);
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            diagnostics.add(diagnostic);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
     }
 
     @Override
@@ -66,7 +108,18 @@ public class BindingTraceContext implements BindingTrace {
 
     @Override
     public <K, V> void record(WritableSlice<K, V> slice, K key, V value) {
-        map.put(slice, key, value);
+        checkNotFrozen();
+        if (lock == null) {
+            map.put(slice, key, value);
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            map.put(slice, key, value);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
     }
 
     @Override
@@ -76,12 +129,42 @@ public class BindingTraceContext implements BindingTrace {
 
     @Override
     public <K, V> V get(ReadOnlySlice<K, V> slice, K key) {
-        return map.get(slice, key);
+        if (lock == null || frozenMap != null) {
+            return getMap().get(slice, key);
+        }
+        lock.readLock().lock();
+        try {
+            return getMap().get(slice, key);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
     }
 
     @NotNull
     @Override
     public <K, V> Collection<K> getKeys(WritableSlice<K, V> slice) {
-        return map.getKeys(slice);
+        if (lock == null || frozenMap != null) {
+            return getMap().getKeys(slice);
+        }
+        lock.readLock().lock();
+        try {
+            // The live collection could change while it's iterated
+            return new ArrayList<K>(getMap().getKeys(slice));
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @NotNull
+    private SlicedMap getMap() {
+        return frozenMap != null ? frozenMap : map;
+    }
+
+    private void checkNotFrozen() {
+        if (frozenMap != null) {
+            throw new IllegalStateException("Binding trace is frozen");
+        }
     }
 }
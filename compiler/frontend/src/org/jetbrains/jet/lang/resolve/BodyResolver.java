@@ -107,11 +107,14 @@ public class BodyResolver {
         resolvePrimaryConstructorParameters();
 
         resolveSecondaryConstructorBodies();
-        resolveFunctionBodies();
 
-        if (!topDownAnalysisParameters.isDeclaredLocally()) {
+        // Bodies resolved in parallel must not infer types of other declarations: it would happen on several threads at once.
+        // Serial analysis infers them at the same point, so that diagnostics are reported in the same order
+        if (topDownAnalysisParameters.getThreadCount() > 1 || !topDownAnalysisParameters.isDeclaredLocally()) {
             computeDeferredTypes();
         }
+
+        resolveFunctionBodies();
     }
 
     private void resolveDelegationSpecifierLists() {
@@ -317,7 +320,7 @@ public class BodyResolver {
             MutableClassDescriptor classDescriptor = entry.getValue();
             ConstructorDescriptor unsubstitutedPrimaryConstructor = classDescriptor.getUnsubstitutedPrimaryConstructor();
             if (unsubstitutedPrimaryConstructor != null) {
-                checkDefaultParameterValues(klass.getPrimaryConstructorParameters(), unsubstitutedPrimaryConstructor.getValueParameters(), classDescriptor.getScopeForInitializers());
+                checkDefaultParameterValues(klass.getPrimaryConstructorParameters(), unsubstitutedPrimaryConstructor.getValueParameters(), classDescriptor.getScopeForInitializers(), trace);
             }
         }
     }
@@ -405,7 +408,7 @@ public class BodyResolver {
             expressionTypingServices.checkFunctionReturnType(scopeForConstructorBody, declaration, descriptor, JetStandardClasses.getUnitType(), trace);
         }
 
-        checkDefaultParameterValues(declaration.getValueParameters(), descriptor.getValueParameters(), scopeForConstructorBody);
+        checkDefaultParameterValues(declaration.getValueParameters(), descriptor.getValueParameters(), scopeForConstructorBody, trace);
     }
 
     private void resolvePropertyDeclarationBodies() {
@@ -521,19 +524,26 @@ public class BodyResolver {
     }
 
     private void resolveFunctionBodies() {
+        List<ParallelAnalysis.Task> tasks = new ArrayList<ParallelAnalysis.Task>(this.context.getFunctions().size());
         for (Map.Entry<JetNamedFunction, SimpleFunctionDescriptor> entry : this.context.getFunctions().entrySet()) {
-            JetNamedFunction declaration = entry.getKey();
-            SimpleFunctionDescriptor descriptor = entry.getValue();
+            final JetNamedFunction declaration = entry.getKey();
+            final SimpleFunctionDescriptor descriptor = entry.getValue();
 
-            computeDeferredType(descriptor.getReturnType());
-
-            JetScope declaringScope = this.context.getDeclaringScopes().get(declaration);
+            final JetScope declaringScope = this.context.getDeclaringScopes().get(declaration);
             assert declaringScope != null;
 
-            resolveFunctionBody(trace, declaration, descriptor, declaringScope);
+            tasks.add(new ParallelAnalysis.Task() {
+                @Override
+                public void run(@NotNull BindingTrace trace) {
+                    computeDeferredType(descriptor.getReturnType());
 
-            assert descriptor.getReturnType() != null;
+                    resolveFunctionBody(trace, declaration, descriptor, declaringScope);
+
+                    assert descriptor.getReturnType() != null;
+                }
+            });
         }
+        ParallelAnalysis.run(trace, topDownAnalysisParameters.getThreadCount(), tasks);
     }
 
     private void resolveFunctionBody(
@@ -552,12 +562,12 @@ public class BodyResolver {
         List<JetParameter> valueParameters = function.getValueParameters();
         List<ValueParameterDescriptor> valueParameterDescriptors = functionDescriptor.getValueParameters();
 
-        checkDefaultParameterValues(valueParameters, valueParameterDescriptors, functionInnerScope);
+        checkDefaultParameterValues(valueParameters, valueParameterDescriptors, functionInnerScope, trace);
 
         assert functionDescriptor.getReturnType() != null;
     }
 
-    private void checkDefaultParameterValues(List<JetParameter> valueParameters, List<ValueParameterDescriptor> valueParameterDescriptors, JetScope declaringScope) {
+    private void checkDefaultParameterValues(List<JetParameter> valueParameters, List<ValueParameterDescriptor> valueParameterDescriptors, JetScope declaringScope, BindingTrace trace) {
         for (int i = 0; i < valueParameters.size(); i++) {
             ValueParameterDescriptor valueParameterDescriptor = valueParameterDescriptors.get(i);
             if (valueParameterDescriptor.hasDefaultValue()) {
@@ -27,6 +27,8 @@ import org.jetbrains.jet.lang.types.JetType;
 import org.jetbrains.jet.lang.types.lang.JetStandardClasses;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import static org.jetbrains.jet.lang.types.TypeUtils.NO_EXPECTED_TYPE;
@@ -71,18 +73,28 @@ public class ControlFlowAnalyzer {
             if (!context.completeAnalysisNeeded(objectDeclaration)) continue;
             checkClassOrObject(objectDeclaration);
         }
+        List<ParallelAnalysis.Task> tasks = new ArrayList<ParallelAnalysis.Task>(context.getFunctions().size());
         for (Map.Entry<JetNamedFunction, SimpleFunctionDescriptor> entry : context.getFunctions().entrySet()) {
-            JetNamedFunction function = entry.getKey();
+            final JetNamedFunction function = entry.getKey();
             SimpleFunctionDescriptor functionDescriptor = entry.getValue();
             if (!context.completeAnalysisNeeded(function)) continue;
             final JetType expectedReturnType = !function.hasBlockBody() && !function.hasDeclaredReturnType()
                                                ? NO_EXPECTED_TYPE
                                                : functionDescriptor.getReturnType();
-            checkFunction(function, expectedReturnType);
+            tasks.add(new ParallelAnalysis.Task() {
+                @Override
+                public void run(@NotNull BindingTrace trace) {
+                    checkFunction(function, expectedReturnType, trace);
+                }
+            });
         }
+        // Control flow data is dumped by tests in the order the functions are checked
+        int threadCount = flowDataTraceFactory == JetControlFlowDataTraceFactory.EMPTY ? topDownAnalysisParameters.getThreadCount() : 1;
+        ParallelAnalysis.run(trace, threadCount, tasks);
+
         for (JetSecondaryConstructor constructor : this.context.getConstructors().keySet()) {
             if (!context.completeAnalysisNeeded(constructor)) continue;
-            checkFunction(constructor, JetStandardClasses.getUnitType());
+            checkFunction(constructor, JetStandardClasses.getUnitType(), trace);
         }
         for (Map.Entry<JetProperty, PropertyDescriptor> entry : context.getProperties().entrySet()) {
             JetProperty property = entry.getKey();
@@ -104,11 +116,11 @@ public class ControlFlowAnalyzer {
                                                             ? propertyDescriptor.getGetter()
                                                             : propertyDescriptor.getSetter();
             assert accessorDescriptor != null;
-            checkFunction(accessor, accessorDescriptor.getReturnType());
+            checkFunction(accessor, accessorDescriptor.getReturnType(), trace);
         }
     }
 
-    private void checkFunction(JetDeclarationWithBody function, final @NotNull JetType expectedReturnType) {
+    private void checkFunction(JetDeclarationWithBody function, final @NotNull JetType expectedReturnType, @NotNull BindingTrace trace) {
         assert function instanceof JetDeclaration;
 
         JetExpression bodyExpression = function.getBodyExpression();
@@ -30,8 +30,8 @@ import java.util.Map;
  */
 public class DelegatingBindingTrace implements BindingTrace {
     private final BindingContext parentContext;
-    private final MutableSlicedMap map = SlicedMapImpl.create();
-    private final List<Diagnostic> diagnostics = Lists.newArrayList();
+    private final MutableSlicedMap map = new CompactSlicedMap();
+    private List<Diagnostic> diagnostics = null;
 
     private final BindingContext bindingContext = new BindingContext() {
         @Override
@@ -106,18 +106,28 @@ public class DelegatingBindingTrace implements BindingTrace {
             trace.record(slicedMapKey.getSlice(), slicedMapKey.getKey(), value);
         }
         
-        for (Diagnostic diagnostic : diagnostics) {
-            trace.report(diagnostic);
+        if (diagnostics != null) {
+            for (Diagnostic diagnostic : diagnostics) {
+                trace.report(diagnostic);
+            }
         }
     }
 
+    /**
+     * Forgets everything recorded so far, but keeps the memory allocated for it, so that the trace can be reused
+     */
     public void clear() {
         map.clear();
-        diagnostics.clear();
+        if (diagnostics != null) {
+            diagnostics.clear();
+        }
     }
 
     @Override
     public void report(@NotNull Diagnostic diagnostic) {
+        if (diagnostics == null) {
+            diagnostics = Lists.newArrayList();
+        }
         diagnostics.add(diagnostic);
     }
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.jet.lang.resolve;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.lang.resolve.scopes.ScopeLookupCache;
+import org.jetbrains.jet.lang.types.checker.SubtypingCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs analysis tasks that don't depend on each other's results, e.g. resolution of the bodies of different functions,
+ * on several threads.
+ *
+ * Every task records into a trace of its own, and these traces are committed to the main trace in the order the tasks
+ * were given, so the binding context and the order of diagnostics don't depend on scheduling. Tasks only read the main
+ * trace while they run, but lazily resolved declarations (e.g. Java classes) are recorded there directly, so it must be
+ * thread-safe. The caches installed on the calling thread are installed on the workers as well.
+ */
+public class ParallelAnalysis {
+    public interface Task {
+        void run(@NotNull BindingTrace trace);
+    }
+
+    private ParallelAnalysis() {
+    }
+
+    public static void run(@NotNull BindingTrace trace, int threadCount, @NotNull List<? extends Task> tasks) {
+        if (threadCount <= 1 || tasks.size() <= 1) {
+            for (Task task : tasks) {
+                task.run(trace);
+            }
+            return;
+        }
+
+        final SubtypingCache subtypingCache = SubtypingCache.getCurrent();
+        final ScopeLookupCache scopeLookupCache = ScopeLookupCache.getCurrent();
+
+        List<DelegatingBindingTrace> traces = new ArrayList<DelegatingBindingTrace>(tasks.size());
+        List<Future<?>> futures = new ArrayList<Future<?>>(tasks.size());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, tasks.size()));
+        try {
+            for (final Task task : tasks) {
+                final DelegatingBindingTrace taskTrace = new DelegatingBindingTrace(trace.getBindingContext());
+                traces.add(taskTrace);
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        SubtypingCache.setCurrent(subtypingCache);
+                        ScopeLookupCache.setCurrent(scopeLookupCache);
+                        try {
+                            task.run(taskTrace);
+                        }
+                        finally {
+                            SubtypingCache.setCurrent(null);
+                            ScopeLookupCache.setCurrent(null);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                waitFor(future);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        for (DelegatingBindingTrace taskTrace : traces) {
+            taskTrace.addAllMyDataTo(trace);
+        }
+    }
+
+    private static void waitFor(@NotNull Future<?> future) {
+        try {
+            future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessCanceledException();
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+}
@@ -30,14 +30,29 @@ public class TopDownAnalysisParameters {
     private final Predicate<PsiFile> analyzeCompletely;
     private final boolean analyzingBootstrapLibrary;
     private final boolean declaredLocally;
+    private final int threadCount;
 
     public TopDownAnalysisParameters(
             @NotNull Predicate<PsiFile> analyzeCompletely,
             boolean analyzingBootstrapLibrary,
             boolean declaredLocally) {
+        this(analyzeCompletely, analyzingBootstrapLibrary, declaredLocally, 1);
+    }
+
+    /**
+     * @param threadCount the number of threads resolving and checking the bodies of declarations;
+     *                    the binding trace must be thread-safe if it is greater than one
+     */
+    public TopDownAnalysisParameters(
+            @NotNull Predicate<PsiFile> analyzeCompletely,
+            boolean analyzingBootstrapLibrary,
+            boolean declaredLocally,
+            int threadCount) {
+        if (threadCount < 1) throw new IllegalArgumentException("Thread count should be positive: " + threadCount);
         this.analyzeCompletely = analyzeCompletely;
         this.analyzingBootstrapLibrary = analyzingBootstrapLibrary;
         this.declaredLocally = declaredLocally;
+        this.threadCount = threadCount;
     }
 
     @NotNull
@@ -52,4 +67,8 @@ public class TopDownAnalysisParameters {
     public boolean isDeclaredLocally() {
         return declaredLocally;
     }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
 }
@@ -29,9 +29,12 @@ import org.jetbrains.jet.lang.psi.JetDeclaration;
 import org.jetbrains.jet.lang.psi.JetFile;
 import org.jetbrains.jet.lang.psi.JetObjectDeclaration;
 import org.jetbrains.jet.lang.resolve.scopes.JetScope;
+import org.jetbrains.jet.lang.resolve.scopes.ScopeLookupCache;
 import org.jetbrains.jet.lang.resolve.scopes.WritableScope;
 import org.jetbrains.jet.lang.resolve.scopes.WritableScopeImpl;
+import org.jetbrains.jet.lang.types.checker.SubtypingCache;
 import org.jetbrains.jet.lang.types.lang.JetStandardClasses;
+import org.jetbrains.jet.util.Profiler;
 
 import javax.inject.Inject;
 import java.util.ArrayList;
@@ -142,23 +145,103 @@ public class TopDownAnalyzer {
 //        context.enableDebugOutput();
         context.debug("Enter");
 
-        typeHierarchyResolver.process(outerScope, owner, declarations);
-        declarationResolver.process();
-        delegationResolver.process();
-        overrideResolver.process();
+        // Supertypes of the classes being analyzed are changing until the scopes are locked, so an enclosing
+        // analysis (e.g. of the body declaring a local object) has to stop caching subtyping results until then.
+        // The same goes for the members of the scopes, and the results of name lookups in them
+        SubtypingCache outerSubtypingCache = SubtypingCache.getCurrent();
+        ScopeLookupCache outerScopeLookupCache = ScopeLookupCache.getCurrent();
+        SubtypingCache.setCurrent(null);
+        ScopeLookupCache.setCurrent(null);
+        try {
+            doProcessPhases(outerScope, owner, declarations, outerSubtypingCache, outerScopeLookupCache);
+        }
+        finally {
+            SubtypingCache.setCurrent(outerSubtypingCache);
+            ScopeLookupCache.setCurrent(outerScopeLookupCache);
+        }
+
+        context.debug("Exit");
+        context.printDebugOutput(System.out);
+    }
+
+    private void doProcessPhases(
+            JetScope outerScope,
+            NamespaceLikeBuilder owner,
+            Collection<? extends PsiElement> declarations,
+            SubtypingCache outerSubtypingCache,
+            ScopeLookupCache outerScopeLookupCache) {
+        Profiler.Section phase = Profiler.start(Profiler.ANALYZER, "type hierarchy");
+        try {
+            typeHierarchyResolver.process(outerScope, owner, declarations);
+        }
+        finally {
+            phase.end();
+        }
+
+        phase = Profiler.start(Profiler.ANALYZER, "declarations");
+        try {
+            declarationResolver.process();
+        }
+        finally {
+            phase.end();
+        }
+
+        phase = Profiler.start(Profiler.ANALYZER, "delegation");
+        try {
+            delegationResolver.process();
+        }
+        finally {
+            phase.end();
+        }
+
+        phase = Profiler.start(Profiler.ANALYZER, "overrides");
+        try {
+            overrideResolver.process();
+        }
+        finally {
+            phase.end();
+        }
 
         lockScopes();
 
-        overloadResolver.process();
+        if (SubtypingCache.isEnabled()) {
+            SubtypingCache.setCurrent(outerSubtypingCache != null ? outerSubtypingCache : new SubtypingCache());
+        }
+        ScopeLookupCache.setCurrent(outerScopeLookupCache != null ? outerScopeLookupCache : new ScopeLookupCache());
 
-        if (!topDownAnalysisParameters.isAnalyzingBootstrapLibrary()) {
-            bodyResolver.resolveBehaviorDeclarationBodies();
-            controlFlowAnalyzer.process();
-            declarationsChecker.process();
+        phase = Profiler.start(Profiler.ANALYZER, "overloads");
+        try {
+            overloadResolver.process();
+        }
+        finally {
+            phase.end();
         }
 
-        context.debug("Exit");
-        context.printDebugOutput(System.out);
+        if (!topDownAnalysisParameters.isAnalyzingBootstrapLibrary()) {
+            phase = Profiler.start(Profiler.ANALYZER, "bodies");
+            try {
+                bodyResolver.resolveBehaviorDeclarationBodies();
+            }
+            finally {
+                phase.end();
+            }
+
+            phase = Profiler.start(Profiler.ANALYZER, "control flow");
+            try {
+                controlFlowAnalyzer.process();
+            }
+            finally {
+                phase.end();
+            }
+
+            phase = Profiler.start(Profiler.ANALYZER, "declaration checks");
+            try {
+                declarationsChecker.process();
+            }
+            finally {
+                phase.end();
+            }
+        }
     }
 
 
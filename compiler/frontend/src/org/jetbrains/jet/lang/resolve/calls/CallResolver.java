@@ -259,8 +259,11 @@ public class CallResolver {
 
         TemporaryBindingTrace traceForFirstNonemptyCandidateSet = null;
         OverloadResolutionResultsImpl<D> resultsForFirstNonemptyCandidateSet = null;
+        TemporaryBindingTrace temporaryTrace = null;
         for (ResolutionTask<D> task : prioritizedTasks) {
-            TemporaryBindingTrace temporaryTrace = TemporaryBindingTrace.create(context.trace);
+            if (temporaryTrace == null) {
+                temporaryTrace = TemporaryBindingTrace.create(context.trace);
+            }
             OverloadResolutionResultsImpl<D> results = performResolutionGuardedForExtraFunctionLiteralArguments(task.withTrace(temporaryTrace));
             if (results.isSuccess() || results.isAmbiguity()) {
                 temporaryTrace.commit();
@@ -274,6 +277,11 @@ public class CallResolver {
             if (traceForFirstNonemptyCandidateSet == null && !task.getCandidates().isEmpty()) {
                 traceForFirstNonemptyCandidateSet = temporaryTrace;
                 resultsForFirstNonemptyCandidateSet = results;
+                temporaryTrace = null;
+            }
+            else {
+                // The results of this task are thrown away, the next one can reuse the trace
+                temporaryTrace.clear();
             }
         }
         if (traceForFirstNonemptyCandidateSet != null) {
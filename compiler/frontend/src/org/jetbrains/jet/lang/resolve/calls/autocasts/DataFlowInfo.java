@@ -16,13 +16,15 @@
 
 package org.jetbrains.jet.lang.resolve.calls.autocasts;
 
-import com.google.common.collect.*;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.jet.lang.types.JetType;
 import org.jetbrains.jet.lang.types.TypeUtils;
-import org.jetbrains.jet.util.CommonSuppliers;
+import org.jetbrains.jet.util.PersistentHashMap;
 
-import java.util.*;
+import java.util.Collections;
+import java.util.List;
 
 import static org.jetbrains.jet.lang.resolve.calls.autocasts.Nullability.NOT_NULL;
 
@@ -50,13 +52,48 @@ public class DataFlowInfo {
         }
     };
 
-    public static DataFlowInfo EMPTY = new DataFlowInfo(ImmutableMap.<DataFlowValue, Nullability>of(), Multimaps.newListMultimap(Collections.<DataFlowValue, Collection<JetType>>emptyMap(), CommonSuppliers.<JetType>getArrayListSupplier()));
+    private static final PersistentHashMap.Merger<Nullability> NULLABILITY_AND = new PersistentHashMap.Merger<Nullability>() {
+        @NotNull
+        @Override
+        public Nullability merge(@NotNull Nullability first, @NotNull Nullability second) {
+            return first.and(second);
+        }
+
+        @Override
+        public boolean isIdempotent() {
+            return true;
+        }
+    };
+
+    private static final PersistentHashMap.Merger<Nullability> NULLABILITY_OR = new PersistentHashMap.Merger<Nullability>() {
+        @NotNull
+        @Override
+        public Nullability merge(@NotNull Nullability first, @NotNull Nullability second) {
+            return first.or(second);
+        }
+
+        @Override
+        public boolean isIdempotent() {
+            return true;
+        }
+    };
+
+    private static final PersistentHashMap.Merger<List<JetType>> CONCATENATE = new PersistentHashMap.Merger<List<JetType>>() {
+        @NotNull
+        @Override
+        public List<JetType> merge(@NotNull List<JetType> first, @NotNull List<JetType> second) {
+            return ImmutableList.<JetType>builder().addAll(first).addAll(second).build();
+        }
+    };
+
+    public static DataFlowInfo EMPTY = new DataFlowInfo(PersistentHashMap.<DataFlowValue, Nullability>empty(), PersistentHashMap.<DataFlowValue, List<JetType>>empty());
 
-    private final ImmutableMap<DataFlowValue, Nullability> nullabilityInfo;
-    /** Also immutable */
-    private final ListMultimap<DataFlowValue, JetType> typeInfo;
+    // Both maps are persistent: every operation below copies only the entries it changes and shares the rest with this info
+    private final PersistentHashMap<DataFlowValue, Nullability> nullabilityInfo;
+    /** The lists are immutable */
+    private final PersistentHashMap<DataFlowValue, List<JetType>> typeInfo;
 
-    private DataFlowInfo(ImmutableMap<DataFlowValue, Nullability> nullabilityInfo, ListMultimap<DataFlowValue, JetType> typeInfo) {
+    private DataFlowInfo(PersistentHashMap<DataFlowValue, Nullability> nullabilityInfo, PersistentHashMap<DataFlowValue, List<JetType>> typeInfo) {
         this.nullabilityInfo = nullabilityInfo;
         this.typeInfo = typeInfo;
     }
@@ -71,15 +108,23 @@ public class DataFlowInfo {
         return nullability;
     }
 
-    private boolean putNullability(@NotNull Map<DataFlowValue, Nullability> map, @NotNull DataFlowValue value, @NotNull Nullability nullability) {
-        if (!value.isStableIdentifier()) return false;
-        return map.put(value, nullability) != nullability;
+    @NotNull
+    private static PersistentHashMap<DataFlowValue, Nullability> putNullability(
+            @NotNull PersistentHashMap<DataFlowValue, Nullability> map,
+            @NotNull DataFlowValue value,
+            @NotNull Nullability nullability
+    ) {
+        if (!value.isStableIdentifier()) return map;
+        return map.put(value, nullability);
     }
 
     @NotNull
     public List<JetType> getPossibleTypes(DataFlowValue key) {
         JetType originalType = key.getType();
         List<JetType> types = typeInfo.get(key);
+        if (types == null) {
+            types = Collections.emptyList();
+        }
         Nullability nullability = getNullability(key);
         if (nullability.canBeNull()) {
             return types;
@@ -101,98 +146,53 @@ public class DataFlowInfo {
 
     @NotNull
     public DataFlowInfo equate(@NotNull DataFlowValue a, @NotNull DataFlowValue b) {
-        Map<DataFlowValue, Nullability> builder = Maps.newHashMap(nullabilityInfo);
         Nullability nullabilityOfA = getNullability(a);
         Nullability nullabilityOfB = getNullability(b);
 
-        boolean changed = false;
-        changed |= putNullability(builder, a, nullabilityOfA.refine(nullabilityOfB));
-        changed |= putNullability(builder, b, nullabilityOfA.refine(nullabilityOfA));
-        return changed ? new DataFlowInfo(ImmutableMap.copyOf(builder), typeInfo) : this;
+        PersistentHashMap<DataFlowValue, Nullability> newNullabilityInfo = putNullability(nullabilityInfo, a, nullabilityOfA.refine(nullabilityOfB));
+        newNullabilityInfo = putNullability(newNullabilityInfo, b, nullabilityOfA.refine(nullabilityOfA));
+        return newNullabilityInfo != nullabilityInfo ? new DataFlowInfo(newNullabilityInfo, typeInfo) : this;
     }
 
     @NotNull
     public DataFlowInfo disequate(@NotNull DataFlowValue a, @NotNull DataFlowValue b) {
-        Map<DataFlowValue, Nullability> builder = Maps.newHashMap(nullabilityInfo);
         Nullability nullabilityOfA = getNullability(a);
         Nullability nullabilityOfB = getNullability(b);
 
-        boolean changed = false;
-        changed |= putNullability(builder, a, nullabilityOfA.refine(nullabilityOfB.invert()));
-        changed |= putNullability(builder, b, nullabilityOfB.refine(nullabilityOfA.invert()));
-        return changed ? new DataFlowInfo(ImmutableMap.copyOf(builder), typeInfo) : this;
+        PersistentHashMap<DataFlowValue, Nullability> newNullabilityInfo = putNullability(nullabilityInfo, a, nullabilityOfA.refine(nullabilityOfB.invert()));
+        newNullabilityInfo = putNullability(newNullabilityInfo, b, nullabilityOfB.refine(nullabilityOfA.invert()));
+        return newNullabilityInfo != nullabilityInfo ? new DataFlowInfo(newNullabilityInfo, typeInfo) : this;
     }
 
     @NotNull
     public DataFlowInfo establishSubtyping(@NotNull DataFlowValue[] values, @NotNull JetType type) {
-        ListMultimap<DataFlowValue, JetType> newTypeInfo = copyTypeInfo();
-        Map<DataFlowValue, Nullability> newNullabilityInfo = Maps.newHashMap(nullabilityInfo);
-        boolean changed = false;
+        if (values.length == 0) return this;
+
+        PersistentHashMap<DataFlowValue, List<JetType>> newTypeInfo = typeInfo;
+        PersistentHashMap<DataFlowValue, Nullability> newNullabilityInfo = nullabilityInfo;
+        List<JetType> newTypes = Collections.singletonList(type);
         for (DataFlowValue value : values) {
 //            if (!value.isStableIdentifier()) continue;
-            changed = true;
-            newTypeInfo.put(value, type);
+            List<JetType> types = newTypeInfo.get(value);
+            newTypeInfo = newTypeInfo.put(value, types == null ? newTypes : CONCATENATE.merge(types, newTypes));
             if (!type.isNullable()) {
-                putNullability(newNullabilityInfo, value, NOT_NULL);
+                newNullabilityInfo = putNullability(newNullabilityInfo, value, NOT_NULL);
             }
         }
-        if (!changed) return this;
-        return new DataFlowInfo(ImmutableMap.copyOf(newNullabilityInfo), newTypeInfo);
-    }
-
-    private ListMultimap<DataFlowValue, JetType> copyTypeInfo() {
-        ListMultimap<DataFlowValue, JetType> newTypeInfo = Multimaps.newListMultimap(Maps.<DataFlowValue, Collection<JetType>>newHashMap(), CommonSuppliers.<JetType>getArrayListSupplier());
-        newTypeInfo.putAll(typeInfo);
-        return newTypeInfo;
+        return new DataFlowInfo(newNullabilityInfo, newTypeInfo);
     }
 
     public DataFlowInfo and(DataFlowInfo other) {
-        Map<DataFlowValue, Nullability> nullabilityMapBuilder = Maps.newHashMap();
-        nullabilityMapBuilder.putAll(nullabilityInfo);
-        for (Map.Entry<DataFlowValue, Nullability> entry : other.nullabilityInfo.entrySet()) {
-            DataFlowValue key = entry.getKey();
-            Nullability otherFlags = entry.getValue();
-            Nullability thisFlags = nullabilityInfo.get(key);
-            if (thisFlags != null) {
-                nullabilityMapBuilder.put(key, thisFlags.and(otherFlags));
-            }
-            else {
-                nullabilityMapBuilder.put(key, otherFlags);
-            }
-        }
-
-        ListMultimap<DataFlowValue, JetType> newTypeInfo = copyTypeInfo();
-        newTypeInfo.putAll(other.typeInfo);
-        return new DataFlowInfo(ImmutableMap.copyOf(nullabilityMapBuilder), newTypeInfo);
+        PersistentHashMap<DataFlowValue, Nullability> newNullabilityInfo = nullabilityInfo.union(other.nullabilityInfo, NULLABILITY_AND);
+        PersistentHashMap<DataFlowValue, List<JetType>> newTypeInfo = typeInfo.union(other.typeInfo, CONCATENATE);
+        if (newNullabilityInfo == nullabilityInfo && newTypeInfo == typeInfo) return this;
+        return new DataFlowInfo(newNullabilityInfo, newTypeInfo);
     }
 
     public DataFlowInfo or(DataFlowInfo other) {
-        Map<DataFlowValue, Nullability> builder = Maps.newHashMap(nullabilityInfo);
-        builder.keySet().retainAll(other.nullabilityInfo.keySet());
-        for (Map.Entry<DataFlowValue, Nullability> entry : builder.entrySet()) {
-            DataFlowValue key = entry.getKey();
-            Nullability thisFlags = entry.getValue();
-            Nullability otherFlags = other.nullabilityInfo.get(key);
-            assert (otherFlags != null);
-            builder.put(key, thisFlags.or(otherFlags));
-        }
-
-        ListMultimap<DataFlowValue, JetType> newTypeInfo = Multimaps.newListMultimap(Maps.<DataFlowValue, Collection<JetType>>newHashMap(), CommonSuppliers.<JetType>getArrayListSupplier());
-
-        Set<DataFlowValue> keys = newTypeInfo.keySet();
-        keys.retainAll(other.typeInfo.keySet());
-
-        for (DataFlowValue key : keys) {
-            Collection<JetType> thisTypes = typeInfo.get(key);
-            Collection<JetType> otherTypes = other.typeInfo.get(key);
-
-            Collection<JetType> newTypes = Sets.newHashSet(thisTypes);
-            newTypes.retainAll(otherTypes);
-
-            newTypeInfo.putAll(key, newTypes);
-        }
-
-        return new DataFlowInfo(ImmutableMap.copyOf(builder), newTypeInfo);
+        PersistentHashMap<DataFlowValue, Nullability> newNullabilityInfo = nullabilityInfo.intersection(other.nullabilityInfo, NULLABILITY_OR);
+        // TODO : intersect the possible types, as of now they are lost
+        return new DataFlowInfo(newNullabilityInfo, PersistentHashMap.<DataFlowValue, List<JetType>>empty());
     }
 
 }
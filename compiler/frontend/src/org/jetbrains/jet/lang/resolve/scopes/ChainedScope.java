@@ -18,6 +18,7 @@ package org.jetbrains.jet.lang.resolve.scopes;
 
 import com.google.common.collect.Sets;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.lang.descriptors.*;
 import org.jetbrains.jet.lang.resolve.scopes.receivers.ReceiverDescriptor;
 
@@ -32,15 +33,42 @@ import java.util.Set;
 public class ChainedScope implements JetScope {
     private final DeclarationDescriptor containingDeclaration;
     private final JetScope[] scopeChain;
-    private Collection<DeclarationDescriptor> allDescriptors;
+    private volatile Collection<DeclarationDescriptor> allDescriptors;
+    @Nullable
+    private volatile ScopeLookupCache.Index lookupIndex;
 
     public ChainedScope(DeclarationDescriptor containingDeclaration, JetScope... scopes) {
         this.containingDeclaration = containingDeclaration;
         scopeChain = scopes.clone();
     }
 
+    boolean isFrozen() {
+        for (JetScope scope : scopeChain) {
+            if (!ScopeLookupCache.isFrozen(scope)) return false;
+        }
+        return true;
+    }
+
+    @Nullable
+    private ScopeLookupCache.Entry getLookupEntry(@NotNull String name) {
+        ScopeLookupCache.Index index = ScopeLookupCache.getIndex(lookupIndex, this);
+        if (index == null) return null;
+        lookupIndex = index;
+        return index.get(name);
+    }
+
     @Override
     public ClassifierDescriptor getClassifier(@NotNull String name) {
+        ScopeLookupCache.Entry entry = getLookupEntry(name);
+        if (entry == null) return doGetClassifier(name);
+        if (entry.classifier == null) {
+            entry.classifier = ScopeLookupCache.Entry.wrap(doGetClassifier(name));
+        }
+        return ScopeLookupCache.Entry.unwrap(entry.classifier);
+    }
+
+    @Nullable
+    private ClassifierDescriptor doGetClassifier(@NotNull String name) {
         for (JetScope scope : scopeChain) {
             ClassifierDescriptor classifier = scope.getClassifier(name);
             if (classifier != null) return classifier;
@@ -81,10 +109,16 @@ public class ChainedScope implements JetScope {
     @NotNull
     @Override
     public Set<VariableDescriptor> getProperties(@NotNull String name) {
+        ScopeLookupCache.Entry entry = getLookupEntry(name);
+        if (entry != null && entry.properties != null) return entry.properties;
+
         Set<VariableDescriptor> properties = Sets.newLinkedHashSet();
         for (JetScope jetScope : scopeChain) {
             properties.addAll(jetScope.getProperties(name));
         }
+        if (entry != null) {
+            return entry.properties = ScopeLookupCache.Entry.freeze(properties);
+        }
         return properties;
     }
 
@@ -106,10 +140,16 @@ public class ChainedScope implements JetScope {
             return Collections.emptySet();
         }
 
+        ScopeLookupCache.Entry entry = getLookupEntry(name);
+        if (entry != null && entry.functions != null) return entry.functions;
+
         Set<FunctionDescriptor> result = Sets.newLinkedHashSet();
         for (JetScope jetScope : scopeChain) {
             result.addAll(jetScope.getFunctions(name));
         }
+        if (entry != null) {
+            return entry.functions = ScopeLookupCache.Entry.freeze(result);
+        }
         return result;
     }
 
@@ -156,11 +196,13 @@ public class ChainedScope implements JetScope {
     @NotNull
     @Override
     public Collection<DeclarationDescriptor> getAllDescriptors() {
+        // Not under a lock: reading Java scopes takes the lock of the Java descriptor resolver
         if (allDescriptors == null) {
-            allDescriptors = Sets.newHashSet();
+            Collection<DeclarationDescriptor> result = Sets.newHashSet();
             for (JetScope scope : scopeChain) {
-                allDescriptors.addAll(scope.getAllDescriptors());
+                result.addAll(scope.getAllDescriptors());
             }
+            allDescriptors = result;
         }
         return allDescriptors;
     }
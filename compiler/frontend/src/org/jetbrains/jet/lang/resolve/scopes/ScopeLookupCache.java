@@ -0,0 +1,137 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.jet.lang.resolve.scopes;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.lang.descriptors.FunctionDescriptor;
+import org.jetbrains.jet.lang.descriptors.VariableDescriptor;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Lets locked scopes remember what their names resolve to, including the names that resolve to nothing.
+ *
+ * A scope locked for reading can't get new declarations or imports, but the scopes it imports (e.g. namespace member scopes)
+ * may still be filled. So a scope remembers lookups only if it and all the writable scopes it delegates to or imports are
+ * locked for reading, and only on the threads where a cache was installed with {@link #setCurrent}, which the analyzer does
+ * once the scopes are locked. Both are decided when the scope is first read under a cache, and decided again under another one.
+ */
+public class ScopeLookupCache {
+    private static final ThreadLocal<ScopeLookupCache> CURRENT = new ThreadLocal<ScopeLookupCache>();
+
+    @Nullable
+    public static ScopeLookupCache getCurrent() {
+        return CURRENT.get();
+    }
+
+    public static void setCurrent(@Nullable ScopeLookupCache cache) {
+        if (cache == null) {
+            CURRENT.remove();
+        }
+        else {
+            CURRENT.set(cache);
+        }
+    }
+
+    /**
+     * @return false if the scope, or a writable scope it delegates to or imports, may still get new declarations
+     */
+    static boolean isFrozen(@NotNull JetScope scope) {
+        if (scope instanceof WritableScopeWithImports) {
+            return ((WritableScopeWithImports) scope).isFrozen();
+        }
+        if (scope instanceof ChainedScope) {
+            return ((ChainedScope) scope).isFrozen();
+        }
+        return true;
+    }
+
+    /**
+     * @return the index of the scope for the current cache, or null if no cache is installed
+     */
+    @Nullable
+    static Index getIndex(@Nullable Index index, @NotNull JetScope scope) {
+        ScopeLookupCache cache = getCurrent();
+        if (cache == null) return null;
+        if (index != null && index.cache == cache) return index;
+        return new Index(cache, isFrozen(scope));
+    }
+
+    static class Index {
+        private static final Object NOT_FOUND = new Object();
+
+        private final ScopeLookupCache cache;
+        // Lock levels are never lowered, so a frozen scope stays frozen, and a scope that wasn't frozen is just not cached
+        private final boolean frozen;
+        // Few threads ever read one scope at once
+        private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>(16, 0.75f, 2);
+
+        private Index(@NotNull ScopeLookupCache cache, boolean frozen) {
+            this.cache = cache;
+            this.frozen = frozen;
+        }
+
+        /**
+         * @return the entry for the name, with the fields null until the corresponding lookup is done, or null if the scope
+         * can't remember lookups
+         */
+        @Nullable
+        Entry get(@NotNull String name) {
+            if (!frozen) return null;
+            Entry entry = entries.get(name);
+            if (entry == null) {
+                entry = new Entry();
+                Entry existing = entries.putIfAbsent(name, entry);
+                if (existing != null) return existing;
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Results of the lookups of one name. Lookups that found nothing are stored as {@link Index#NOT_FOUND} (see {@link #wrap} and
+     * {@link #unwrap}) or as an empty set, and the sets are never handed out modifiable, since all the readers share them.
+     */
+    static class Entry {
+        volatile Object classifier;
+        volatile Object namespace;
+        volatile Object localVariable;
+        volatile Set<FunctionDescriptor> functions;
+        volatile Set<VariableDescriptor> properties;
+
+        @NotNull
+        static Object wrap(@Nullable Object descriptor) {
+            return descriptor == null ? Index.NOT_FOUND : descriptor;
+        }
+
+        @Nullable
+        @SuppressWarnings("unchecked")
+        static <D> D unwrap(@NotNull Object value) {
+            return value == Index.NOT_FOUND ? null : (D) value;
+        }
+
+        @NotNull
+        static <D> Set<D> freeze(@NotNull Set<D> result) {
+            return result.isEmpty() ? Collections.<D>emptySet() : Collections.unmodifiableSet(result);
+        }
+    }
+}
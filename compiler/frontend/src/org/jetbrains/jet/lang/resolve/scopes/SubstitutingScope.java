@@ -37,8 +37,9 @@ public class SubstitutingScope implements JetScope {
     private final JetScope workerScope;
     private final TypeSubstitutor substitutor;
 
+    // Guarded by this: member scopes of types are shared by the threads of a parallel analysis
     private Map<DeclarationDescriptor, DeclarationDescriptor> substitutedDescriptors = null;
-    private Collection<DeclarationDescriptor> allDescriptors = null;
+    private volatile Collection<DeclarationDescriptor> allDescriptors = null;
 
     public SubstitutingScope(JetScope workerScope, @NotNull TypeSubstitutor substitutor) {
         this.workerScope = workerScope;
@@ -50,14 +51,25 @@ public class SubstitutingScope implements JetScope {
         if (descriptor == null) return null;
         if (substitutor.isEmpty()) return descriptor;
 
-        if (substitutedDescriptors == null) {
-            substitutedDescriptors = Maps.newHashMap();
+        DeclarationDescriptor substituted;
+        synchronized (this) {
+            if (substitutedDescriptors == null) {
+                substitutedDescriptors = Maps.newHashMap();
+            }
+            substituted = substitutedDescriptors.get(descriptor);
         }
-
-        DeclarationDescriptor substituted = substitutedDescriptors.get(descriptor);
         if (substituted == null) {
+            // Not under the lock: substitution may look into other scopes
             substituted = descriptor.substitute(substitutor);
-            substitutedDescriptors.put(descriptor, substituted);
+            synchronized (this) {
+                DeclarationDescriptor existing = substitutedDescriptors.get(descriptor);
+                if (existing != null) {
+                    substituted = existing;
+                }
+                else {
+                    substitutedDescriptors.put(descriptor, substituted);
+                }
+            }
         }
         //noinspection unchecked
         return (D) substituted;
@@ -149,14 +161,15 @@ public class SubstitutingScope implements JetScope {
     @Override
     public Collection<DeclarationDescriptor> getAllDescriptors() {
         if (allDescriptors == null) {
-            allDescriptors = Sets.newHashSet();
+            Collection<DeclarationDescriptor> result = Sets.newHashSet();
             for (DeclarationDescriptor descriptor : workerScope.getAllDescriptors()) {
                 DeclarationDescriptor substitute = substitute(descriptor);
 //                assert substitute != null : descriptor;
                 if (substitute != null) {
-                    allDescriptors.add(substitute);
+                    result.add(substitute);
                 }
             }
+            allDescriptors = result;
         }
         return allDescriptors;
     }
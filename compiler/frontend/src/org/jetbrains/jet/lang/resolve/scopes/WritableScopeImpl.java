@@ -34,32 +34,34 @@ public class WritableScopeImpl extends WritableScopeWithImports {
 
     private final Collection<DeclarationDescriptor> allDescriptors = Sets.newLinkedHashSet();
     private final Multimap<String, DeclarationDescriptor> declaredDescriptorsAccessibleBySimpleName = HashMultimap.create();
-    private boolean allDescriptorsDone = false;
+    private volatile boolean allDescriptorsDone = false;
 
     @NotNull
     private final DeclarationDescriptor ownerDeclarationDescriptor;
 
+    // The maps below are created on first access, which can be a read of a locked scope by any thread of a parallel analysis
+
     // FieldNames include "$"
     @Nullable
-    private Map<String, PropertyDescriptor> propertyDescriptorsByFieldNames;
+    private volatile Map<String, PropertyDescriptor> propertyDescriptorsByFieldNames;
 
     @Nullable
-    private SetMultimap<String, FunctionDescriptor> functionGroups;
+    private volatile SetMultimap<String, FunctionDescriptor> functionGroups;
 
     @Nullable
-    private Map<String, DeclarationDescriptor> variableClassOrNamespaceDescriptors;
+    private volatile Map<String, DeclarationDescriptor> variableClassOrNamespaceDescriptors;
     
     @Nullable
-    private SetMultimap<String, VariableDescriptor> propertyGroups;
+    private volatile SetMultimap<String, VariableDescriptor> propertyGroups;
 
     @Nullable
-    private Map<String, NamespaceDescriptor> namespaceAliases;
+    private volatile Map<String, NamespaceDescriptor> namespaceAliases;
 
     @Nullable
-    private Map<String, List<DeclarationDescriptor>> labelsToDescriptors;
+    private volatile Map<String, List<DeclarationDescriptor>> labelsToDescriptors;
     
     @Nullable
-    private Map<String, ClassDescriptor> objectDescriptors;
+    private volatile Map<String, ClassDescriptor> objectDescriptors;
 
     @Nullable
     private ReceiverDescriptor implicitReceiver;
@@ -127,10 +129,16 @@ public class WritableScopeImpl extends WritableScopeWithImports {
         checkMayRead();
 
         if (!allDescriptorsDone) {
-            allDescriptorsDone = true;
-            allDescriptors.addAll(getWorkerScope().getAllDescriptors());
+            // Other scopes are read without holding a lock: reading Java scopes takes the lock of the Java descriptor resolver
+            List<DeclarationDescriptor> inherited = Lists.newArrayList(getWorkerScope().getAllDescriptors());
             for (JetScope imported : getImports()) {
-                allDescriptors.addAll(imported.getAllDescriptors());
+                inherited.addAll(imported.getAllDescriptors());
+            }
+            synchronized (this) {
+                if (!allDescriptorsDone) {
+                    allDescriptors.addAll(inherited);
+                    allDescriptorsDone = true;
+                }
             }
         }
         return allDescriptors;
@@ -232,12 +240,18 @@ public class WritableScopeImpl extends WritableScopeWithImports {
     public Set<VariableDescriptor> getProperties(@NotNull String name) {
         checkMayRead();
 
+        ScopeLookupCache.Entry entry = getLookupEntry(name);
+        if (entry != null && entry.properties != null) return entry.properties;
+
         Set<VariableDescriptor> result = Sets.newLinkedHashSet(getPropertyGroups().get(name));
 
         result.addAll(getWorkerScope().getProperties(name));
 
         result.addAll(super.getProperties(name));
-        
+
+        if (entry != null) {
+            return entry.properties = ScopeLookupCache.Entry.freeze(result);
+        }
         return result;
     }
 
@@ -245,6 +259,16 @@ public class WritableScopeImpl extends WritableScopeWithImports {
     public VariableDescriptor getLocalVariable(@NotNull String name) {
         checkMayRead();
 
+        ScopeLookupCache.Entry entry = getLookupEntry(name);
+        if (entry == null) return doGetLocalVariable(name);
+        if (entry.localVariable == null) {
+            entry.localVariable = ScopeLookupCache.Entry.wrap(doGetLocalVariable(name));
+        }
+        return ScopeLookupCache.Entry.unwrap(entry.localVariable);
+    }
+
+    @Nullable
+    private VariableDescriptor doGetLocalVariable(@NotNull String name) {
         Map<String, DeclarationDescriptor> variableClassOrNamespaceDescriptors = getVariableClassOrNamespaceDescriptors();
         DeclarationDescriptor descriptor = variableClassOrNamespaceDescriptors.get(name);
         if (descriptor instanceof VariableDescriptor && !getPropertyGroups().get(name).contains(descriptor)) {
@@ -287,12 +311,18 @@ public class WritableScopeImpl extends WritableScopeWithImports {
     public Set<FunctionDescriptor> getFunctions(@NotNull String name) {
         checkMayRead();
 
+        ScopeLookupCache.Entry entry = getLookupEntry(name);
+        if (entry != null && entry.functions != null) return entry.functions;
+
         Set<FunctionDescriptor> result = Sets.newLinkedHashSet(getFunctionGroups().get(name));
 
         result.addAll(getWorkerScope().getFunctions(name));
 
         result.addAll(super.getFunctions(name));
 
+        if (entry != null) {
+            return entry.functions = ScopeLookupCache.Entry.freeze(result);
+        }
         return result;
     }
 
@@ -388,6 +418,16 @@ public class WritableScopeImpl extends WritableScopeWithImports {
     public ClassifierDescriptor getClassifier(@NotNull String name) {
         checkMayRead();
 
+        ScopeLookupCache.Entry entry = getLookupEntry(name);
+        if (entry == null) return doGetClassifier(name);
+        if (entry.classifier == null) {
+            entry.classifier = ScopeLookupCache.Entry.wrap(doGetClassifier(name));
+        }
+        return ScopeLookupCache.Entry.unwrap(entry.classifier);
+    }
+
+    @Nullable
+    private ClassifierDescriptor doGetClassifier(@NotNull String name) {
         Map<String, DeclarationDescriptor> variableClassOrNamespaceDescriptors = getVariableClassOrNamespaceDescriptors();
         DeclarationDescriptor descriptor = variableClassOrNamespaceDescriptors.get(name);
         if (descriptor instanceof ClassifierDescriptor) return (ClassifierDescriptor) descriptor;
@@ -436,6 +476,16 @@ public class WritableScopeImpl extends WritableScopeWithImports {
     public NamespaceDescriptor getNamespace(@NotNull String name) {
         checkMayRead();
 
+        ScopeLookupCache.Entry entry = getLookupEntry(name);
+        if (entry == null) return doGetNamespace(name);
+        if (entry.namespace == null) {
+            entry.namespace = ScopeLookupCache.Entry.wrap(doGetNamespace(name));
+        }
+        return ScopeLookupCache.Entry.unwrap(entry.namespace);
+    }
+
+    @Nullable
+    private NamespaceDescriptor doGetNamespace(@NotNull String name) {
         NamespaceDescriptor declaredNamespace = getDeclaredNamespace(name);
         if (declaredNamespace != null) return declaredNamespace;
 
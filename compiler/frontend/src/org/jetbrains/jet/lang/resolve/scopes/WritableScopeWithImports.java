@@ -35,7 +35,7 @@ public abstract class WritableScopeWithImports extends JetScopeAdapter implement
     private String debugName;
 
     @Nullable
-    private List<JetScope> imports;
+    private volatile List<JetScope> imports;
     private WritableScope currentIndividualImportScope;
     protected final RedeclarationHandler redeclarationHandler;
 
@@ -47,6 +47,8 @@ public abstract class WritableScopeWithImports extends JetScopeAdapter implement
 
 
     private LockLevel lockLevel = LockLevel.WRITING;
+    @Nullable
+    private volatile ScopeLookupCache.Index lookupIndex;
 
     @Override
     public WritableScope changeLockLevel(LockLevel lockLevel) {
@@ -57,6 +59,31 @@ public abstract class WritableScopeWithImports extends JetScopeAdapter implement
         return this;
     }
 
+    /**
+     * @return true if names can't resolve differently in this scope any more: it is locked for reading, and so are the writable
+     * scopes it delegates to and imports
+     */
+    boolean isFrozen() {
+        if (lockLevel != LockLevel.READING || !ScopeLookupCache.isFrozen(getWorkerScope())) return false;
+        if (imports != null) {
+            for (JetScope imported : imports) {
+                if (!ScopeLookupCache.isFrozen(imported)) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the remembered results of looking the name up in this scope, or null if they can't be remembered now
+     */
+    @Nullable
+    ScopeLookupCache.Entry getLookupEntry(@NotNull String name) {
+        ScopeLookupCache.Index index = ScopeLookupCache.getIndex(lookupIndex, this);
+        if (index == null) return null;
+        lookupIndex = index;
+        return index.get(name);
+    }
+
     protected void checkMayRead() {
         if (lockLevel != LockLevel.READING && lockLevel != LockLevel.BOTH) {
             throw new IllegalStateException("cannot read with lock level " + lockLevel + " at " + debugName);
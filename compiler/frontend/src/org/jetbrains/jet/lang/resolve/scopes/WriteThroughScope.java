@@ -39,6 +39,11 @@ public class WriteThroughScope extends WritableScopeWithImports {
         this.writableWorker = scope;
     }
 
+    @Override
+    boolean isFrozen() {
+        return super.isFrozen() && ScopeLookupCache.isFrozen(writableWorker);
+    }
+
     @Override
     @Nullable
     public PropertyDescriptor getPropertyByFieldReference(@NotNull String fieldName) {
@@ -23,6 +23,7 @@ import org.jetbrains.jet.lang.descriptors.TypeParameterDescriptor;
 import org.jetbrains.jet.lang.descriptors.annotations.AnnotationDescriptor;
 import org.jetbrains.jet.lang.resolve.scopes.JetScope;
 import org.jetbrains.jet.lang.types.checker.JetTypeChecker;
+import org.jetbrains.jet.lang.types.checker.SubtypingCache;
 import org.jetbrains.jet.lang.types.lang.JetStandardClasses;
 
 import java.util.*;
@@ -128,6 +129,7 @@ public class CommonSupertypes {
         }
         assert order != null;
 
+        SubtypingCache cache = SubtypingCache.getCurrent();
         Set<TypeConstructor> notSource = new HashSet<TypeConstructor>();
         Map<TypeConstructor, Set<JetType>> result = new HashMap<TypeConstructor, Set<JetType>>();
         for (TypeConstructor superConstructor : order) {
@@ -137,7 +139,12 @@ public class CommonSupertypes {
 
             if (!notSource.contains(superConstructor)) {
                 result.put(superConstructor, constructorToAllInstances.get(superConstructor));
-                markAll(superConstructor, notSource);
+                if (cache != null) {
+                    notSource.addAll(cache.getSupertypeClosure(superConstructor));
+                }
+                else {
+                    markAll(superConstructor, notSource);
+                }
             }
         }
 
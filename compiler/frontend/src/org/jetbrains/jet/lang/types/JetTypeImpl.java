@@ -36,6 +36,7 @@ public final class JetTypeImpl extends AnnotatedImpl implements JetType {
     private final List<TypeProjection> arguments;
     private final boolean nullable;
     private JetScope memberScope;
+    private int hashCode;
 
     public JetTypeImpl(List<AnnotationDescriptor> annotations, TypeConstructor constructor, boolean nullable, @NotNull List<TypeProjection> arguments, JetScope memberScope) {
         super(annotations);
@@ -125,9 +126,14 @@ public final class JetTypeImpl extends AnnotatedImpl implements JetType {
 
     @Override
     public int hashCode() {
-        int result = constructor != null ? constructor.hashCode() : 0;
-        result = 31 * result + (arguments != null ? arguments.hashCode() : 0);
-        result = 31 * result + (nullable ? 1 : 0);
+        // Types are immutable and often used as keys, while computing the hash code walks all the arguments
+        int result = hashCode;
+        if (result == 0) {
+            result = constructor != null ? constructor.hashCode() : 0;
+            result = 31 * result + (arguments != null ? arguments.hashCode() : 0);
+            result = 31 * result + (nullable ? 1 : 0);
+            hashCode = result;
+        }
         return result;
     }
 
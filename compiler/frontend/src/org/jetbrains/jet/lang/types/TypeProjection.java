@@ -24,6 +24,7 @@ import org.jetbrains.annotations.NotNull;
 public class TypeProjection {
     private final Variance projection;
     private final JetType type;
+    private int hashCode;
 
     public TypeProjection(@NotNull Variance projection, @NotNull JetType type) {
         this.projection = projection;
@@ -67,8 +68,12 @@ public class TypeProjection {
 
     @Override
     public int hashCode() {
-        int result = projection != null ? projection.hashCode() : 0;
-        result = 31 * result + (type != null ? type.hashCode() : 0);
+        int result = hashCode;
+        if (result == 0) {
+            result = projection != null ? projection.hashCode() : 0;
+            result = 31 * result + (type != null ? type.hashCode() : 0);
+            hashCode = result;
+        }
         return result;
     }
 }
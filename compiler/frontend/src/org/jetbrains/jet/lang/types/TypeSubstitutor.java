@@ -20,7 +20,7 @@ import com.google.common.collect.Sets;
 import com.intellij.openapi.progress.ProcessCanceledException;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.jetbrains.jet.lang.descriptors.TypeParameterDescriptor;
+import org.jetbrains.jet.lang.descriptors.*;
 import org.jetbrains.jet.lang.resolve.scopes.SubstitutingScope;
 
 import java.util.*;
@@ -205,23 +205,39 @@ public class TypeSubstitutor {
 
     @NotNull
     private static TypeProjection makeNullableProjection(@NotNull TypeProjection value) {
-        return new TypeProjection(value.getProjectionKind(), TypeUtils.makeNullable(value.getType()));
+        JetType nullableType = TypeUtils.makeNullable(value.getType());
+        if (nullableType == value.getType()) {
+            return value;
+        }
+        return new TypeProjection(value.getProjectionKind(), nullableType);
     }
 
     private JetType specializeType(JetType subjectType, Variance callSiteVariance, int recursionDepth) throws SubstitutionException {
         assertRecursionDepth(recursionDepth, subjectType, substitution);
         if (ErrorUtils.isErrorType(subjectType)) return subjectType;
 
-        List<TypeProjection> newArguments = new ArrayList<TypeProjection>();
+        List<TypeProjection> newArguments = null;
         List<TypeProjection> arguments = subjectType.getArguments();
         for (int i = 0, argumentsSize = arguments.size(); i < argumentsSize; i++) {
             TypeProjection argument = arguments.get(i);
             TypeParameterDescriptor parameterDescriptor = subjectType.getConstructor().getParameters().get(i);
-            newArguments.add(substituteInProjection(
+            TypeProjection newArgument = substituteInProjection(
                     substitution,
                     argument,
                     parameterDescriptor,
-                    callSiteVariance, recursionDepth + 1));
+                    callSiteVariance, recursionDepth + 1);
+            if (newArguments == null && newArgument != argument) {
+                newArguments = new ArrayList<TypeProjection>(argumentsSize);
+                newArguments.addAll(arguments.subList(0, i));
+            }
+            if (newArguments != null) {
+                newArguments.add(newArgument);
+            }
+        }
+        if (newArguments == null) {
+            // Nothing this type is built from is substituted, no need to copy it
+            if (!isAffected(subjectType.getConstructor(), null)) return subjectType;
+            newArguments = arguments;
         }
         return new JetTypeImpl(
                 subjectType.getAnnotations(),
@@ -231,6 +247,39 @@ public class TypeSubstitutor {
                 new SubstitutingScope(subjectType.getMemberScope(), this));
     }
 
+    /**
+     * The member scope of a class type is determined by its arguments, but the members of a type parameter (or an intersection)
+     * come from its bounds, which may mention substituted type parameters too, and local classes may use the type parameters
+     * of the functions they are declared in.
+     */
+    private boolean isAffected(@NotNull TypeConstructor constructor, @Nullable Set<TypeConstructor> visitedBounds) {
+        ClassifierDescriptor classifier = constructor.getDeclarationDescriptor();
+        if (classifier instanceof ClassDescriptor) {
+            DeclarationDescriptor container = classifier.getContainingDeclaration();
+            while (container instanceof ClassDescriptor) {
+                container = container.getContainingDeclaration();
+            }
+            return !(container instanceof NamespaceDescriptor || container instanceof ModuleDescriptor);
+        }
+        if (visitedBounds == null) {
+            visitedBounds = Sets.newHashSet();
+        }
+        if (!visitedBounds.add(constructor)) return false;
+        for (JetType supertype : constructor.getSupertypes()) {
+            if (isAffected(supertype, visitedBounds)) return true;
+        }
+        return false;
+    }
+
+    private boolean isAffected(@NotNull JetType type, @NotNull Set<TypeConstructor> visitedBounds) {
+        if (ErrorUtils.isErrorType(type)) return false;
+        if (substitution.get(type.getConstructor()) != null) return true;
+        for (TypeProjection argument : type.getArguments()) {
+            if (isAffected(argument.getType(), visitedBounds)) return true;
+        }
+        return isAffected(type.getConstructor(), visitedBounds);
+    }
+
     @NotNull
     private TypeProjection substituteInProjection(
             @NotNull TypeSubstitution substitutionContext,
@@ -259,11 +308,11 @@ public class TypeSubstitutor {
 
             return substitutionResult(correspondingTypeParameter, effectiveContextVariance, passedProjectionKind, projectionValue, recursionDepth + 1);
         }
-        return new TypeProjection(
-                passedProjectionKind,
-                specializeType(
-                        typeToSubstituteIn,
-                        effectiveContextVariance, recursionDepth + 1));
+        JetType specializedType = specializeType(typeToSubstituteIn, effectiveContextVariance, recursionDepth + 1);
+        if (specializedType == typeToSubstituteIn) {
+            return passedProjection;
+        }
+        return new TypeProjection(passedProjectionKind, specializedType);
     }
 
     private TypeProjection substitutionResult(
@@ -310,7 +359,11 @@ public class TypeSubstitutor {
 //                throw new SubstitutionException(""); // TODO : error message
 //            }
 //
-        return new TypeProjection(effectiveProjectionKindValue, specializeType(effectiveTypeValue, effectiveContextVariance, recursionDepth + 1));
+        JetType specializedTypeValue = specializeType(effectiveTypeValue, effectiveContextVariance, recursionDepth + 1);
+        if (specializedTypeValue == typeValue && effectiveProjectionKindValue == projectionKindValue) {
+            return value;
+        }
+        return new TypeProjection(effectiveProjectionKindValue, specializedTypeValue);
     }
 
     private static Variance asymmetricOr(Variance a, Variance b) {
@@ -35,10 +35,37 @@ public class JetTypeChecker {
 
     public boolean isSubtypeOf(@NotNull JetType subtype, @NotNull JetType supertype) {
 //        return new TypeCheckingProcedure().run(subtype, supertype);
-        return TYPE_CHECKER.isSubtypeOf(subtype, supertype);
+        SubtypingCache cache = SubtypingCache.getCurrent();
+        if (cache == null) {
+            return TYPE_CHECKER.isSubtypeOf(subtype, supertype);
+        }
+
+        Boolean cached = cache.getSubtypeResult(subtype, supertype);
+        if (cached == null) {
+            cached = TYPE_CHECKER.isSubtypeOf(subtype, supertype);
+            cache.putSubtypeResult(subtype, supertype, cached);
+        }
+        if (SubtypingCache.isVerifying()) {
+            verify(cache, subtype, supertype, cached);
+        }
+        return cached;
+    }
+
+    private static void verify(@NotNull SubtypingCache cache, @NotNull JetType subtype, @NotNull JetType supertype, boolean cached) {
+        SubtypingCache.setCurrent(null);
+        try {
+            boolean actual = TYPE_CHECKER.isSubtypeOf(subtype, supertype);
+            if (actual != cached) {
+                throw new IllegalStateException("Cached subtyping result " + cached + " is wrong for " + subtype + " <: " + supertype);
+            }
+        }
+        finally {
+            SubtypingCache.setCurrent(cache);
+        }
     }
 
     public boolean equalTypes(@NotNull JetType a, @NotNull JetType b) {
+        if (a == b) return true;
         return TYPE_CHECKER.equalTypes(a, b);
     }
 
@@ -75,6 +102,10 @@ public class JetTypeChecker {
 
         @Override
         public boolean assertSubtype(@NotNull JetType subtype, @NotNull JetType supertype, @NotNull TypeCheckingProcedure typeCheckingProcedure) {
+            if (typeCheckingProcedure == TYPE_CHECKER) {
+                // Nested checks go through the cache too
+                return INSTANCE.isSubtypeOf(subtype, supertype);
+            }
             return typeCheckingProcedure.isSubtypeOf(subtype, supertype);
         }
 
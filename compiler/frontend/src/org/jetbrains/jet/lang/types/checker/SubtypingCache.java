@@ -0,0 +1,144 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.lang.types.checker;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.lang.descriptors.TypeParameterDescriptor;
+import org.jetbrains.jet.lang.types.JetType;
+import org.jetbrains.jet.lang.types.TypeConstructor;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers the results of {@link JetTypeChecker#isSubtypeOf} for pairs of types (by identity), and the transitive closure
+ * of supertype constructors for each type constructor.
+ *
+ * Both are only valid while the supertypes of the classes involved don't change, so a cache is active only on the threads
+ * where it was installed with {@link #setCurrent}, which the analyzer does once type hierarchies are resolved.
+ * The "kotlin.subtyping.cache" system property turns caching off ("false"), or makes every cached result checked against
+ * the uncached computation ("verify").
+ */
+public class SubtypingCache {
+    private static final int MAX_SIZE = 1 << 15;
+
+    private static final String MODE = System.getProperty("kotlin.subtyping.cache", "true");
+
+    private static final ThreadLocal<SubtypingCache> CURRENT = new ThreadLocal<SubtypingCache>();
+
+    private final ConcurrentMap<TypePair, Boolean> subtypes = new ConcurrentHashMap<TypePair, Boolean>();
+    private final ConcurrentMap<TypeConstructor, Set<TypeConstructor>> supertypeClosures = new ConcurrentHashMap<TypeConstructor, Set<TypeConstructor>>();
+
+    public static boolean isEnabled() {
+        return !MODE.equals("false");
+    }
+
+    static boolean isVerifying() {
+        return MODE.equals("verify");
+    }
+
+    @Nullable
+    public static SubtypingCache getCurrent() {
+        return CURRENT.get();
+    }
+
+    public static void setCurrent(@Nullable SubtypingCache cache) {
+        if (cache == null) {
+            CURRENT.remove();
+        }
+        else {
+            CURRENT.set(cache);
+        }
+    }
+
+    /**
+     * @return the remembered result of checking these very type instances, or null if they weren't checked with this cache
+     */
+    @Nullable
+    public Boolean getSubtypeResult(@NotNull JetType subtype, @NotNull JetType supertype) {
+        return subtypes.get(new TypePair(subtype, supertype));
+    }
+
+    void putSubtypeResult(@NotNull JetType subtype, @NotNull JetType supertype, boolean result) {
+        if (subtypes.size() >= MAX_SIZE) {
+            subtypes.clear();
+        }
+        subtypes.put(new TypePair(subtype, supertype), result);
+    }
+
+    /**
+     * @return false if no supertype of the given type constructor (including itself) has the other constructor,
+     * and the type checker can stop right away
+     */
+    public boolean mayHaveSupertype(@NotNull TypeConstructor constructor, @NotNull TypeConstructor superConstructor) {
+        if (constructor.equals(superConstructor)) return true;
+        return getSupertypeClosure(constructor).contains(superConstructor);
+    }
+
+    @NotNull
+    public Set<TypeConstructor> getSupertypeClosure(@NotNull TypeConstructor constructor) {
+        Set<TypeConstructor> closure = supertypeClosures.get(constructor);
+        if (closure != null) return closure;
+
+        // Not recursive: erroneous code may have cycles in the hierarchy
+        closure = new HashSet<TypeConstructor>();
+        Deque<TypeConstructor> queue = new ArrayDeque<TypeConstructor>();
+        queue.add(constructor);
+        while (!queue.isEmpty()) {
+            TypeConstructor current = queue.poll();
+            if (!closure.add(current)) continue;
+            Set<TypeConstructor> known = current == constructor ? null : supertypeClosures.get(current);
+            if (known != null) {
+                closure.addAll(known);
+                continue;
+            }
+            for (JetType supertype : current.getSupertypes()) {
+                queue.add(supertype.getConstructor());
+            }
+        }
+        closure = Collections.unmodifiableSet(closure);
+        // Bounds of type parameters of local functions are resolved along with the function bodies
+        if (!(constructor.getDeclarationDescriptor() instanceof TypeParameterDescriptor)) {
+            supertypeClosures.put(constructor, closure);
+        }
+        return closure;
+    }
+
+    private static class TypePair {
+        private final JetType subtype;
+        private final JetType supertype;
+
+        private TypePair(@NotNull JetType subtype, @NotNull JetType supertype) {
+            this.subtype = subtype;
+            this.supertype = supertype;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TypePair)) return false;
+            TypePair pair = (TypePair) o;
+            return subtype == pair.subtype && supertype == pair.supertype;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(subtype) + System.identityHashCode(supertype);
+        }
+    }
+}
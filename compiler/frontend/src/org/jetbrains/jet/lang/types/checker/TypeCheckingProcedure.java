@@ -167,6 +167,10 @@ public class TypeCheckingProcedure {
         if (JetStandardClasses.isNothingOrNullableNothing(subtype)) {
             return true;
         }
+        SubtypingCache cache = SubtypingCache.getCurrent();
+        if (cache != null && !cache.mayHaveSupertype(subtype.getConstructor(), supertype.getConstructor())) {
+            return constraints.noCorrespondingSupertype(subtype, supertype);
+        }
         @Nullable JetType closestSupertype = findCorrespondingSupertype(subtype, supertype);
         if (closestSupertype == null) {
             return constraints.noCorrespondingSupertype(subtype, supertype); // if this returns true, there still isn't any supertype to continue with
@@ -0,0 +1,448 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * An immutable hash map (a hash array mapped trie). Adding an entry copies only the path to it, and merging two maps
+ * derived from a common one copies only the paths to the entries they differ in, the rest of the structure is shared.
+ *
+ * Neither keys nor values may be null.
+ */
+public final class PersistentHashMap<K, V> {
+
+    public static abstract class Merger<V> {
+        @NotNull
+        public abstract V merge(@NotNull V first, @NotNull V second);
+
+        /**
+         * @return true if merging a value with itself always gives the same value, so that the parts the maps share can be kept as they are
+         */
+        public boolean isIdempotent() {
+            return false;
+        }
+    }
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final Object NOT_FOUND = new Object();
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<Object, Object>(null);
+
+    @NotNull
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        //noinspection unchecked
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    @Nullable
+    private final Node root;
+
+    private PersistentHashMap(@Nullable Node root) {
+        this.root = root;
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    @Nullable
+    public V get(@NotNull K key) {
+        if (root == null) return null;
+        Object value = root.get(0, key.hashCode(), key);
+        //noinspection unchecked
+        return value == NOT_FOUND ? null : (V) value;
+    }
+
+    /**
+     * @return a map with the given entry added or replaced, or this map if it already has exactly this value for the key
+     */
+    @NotNull
+    public PersistentHashMap<K, V> put(@NotNull K key, @NotNull V value) {
+        Node node = root != null ? root : BitmapNode.EMPTY;
+        Node newRoot = node.put(0, key.hashCode(), key, value);
+        return newRoot == root ? this : new PersistentHashMap<K, V>(newRoot);
+    }
+
+    /**
+     * @return the entries of both maps; for the keys present in both, the values are merged, the value of this map goes first
+     */
+    @NotNull
+    public PersistentHashMap<K, V> union(@NotNull PersistentHashMap<K, V> other, @NotNull Merger<V> merger) {
+        if (other.root == null) return this;
+        if (root == null) return other;
+        return wrap(union(root, other.root, 0, merger), other);
+    }
+
+    /**
+     * @return the entries for the keys present in both maps, with their values merged, the value of this map goes first
+     */
+    @NotNull
+    public PersistentHashMap<K, V> intersection(@NotNull PersistentHashMap<K, V> other, @NotNull Merger<V> merger) {
+        if (root == null) return this;
+        if (other.root == null) return other;
+        return wrap(intersection(root, other.root, 0, merger), other);
+    }
+
+    @NotNull
+    private PersistentHashMap<K, V> wrap(@Nullable Node newRoot, @NotNull PersistentHashMap<K, V> other) {
+        if (newRoot == root) return this;
+        if (newRoot == other.root) return other;
+        return newRoot == null ? PersistentHashMap.<K, V>empty() : new PersistentHashMap<K, V>(newRoot);
+    }
+
+    @NotNull
+    public Map<K, V> toMap() {
+        Map<K, V> result = new HashMap<K, V>();
+        if (root != null) {
+            List<Object> entries = new ArrayList<Object>();
+            root.collect(entries);
+            for (int i = 0; i < entries.size(); i += 2) {
+                //noinspection unchecked
+                result.put((K) entries.get(i), (V) entries.get(i + 1));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+
+    private static abstract class Node {
+        /**
+         * @return the value or NOT_FOUND
+         */
+        abstract Object get(int shift, int hash, @NotNull Object key);
+
+        /**
+         * @return a node with the entry added, or this node if it already has it
+         */
+        @NotNull
+        abstract Node put(int shift, int hash, @NotNull Object key, @NotNull Object value);
+
+        /**
+         * Adds keys and values of all the entries in this node to the list
+         */
+        abstract void collect(@NotNull List<Object> keysAndValues);
+    }
+
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        /** Tells which of the 32 slots of this node are occupied */
+        final int bitmap;
+        /** A key and a value for every occupied slot, or null and a child node for the keys whose hashes fall into the same slot */
+        final Object[] array;
+
+        BitmapNode(int bitmap, @NotNull Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        int index(int bit) {
+            return 2 * Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object get(int shift, int hash, @NotNull Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) return NOT_FOUND;
+
+            int i = index(bit);
+            Object k = array[i];
+            if (k == null) {
+                return ((Node) array[i + 1]).get(shift + BITS, hash, key);
+            }
+            return key.equals(k) ? array[i + 1] : NOT_FOUND;
+        }
+
+        @NotNull
+        @Override
+        Node put(int shift, int hash, @NotNull Object key, @NotNull Object value) {
+            int bit = bit(hash, shift);
+            int i = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] newArray = new Object[array.length + 2];
+                System.arraycopy(array, 0, newArray, 0, i);
+                newArray[i] = key;
+                newArray[i + 1] = value;
+                System.arraycopy(array, i, newArray, i + 2, array.length - i);
+                return new BitmapNode(bitmap | bit, newArray);
+            }
+
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                Node child = (Node) v;
+                Node newChild = child.put(shift + BITS, hash, key, value);
+                return newChild == child ? this : replace(i, null, newChild);
+            }
+            if (key.equals(k)) {
+                return v == value ? this : replace(i, k, value);
+            }
+            return replace(i, null, createNode(shift + BITS, k, v, hash, key, value));
+        }
+
+        @NotNull
+        private BitmapNode replace(int i, @Nullable Object key, @NotNull Object value) {
+            Object[] newArray = array.clone();
+            newArray[i] = key;
+            newArray[i + 1] = value;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        boolean hasEntries(int bitmap, @NotNull Object[] array) {
+            if (this.bitmap != bitmap) return false;
+            for (int i = 0; i < array.length; i++) {
+                if (this.array[i] != array[i]) return false;
+            }
+            return true;
+        }
+
+        @Override
+        void collect(@NotNull List<Object> keysAndValues) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).collect(keysAndValues);
+                }
+                else {
+                    keysAndValues.add(array[i]);
+                    keysAndValues.add(array[i + 1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Keys with equal hash codes
+     */
+    private static final class CollisionNode extends Node {
+        final int hash;
+        final Object[] keysAndValues;
+
+        CollisionNode(int hash, @NotNull Object[] keysAndValues) {
+            this.hash = hash;
+            this.keysAndValues = keysAndValues;
+        }
+
+        @Override
+        Object get(int shift, int hash, @NotNull Object key) {
+            if (hash != this.hash) return NOT_FOUND;
+            for (int i = 0; i < keysAndValues.length; i += 2) {
+                if (key.equals(keysAndValues[i])) return keysAndValues[i + 1];
+            }
+            return NOT_FOUND;
+        }
+
+        @NotNull
+        @Override
+        Node put(int shift, int hash, @NotNull Object key, @NotNull Object value) {
+            if (hash != this.hash) {
+                return new BitmapNode(bit(this.hash, shift), new Object[] {null, this}).put(shift, hash, key, value);
+            }
+            for (int i = 0; i < keysAndValues.length; i += 2) {
+                if (key.equals(keysAndValues[i])) {
+                    if (keysAndValues[i + 1] == value) return this;
+                    Object[] newKeysAndValues = keysAndValues.clone();
+                    newKeysAndValues[i + 1] = value;
+                    return new CollisionNode(hash, newKeysAndValues);
+                }
+            }
+            Object[] newKeysAndValues = Arrays.copyOf(keysAndValues, keysAndValues.length + 2);
+            newKeysAndValues[keysAndValues.length] = key;
+            newKeysAndValues[keysAndValues.length + 1] = value;
+            return new CollisionNode(hash, newKeysAndValues);
+        }
+
+        @Override
+        void collect(@NotNull List<Object> keysAndValues) {
+            keysAndValues.addAll(Arrays.asList(this.keysAndValues));
+        }
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    @NotNull
+    private static Node createNode(int shift, @NotNull Object key1, @NotNull Object value1, int hash2, @NotNull Object key2, @NotNull Object value2) {
+        int hash1 = key1.hashCode();
+        if (hash1 == hash2) {
+            return new CollisionNode(hash1, new Object[] {key1, value1, key2, value2});
+        }
+        return BitmapNode.EMPTY.put(shift, hash1, key1, value1).put(shift, hash2, key2, value2);
+    }
+
+    @NotNull
+    private static Object merge(@NotNull Merger merger, @NotNull Object first, @NotNull Object second) {
+        //noinspection unchecked
+        return merger.merge(first, second);
+    }
+
+    @NotNull
+    private static Node putMerged(@NotNull Node node, int shift, @NotNull Object key, @NotNull Object value, @NotNull Merger merger, boolean valueGoesFirst) {
+        int hash = key.hashCode();
+        Object existing = node.get(shift, hash, key);
+        if (existing != NOT_FOUND) {
+            value = valueGoesFirst ? merge(merger, value, existing) : merge(merger, existing, value);
+        }
+        return node.put(shift, hash, key, value);
+    }
+
+    @NotNull
+    private static Node union(@NotNull Node a, @NotNull Node b, int shift, @NotNull Merger merger) {
+        if (a == b && merger.isIdempotent()) return a;
+
+        if (!(a instanceof BitmapNode && b instanceof BitmapNode)) {
+            // Collisions are rare, merge them entry by entry
+            List<Object> entries = new ArrayList<Object>();
+            b.collect(entries);
+            Node result = a;
+            for (int i = 0; i < entries.size(); i += 2) {
+                result = putMerged(result, shift, entries.get(i), entries.get(i + 1), merger, false);
+            }
+            return result;
+        }
+
+        BitmapNode x = (BitmapNode) a;
+        BitmapNode y = (BitmapNode) b;
+        int bitmap = x.bitmap | y.bitmap;
+        Object[] array = new Object[2 * Integer.bitCount(bitmap)];
+        int i = 0;
+        for (int bits = bitmap; bits != 0; bits &= bits - 1, i += 2) {
+            int bit = bits & -bits;
+            if ((y.bitmap & bit) == 0) {
+                int j = x.index(bit);
+                array[i] = x.array[j];
+                array[i + 1] = x.array[j + 1];
+                continue;
+            }
+            if ((x.bitmap & bit) == 0) {
+                int j = y.index(bit);
+                array[i] = y.array[j];
+                array[i + 1] = y.array[j + 1];
+                continue;
+            }
+
+            int j = x.index(bit);
+            int l = y.index(bit);
+            Object xKey = x.array[j];
+            Object xValue = x.array[j + 1];
+            Object yKey = y.array[l];
+            Object yValue = y.array[l + 1];
+            if (xKey == null && yKey == null) {
+                array[i + 1] = union((Node) xValue, (Node) yValue, shift + BITS, merger);
+            }
+            else if (xKey == null) {
+                array[i + 1] = putMerged((Node) xValue, shift + BITS, yKey, yValue, merger, false);
+            }
+            else if (yKey == null) {
+                array[i + 1] = putMerged((Node) yValue, shift + BITS, xKey, xValue, merger, true);
+            }
+            else if (xKey.equals(yKey)) {
+                array[i] = xKey;
+                array[i + 1] = xValue == yValue && merger.isIdempotent() ? xValue : merge(merger, xValue, yValue);
+            }
+            else {
+                array[i + 1] = createNode(shift + BITS, xKey, xValue, yKey.hashCode(), yKey, yValue);
+            }
+        }
+
+        if (x.hasEntries(bitmap, array)) return x;
+        if (y.hasEntries(bitmap, array)) return y;
+        return new BitmapNode(bitmap, array);
+    }
+
+    @Nullable
+    private static Node intersection(@NotNull Node a, @NotNull Node b, int shift, @NotNull Merger merger) {
+        if (a == b && merger.isIdempotent()) return a;
+
+        if (!(a instanceof BitmapNode && b instanceof BitmapNode)) {
+            List<Object> entries = new ArrayList<Object>();
+            a.collect(entries);
+            Node result = null;
+            for (int i = 0; i < entries.size(); i += 2) {
+                Object key = entries.get(i);
+                int hash = key.hashCode();
+                Object other = b.get(shift, hash, key);
+                if (other == NOT_FOUND) continue;
+                result = (result != null ? result : BitmapNode.EMPTY).put(shift, hash, key, merge(merger, entries.get(i + 1), other));
+            }
+            return result;
+        }
+
+        BitmapNode x = (BitmapNode) a;
+        BitmapNode y = (BitmapNode) b;
+        int commonBits = x.bitmap & y.bitmap;
+        Object[] array = new Object[2 * Integer.bitCount(commonBits)];
+        int bitmap = 0;
+        int i = 0;
+        for (int bits = commonBits; bits != 0; bits &= bits - 1) {
+            int bit = bits & -bits;
+            int j = x.index(bit);
+            int l = y.index(bit);
+            Object xKey = x.array[j];
+            Object xValue = x.array[j + 1];
+            Object yKey = y.array[l];
+            Object yValue = y.array[l + 1];
+
+            Object key = null;
+            Object value;
+            if (xKey == null && yKey == null) {
+                value = intersection((Node) xValue, (Node) yValue, shift + BITS, merger);
+            }
+            else if (xKey == null) {
+                Object found = ((Node) xValue).get(shift + BITS, yKey.hashCode(), yKey);
+                key = yKey;
+                value = found == NOT_FOUND ? null : merge(merger, found, yValue);
+            }
+            else if (yKey == null) {
+                Object found = ((Node) yValue).get(shift + BITS, xKey.hashCode(), xKey);
+                key = xKey;
+                value = found == NOT_FOUND ? null : merge(merger, xValue, found);
+            }
+            else if (xKey.equals(yKey)) {
+                key = xKey;
+                value = xValue == yValue && merger.isIdempotent() ? xValue : merge(merger, xValue, yValue);
+            }
+            else {
+                value = null;
+            }
+            if (value == null) continue;
+
+            bitmap |= bit;
+            array[i] = key;
+            array[i + 1] = value;
+            i += 2;
+        }
+
+        if (bitmap == 0) return null;
+        if (i < array.length) {
+            array = Arrays.copyOf(array, i);
+        }
+        if (x.hasEntries(bitmap, array)) return x;
+        if (y.hasEntries(bitmap, array)) return y;
+        return new BitmapNode(bitmap, array);
+    }
+}
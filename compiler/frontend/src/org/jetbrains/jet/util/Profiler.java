@@ -0,0 +1,355 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+
+/**
+ * Records wall time, CPU time and allocated bytes of compiler phases.
+ *
+ * Nothing is recorded unless a profiler is installed with {@link #setInstance}, a disabled {@link #start} costs a volatile read.
+ * Sections may be nested and may come from different threads; a section nested into another one with the same category
+ * and name (e.g. analysis of an object literal inside body resolution) is reported, but isn't counted in the totals twice.
+ */
+public class Profiler {
+    public static final String ANALYZER = "analyzer";
+    public static final String JAVA = "java";
+    public static final String CODEGEN = "codegen";
+
+    private static volatile Profiler instance;
+
+    private final long startTime = System.nanoTime();
+    private final List<Event> events = new ArrayList<Event>();
+    private final ThreadLocal<List<Section>> openSections = new ThreadLocal<List<Section>>() {
+        @Override
+        protected List<Section> initialValue() {
+            return new ArrayList<Section>();
+        }
+    };
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final boolean cpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported();
+    private final boolean allocationSupported = threadBean instanceof com.sun.management.ThreadMXBean &&
+                                                ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported();
+
+    @Nullable
+    public static Profiler getInstance() {
+        return instance;
+    }
+
+    public static void setInstance(@Nullable Profiler profiler) {
+        instance = profiler;
+    }
+
+    @NotNull
+    public static Section start(@NotNull String category, @NotNull String name) {
+        return start(category, name, null);
+    }
+
+    /**
+     * @param detail what exactly is processed, e.g. a file or a class name
+     */
+    @NotNull
+    public static Section start(@NotNull String category, @NotNull String name, @Nullable String detail) {
+        Profiler profiler = instance;
+        return profiler == null ? Section.NONE : profiler.startSection(category, name, detail);
+    }
+
+    @NotNull
+    private Section startSection(@NotNull String category, @NotNull String name, @Nullable String detail) {
+        List<Section> open = openSections.get();
+        boolean nested = false;
+        for (Section section : open) {
+            if (section.category.equals(category) && section.name.equals(name)) {
+                nested = true;
+                break;
+            }
+        }
+        Section section = new Section(this, category, name, detail, nested);
+        open.add(section);
+        return section;
+    }
+
+    private void endSection(@NotNull Section section) {
+        long wallTime = System.nanoTime() - section.startTime;
+        long cpuTime = getCpuTime() - section.startCpuTime;
+        long allocatedBytes = getAllocatedBytes() - section.startAllocatedBytes;
+
+        List<Section> open = openSections.get();
+        int index = open.lastIndexOf(section);
+        if (index >= 0) {
+            open.remove(index);
+        }
+
+        Thread thread = Thread.currentThread();
+        Event event = new Event(section.category, section.name, section.detail, thread.getName(), thread.getId(),
+                                section.startTime - startTime, wallTime,
+                                cpuTimeSupported ? cpuTime : -1, allocationSupported ? allocatedBytes : -1, section.nested);
+        synchronized (events) {
+            events.add(event);
+        }
+    }
+
+    private long getCpuTime() {
+        return cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : 0;
+    }
+
+    private long getAllocatedBytes() {
+        if (!allocationSupported) return 0;
+        return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @return the recorded events in the order they were finished
+     */
+    @NotNull
+    public List<Event> getEvents() {
+        synchronized (events) {
+            return new ArrayList<Event>(events);
+        }
+    }
+
+    /**
+     * Writes the totals per phase and the list of all events
+     */
+    public void writeJson(@NotNull Appendable out) throws IOException {
+        List<Event> events = getEvents();
+
+        Map<String, long[]> totals = new LinkedHashMap<String, long[]>();
+        for (Event event : events) {
+            if (event.isNested()) continue;
+            String key = event.getCategory() + "\n" + event.getName();
+            long[] total = totals.get(key);
+            if (total == null) {
+                total = new long[4];
+                totals.put(key, total);
+            }
+            total[0]++;
+            total[1] += event.getWallTime();
+            total[2] += event.getCpuTime();
+            total[3] += event.getAllocatedBytes();
+        }
+
+        out.append("{\n  \"phases\": [");
+        boolean first = true;
+        for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+            String[] categoryAndName = entry.getKey().split("\n", 2);
+            long[] total = entry.getValue();
+            out.append(first ? "\n" : ",\n");
+            first = false;
+            out.append("    {\"category\": ").append(quote(categoryAndName[0]))
+                    .append(", \"name\": ").append(quote(categoryAndName[1]))
+                    .append(", \"count\": ").append(String.valueOf(total[0]))
+                    .append(", \"wallMs\": ").append(millis(total[1]))
+                    .append(", \"cpuMs\": ").append(cpuTimeSupported ? millis(total[2]) : "null")
+                    .append(", \"allocatedBytes\": ").append(allocationSupported ? String.valueOf(total[3]) : "null")
+                    .append("}");
+        }
+        out.append("\n  ],\n  \"events\": [");
+        first = true;
+        for (Event event : events) {
+            out.append(first ? "\n" : ",\n");
+            first = false;
+            out.append("    {\"category\": ").append(quote(event.getCategory()))
+                    .append(", \"name\": ").append(quote(event.getName()))
+                    .append(", \"detail\": ").append(event.getDetail() != null ? quote(event.getDetail()) : "null")
+                    .append(", \"thread\": ").append(quote(event.getThreadName()))
+                    .append(", \"startMs\": ").append(millis(event.getStartTime()))
+                    .append(", \"wallMs\": ").append(millis(event.getWallTime()))
+                    .append(", \"cpuMs\": ").append(event.getCpuTime() >= 0 ? millis(event.getCpuTime()) : "null")
+                    .append(", \"allocatedBytes\": ").append(event.getAllocatedBytes() >= 0 ? String.valueOf(event.getAllocatedBytes()) : "null")
+                    .append("}");
+        }
+        out.append("\n  ]\n}\n");
+    }
+
+    /**
+     * Writes the events in the Trace Event Format understood by chrome://tracing
+     */
+    public void writeChromeTrace(@NotNull Appendable out) throws IOException {
+        out.append("{\"traceEvents\": [");
+        boolean first = true;
+        for (Event event : getEvents()) {
+            out.append(first ? "\n" : ",\n");
+            first = false;
+            out.append("  {\"name\": ").append(quote(event.getName()))
+                    .append(", \"cat\": ").append(quote(event.getCategory()))
+                    .append(", \"ph\": \"X\", \"pid\": 1, \"tid\": ").append(String.valueOf(event.getThreadId()))
+                    .append(", \"ts\": ").append(String.valueOf(event.getStartTime() / 1000))
+                    .append(", \"dur\": ").append(String.valueOf(event.getWallTime() / 1000))
+                    .append(", \"args\": {");
+            if (event.getDetail() != null) {
+                out.append("\"detail\": ").append(quote(event.getDetail())).append(", ");
+            }
+            out.append("\"cpuMs\": ").append(event.getCpuTime() >= 0 ? millis(event.getCpuTime()) : "null")
+                    .append(", \"allocatedBytes\": ").append(event.getAllocatedBytes() >= 0 ? String.valueOf(event.getAllocatedBytes()) : "null")
+                    .append("}}");
+        }
+        out.append("\n]}\n");
+    }
+
+    @NotNull
+    private static String millis(long nanos) {
+        return String.format(Locale.US, "%.3f", nanos / 1e6);
+    }
+
+    @NotNull
+    private static String quote(@NotNull String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < ' ') {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    }
+                    else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    public static class Section {
+        private static final Section NONE = new Section(null, "", "", null, false);
+
+        private final Profiler profiler;
+        private final String category;
+        private final String name;
+        private final String detail;
+        private final boolean nested;
+        private final long startTime;
+        private final long startCpuTime;
+        private final long startAllocatedBytes;
+
+        private Section(@Nullable Profiler profiler, @NotNull String category, @NotNull String name, @Nullable String detail, boolean nested) {
+            this.profiler = profiler;
+            this.category = category;
+            this.name = name;
+            this.detail = detail;
+            this.nested = nested;
+            this.startTime = profiler != null ? System.nanoTime() : 0;
+            this.startCpuTime = profiler != null ? profiler.getCpuTime() : 0;
+            this.startAllocatedBytes = profiler != null ? profiler.getAllocatedBytes() : 0;
+        }
+
+        /**
+         * Must be called on the thread which started the section
+         */
+        public void end() {
+            if (profiler != null) {
+                profiler.endSection(this);
+            }
+        }
+    }
+
+    public static class Event {
+        private final String category;
+        private final String name;
+        private final String detail;
+        private final String threadName;
+        private final long threadId;
+        private final long startTime;
+        private final long wallTime;
+        private final long cpuTime;
+        private final long allocatedBytes;
+        private final boolean nested;
+
+        private Event(@NotNull String category, @NotNull String name, @Nullable String detail, @NotNull String threadName, long threadId,
+                long startTime, long wallTime, long cpuTime, long allocatedBytes, boolean nested) {
+            this.category = category;
+            this.name = name;
+            this.detail = detail;
+            this.threadName = threadName;
+            this.threadId = threadId;
+            this.startTime = startTime;
+            this.wallTime = wallTime;
+            this.cpuTime = cpuTime;
+            this.allocatedBytes = allocatedBytes;
+            this.nested = nested;
+        }
+
+        @NotNull
+        public String getCategory() {
+            return category;
+        }
+
+        @NotNull
+        public String getName() {
+            return name;
+        }
+
+        @Nullable
+        public String getDetail() {
+            return detail;
+        }
+
+        @NotNull
+        public String getThreadName() {
+            return threadName;
+        }
+
+        public long getThreadId() {
+            return threadId;
+        }
+
+        /**
+         * @return nanoseconds since the profiler was created
+         */
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public long getWallTime() {
+            return wallTime;
+        }
+
+        /**
+         * @return CPU time in nanoseconds, or -1 if the JVM doesn't measure it
+         */
+        public long getCpuTime() {
+            return cpuTime;
+        }
+
+        /**
+         * @return bytes allocated by the thread during the section, or -1 if the JVM doesn't measure it
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * @return true if the section was started inside another one with the same category and name on the same thread
+         */
+        public boolean isNested() {
+            return nested;
+        }
+    }
+}
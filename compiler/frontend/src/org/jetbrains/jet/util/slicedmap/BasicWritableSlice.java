@@ -55,7 +55,14 @@ public class BasicWritableSlice<K, V> implements WritableSlice<K, V> {
 
     @Override
     public SlicedMapKey<K, V> makeKey(K key) {
-        return new SlicedMapKey<K, V>(this, key);
+        return new SlicedMapKey<K, V>(this, normalizeKey(key));
+    }
+
+    /**
+     * @return the key under which the value is actually stored in a sliced map
+     */
+    public K normalizeKey(K key) {
+        return key;
     }
 
     // True to put, false to skip
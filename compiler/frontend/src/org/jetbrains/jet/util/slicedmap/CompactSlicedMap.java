@@ -0,0 +1,227 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.util.slicedmap;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.util.CommonSuppliers;
+
+import java.util.*;
+
+/**
+ * A sliced map for short-lived traces, such as the ones call resolution creates for every candidate and then mostly throws away.
+ *
+ * Entries are kept in arrays in the order they were first put, and are found by a linear scan until there are enough of them
+ * to be worth a hash index. Nothing is allocated before the first put, and {@link #clear()} keeps the arrays, so a cleared map
+ * can be filled again without allocating.
+ */
+public class CompactSlicedMap implements MutableSlicedMap {
+    private static final int INITIAL_CAPACITY = 4;
+    private static final int INDEX_THRESHOLD = 8;
+
+    private WritableSlice<?, ?>[] slices;
+    private Object[] keys;
+    private Object[] values;
+    private int size;
+
+    private Map<SlicedMapKey<?, ?>, Integer> index;
+    private Multimap<WritableSlice<?, ?>, Object> collectiveSliceKeys;
+
+    @Override
+    public <K, V> void put(WritableSlice<K, V> slice, K key, V value) {
+        if (!slice.check(key, value)) {
+            return;
+        }
+
+        WritableSlice<?, ?> storedSlice;
+        Object storedKey;
+        if (slice instanceof BasicWritableSlice) {
+            storedSlice = slice;
+            storedKey = ((BasicWritableSlice<K, V>) slice).normalizeKey(key);
+        }
+        else {
+            SlicedMapKey<K, V> slicedMapKey = slice.makeKey(key);
+            storedSlice = slicedMapKey.getSlice();
+            storedKey = slicedMapKey.getKey();
+        }
+
+        int i = find(storedSlice, storedKey);
+        RewritePolicy rewritePolicy = slice.getRewritePolicy();
+        if (i >= 0 && rewritePolicy.rewriteProcessingNeeded(key)) {
+            //noinspection unchecked
+            if (!rewritePolicy.processRewrite(slice, key, (V) values[i], value)) {
+                return;
+            }
+        }
+
+        if (slice.isCollective()) {
+            if (collectiveSliceKeys == null) {
+                collectiveSliceKeys = Multimaps.newListMultimap(new HashMap<WritableSlice<?, ?>, Collection<Object>>(), CommonSuppliers.getArrayListSupplier());
+            }
+            collectiveSliceKeys.put(slice, key);
+        }
+
+        if (i >= 0) {
+            values[i] = value;
+        }
+        else {
+            append(storedSlice, storedKey, value);
+        }
+        slice.afterPut(this, key, value);
+    }
+
+    private void append(@NotNull WritableSlice<?, ?> slice, Object key, Object value) {
+        if (slices == null) {
+            slices = new WritableSlice<?, ?>[INITIAL_CAPACITY];
+            keys = new Object[INITIAL_CAPACITY];
+            values = new Object[INITIAL_CAPACITY];
+        }
+        else if (size == slices.length) {
+            slices = Arrays.copyOf(slices, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        slices[size] = slice;
+        keys[size] = key;
+        values[size] = value;
+        size++;
+
+        if (index != null) {
+            //noinspection unchecked
+            index.put(new SlicedMapKey<Object, Object>((WritableSlice<Object, Object>) slice, key), size - 1);
+        }
+        else if (size > INDEX_THRESHOLD) {
+            buildIndex();
+        }
+    }
+
+    private void buildIndex() {
+        index = Maps.newHashMapWithExpectedSize(size * 2);
+        for (int i = 0; i < size; i++) {
+            //noinspection unchecked
+            index.put(new SlicedMapKey<Object, Object>((WritableSlice<Object, Object>) slices[i], keys[i]), i);
+        }
+    }
+
+    private int find(@NotNull WritableSlice<?, ?> slice, Object key) {
+        if (index != null) {
+            //noinspection unchecked
+            Integer i = index.get(new SlicedMapKey<Object, Object>((WritableSlice<Object, Object>) slice, key));
+            return i != null ? i : -1;
+        }
+        for (int i = 0; i < size; i++) {
+            if (slices[i] == slice && (key == null ? keys[i] == null : key.equals(keys[i]))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private <K, V> int indexOf(@NotNull ReadOnlySlice<K, V> slice, K key) {
+        if (size == 0) return -1;
+        if (slice instanceof BasicWritableSlice) {
+            return find((BasicWritableSlice<K, V>) slice, ((BasicWritableSlice<K, V>) slice).normalizeKey(key));
+        }
+        SlicedMapKey<K, V> slicedMapKey = slice.makeKey(key);
+        return find(slicedMapKey.getSlice(), slicedMapKey.getKey());
+    }
+
+    @Override
+    public <K, V> V get(ReadOnlySlice<K, V> slice, K key) {
+        int i = indexOf(slice, key);
+        //noinspection unchecked
+        V value = i >= 0 ? (V) values[i] : null;
+        return slice.computeValue(this, key, value, i < 0);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> Collection<K> getKeys(WritableSlice<K, V> slice) {
+        assert slice.isCollective() : "Keys are not collected for slice " + slice;
+        if (collectiveSliceKeys == null) return Collections.emptyList();
+        return (Collection<K>) collectiveSliceKeys.get(slice);
+    }
+
+    @Override
+    public <K, V> V remove(RemovableSlice<K, V> slice, K key) {
+        int i = indexOf(slice, key);
+        if (i < 0) return null;
+
+        //noinspection unchecked
+        V value = (V) values[i];
+        int tail = size - i - 1;
+        System.arraycopy(slices, i + 1, slices, i, tail);
+        System.arraycopy(keys, i + 1, keys, i, tail);
+        System.arraycopy(values, i + 1, values, i, tail);
+        size--;
+        slices[size] = null;
+        keys[size] = null;
+        values[size] = null;
+        if (index != null) {
+            buildIndex();
+        }
+        return value;
+    }
+
+    /**
+     * Removes all the entries, but keeps the memory allocated for them
+     */
+    @Override
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(slices, 0, size, null);
+            Arrays.fill(keys, 0, size, null);
+            Arrays.fill(values, 0, size, null);
+            size = 0;
+        }
+        index = null;
+        if (collectiveSliceKeys != null) {
+            collectiveSliceKeys.clear();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Map.Entry<SlicedMapKey<?, ?>, ?>> iterator() {
+        return new Iterator<Map.Entry<SlicedMapKey<?, ?>, ?>>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Map.Entry<SlicedMapKey<?, ?>, ?> next() {
+                if (next >= size) throw new NoSuchElementException();
+                //noinspection unchecked
+                SlicedMapKey<?, ?> key = new SlicedMapKey<Object, Object>((WritableSlice<Object, Object>) slices[next], keys[next]);
+                return Maps.<SlicedMapKey<?, ?>, Object>immutableEntry(key, values[next++]);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
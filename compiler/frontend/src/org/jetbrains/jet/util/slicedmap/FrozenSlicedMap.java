@@ -0,0 +1,108 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.jet.util.slicedmap;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * An immutable copy of a sliced map that is safe to read from many threads.
+ *
+ * Values are stored in a separate table per slice, so lookups through a {@link BasicWritableSlice}
+ * do not allocate a {@link SlicedMapKey}.
+ */
+public class FrozenSlicedMap implements SlicedMap {
+
+    @NotNull
+    public static FrozenSlicedMap copyOf(@NotNull SlicedMap map) {
+        Map<WritableSlice<?, ?>, Map<Object, Object>> tables = new IdentityHashMap<WritableSlice<?, ?>, Map<Object, Object>>();
+        Map<WritableSlice<?, ?>, Collection<?>> collectiveSliceKeys = new IdentityHashMap<WritableSlice<?, ?>, Collection<?>>();
+        for (Map.Entry<SlicedMapKey<?, ?>, ?> entry : map) {
+            WritableSlice<?, ?> slice = entry.getKey().getSlice();
+            Map<Object, Object> table = tables.get(slice);
+            if (table == null) {
+                table = Maps.newHashMap();
+                tables.put(slice, table);
+                if (slice.isCollective()) {
+                    collectiveSliceKeys.put(slice, Collections.unmodifiableList(Lists.newArrayList(map.getKeys(slice))));
+                }
+            }
+            table.put(entry.getKey().getKey(), entry.getValue());
+        }
+        return new FrozenSlicedMap(tables, collectiveSliceKeys);
+    }
+
+    private final Map<WritableSlice<?, ?>, Map<Object, Object>> tables;
+    private final Map<WritableSlice<?, ?>, Collection<?>> collectiveSliceKeys;
+
+    private FrozenSlicedMap(
+            @NotNull Map<WritableSlice<?, ?>, Map<Object, Object>> tables,
+            @NotNull Map<WritableSlice<?, ?>, Collection<?>> collectiveSliceKeys
+    ) {
+        this.tables = tables;
+        this.collectiveSliceKeys = collectiveSliceKeys;
+    }
+
+    @Override
+    public <K, V> V get(ReadOnlySlice<K, V> slice, K key) {
+        if (slice instanceof BasicWritableSlice) {
+            return lookup(slice, key, tables.get(slice), ((BasicWritableSlice<K, V>) slice).normalizeKey(key));
+        }
+        SlicedMapKey<K, V> slicedMapKey = slice.makeKey(key);
+        return lookup(slice, key, tables.get(slicedMapKey.getSlice()), slicedMapKey.getKey());
+    }
+
+    private <K, V> V lookup(@NotNull ReadOnlySlice<K, V> slice, K key, @Nullable Map<Object, Object> table, K storedKey) {
+        if (table == null) {
+            return slice.computeValue(this, key, null, true);
+        }
+        //noinspection unchecked
+        V value = (V) table.get(storedKey);
+        return slice.computeValue(this, key, value, value == null && !table.containsKey(storedKey));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> Collection<K> getKeys(WritableSlice<K, V> slice) {
+        assert slice.isCollective() : "Keys are not collected for slice " + slice;
+        Collection<?> keys = collectiveSliceKeys.get(slice);
+        return keys != null ? (Collection<K>) keys : Collections.<K>emptyList();
+    }
+
+    @Override
+    public Iterator<Map.Entry<SlicedMapKey<?, ?>, ?>> iterator() {
+        List<Iterator<Map.Entry<SlicedMapKey<?, ?>, ?>>> iterators = Lists.newArrayList();
+        for (final Map.Entry<WritableSlice<?, ?>, Map<Object, Object>> table : tables.entrySet()) {
+            iterators.add(Iterators.transform(table.getValue().entrySet().iterator(), new Function<Map.Entry<Object, Object>, Map.Entry<SlicedMapKey<?, ?>, ?>>() {
+                @Override
+                public Map.Entry<SlicedMapKey<?, ?>, ?> apply(Map.Entry<Object, Object> entry) {
+                    //noinspection unchecked
+                    SlicedMapKey<?, ?> key = new SlicedMapKey<Object, Object>((WritableSlice<Object, Object>) table.getKey(), entry.getKey());
+                    return Maps.<SlicedMapKey<?, ?>, Object>immutableEntry(key, entry.getValue());
+                }
+            }));
+        }
+        return Iterators.concat(iterators.iterator());
+    }
+}
@@ -0,0 +1,13 @@
+fun choose(flag: Boolean) : String {
+    val x = if (flag) Left() else Right()
+    return x.name()
+}
+
+open class Base() {
+    fun name() : String = if (this is Left) "O" else "K"
+}
+
+class Left() : Base()
+class Right() : Base()
+
+fun box() : String = choose(true) + choose(false)
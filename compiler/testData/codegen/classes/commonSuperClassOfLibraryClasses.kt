@@ -0,0 +1,9 @@
+import java.io.PushbackReader
+import java.io.StringReader
+
+fun read(flag: Boolean) : Char {
+    val reader = if (flag) StringReader("O") else PushbackReader(StringReader("K"))
+    return reader.read().toChar()
+}
+
+fun box() : String = "" + read(true) + read(false)
@@ -0,0 +1,90 @@
+fun box() : String {
+    var s = ""
+    for (i in 1..4) s += i
+    if (s != "1234") return "int range: " + s
+
+    s = ""
+    for (i in 4 downto 1) s += i
+    if (s != "4321") return "int downto: " + s
+
+    s = ""
+    for (i in 4 downto 4) s += i
+    if (s != "") return "empty downto: " + s
+
+    s = ""
+    for (i in 5..4) s += i
+    if (s != "") return "empty range: " + s
+
+    s = ""
+    for (i in 1.toLong()..3.toLong()) s += i
+    if (s != "123") return "long range: " + s
+
+    s = ""
+    for (i in 1..3.toLong()) s += i
+    if (s != "123") return "mixed long range: " + s
+
+    s = ""
+    for (c in 'a'..'d') s += c
+    if (s != "abcd") return "char range: " + s
+
+    s = ""
+    for (c in 'd' downto 'a') s += c
+    if (s != "dcba") return "char downto: " + s
+
+    s = ""
+    for (b in 1.toByte()..3.toByte()) s += b
+    if (s != "123") return "byte range: " + s
+
+    s = ""
+    for (i in 1.toShort()..3.toShort()) s += i
+    if (s != "123") return "short range: " + s
+
+    s = ""
+    for (i in 1..10 step 3) s += i
+    if (s != "14710") return "int step: " + s
+
+    s = ""
+    for (i in 1..10 step -3) s += i
+    if (s != "10741") return "int negative step: " + s
+
+    s = ""
+    for (i in 10 downto 1 step 4) s += i
+    if (s != "1062") return "downto step: " + s
+
+    s = ""
+    for (i in 1.toLong()..7.toLong() step 2.toLong()) s += i
+    if (s != "1357") return "long step: " + s
+
+    s = ""
+    for (c in 'a'..'h' step 2) s += c
+    if (s != "aceg") return "char step: " + s
+
+    val r = 3 downto 1
+    s = ""
+    for (i in r) s += i
+    if (s != "321") return "range variable: " + s
+
+    s = ""
+    for (i in r step -2) s += i
+    if (s != "13") return "range variable step: " + s
+
+    val lr = 1.toLong()..3.toLong()
+    s = ""
+    for (i in lr) s += i
+    if (s != "123") return "long range variable: " + s
+
+    val a = IntArray(3)
+    s = ""
+    for (i in a.indices) s += i
+    if (s != "012") return "indices: " + s
+
+    var sum = 0
+    for (i in 1..10) {
+        if (i == 3) continue
+        if (i == 6) break
+        sum += i
+    }
+    if (sum != 12) return "break and continue: " + sum
+
+    return "OK"
+}
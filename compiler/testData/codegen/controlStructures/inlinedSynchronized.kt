@@ -0,0 +1,25 @@
+fun box() : String {
+    val lock = Object()
+    var counter = 0
+    for (i in 0..9) {
+        synchronized(lock) {
+            counter++
+        }
+    }
+    if (counter != 10) return "fail counter: $counter"
+
+    val doubled = synchronized(lock) { counter * 2 }
+    if (doubled != 20) return "fail result: $doubled"
+
+    try {
+        synchronized(lock) {
+            counter++
+            throw IllegalStateException()
+        }
+    }
+    catch (e : IllegalStateException) {
+    }
+    if (Thread.holdsLock(lock)) return "fail: lock is not released"
+
+    return if (counter == 11) "OK" else "fail after exception: $counter"
+}
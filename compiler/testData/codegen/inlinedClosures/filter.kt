@@ -0,0 +1,21 @@
+fun box() : String {
+    val even = array(1, 2, 3, 4, 5, 6).filter { it % 2 == 0 }
+    if (even.toString() != "[2, 4, 6]") return "fail array: $even"
+
+    val odd = (1..6).filter { it % 2 == 1 }
+    if (odd.toString() != "[1, 3, 5]") return "fail jet iterable: $odd"
+
+    val words = arrayList("a", "bb", "ccc", "dd")
+    var rejected = 0
+    val long = words.filter {
+        val keep = it.length > 1
+        if (!keep) rejected++
+        keep
+    }
+    if (long.toString() != "[bb, ccc, dd]") return "fail java collection: $long"
+    if (rejected != 1) return "fail rejected: $rejected"
+
+    val iterable : java.lang.Iterable<String> = words
+    val short = iterable.filter { it.length == 2 }.map { it + "!" }
+    return if (short.toString() == "[bb!, dd!]") "OK" else "fail java iterable: $short"
+}
@@ -0,0 +1,29 @@
+fun box() : String {
+    var sum = 0
+    array(1, 2, 3).forEach { sum += it }
+    if (sum != 6) return "fail array: $sum"
+
+    sum = 0
+    (1..4).forEach { sum += it }
+    if (sum != 10) return "fail jet iterable: $sum"
+
+    val list = arrayList(1, 2, 3, 4, 5)
+    val iterable : java.lang.Iterable<Int> = list
+    sum = 0
+    iterable.forEach { sum += it }
+    if (sum != 15) return "fail java iterable: $sum"
+
+    sum = 0
+    list.iterator().sure().forEach { sum += it }
+    if (sum != 15) return "fail java iterator: $sum"
+
+    var calls = 0
+    sum = 0
+    array("a", "bb").forEach {
+        calls++
+        val length = it.length
+        array(1, 2).forEach { sum += it * length }
+    }
+    if (calls != 2) return "fail nested calls: $calls"
+    return if (sum == 9) "OK" else "fail nested: $sum"
+}
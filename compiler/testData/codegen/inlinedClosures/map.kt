@@ -0,0 +1,22 @@
+fun box() : String {
+    val squares = array(1, 2, 3).map { it * it }
+    if (squares.toString() != "[1, 4, 9]") return "fail array: $squares"
+
+    val negated = (1..3).map { -it }
+    if (negated.toString() != "[-1, -2, -3]") return "fail jet iterable: $negated"
+
+    val words = arrayList("a", "bb", "ccc")
+    val lengths = words.map { it.length }
+    if (lengths.toString() != "[1, 2, 3]") return "fail java collection: $lengths"
+
+    val iterable : java.lang.Iterable<String> = words
+    var calls = 0
+    val upper = iterable.map {
+        calls++
+        it + calls
+    }
+    if (upper.toString() != "[a1, bb2, ccc3]") return "fail java iterable: $upper"
+
+    val empty = arrayList<String>().map { it.length }
+    return if (empty.size() == 0) "OK" else "fail empty: $empty"
+}
@@ -0,0 +1,39 @@
+fun box() : String {
+    // the literal returns from itself, so it is compiled as a closure
+    var sum = 0
+    val positive = array(-1, 2, -3, 4).filter @l{
+        if (it < 0) return@l false
+        sum += it
+        true
+    }
+    if (positive.toString() != "[2, 4]") return "fail labeled return: $positive"
+    if (sum != 6) return "fail labeled return sum: $sum"
+
+    // a literal created inside the literal escapes it
+    var total = 0
+    array(1, 2, 3).forEach {
+        val times = { (n : Int) -> n * it }
+        total += times(10)
+    }
+    if (total != 60) return "fail nested literal: $total"
+
+    // local functions and objects keep the literal a closure
+    var count = 0
+    arrayList("a", "b").forEach {
+        fun inc() {
+            count++
+        }
+        inc()
+        val o = object {
+            fun twice() = it + it
+        }
+        if (o.twice().length == 2) count++
+    }
+    if (count != 4) return "fail local declarations: $count"
+
+    // a literal that is not the argument itself is called through the library function
+    var product = 1
+    val multiply = { (x : Int) -> product *= x }
+    array(2, 3, 4).forEach(multiply)
+    return if (product == 24) "OK" else "fail escaping literal: $product"
+}
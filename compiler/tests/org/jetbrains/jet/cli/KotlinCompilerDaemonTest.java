@@ -0,0 +1,144 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.jet.cli;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+import org.jetbrains.jet.codegen.ForTestCompileStdlib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+public class KotlinCompilerDaemonTest extends TestCase {
+
+    public void testEditedSourceIsCompiledAgain() throws IOException {
+        File tempDir = FileUtil.createTempDirectory("daemonTest", "daemonTest");
+        KotlinCompilerDaemon daemon = new KotlinCompilerDaemon();
+        try {
+            File src = new File(tempDir, "a.kt");
+            File out = new File(tempDir, "out");
+            String[] args = {"-src", src.getAbsolutePath(),
+                             "-output", out.getAbsolutePath(),
+                             "-stdlib", ForTestCompileStdlib.stdlibJarForTests().getAbsolutePath()};
+
+            FileUtil.writeToFile(src, "namespace a\nfun first() = 1");
+            assertEquals(KotlinCompiler.ExitCode.OK, daemon.exec(System.out, args));
+            String firstClass = loadNamespaceClass(out);
+            assertTrue(firstClass.contains("first"));
+
+            FileUtil.writeToFile(src, "namespace a\nfun second() = 2");
+            FileUtil.delete(out);
+            assertEquals(KotlinCompiler.ExitCode.OK, daemon.exec(System.out, args));
+            String secondClass = loadNamespaceClass(out);
+            assertTrue(secondClass.contains("second"));
+            assertFalse(secondClass.contains("first"));
+        }
+        finally {
+            daemon.disposeEnvironment();
+            FileUtil.delete(tempDir);
+        }
+    }
+
+    public void testRequestWithWrongSecretIsDropped() throws Exception {
+        final ServerSocket serverSocket = new ServerSocket(0, 0, InetAddress.getByName(null));
+        int port = serverSocket.getLocalPort();
+        File secretFile = FileUtil.createTempFile("daemonTest", ".secret");
+        final String secret = KotlinCompilerDaemon.createSecret(secretFile);
+        Thread daemonThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    new KotlinCompilerDaemon().serve(serverSocket, secret);
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        daemonThread.start();
+        try {
+            try {
+                KotlinCompilerDaemon.compileOnDaemon(port, secret + "0", System.out, "-help");
+                fail("The request with a wrong secret was served");
+            }
+            catch (IOException expected) {
+                // the daemon has closed the connection without an answer
+            }
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            String readSecret = KotlinCompilerDaemon.readSecret(secretFile);
+            assertEquals(KotlinCompiler.ExitCode.OK,
+                         KotlinCompilerDaemon.compileOnDaemon(port, readSecret, new PrintStream(output), "-help"));
+            assertTrue(output.size() > 0);
+        }
+        finally {
+            KotlinCompilerDaemon.compileOnDaemon(port, secret, System.out);
+            daemonThread.join();
+            FileUtil.delete(secretFile);
+        }
+    }
+
+    public void testBrokenConnectionsDoNotStopDaemon() throws Exception {
+        final ServerSocket serverSocket = new ServerSocket(0, 0, InetAddress.getByName(null));
+        int port = serverSocket.getLocalPort();
+        File secretFile = FileUtil.createTempFile("daemonTest", ".secret");
+        final String secret = KotlinCompilerDaemon.createSecret(secretFile);
+        Thread daemonThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    new KotlinCompilerDaemon().serve(serverSocket, secret);
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        daemonThread.start();
+        try {
+            new Socket(InetAddress.getByName(null), port).close();
+
+            Socket truncated = new Socket(InetAddress.getByName(null), port);
+            DataOutputStream request = new DataOutputStream(truncated.getOutputStream());
+            request.writeShort(100);
+            request.writeByte('a');
+            request.flush();
+            truncated.close();
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            assertEquals(KotlinCompiler.ExitCode.OK,
+                         KotlinCompilerDaemon.compileOnDaemon(port, secret, new PrintStream(output), "-help"));
+            assertTrue(output.size() > 0);
+        }
+        finally {
+            KotlinCompilerDaemon.compileOnDaemon(port, secret, System.out);
+            daemonThread.join();
+            FileUtil.delete(secretFile);
+        }
+    }
+
+    private static String loadNamespaceClass(File out) throws IOException {
+        return new String(FileUtil.loadFileBytes(new File(out, "a/namespace.class")), "ISO-8859-1");
+    }
+}
@@ -312,4 +312,26 @@ public class ClassGenTest extends CodegenTestCase {
         blackBoxFile("regressions/kt1538.kt");
         System.out.println(generateToText());
     }
+
+    public void testCommonSuperClassOfClassesGeneratedLater() throws Exception {
+        blackBoxFile("classes/commonSuperClass.kt");
+    }
+
+    public void testCommonSuperClassOfLibraryClasses() throws Exception {
+        createEnvironmentWithFullJdk();
+        blackBoxFile("classes/commonSuperClassOfLibraryClasses.kt");
+
+        GenerationState state = generateCommon(ClassBuilderFactories.binaries(false));
+        ClassHierarchy hierarchy = new ClassHierarchy(getProject(), state.getBindingContext(), state.getInjector().getJetTypeMapper());
+        assertEquals("java/io/Reader", hierarchy.getCommonSuperClass("java/io/StringReader", "java/io/PushbackReader"));
+    }
+
+    public void testCommonSuperClassOfRuntimeAndUnknownClasses() throws Exception {
+        blackBoxFile("classes/commonSuperClass.kt");
+
+        GenerationState state = generateCommon(ClassBuilderFactories.binaries(false));
+        ClassHierarchy hierarchy = new ClassHierarchy(getProject(), state.getBindingContext(), state.getInjector().getJetTypeMapper());
+        assertEquals("java/lang/Object", hierarchy.getCommonSuperClass("jet/IntRange", "jet/CharRange"));
+        assertNull(hierarchy.getCommonSuperClass("unknown/Unknown", "java/lang/String"));
+    }
 }
@@ -123,7 +123,7 @@ public abstract class CodegenTestCase extends JetLiteFixture {
         return generateCommon(ClassBuilderFactories.TEXT).createText();
     }
 
-    private GenerationState generateCommon(ClassBuilderFactory classBuilderFactory) {
+    protected GenerationState generateCommon(ClassBuilderFactory classBuilderFactory) {
         final AnalyzeExhaust analyzeExhaust = AnalyzerFacadeForJVM.analyzeOneFileWithJavaIntegrationAndCheckForErrors(myFile, JetControlFlowDataTraceFactory.EMPTY);
         GenerationState state = new GenerationState(getProject(), classBuilderFactory, analyzeExhaust, Collections.singletonList(myFile));
         state.compileCorrectFiles(CompilationErrorHandler.THROW_EXCEPTION);
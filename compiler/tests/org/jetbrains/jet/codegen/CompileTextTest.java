@@ -16,10 +16,14 @@
 
 package org.jetbrains.jet.codegen;
 
+import com.intellij.openapi.util.io.FileUtil;
 import org.jetbrains.jet.compiler.CompileEnvironment;
 
+import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.Collections;
 
 public class CompileTextTest extends CodegenTestCase {
     public void testMe() throws ClassNotFoundException, NoSuchMethodException, InvocationTargetException, IllegalAccessException {
@@ -32,4 +36,35 @@ public class CompileTextTest extends CodegenTestCase {
         Object invoke = x.invoke(null);
         assertTrue(invoke instanceof CompileTextTest);
     }
+
+    public void testGeneratedResources() throws Exception {
+        CompileEnvironment compileEnvironment = new CompileEnvironment();
+        compileEnvironment.getEnvironment().addToClasspathFromClassLoader(getClass().getClassLoader());
+        ClassLoader classLoader = compileEnvironment.compileText("class A() { fun f() = { 1 } }\nfun x() = A().f()()");
+        Method x = classLoader.loadClass("namespace").getDeclaredMethod("x");
+        assertEquals(1, x.invoke(null));
+
+        InputStream stream = classLoader.getResourceAsStream("A.class");
+        assertNotNull(stream);
+        try {
+            byte[] bytes = FileUtil.loadBytes(stream);
+            assertEquals(0xCAFEBABE, ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF));
+        }
+        finally {
+            stream.close();
+        }
+        assertNull(classLoader.getResourceAsStream("B.class"));
+
+        URL url = classLoader.getResource("A.class");
+        assertNotNull(url);
+        InputStream urlStream = url.openStream();
+        try {
+            assertEquals(0xCA, urlStream.read());
+        }
+        finally {
+            urlStream.close();
+        }
+        assertEquals(url.toString(), Collections.list(classLoader.getResources("A.class")).get(0).toString());
+        assertNull(classLoader.getResource("B.class"));
+    }
 }
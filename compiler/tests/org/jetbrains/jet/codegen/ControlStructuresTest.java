@@ -187,6 +187,10 @@ public class ControlStructuresTest extends CodegenTestCase {
         blackBoxFile("controlStructures/forIntRange.jet");
     }
 
+    public void testForPrimitiveRanges() {
+        blackBoxFile("controlStructures/forPrimitiveRanges.kt");
+    }
+
     public void testKt237() throws Exception {
         blackBoxFile("regressions/kt237.jet");
     }
@@ -273,6 +277,11 @@ public class ControlStructuresTest extends CodegenTestCase {
 //        System.out.println(generateToText());
     }
 
+    public void testInlinedSynchronized() throws Exception {
+        createEnvironmentWithFullJdk();
+        blackBoxFile("controlStructures/inlinedSynchronized.kt");
+    }
+
     public void testIfInWhile() throws Exception {
         createEnvironmentWithFullJdk();
         blackBoxFile("controlStructures/ifInWhile.jet");
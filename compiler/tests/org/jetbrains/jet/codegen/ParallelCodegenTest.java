@@ -0,0 +1,55 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.codegen;
+
+import com.google.common.base.Predicates;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.jet.lang.cfg.pseudocode.JetControlFlowDataTraceFactory;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.resolve.java.AnalyzeExhaust;
+import org.jetbrains.jet.lang.resolve.java.AnalyzerFacadeForJVM;
+import org.jetbrains.jet.lang.resolve.java.CompilerSpecialMode;
+import org.jetbrains.jet.utils.Progress;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ParallelCodegenTest extends CodegenTestCase {
+    public void testSameOutputAsSerial() {
+        List<JetFile> files = new ArrayList<JetFile>();
+        files.add(createPsiFile("a1", "namespace a\nfun f1() = { (x : Int) -> x + 1 }\nclass A1 { fun g() = object { fun h() = 1 } }"));
+        files.add(createPsiFile("b", "namespace b\nval p = { 2 }()\nclass B { class object { val c = 3 } }"));
+        files.add(createPsiFile("a2", "namespace a\nfun f2() = { (x : Int) -> x + 2 }\nclass A2"));
+        files.add(createPsiFile("c", "namespace c\nfun f3(l : Int) = { l }"));
+
+        AnalyzeExhaust analyzeExhaust = AnalyzerFacadeForJVM.analyzeFilesWithJavaIntegration(
+                getProject(), files, Predicates.<PsiFile>alwaysTrue(), JetControlFlowDataTraceFactory.EMPTY, CompilerSpecialMode.REGULAR);
+
+        String serial = generate(analyzeExhaust, files, 1);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(serial, generate(analyzeExhaust, files, 4));
+        }
+    }
+
+    private String generate(AnalyzeExhaust analyzeExhaust, List<JetFile> files, int threadCount) {
+        GenerationState state = new GenerationState(getProject(), ClassBuilderFactories.TEXT, Progress.DEAF, analyzeExhaust, files,
+                                                    CompilerSpecialMode.REGULAR);
+        state.setThreadCount(threadCount);
+        state.compileCorrectFiles(CompilationErrorHandler.THROW_EXCEPTION);
+        return state.createText();
+    }
+}
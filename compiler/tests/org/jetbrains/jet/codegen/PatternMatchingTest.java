@@ -146,4 +146,48 @@ public class PatternMatchingTest extends CodegenTestCase {
         assertEquals("bit", foo.invoke(null, 1));
         assertEquals("something", foo.invoke(null, 2));
     }
+
+    public void testTableSwitch() throws Exception {
+        loadFile();
+        assertTrue(generateToText().contains("TABLESWITCH"));
+        Method foo = generateFunction();
+        assertEquals("minus one", foo.invoke(null, -1));
+        assertEquals("zero", foo.invoke(null, 0));
+        assertEquals("one or two", foo.invoke(null, 1));
+        assertEquals("one or two", foo.invoke(null, 2));
+        assertEquals("three", foo.invoke(null, 3));
+        assertEquals("many", foo.invoke(null, 4));
+        assertEquals("many", foo.invoke(null, Integer.MIN_VALUE));
+    }
+
+    public void testLookupSwitch() throws Exception {
+        loadFile();
+        assertTrue(generateToText().contains("LOOKUPSWITCH"));
+        Method foo = generateFunction();
+        assertEquals("small", foo.invoke(null, -1000));
+        assertEquals("zero", foo.invoke(null, 0));
+        assertEquals("big", foo.invoke(null, 1000));
+        assertEquals("huge", foo.invoke(null, 1000000));
+        assertThrows(foo, Exception.class, null, 1);
+    }
+
+    public void testCharSwitch() throws Exception {
+        loadFile();
+        Method foo = generateFunction();
+        assertEquals("vowel", foo.invoke(null, 'e'));
+        assertEquals("space", foo.invoke(null, ' '));
+        assertEquals("other", foo.invoke(null, 'x'));
+    }
+
+    public void testStringSwitch() throws Exception {
+        loadFile();
+        assertTrue(generateToText().contains("LOOKUPSWITCH"));
+        Method foo = generateFunction();
+        assertEquals(1, foo.invoke(null, "Aa"));
+        assertEquals(2, foo.invoke(null, "BB"));
+        assertEquals(3, foo.invoke(null, "C"));
+        assertEquals(4, foo.invoke(null, "\t"));
+        assertEquals(0, foo.invoke(null, "D"));
+        assertEquals(0, foo.invoke(null, (Object) null));
+    }
 }
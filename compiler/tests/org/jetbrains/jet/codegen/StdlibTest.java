@@ -142,6 +142,22 @@ public class StdlibTest extends CodegenTestCase {
         blackBoxFile("regressions/kt1515.kt");
     }
 
+    public void testInlinedForEach() throws Exception {
+        blackBoxFile("inlinedClosures/forEach.kt");
+    }
+
+    public void testInlinedMap() throws Exception {
+        blackBoxFile("inlinedClosures/map.kt");
+    }
+
+    public void testInlinedFilter() throws Exception {
+        blackBoxFile("inlinedClosures/filter.kt");
+    }
+
+    public void testNotInlinedClosures() throws Exception {
+        blackBoxFile("inlinedClosures/notInlined.kt");
+    }
+
     public void testKt1592 () throws MalformedURLException, ClassNotFoundException, NoSuchMethodException, InvocationTargetException, IllegalAccessException {
         loadFile("regressions/kt1592.kt");
         ClassFileFactory codegens = generateClassesInFile();
@@ -88,4 +88,32 @@ public class StringsTest extends CodegenTestCase {
     public void testKt889() throws Exception {
         blackBoxFile("regressions/kt889.jet");
     }
+
+    public void testConstantTemplateEntries() throws Exception {
+        loadText("val top = \"top\"\n" +
+                 "fun foo() : String { val local = 1; val c = 'c'; return \"${top}-${local}-$c-${2.5}-${true}-${\"s\"}\" }");
+        String text = generateToText();
+        assertFalse(text.contains("StringBuilder"));
+        Method foo = generateFunction("foo");
+        assertEquals("top-1-c-2.5-true-s", foo.invoke(null));
+    }
+
+    public void testShortTemplates() throws Exception {
+        loadText("fun foo(x: String?, y: Int, z: Byte) = \"$x\" + \"$y\" + \"a$z\" + \"${x}$y\" + \"$z!\"");
+        String text = generateToText();
+        assertTrue(text.contains("java/lang/String.valueOf (I)"));
+        Method foo = generateFunction();
+        assertEquals("s1a2s12!", foo.invoke(null, "s", 1, (byte) 2));
+        assertEquals("null1a2null12!", foo.invoke(null, null, 1, (byte) 2));
+    }
+
+    public void testLongTemplate() throws Exception {
+        loadText("fun foo(x: String?, y: Long, z: Short, c: Char, d: Double) = \"x=$x, y=$y, z=$z, c=$c, d=$d\"");
+        String text = generateToText();
+        assertTrue(text.contains("java/lang/StringBuilder.<init> (I)V"));
+        assertTrue(text.contains("java/lang/StringBuilder.append (J)"));
+        assertTrue(text.contains("java/lang/StringBuilder.append (I)"));
+        Method foo = generateFunction();
+        assertEquals("x=null, y=1, z=2, c=c, d=0.5", foo.invoke(null, null, 1L, (short) 2, 'c', 0.5));
+    }
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.compiler;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.jet.lang.resolve.FqName;
+import org.jetbrains.jet.lang.resolve.java.PsiClassFinderForJvm;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+public class CliClassPathIndexTest extends TestCaseWithTmpdir {
+    public void testClassDeclaredInAnotherClassFile() throws IOException {
+        FileUtil.writeToFile(new File(tmpdir, "pack/Holder.java"),
+                             "package pack;\n" +
+                             "\n" +
+                             "public class Holder {\n" +
+                             "    static class Nested {}\n" +
+                             "}\n" +
+                             "\n" +
+                             "class Hidden {\n" +
+                             "    static class Nested {}\n" +
+                             "}\n");
+
+        JetCoreEnvironment environment = new JetCoreEnvironment(getTestRootDisposable(), false);
+        environment.addToClasspath(tmpdir);
+        environment.enableClassPathIndex(null);
+
+        CliClassPathIndex index = environment.getClassPathIndex();
+        assertTrue(index.mayContainClass(new FqName("pack.Holder")));
+        assertTrue(index.mayContainClass(new FqName("pack.Hidden")));
+        assertTrue(index.mayContainClass(new FqName("pack.Hidden.Nested")));
+        assertFalse(index.mayContainClass(new FqName("pack.Nested")));
+        assertFalse(index.mayContainClass(new FqName("pack.Missing")));
+
+        PsiClassFinderForJvm finder = new PsiClassFinderForJvm();
+        finder.setProject(environment.getProject());
+        finder.initialize();
+        assertNotNull(finder.findPsiClass(new FqName("pack.Hidden")));
+        assertNotNull(finder.findPsiClass(new FqName("pack.Hidden.Nested")));
+        assertNull(finder.findPsiClass(new FqName("pack.Missing")));
+    }
+
+    public void testBrokenCacheFileIsIgnored() throws IOException {
+        File jar = new File(tmpdir, "lib.jar");
+        JarOutputStream output = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            output.putNextEntry(new ZipEntry("pack/A.class"));
+            output.write(new byte[] {1, 2, 3});
+            output.closeEntry();
+        }
+        finally {
+            output.close();
+        }
+        File cache = new File(tmpdir, "cache");
+
+        assertTrue(createIndex(jar, cache).mayContainClass(new FqName("pack.A")));
+        File[] cacheFiles = cache.listFiles();
+        assertEquals(1, cacheFiles.length);
+
+        byte[] bytes = FileUtil.loadFileBytes(cacheFiles[0]);
+        FileUtil.writeToFile(cacheFiles[0], Arrays.copyOf(bytes, bytes.length - 2));
+        CliClassPathIndex index = createIndex(jar, cache);
+        assertTrue(index.mayContainClass(new FqName("pack.A")));
+        assertFalse(index.mayContainClass(new FqName("pack.B")));
+        assertTrue(Arrays.equals(bytes, FileUtil.loadFileBytes(cacheFiles[0])));
+        assertEquals(1, cache.listFiles().length);
+    }
+
+    private static CliClassPathIndex createIndex(File root, File cache) {
+        CliClassPathIndex index = new CliClassPathIndex();
+        index.setCacheDirectory(cache);
+        index.addRoot(root);
+        return index;
+    }
+}
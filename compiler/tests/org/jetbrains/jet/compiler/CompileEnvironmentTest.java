@@ -96,6 +96,150 @@ public class CompileEnvironmentTest extends TestCase {
         }
     }
 
+    public void testSmokeWithClassPathIndexCache() throws IOException {
+        File tempDir = FileUtil.createTempDirectory("compilerTest", "compilerTest");
+        try {
+            File out = new File(tempDir, "out");
+            File cache = new File(tempDir, "cache");
+            File stdlib = ForTestCompileStdlib.stdlibJarForTests();
+            for (int i = 0; i < 2; i++) {
+                KotlinCompiler.ExitCode exitCode = new KotlinCompiler().exec("-src", JetParsingTest.getTestDataDir() + "/compiler/smoke/Smoke.kt",
+                                                                             "-output", out.getAbsolutePath(),
+                                                                             "-stdlib", stdlib.getAbsolutePath(),
+                                                                             "-classpathIndexCache", cache.getAbsolutePath());
+                Assert.assertEquals(KotlinCompiler.ExitCode.OK, exitCode);
+                assertEquals(1, out.listFiles()[0].listFiles().length);
+                assertTrue(cache.listFiles().length > 0);
+            }
+        } finally {
+            FileUtil.delete(tempDir);
+        }
+    }
+
+    public void testSmokeIncremental() throws IOException {
+        File tempDir = FileUtil.createTempDirectory("compilerTest", "compilerTest");
+        try {
+            File out = new File(tempDir, "out");
+            File stdlib = ForTestCompileStdlib.stdlibJarForTests();
+            for (int i = 0; i < 2; i++) {
+                KotlinCompiler.ExitCode exitCode = new KotlinCompiler().exec("-module", JetParsingTest.getTestDataDir() + "/compiler/smoke/Smoke.kts",
+                                                                             "-output", out.getAbsolutePath(),
+                                                                             "-stdlib", stdlib.getAbsolutePath(),
+                                                                             "-incremental");
+                Assert.assertEquals(KotlinCompiler.ExitCode.OK, exitCode);
+                assertTrue(new File(out, "Smoke/namespace.class").exists());
+                assertTrue(new File(tempDir, "out.smoke.kotlin-incremental").exists());
+            }
+        } finally {
+            FileUtil.delete(tempDir);
+        }
+    }
+
+    public void testIncrementalRecompilesUsersOfInheritedMembers() throws IOException {
+        File tempDir = FileUtil.createTempDirectory("compilerTest", "compilerTest");
+        try {
+            File out = new File(tempDir, "out");
+            File base = new File(tempDir, "base.kt");
+            File module = new File(tempDir, "Incremental.kts");
+            FileUtil.writeToFile(module, "import kotlin.modules.*\n" +
+                                         "fun project() {\n" +
+                                         "    module(\"incremental\") {\n" +
+                                         "        sources += \"base.kt\"\n" +
+                                         "        sources += \"derived.kt\"\n" +
+                                         "        sources += \"user.kt\"\n" +
+                                         "    }\n" +
+                                         "}");
+            FileUtil.writeToFile(base, "namespace base\nopen class Base() { fun value() : Int = 1 }");
+            FileUtil.writeToFile(new File(tempDir, "derived.kt"), "namespace derived\nclass Derived() : base.Base()");
+            FileUtil.writeToFile(new File(tempDir, "user.kt"), "namespace user\nfun use() = derived.Derived().value()");
+            File userClass = new File(out, "user/namespace.class");
+
+            compileIncrementally(module, out);
+            assertTrue(userClass.exists());
+
+            // a change of a body only recompiles its own namespace
+            FileUtil.delete(userClass);
+            FileUtil.writeToFile(base, "namespace base\nopen class Base() { fun value() : Int = 2 }");
+            compileIncrementally(module, out);
+            assertFalse(userClass.exists());
+
+            // user calls Derived.value(), whose signature comes from Base only
+            FileUtil.writeToFile(base, "namespace base\nopen class Base() { fun value() : String = \"2\" }");
+            compileIncrementally(module, out);
+            assertTrue(userClass.exists());
+        } finally {
+            FileUtil.delete(tempDir);
+        }
+    }
+
+    public void testIncrementalModulesSharingOutputDirectory() throws IOException {
+        File tempDir = FileUtil.createTempDirectory("compilerTest", "compilerTest");
+        try {
+            File out = new File(tempDir, "out");
+            File module = new File(tempDir, "Incremental.kts");
+            FileUtil.writeToFile(module, "import kotlin.modules.*\n" +
+                                         "fun project() {\n" +
+                                         "    module(\"a\") {\n" +
+                                         "        sources += \"a.kt\"\n" +
+                                         "    }\n" +
+                                         "    module(\"b\") {\n" +
+                                         "        sources += \"b.kt\"\n" +
+                                         "    }\n" +
+                                         "}");
+            FileUtil.writeToFile(new File(tempDir, "a.kt"), "namespace a\nfun a() = 1");
+            FileUtil.writeToFile(new File(tempDir, "b.kt"), "namespace b\nfun b() = 1");
+            File aClass = new File(out, "a/namespace.class");
+            File bClass = new File(out, "b/namespace.class");
+
+            for (int i = 0; i < 2; i++) {
+                compileIncrementally(module, out);
+                assertTrue(aClass.exists());
+                assertTrue(bClass.exists());
+            }
+            assertTrue(new File(tempDir, "out.a.kotlin-incremental").exists());
+            assertTrue(new File(tempDir, "out.b.kotlin-incremental").exists());
+
+            FileUtil.writeToFile(new File(tempDir, "b.kt"), "namespace b\nfun b() = 2");
+            compileIncrementally(module, out);
+            assertTrue(aClass.exists());
+            assertTrue(bClass.exists());
+        } finally {
+            FileUtil.delete(tempDir);
+        }
+    }
+
+    public void testIncrementalIgnoreErrors() throws IOException {
+        File tempDir = FileUtil.createTempDirectory("compilerTest", "compilerTest");
+        try {
+            File out = new File(tempDir, "out");
+            File module = new File(tempDir, "Incremental.kts");
+            FileUtil.writeToFile(module, "import kotlin.modules.*\n" +
+                                         "fun project() {\n" +
+                                         "    module(\"broken\") {\n" +
+                                         "        sources += \"broken.kt\"\n" +
+                                         "    }\n" +
+                                         "}");
+            FileUtil.writeToFile(new File(tempDir, "broken.kt"), "namespace broken\nfun ok() = 1\nfun broken() : Int = \"\"");
+
+            environment.setStdlib(ForTestCompileStdlib.stdlibJarForTests().getAbsolutePath());
+            environment.setIgnoreErrors(true);
+            environment.setIncremental(true);
+            assertTrue(environment.compileModuleScript(module.getAbsolutePath(), null, out.getAbsolutePath(), false));
+            assertTrue(new File(out, "broken/namespace.class").exists());
+            assertFalse(new File(tempDir, "out.broken.kotlin-incremental").exists());
+        } finally {
+            FileUtil.delete(tempDir);
+        }
+    }
+
+    private static void compileIncrementally(File module, File out) {
+        KotlinCompiler.ExitCode exitCode = new KotlinCompiler().exec("-module", module.getAbsolutePath(),
+                                                                     "-output", out.getAbsolutePath(),
+                                                                     "-stdlib", ForTestCompileStdlib.stdlibJarForTests().getAbsolutePath(),
+                                                                     "-incremental");
+        Assert.assertEquals(KotlinCompiler.ExitCode.OK, exitCode);
+    }
+
     private static List<String> listEntries(JarInputStream is) throws IOException {
         List<String> entries = new ArrayList<String>();
         while (true) {
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.compiler;
+
+import com.google.common.base.Predicate;
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class StreamingJarWriterTest extends TestCase {
+    public void testEntriesAndRawCopy() throws IOException {
+        File tempDir = FileUtil.createTempDirectory("jarWriterTest", "jarWriterTest");
+        try {
+            File source = new File(tempDir, "source.jar");
+            JarOutputStream sourceStream = new JarOutputStream(new FileOutputStream(source));
+            try {
+                sourceStream.putNextEntry(new JarEntry("jet/Runtime.class"));
+                sourceStream.write(bytes("runtime class ", 100));
+                sourceStream.putNextEntry(new JarEntry("jet/readme.txt"));
+                sourceStream.write(bytes("readme", 1));
+            }
+            finally {
+                sourceStream.close();
+            }
+
+            Manifest manifest = new Manifest();
+            manifest.getMainAttributes().putValue("Manifest-Version", "1.0");
+            manifest.getMainAttributes().putValue("Main-Class", "foo.namespace");
+
+            File result = new File(tempDir, "result.jar");
+            StreamingJarWriter writer = new StreamingJarWriter(new FileOutputStream(result), 2);
+            try {
+                writer.addManifest(manifest);
+                for (int i = 0; i < 20; i++) {
+                    writer.addEntry("foo/A" + i + ".class", bytes("class " + i + " ", i * 10));
+                }
+                writer.copyRawEntries(source, new Predicate<String>() {
+                    @Override
+                    public boolean apply(String name) {
+                        return name.endsWith(".class");
+                    }
+                });
+            }
+            finally {
+                writer.close();
+            }
+
+            JarInputStream jis = new JarInputStream(new FileInputStream(result));
+            try {
+                assertEquals("foo.namespace", jis.getManifest().getMainAttributes().getValue("Main-Class"));
+                List<String> names = new ArrayList<String>();
+                while (true) {
+                    JarEntry entry = jis.getNextJarEntry();
+                    if (entry == null) break;
+                    names.add(entry.getName());
+                    byte[] contents = FileUtil.loadBytes(jis);
+                    if (entry.getName().equals("jet/Runtime.class")) {
+                        assertTrue(Arrays.equals(bytes("runtime class ", 100), contents));
+                    }
+                    else {
+                        int i = names.size() - 1;
+                        assertEquals("foo/A" + i + ".class", entry.getName());
+                        assertTrue(Arrays.equals(bytes("class " + i + " ", i * 10), contents));
+                    }
+                }
+                assertEquals(21, names.size());
+                assertEquals("jet/Runtime.class", names.get(20));
+            }
+            finally {
+                jis.close();
+            }
+
+            ZipFile zipFile = new ZipFile(result);
+            try {
+                assertEquals(22, zipFile.size());
+                ZipEntry entry = zipFile.getEntry("jet/Runtime.class");
+                assertTrue(Arrays.equals(bytes("runtime class ", 100), FileUtil.loadBytes(zipFile.getInputStream(entry))));
+                assertNull(zipFile.getEntry("jet/readme.txt"));
+            }
+            finally {
+                zipFile.close();
+            }
+        }
+        finally {
+            FileUtil.delete(tempDir);
+        }
+    }
+
+    public void testDuplicateEntry() throws IOException {
+        StreamingJarWriter writer = new StreamingJarWriter(new ByteArrayOutputStream(), 1);
+        try {
+            writer.addEntry("A.class", new byte[0]);
+            try {
+                writer.addEntry("A.class", new byte[0]);
+                fail();
+            }
+            catch (IOException e) {
+                // expected
+            }
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    private static byte[] bytes(String text, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(text);
+        }
+        return builder.toString().getBytes();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.jet.resolve;
+
+import org.jetbrains.jet.JetLiteFixture;
+import org.jetbrains.jet.di.InjectorForJavaSemanticServices;
+import org.jetbrains.jet.lang.descriptors.ClassDescriptor;
+import org.jetbrains.jet.lang.descriptors.DeclarationDescriptor;
+import org.jetbrains.jet.lang.descriptors.FunctionDescriptor;
+import org.jetbrains.jet.lang.descriptors.NamespaceDescriptor;
+import org.jetbrains.jet.lang.descriptors.VariableDescriptor;
+import org.jetbrains.jet.lang.resolve.FqName;
+import org.jetbrains.jet.lang.resolve.java.DescriptorSearchRule;
+import org.jetbrains.jet.lang.resolve.java.JavaDescriptorResolver;
+import org.jetbrains.jet.lang.resolve.scopes.JetScope;
+
+import java.util.*;
+
+public class JavaClassMembersLookupTest extends JetLiteFixture {
+    public void testLookupByNameBeforeAllDescriptors() {
+        JetScope lazy = getClassMemberScope("java.util.ArrayList");
+        Set<FunctionDescriptor> add = lazy.getFunctions("add");
+        Set<FunctionDescriptor> hashCode = lazy.getFunctions("hashCode");
+        assertFalse(add.isEmpty());
+        // inherited from a supertype only
+        assertFalse(hashCode.isEmpty());
+        assertTrue(lazy.getFunctions("noSuchMethod").isEmpty());
+        assertTrue(lazy.getProperties("noSuchField").isEmpty());
+
+        Collection<DeclarationDescriptor> allDescriptors = lazy.getAllDescriptors();
+        assertTrue(containsAllByIdentity(allDescriptors, add));
+        assertTrue(containsAllByIdentity(allDescriptors, hashCode));
+
+        JetScope eager = getClassMemberScope("java.util.ArrayList");
+        Collection<DeclarationDescriptor> eagerDescriptors = eager.getAllDescriptors();
+        assertEquals(render(eagerDescriptors), render(allDescriptors));
+        assertEquals(render(eager.getFunctions("add")), render(add));
+        assertEquals(render(eager.getFunctions("hashCode")), render(hashCode));
+    }
+
+    public void testStaticMembers() {
+        NamespaceDescriptor system = getJavaDescriptorResolver().resolveNamespace(new FqName("java.lang.System"), DescriptorSearchRule.INCLUDE_KOTLIN);
+        assertNotNull(system);
+        Set<VariableDescriptor> out = system.getMemberScope().getProperties("out");
+        assertEquals(1, out.size());
+        assertFalse(system.getMemberScope().getFunctions("currentTimeMillis").isEmpty());
+        assertTrue(containsAllByIdentity(system.getMemberScope().getAllDescriptors(), out));
+    }
+
+    private JetScope getClassMemberScope(String qualifiedName) {
+        ClassDescriptor classDescriptor = getJavaDescriptorResolver().resolveClass(new FqName(qualifiedName), DescriptorSearchRule.INCLUDE_KOTLIN);
+        assertNotNull(classDescriptor);
+        return classDescriptor.getDefaultType().getMemberScope();
+    }
+
+    private JavaDescriptorResolver getJavaDescriptorResolver() {
+        return new InjectorForJavaSemanticServices(getProject()).getJavaDescriptorResolver();
+    }
+
+    private static boolean containsAllByIdentity(Collection<? extends DeclarationDescriptor> all, Collection<? extends DeclarationDescriptor> some) {
+        Set<DeclarationDescriptor> identitySet = Collections.newSetFromMap(new IdentityHashMap<DeclarationDescriptor, Boolean>());
+        identitySet.addAll(all);
+        return identitySet.containsAll(some);
+    }
+
+    private static List<String> render(Collection<? extends DeclarationDescriptor> descriptors) {
+        List<String> result = new ArrayList<String>();
+        for (DeclarationDescriptor descriptor : descriptors) {
+            result.add(DescriptorRenderer.TEXT.render(descriptor));
+        }
+        Collections.sort(result);
+        return result;
+    }
+}
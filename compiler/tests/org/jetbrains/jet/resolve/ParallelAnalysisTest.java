@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.jet.resolve;
+
+import com.google.common.base.Predicates;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.jet.JetLiteFixture;
+import org.jetbrains.jet.lang.cfg.pseudocode.JetControlFlowDataTraceFactory;
+import org.jetbrains.jet.lang.diagnostics.Diagnostic;
+import org.jetbrains.jet.lang.psi.JetDeclaration;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.psi.JetNamedFunction;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.java.AnalyzeExhaust;
+import org.jetbrains.jet.lang.resolve.java.AnalyzerFacadeForJVM;
+import org.jetbrains.jet.lang.resolve.java.CompilerSpecialMode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ParallelAnalysisTest extends JetLiteFixture {
+    public void testSameResultsAsSerial() {
+        List<JetFile> files = new ArrayList<JetFile>();
+        files.add(createPsiFile("a", "namespace a\nfun f1() = b.g1() + 1\nfun f2(x : Int) : Int { val y = x; return f1() + \"\" }\n" +
+                                     "class A { fun h() = object { fun k() = java.util.ArrayList<String>() }; fun m(s : String?) = s.length }"));
+        files.add(createPsiFile("b", "namespace b\nfun g1() = 2\nfun g2() : String { var u = 1; return g1() }\nval p = g2()\n" +
+                                     "fun g3(l : java.util.List<Int>) { for (i in l) { unresolved(i) } }"));
+        files.add(createPsiFile("c", "namespace c\nfun h1() { val x : Int; x + 1 }\nfun h2() = h2()\nfun h3() : Int { }"));
+
+        List<String> serial = analyze(files, 1);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(serial, analyze(files, 4));
+        }
+    }
+
+    private List<String> analyze(List<JetFile> files, int threadCount) {
+        AnalyzeExhaust analyzeExhaust = AnalyzerFacadeForJVM.analyzeFilesWithJavaIntegration(
+                getProject(), files, Predicates.<PsiFile>alwaysTrue(), JetControlFlowDataTraceFactory.EMPTY, CompilerSpecialMode.REGULAR,
+                true, threadCount);
+        BindingContext bindingContext = analyzeExhaust.getBindingContext();
+
+        List<String> result = new ArrayList<String>();
+        for (Diagnostic diagnostic : bindingContext.getDiagnostics()) {
+            result.add(diagnostic.getPsiFile().getName() + diagnostic.getTextRanges() + ": " + diagnostic.getMessage());
+        }
+        for (JetFile file : files) {
+            for (JetNamedFunction function : getFunctions(file)) {
+                result.add(function.getName() + ": " + bindingContext.get(BindingContext.FUNCTION, function).getReturnType());
+            }
+        }
+        return result;
+    }
+
+    private static List<JetNamedFunction> getFunctions(JetFile file) {
+        List<JetNamedFunction> result = new ArrayList<JetNamedFunction>();
+        for (JetDeclaration declaration : file.getDeclarations()) {
+            if (declaration instanceof JetNamedFunction) {
+                result.add((JetNamedFunction) declaration);
+            }
+        }
+        return result;
+    }
+}
@@ -36,8 +36,11 @@ import org.jetbrains.jet.lang.resolve.scopes.receivers.ReceiverDescriptor;
 import org.jetbrains.jet.lang.types.CommonSupertypes;
 import org.jetbrains.jet.lang.types.ErrorUtils;
 import org.jetbrains.jet.lang.types.JetType;
+import org.jetbrains.jet.lang.types.TypeSubstitutor;
 import org.jetbrains.jet.lang.types.TypeUtils;
+import org.jetbrains.jet.lang.types.Variance;
 import org.jetbrains.jet.lang.types.checker.JetTypeChecker;
+import org.jetbrains.jet.lang.types.checker.SubtypingCache;
 import org.jetbrains.jet.lang.types.expressions.ExpressionTypingServices;
 import org.jetbrains.jet.lang.types.lang.JetStandardClasses;
 import org.jetbrains.jet.lang.types.lang.JetStandardLibrary;
@@ -240,6 +243,101 @@ public class JetTypeCheckerTest extends JetLiteFixture {
         assertNotSubtype("Unit", "Int");
     }
 
+    public void testCachedSubtyping() throws Exception {
+        JetType derived = makeType("Derived_T<Int>");
+        JetType base = makeType("Base_T<Int>");
+        SubtypingCache cache = new SubtypingCache();
+        SubtypingCache.setCurrent(cache);
+        try {
+            assertNull(cache.getSubtypeResult(derived, base));
+            assertTrue(JetTypeChecker.INSTANCE.isSubtypeOf(derived, base));
+            assertFalse(JetTypeChecker.INSTANCE.isSubtypeOf(base, derived));
+            assertEquals(Boolean.TRUE, cache.getSubtypeResult(derived, base));
+            assertEquals(Boolean.FALSE, cache.getSubtypeResult(base, derived));
+            // The same instances are answered from the cache, equal ones are not
+            assertTrue(JetTypeChecker.INSTANCE.isSubtypeOf(derived, base));
+            assertFalse(JetTypeChecker.INSTANCE.isSubtypeOf(base, derived));
+            assertNull(cache.getSubtypeResult(makeType("Derived_T<Int>"), base));
+
+            for (int i = 0; i < 2; i++) {
+                testBasicSubtyping();
+                assertSubtype("DDerived_T<Int>", "Base_T<out Any>");
+                assertNotSubtype("Base_inT<*>", "Base_T<*>");
+                testCommonSupertypes();
+            }
+
+            SubtypingCache newCache = new SubtypingCache();
+            SubtypingCache.setCurrent(newCache);
+            assertNull(newCache.getSubtypeResult(derived, base));
+            assertTrue(JetTypeChecker.INSTANCE.isSubtypeOf(derived, base));
+            assertEquals(Boolean.TRUE, newCache.getSubtypeResult(derived, base));
+        }
+        finally {
+            SubtypingCache.setCurrent(null);
+        }
+
+        JetType derivedString = makeType("Derived_T<String>");
+        assertFalse(JetTypeChecker.INSTANCE.isSubtypeOf(derivedString, base));
+        assertNull(cache.getSubtypeResult(derivedString, base));
+    }
+
+    public void testSubstitutionKeepsUnaffectedTypes() throws Exception {
+        JetType derived = makeType("Derived_T<String>");
+        TypeSubstitutor substitutor = TypeSubstitutor.create(derived);
+
+        JetType unaffected = makeType("Base_T<Base_outT<Int>>");
+        assertSame(unaffected, substitutor.substitute(unaffected, Variance.INVARIANT));
+
+        ClassDescriptor derivedClass = (ClassDescriptor) derived.getConstructor().getDeclarationDescriptor();
+        JetType substituted = substitutor.substitute(derivedClass.getDefaultType(), Variance.INVARIANT);
+        assertEquals(derived, substituted);
+        assertSame(derived.getArguments().get(0), substituted.getArguments().get(0));
+    }
+
+    public void testScopeLookupCache() throws Exception {
+        DeclarationDescriptor owner = library.getLibraryScope().getContainingDeclaration();
+        WritableScopeImpl lockedImport = new WritableScopeImpl(JetScope.EMPTY, owner, RedeclarationHandler.DO_NOTHING);
+        lockedImport.changeLockLevel(WritableScope.LockLevel.BOTH);
+        lockedImport.addClassifierAlias("Int", library.getInt());
+        lockedImport.changeLockLevel(WritableScope.LockLevel.READING);
+        WritableScopeImpl writableImport = new WritableScopeImpl(JetScope.EMPTY, owner, RedeclarationHandler.DO_NOTHING);
+        writableImport.changeLockLevel(WritableScope.LockLevel.BOTH);
+
+        WritableScopeImpl scope = new WritableScopeImpl(JetScope.EMPTY, owner, RedeclarationHandler.DO_NOTHING);
+        scope.importScope(lockedImport);
+        scope.changeLockLevel(WritableScope.LockLevel.READING);
+        WritableScopeImpl scopeWithWritableImport = new WritableScopeImpl(JetScope.EMPTY, owner, RedeclarationHandler.DO_NOTHING);
+        scopeWithWritableImport.importScope(lockedImport);
+        scopeWithWritableImport.importScope(writableImport);
+        scopeWithWritableImport.changeLockLevel(WritableScope.LockLevel.READING);
+        WritableScopeImpl local = new WritableScopeImpl(scope, owner, RedeclarationHandler.DO_NOTHING);
+        local.changeLockLevel(WritableScope.LockLevel.BOTH);
+        WritableScopeImpl inner = new WritableScopeImpl(local, owner, RedeclarationHandler.DO_NOTHING);
+        inner.changeLockLevel(WritableScope.LockLevel.READING);
+        ChainedScope chained = new ChainedScope(owner, scope, scopeWithWritableImport);
+
+        assertNotSame(scope.getFunctions("foo"), scope.getFunctions("foo"));
+        ScopeLookupCache.setCurrent(new ScopeLookupCache());
+        try {
+            assertSame(library.getInt(), scope.getClassifier("Int"));
+            assertSame(library.getInt(), scope.getClassifier("Int"));
+            assertSame(scope.getFunctions("foo"), scope.getFunctions("foo"));
+
+            assertNull(scopeWithWritableImport.getClassifier("Foo"));
+            assertNull(chained.getClassifier("Foo"));
+            assertNull(inner.getClassifier("Bar"));
+            writableImport.addClassifierAlias("Foo", library.getInt());
+            local.addClassifierAlias("Bar", library.getString());
+            assertSame(library.getInt(), scopeWithWritableImport.getClassifier("Foo"));
+            assertSame(library.getInt(), chained.getClassifier("Foo"));
+            assertSame(library.getString(), inner.getClassifier("Bar"));
+        }
+        finally {
+            ScopeLookupCache.setCurrent(null);
+        }
+        assertNotSame(scope.getFunctions("foo"), scope.getFunctions("foo"));
+    }
+
     public void testTuples() throws Exception {
         assertSubtype("Unit", "#()");
         assertSubtype("#()", "Unit");
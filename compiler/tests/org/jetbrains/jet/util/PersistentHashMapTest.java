@@ -0,0 +1,138 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.util;
+
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class PersistentHashMapTest extends TestCase {
+    private static final PersistentHashMap.Merger<String> CONCATENATE = new PersistentHashMap.Merger<String>() {
+        @NotNull
+        @Override
+        public String merge(@NotNull String first, @NotNull String second) {
+            return first + second;
+        }
+    };
+
+    private static final PersistentHashMap.Merger<String> MIN = new PersistentHashMap.Merger<String>() {
+        @NotNull
+        @Override
+        public String merge(@NotNull String first, @NotNull String second) {
+            return first.compareTo(second) <= 0 ? first : second;
+        }
+
+        @Override
+        public boolean isIdempotent() {
+            return true;
+        }
+    };
+
+    public void testPutAndGet() {
+        Random random = new Random(42);
+        Map<Key, String> expected = new HashMap<Key, String>();
+        PersistentHashMap<Key, String> map = PersistentHashMap.empty();
+        for (int i = 0; i < 5000; i++) {
+            Key key = randomKey(random);
+            String value = String.valueOf(random.nextInt(10));
+            PersistentHashMap<Key, String> previous = map;
+            map = map.put(key, value);
+            expected.put(key, value);
+            assertEquals(expected, map.toMap());
+            assertEquals(expected.get(key), map.get(key));
+            assertNotSame(map, previous.put(key, value + "!"));
+        }
+        for (Key key : expected.keySet()) {
+            assertSame(map, map.put(key, map.get(key)));
+        }
+        assertNull(map.get(new Key(-1, 0)));
+    }
+
+    public void testUnionAndIntersection() {
+        Random random = new Random(239);
+        PersistentHashMap<Key, String> common = randomMap(random, PersistentHashMap.<Key, String>empty(), 300);
+        for (int i = 0; i < 50; i++) {
+            PersistentHashMap<Key, String> a = randomMap(random, common, random.nextInt(100));
+            PersistentHashMap<Key, String> b = randomMap(random, common, random.nextInt(100));
+            Map<Key, String> mapA = a.toMap();
+            Map<Key, String> mapB = b.toMap();
+
+            for (PersistentHashMap.Merger<String> merger : new PersistentHashMap.Merger[] {CONCATENATE, MIN}) {
+                Map<Key, String> union = new HashMap<Key, String>(mapA);
+                Map<Key, String> intersection = new HashMap<Key, String>();
+                for (Map.Entry<Key, String> entry : mapB.entrySet()) {
+                    String value = mapA.get(entry.getKey());
+                    if (value == null) {
+                        union.put(entry.getKey(), entry.getValue());
+                    }
+                    else {
+                        union.put(entry.getKey(), merger.merge(value, entry.getValue()));
+                        intersection.put(entry.getKey(), merger.merge(value, entry.getValue()));
+                    }
+                }
+                assertEquals(union, a.union(b, merger).toMap());
+                assertEquals(intersection, a.intersection(b, merger).toMap());
+            }
+        }
+
+        assertSame(common, common.union(common, MIN));
+        assertSame(common, common.intersection(common, MIN));
+        assertSame(common, common.union(PersistentHashMap.<Key, String>empty(), CONCATENATE));
+        assertTrue(common.intersection(PersistentHashMap.<Key, String>empty(), CONCATENATE).isEmpty());
+    }
+
+    private static PersistentHashMap<Key, String> randomMap(Random random, PersistentHashMap<Key, String> map, int size) {
+        for (int i = 0; i < size; i++) {
+            map = map.put(randomKey(random), String.valueOf((char) ('a' + random.nextInt(26))));
+        }
+        return map;
+    }
+
+    private static Key randomKey(Random random) {
+        // Few distinct hash codes, so that there are collisions at every level
+        int id = random.nextInt(1000);
+        return new Key(id, id % 3 == 0 ? id % 37 : id * 0x9E3779B9);
+    }
+
+    private static final class Key {
+        private final int id;
+        private final int hashCode;
+
+        private Key(int id, int hashCode) {
+            this.id = id;
+            this.hashCode = hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public String toString() {
+            return id + "#" + hashCode;
+        }
+    }
+}
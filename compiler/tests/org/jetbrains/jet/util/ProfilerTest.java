@@ -0,0 +1,63 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.util;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.List;
+
+public class ProfilerTest extends TestCase {
+    public void testDisabledByDefault() {
+        assertNull(Profiler.getInstance());
+        Profiler.start(Profiler.ANALYZER, "bodies").end();
+    }
+
+    public void testNestedSections() throws IOException {
+        Profiler profiler = new Profiler();
+        Profiler.setInstance(profiler);
+        try {
+            Profiler.Section outer = Profiler.start(Profiler.ANALYZER, "bodies");
+            Profiler.Section nested = Profiler.start(Profiler.ANALYZER, "bodies", "object \"A\"");
+            Profiler.Section inner = Profiler.start(Profiler.JAVA, "class", "java.lang.String");
+            inner.end();
+            nested.end();
+            outer.end();
+        }
+        finally {
+            Profiler.setInstance(null);
+        }
+
+        List<Profiler.Event> events = profiler.getEvents();
+        assertEquals(3, events.size());
+        assertEquals("class", events.get(0).getName());
+        assertFalse(events.get(0).isNested());
+        assertTrue(events.get(1).isNested());
+        assertFalse(events.get(2).isNested());
+        assertTrue(events.get(2).getWallTime() >= events.get(1).getWallTime());
+
+        StringBuilder json = new StringBuilder();
+        profiler.writeJson(json);
+        assertTrue(json.toString(), json.toString().contains("\"name\": \"bodies\", \"count\": 1,"));
+        assertTrue(json.toString(), json.toString().contains("\"detail\": \"object \\\"A\\\"\""));
+
+        StringBuilder trace = new StringBuilder();
+        profiler.writeChromeTrace(trace);
+        assertTrue(trace.toString(), trace.toString().startsWith("{\"traceEvents\": ["));
+        assertTrue(trace.toString(), trace.toString().contains("\"ph\": \"X\""));
+    }
+}
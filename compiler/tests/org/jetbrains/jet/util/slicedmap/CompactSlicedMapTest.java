@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.util.slicedmap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class CompactSlicedMapTest {
+    private static final WritableSlice<String, Integer> SIMPLE = Slices.createSimpleSlice();
+    private static final WritableSlice<String, Boolean> COLLECTIVE = Slices.createCollectiveSetSlice();
+    private static final WritableSlice<String, Integer> NORMALIZED = Slices.<String, Integer>sliceBuilder().setKeyNormalizer(
+            new Slices.KeyNormalizer<String>() {
+                @Override
+                public String normalize(String key) {
+                    return key.toLowerCase();
+                }
+            }).build();
+
+    @Test
+    public void sameValuesAsSlicedMapImpl() {
+        CompactSlicedMap compact = new CompactSlicedMap();
+        SlicedMapImpl original = SlicedMapImpl.create();
+        for (MutableSlicedMap map : new MutableSlicedMap[] {compact, original}) {
+            // Enough entries for the index to be built
+            for (int i = 0; i < 20; i++) {
+                map.put(SIMPLE, "k" + i, i);
+            }
+            map.put(SIMPLE, "k3", 33);
+            map.put(COLLECTIVE, "x", true);
+            map.put(COLLECTIVE, "y", true);
+            map.put(NORMALIZED, "Key", 3);
+        }
+
+        Assert.assertEquals(entries(original), entries(compact));
+        Assert.assertEquals(Integer.valueOf(33), compact.get(SIMPLE, "k3"));
+        Assert.assertNull(compact.get(SIMPLE, "k20"));
+        Assert.assertEquals(true, compact.get(COLLECTIVE, "x"));
+        Assert.assertEquals(false, compact.get(COLLECTIVE, "z"));
+        Assert.assertEquals(Arrays.asList("x", "y"), compact.getKeys(COLLECTIVE));
+        Assert.assertEquals(Integer.valueOf(3), compact.get(NORMALIZED, "KEY"));
+        Assert.assertEquals(Integer.valueOf(33), compact.get(SIMPLE.makeRawValueVersion(), "k3"));
+    }
+
+    @Test
+    public void clearAndReuse() {
+        CompactSlicedMap map = new CompactSlicedMap();
+        map.put(SIMPLE, "a", 1);
+        map.put(COLLECTIVE, "x", true);
+        map.clear();
+
+        Assert.assertEquals(0, map.size());
+        Assert.assertNull(map.get(SIMPLE, "a"));
+        Assert.assertTrue(map.getKeys(COLLECTIVE).isEmpty());
+
+        map.put(SIMPLE, "b", 2);
+        Assert.assertEquals(Integer.valueOf(2), map.get(SIMPLE, "b"));
+        Assert.assertEquals(1, map.size());
+    }
+
+    private static List<String> entries(SlicedMap map) {
+        List<String> result = new ArrayList<String>();
+        for (Map.Entry<SlicedMapKey<?, ?>, ?> entry : map) {
+            result.add(entry.getKey() + " = " + entry.getValue());
+        }
+        return result;
+    }
+}
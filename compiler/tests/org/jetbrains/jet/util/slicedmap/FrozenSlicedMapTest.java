@@ -0,0 +1,64 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.jet.util.slicedmap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class FrozenSlicedMapTest {
+    private static final WritableSlice<String, Integer> SIMPLE = Slices.createSimpleSlice();
+    private static final WritableSlice<String, Boolean> COLLECTIVE = Slices.createCollectiveSetSlice();
+    private static final WritableSlice<String, Integer> WITH_DEFAULT = Slices.<String, Integer>sliceBuilder().setDefaultValue(-1).build();
+    private static final WritableSlice<String, Integer> NORMALIZED = Slices.<String, Integer>sliceBuilder().setKeyNormalizer(
+            new Slices.KeyNormalizer<String>() {
+                @Override
+                public String normalize(String key) {
+                    return key.toLowerCase();
+                }
+            }).build();
+
+    @Test
+    public void sameValuesAsOriginal() {
+        SlicedMapImpl original = SlicedMapImpl.create();
+        original.put(SIMPLE, "a", 1);
+        original.put(SIMPLE, "b", 2);
+        original.put(COLLECTIVE, "x", true);
+        original.put(COLLECTIVE, "y", true);
+        original.put(NORMALIZED, "Key", 3);
+
+        FrozenSlicedMap frozen = FrozenSlicedMap.copyOf(original);
+        Assert.assertEquals(Integer.valueOf(1), frozen.get(SIMPLE, "a"));
+        Assert.assertEquals(Integer.valueOf(2), frozen.get(SIMPLE, "b"));
+        Assert.assertNull(frozen.get(SIMPLE, "c"));
+        Assert.assertEquals(true, frozen.get(COLLECTIVE, "x"));
+        Assert.assertEquals(false, frozen.get(COLLECTIVE, "z"));
+        Assert.assertEquals(Arrays.asList("x", "y"), frozen.getKeys(COLLECTIVE));
+        Assert.assertEquals(Integer.valueOf(-1), frozen.get(WITH_DEFAULT, "a"));
+        Assert.assertEquals(Integer.valueOf(3), frozen.get(NORMALIZED, "KEY"));
+        Assert.assertEquals(Integer.valueOf(1), frozen.get(SIMPLE.makeRawValueVersion(), "a"));
+    }
+
+    @Test
+    public void emptyCollectiveSlice() {
+        FrozenSlicedMap frozen = FrozenSlicedMap.copyOf(SlicedMapImpl.create());
+        Assert.assertEquals(Collections.<String>emptyList(), frozen.getKeys(COLLECTIVE));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.k2js.test;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.k2js.facade.K2JSTranslator;
+import org.jetbrains.k2js.test.config.TestConfig;
+import org.jetbrains.k2js.test.rhino.RhinoFunctionResultChecker;
+import org.jetbrains.k2js.utils.JetFileUtils;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.jetbrains.k2js.test.rhino.RhinoUtils.runRhinoTest;
+
+public final class IncrementalTranslationTest extends TestWithEnvironment {
+
+    private static final String KOTLIN_JS_LIB = "js/js.translator/testFiles/kotlin_lib.js";
+
+    private static final String LIBRARY = "namespace a\n" +
+                                          "fun answer() : Int = 42\n" +
+                                          "open class Base() {\n" +
+                                          "  open fun value() : Int = 1\n" +
+                                          "  fun other() : Int = 2\n" +
+                                          "}";
+
+    public void testChangedNamespaceIsSplicedWithKeptOnes() throws Exception {
+        K2JSTranslator translator = new K2JSTranslator(new TestConfig(getProject()), true);
+        String code = translate(translator, LIBRARY, "namespace foo\n" +
+                                                     "import a.*\n" +
+                                                     "fun box() : Boolean = answer() == 42");
+        runBox(code);
+
+        String changedCode = translate(translator, LIBRARY, "namespace foo\n" +
+                                                            "import a.*\n" +
+                                                            "fun box() : Boolean = answer() + 1 == 43");
+        assertFalse(code.equals(changedCode));
+        runBox(changedCode);
+    }
+
+    public void testNamespacesReferringToChangedAbiAreTranslatedAgain() throws Exception {
+        K2JSTranslator translator = new K2JSTranslator(new TestConfig(getProject()), true);
+        String usage = "namespace foo\n" +
+                       "import a.*\n" +
+                       "fun box() : Boolean = answer() == 42";
+        runBox(translate(translator, LIBRARY, usage));
+
+        // the overload declared first takes the name of answer()
+        runBox(translate(translator, "namespace a\n" +
+                                     "fun answer(x : Int) : Int = x\n" +
+                                     "fun answer() : Int = 42", usage));
+    }
+
+    public void testChangedClassExtendsKeptClass() throws Exception {
+        K2JSTranslator translator = new K2JSTranslator(new TestConfig(getProject()), true);
+        runBox(translate(translator, LIBRARY, "namespace foo\n" +
+                                              "import a.*\n" +
+                                              "class Derived() : Base() {\n" +
+                                              "  override fun value() : Int = 3\n" +
+                                              "}\n" +
+                                              "fun box() : Boolean = Derived().value() == 3 && Derived().other() == 2"));
+
+        runBox(translate(translator, LIBRARY, "namespace foo\n" +
+                                              "import a.*\n" +
+                                              "class Derived() : Base() {\n" +
+                                              "  override fun value() : Int = 3\n" +
+                                              "  fun other(x : Int) : Int = x\n" +
+                                              "}\n" +
+                                              "fun box() : Boolean = Derived().value() == 3 && Derived().other() == 2 && " +
+                                              "Derived().other(4) == 4"));
+    }
+
+    @NotNull
+    private String translate(@NotNull K2JSTranslator translator, @NotNull String library, @NotNull String program) {
+        JetFile libraryFile = JetFileUtils.createPsiFile("a", library, getProject());
+        JetFile programFile = JetFileUtils.createPsiFile("foo", program, getProject());
+        return translator.generateProgramCode(Arrays.asList(libraryFile, programFile));
+    }
+
+    private static void runBox(@NotNull String code) throws Exception {
+        File codeFile = FileUtil.createTempFile("box", ".js");
+        try {
+            FileUtil.writeToFile(codeFile, code);
+            runRhinoTest(Arrays.asList(KOTLIN_JS_LIB, codeFile.getAbsolutePath()),
+                         new RhinoFunctionResultChecker("foo", "box", true));
+        }
+        finally {
+            FileUtil.delete(codeFile);
+        }
+    }
+}
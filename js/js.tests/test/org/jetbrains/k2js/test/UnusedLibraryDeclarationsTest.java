@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.k2js.test;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.k2js.config.Config;
+import org.jetbrains.k2js.facade.K2JSTranslator;
+import org.jetbrains.k2js.generate.UnusedRuntimeDeclarationsRemover;
+import org.jetbrains.k2js.test.config.TestConfig;
+import org.jetbrains.k2js.test.rhino.RhinoFunctionResultChecker;
+import org.jetbrains.k2js.utils.JetFileUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.jetbrains.k2js.test.rhino.RhinoUtils.runRhinoTest;
+
+public final class UnusedLibraryDeclarationsTest extends TestWithEnvironment {
+
+    private static final String KOTLIN_JS_LIB = "js/js.translator/testFiles/kotlin_lib.js";
+
+    public void testUnusedLibraryNamespaceIsRemoved() {
+        String code = translate("namespace foo\n" +
+                                "fun box() : Boolean = true");
+        assertFalse(code, code.contains("kotlin.initialize()"));
+        assertTrue(code, code.contains("foo.initialize()"));
+    }
+
+    public void testUsedLibraryFunctionIsKept() {
+        String code = translate("namespace foo\n" +
+                                "import java.util.HashMap\n" +
+                                "fun box() : Boolean {\n" +
+                                "  val map = HashMap<String, String>()\n" +
+                                "  map[\"a\"] = \"b\"\n" +
+                                "  return map.get(\"a\") == \"b\"\n" +
+                                "}");
+        assertTrue(code, code.contains("kotlin.initialize()"));
+    }
+
+    public void testTransitivelyUsedLibraryDeclarationsAreKept() {
+        final List<JetFile> libFiles = new ArrayList<JetFile>(new TestConfig(getProject()).getLibFiles());
+        libFiles.add(JetFileUtils.createPsiFile("lib", "namespace lib\n" +
+                                                       "fun answer() : Int = half() * 2\n" +
+                                                       "fun half() : Int = 21\n" +
+                                                       "fun neverCalled() : Int = 0\n" +
+                                                       "class Answerer() {\n" +
+                                                       "  fun get() : Int = answer()\n" +
+                                                       "}\n" +
+                                                       "class NeverCreated() {}", getProject()));
+        Config config = new Config(getProject()) {
+            @NotNull
+            @Override
+            public List<JetFile> getLibFiles() {
+                return libFiles;
+            }
+        };
+        JetFile file = JetFileUtils.createPsiFile("test", "namespace foo\n" +
+                                                          "import lib.*\n" +
+                                                          "fun box() : Boolean = Answerer().get() == 42", getProject());
+        String code = new K2JSTranslator(config).generateProgramCode(file);
+        assertTrue(code, code.contains("Answerer"));
+        assertTrue(code, code.contains("answer"));
+        assertTrue(code, code.contains("half"));
+        assertFalse(code, code.contains("neverCalled"));
+        assertFalse(code, code.contains("NeverCreated"));
+    }
+
+    public void testDeclarationsUnusedByMainAreRemoved() throws Exception {
+        JetFile file = JetFileUtils.createPsiFile("test", "namespace foo\n" +
+                                                          "fun main(args : Array<String>) {\n" +
+                                                          "  reached()\n" +
+                                                          "}\n" +
+                                                          "fun reached() {}\n" +
+                                                          "fun notReached() {}\n" +
+                                                          "class NotCreated() {}", getProject());
+        File output = FileUtil.createTempFile("main", ".js");
+        try {
+            K2JSTranslator.translateWithCallToMainAndSaveToFile(Arrays.asList(file), output.getAbsolutePath(), getProject());
+            String code = FileUtil.loadFile(output);
+            assertTrue(code, code.contains("main"));
+            assertTrue(code, code.contains("reached"));
+            assertFalse(code, code.contains("notReached"));
+            assertFalse(code, code.contains("NotCreated"));
+        }
+        finally {
+            FileUtil.delete(output);
+        }
+    }
+
+    public void testUnusedRuntimeDeclarationsAreRemoved() throws Exception {
+        String code = translate("namespace foo\n" +
+                                "fun box() : Boolean = true");
+        String runtime = removeUnusedRuntimeDeclarations(code);
+        assertFalse(runtime, runtime.contains("Hashtable"));
+        assertFalse(runtime, runtime.contains("Kotlin.HashSet"));
+        assertFalse(runtime, runtime.contains("Kotlin.ArrayList"));
+        runBox(runtime, code);
+    }
+
+    public void testUsedRuntimeDeclarationsAreKept() throws Exception {
+        String code = translate("namespace foo\n" +
+                                "import java.util.HashMap\n" +
+                                "fun box() : Boolean {\n" +
+                                "  val map = HashMap<String, String>()\n" +
+                                "  map[\"a\"] = \"b\"\n" +
+                                "  return map.get(\"a\") == \"b\"\n" +
+                                "}");
+        String runtime = removeUnusedRuntimeDeclarations(code);
+        assertTrue(runtime, runtime.contains("Hashtable"));
+        assertTrue(runtime, runtime.contains("Kotlin.HashMap"));
+        assertFalse(runtime, runtime.contains("Kotlin.StringBuilder"));
+        runBox(runtime, code);
+    }
+
+    @NotNull
+    private static String removeUnusedRuntimeDeclarations(@NotNull String code) throws Exception {
+        String runtime = FileUtil.loadFile(new File(KOTLIN_JS_LIB));
+        return UnusedRuntimeDeclarationsRemover.removeUnusedDeclarations(runtime, code);
+    }
+
+    private static void runBox(@NotNull String runtime, @NotNull String code) throws Exception {
+        File runtimeFile = FileUtil.createTempFile("kotlin_lib", ".js");
+        File codeFile = FileUtil.createTempFile("box", ".js");
+        try {
+            FileUtil.writeToFile(runtimeFile, runtime);
+            FileUtil.writeToFile(codeFile, code);
+            runRhinoTest(Arrays.asList(runtimeFile.getAbsolutePath(), codeFile.getAbsolutePath()),
+                         new RhinoFunctionResultChecker("foo", "box", true));
+        }
+        finally {
+            FileUtil.delete(runtimeFile);
+            FileUtil.delete(codeFile);
+        }
+    }
+
+    @NotNull
+    private String translate(@NotNull String text) {
+        K2JSTranslator translator = new K2JSTranslator(new TestConfig(getProject()));
+        return translator.generateProgramCode(JetFileUtils.createPsiFile("test", text, getProject()));
+    }
+}
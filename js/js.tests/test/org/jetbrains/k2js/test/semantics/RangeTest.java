@@ -44,4 +44,8 @@ public final class RangeTest extends SingleFileTranslationTest {
     public void testIteratingOverRanges() throws Exception {
         checkFooBoxIsTrue("iteratingOverRanges.kt");
     }
+
+    public void testForLoopsOverRangeLiterals() throws Exception {
+        checkFooBoxIsTrue("forLoopsOverRangeLiterals.kt");
+    }
 }
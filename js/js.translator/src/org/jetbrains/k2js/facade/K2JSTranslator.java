@@ -19,7 +19,10 @@ package org.jetbrains.k2js.facade;
 import com.google.dart.compiler.backend.js.ast.JsProgram;
 import com.intellij.openapi.project.Project;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.lang.psi.JetDeclaration;
 import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.psi.JetNamedFunction;
 import org.jetbrains.jet.lang.resolve.BindingContext;
 import org.jetbrains.jet.lang.types.lang.JetStandardLibrary;
 import org.jetbrains.jet.plugin.JetMainDetector;
@@ -27,6 +30,7 @@ import org.jetbrains.k2js.analyze.AnalyzerFacadeForJS;
 import org.jetbrains.k2js.config.Config;
 import org.jetbrains.k2js.config.IDEAConfig;
 import org.jetbrains.k2js.generate.CodeGenerator;
+import org.jetbrains.k2js.translate.general.IncrementalTranslator;
 import org.jetbrains.k2js.translate.general.Translation;
 import org.jetbrains.k2js.utils.GenerationUtils;
 import org.jetbrains.k2js.utils.JetFileUtils;
@@ -35,6 +39,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.StringTokenizer;
 
@@ -53,11 +58,11 @@ public final class K2JSTranslator {
                                                             @NotNull String outputPath,
                                                             @NotNull Project project) throws Exception {
         K2JSTranslator translator = new K2JSTranslator(new IDEAConfig(project));
-        String programCode = translator.generateProgramCode(files) + "\n";
         JetFile fileWithMain = JetMainDetector.getFileWithMain(files);
         if (fileWithMain == null) {
             throw new RuntimeException("No file with main detected.");
         }
+        String programCode = translator.generateProgramCodeForMain(files, fileWithMain) + "\n";
         String callToMain = generateCallToMain(fileWithMain, "");
         FileWriter writer = new FileWriter(new File(outputPath));
         try {
@@ -69,10 +74,21 @@ public final class K2JSTranslator {
 
     @NotNull
     private final Config config;
+    @Nullable
+    private final IncrementalTranslator incrementalTranslator;
 
 
     public K2JSTranslator(@NotNull Config config) {
+        this(config, false);
+    }
+
+    /**
+     * @param incremental whether {@link #generateProgramCode(List)} should keep the code of the translated namespaces
+     *                    and translate again only the namespaces affected by changes, see {@link IncrementalTranslator}
+     */
+    public K2JSTranslator(@NotNull Config config, boolean incremental) {
         this.config = config;
+        this.incrementalTranslator = incremental ? new IncrementalTranslator() : null;
     }
 
     //TODO: refactor
@@ -81,7 +97,7 @@ public final class K2JSTranslator {
     @NotNull
     public String translateStringWithCallToMain(@NotNull String programText, @NotNull String argumentsString) {
         JetFile file = JetFileUtils.createPsiFile("test", programText, getProject());
-        String programCode = generateProgramCode(file) + "\n";
+        String programCode = generateProgramCodeForMain(Arrays.asList(file), file) + "\n";
         String flushOutput = "Kotlin.System.flush();\n";
         String callToMain = generateCallToMain(file, argumentsString);
         String programOutput = "Kotlin.System.output();\n";
@@ -90,23 +106,57 @@ public final class K2JSTranslator {
 
     @NotNull
     public String generateProgramCode(@NotNull JetFile psiFile) {
-        JsProgram program = generateProgram(Arrays.asList(psiFile));
-        CodeGenerator generator = new CodeGenerator();
-        return generator.generateToString(program);
+        return generateProgramCode(Arrays.asList(psiFile));
     }
 
     @NotNull
     public String generateProgramCode(@NotNull List<JetFile> files) {
+        if (incrementalTranslator != null) {
+            JetStandardLibrary.initialize(config.getProject());
+            BindingContext bindingContext = AnalyzerFacadeForJS.analyzeFilesAndCheckErrors(files, config);
+            return incrementalTranslator.translate(bindingContext, AnalyzerFacadeForJS.withJsLibAdded(files, config));
+        }
         JsProgram program = generateProgram(files);
         CodeGenerator generator = new CodeGenerator();
         return generator.generateToString(program);
     }
 
+    /**
+     * Unlike {@link #generateProgramCode(List)}, drops the declarations of the files that main does not use.
+     */
+    @NotNull
+    public String generateProgramCodeForMain(@NotNull List<JetFile> files, @NotNull JetFile fileWithMain) {
+        JsProgram program = generateProgram(files, fileWithMain);
+        CodeGenerator generator = new CodeGenerator();
+        return generator.generateToString(program);
+    }
+
     @NotNull
     public JsProgram generateProgram(@NotNull List<JetFile> filesToTranslate) {
+        return generateProgram(filesToTranslate, null);
+    }
+
+    @NotNull
+    private JsProgram generateProgram(@NotNull List<JetFile> filesToTranslate, @Nullable JetFile fileWithMain) {
         JetStandardLibrary.initialize(config.getProject());
         BindingContext bindingContext = AnalyzerFacadeForJS.analyzeFilesAndCheckErrors(filesToTranslate, config);
-        return Translation.generateAst(bindingContext, AnalyzerFacadeForJS.withJsLibAdded(filesToTranslate, config));
+        List<JetFile> files = AnalyzerFacadeForJS.withJsLibAdded(filesToTranslate, config);
+        if (fileWithMain == null) {
+            return Translation.generateAst(bindingContext, files, config.getLibFiles(),
+                                           Collections.<JetDeclaration>emptyList());
+        }
+        return Translation.generateAst(bindingContext, files, files, getMainFunctions(fileWithMain));
+    }
+
+    @NotNull
+    private static List<JetNamedFunction> getMainFunctions(@NotNull JetFile file) {
+        List<JetNamedFunction> result = new ArrayList<JetNamedFunction>();
+        for (JetDeclaration declaration : file.getDeclarations()) {
+            if (declaration instanceof JetNamedFunction && JetMainDetector.isMain((JetNamedFunction) declaration)) {
+                result.add((JetNamedFunction) declaration);
+            }
+        }
+        return result;
     }
 
 
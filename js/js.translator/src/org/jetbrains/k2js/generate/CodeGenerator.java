@@ -17,7 +17,9 @@
 package org.jetbrains.k2js.generate;
 
 import com.google.dart.compiler.backend.js.JsSourceGenerationVisitor;
+import com.google.dart.compiler.backend.js.ast.JsGlobalBlock;
 import com.google.dart.compiler.backend.js.ast.JsProgram;
+import com.google.dart.compiler.backend.js.ast.JsStatement;
 import com.google.dart.compiler.util.DefaultTextOutput;
 import com.google.dart.compiler.util.TextOutput;
 import org.jetbrains.annotations.NotNull;
@@ -25,6 +27,7 @@ import org.jetbrains.annotations.NotNull;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.List;
 
 /**
  * @author Pavel.Talanov
@@ -47,6 +50,18 @@ public final class CodeGenerator {
         return (new CodeGenerator()).generateToString(program);
     }
 
+    /**
+     * Generates the statements as if they were the top level statements of a program.
+     */
+    @NotNull
+    public static String toString(@NotNull List<JsStatement> statements) {
+        JsGlobalBlock block = new JsGlobalBlock();
+        block.getStatements().addAll(statements);
+        CodeGenerator generator = new CodeGenerator();
+        new JsSourceGenerationVisitor(generator.output).accept(block);
+        return generator.output.toString();
+    }
+
     public void generateToFile(@NotNull JsProgram program, @NotNull File file) throws IOException {
         generateCode(program);
         FileWriter writer = new FileWriter(file);
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.k2js.generate;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.Token;
+import org.mozilla.javascript.ast.*;
+
+import java.util.*;
+
+/**
+ * Removes the members of the JavaScript runtime (kotlin_lib.js) which the program never uses, together with the local
+ * functions and variables of the runtime that only they use, e.g. the hashtable behind Kotlin.HashMap.
+ * <p/>
+ * A declaration is a statement assigning Kotlin.name or one of its properties, a function statement, or a var statement
+ * whose initializers have no side effects. It is used if its name is mentioned by the program or by used code of the
+ * runtime. As in {@link org.jetbrains.k2js.translate.general.UnusedDeclarationsRemover}, names are compared as strings,
+ * so any property access or string with the same name keeps a declaration. Everything else in the runtime is kept.
+ */
+public final class UnusedRuntimeDeclarationsRemover {
+
+    private static final String KOTLIN_OBJECT_NAME = "Kotlin";
+
+    /**
+     * @return the runtime code without the declarations the program code does not use
+     */
+    @NotNull
+    public static String removeUnusedDeclarations(@NotNull String runtimeCode, @NotNull String programCode) {
+        UnusedRuntimeDeclarationsRemover remover = new UnusedRuntimeDeclarationsRemover(parse(runtimeCode, "runtime"));
+        remover.markUsedNames(parse(programCode, "program"));
+        return remover.removeUnused(runtimeCode);
+    }
+
+    @NotNull
+    private static AstRoot parse(@NotNull String code, @NotNull String sourceName) {
+        CompilerEnvirons environment = new CompilerEnvirons();
+        environment.setReservedKeywordAsIdentifier(true);
+        return new Parser(environment).parse(code, sourceName, 1);
+    }
+
+    private static final class Declaration {
+        @NotNull
+        private final AstNode statement;
+        @NotNull
+        private final Set<String> names;
+        @NotNull
+        private final List<AstNode> values;
+
+        private Declaration(@NotNull AstNode statement, @NotNull Set<String> names, @NotNull List<AstNode> values) {
+            this.statement = statement;
+            this.names = names;
+            this.values = values;
+        }
+    }
+
+    @NotNull
+    private final AstRoot runtime;
+    @NotNull
+    private final Set<AstNode> declarationStatements = Sets.newIdentityHashSet();
+    @NotNull
+    private final List<Declaration> declarations = Lists.newArrayList();
+    @NotNull
+    private final Multimap<String, Declaration> unusedDeclarations = ArrayListMultimap.create();
+    @NotNull
+    private final Set<String> usedNames = Sets.newHashSet();
+    @NotNull
+    private final Deque<String> newlyUsedNames = new ArrayDeque<String>();
+
+    private UnusedRuntimeDeclarationsRemover(@NotNull AstRoot runtime) {
+        this.runtime = runtime;
+        collectDeclarations();
+    }
+
+    private void collectDeclarations() {
+        // functions are the only locals whose properties can't be reached through another name
+        final Set<String> localFunctionNames = Sets.newHashSet();
+        runtime.visit(new NodeVisitor() {
+            @Override
+            public boolean visit(AstNode node) {
+                if (node instanceof FunctionNode && ((FunctionNode) node).getFunctionName() != null) {
+                    localFunctionNames.add(((FunctionNode) node).getName());
+                }
+                else if (node instanceof VariableInitializer && ((VariableInitializer) node).getTarget() instanceof Name &&
+                         ((VariableInitializer) node).getInitializer() instanceof FunctionNode) {
+                    localFunctionNames.add(((Name) ((VariableInitializer) node).getTarget()).getIdentifier());
+                }
+                return true;
+            }
+        });
+        runtime.visit(new NodeVisitor() {
+            @Override
+            public boolean visit(AstNode node) {
+                Declaration declaration = getDeclaration(node, localFunctionNames);
+                if (declaration != null) {
+                    declarations.add(declaration);
+                    declarationStatements.add(node);
+                    for (String name : declaration.names) {
+                        unusedDeclarations.put(name, declaration);
+                    }
+                }
+                return true;
+            }
+        });
+    }
+
+    @Nullable
+    private static Declaration getDeclaration(@NotNull AstNode node, @NotNull Set<String> localFunctionNames) {
+        if (!isStatement(node)) {
+            return null;
+        }
+        if (node instanceof FunctionNode) {
+            FunctionNode function = (FunctionNode) node;
+            if (function.getFunctionName() == null) {
+                return null;
+            }
+            List<AstNode> values = Lists.newArrayList(function.getParams());
+            values.add(function.getBody());
+            return new Declaration(node, Collections.singleton(function.getName()), values);
+        }
+        if (node instanceof VariableDeclaration) {
+            Set<String> names = Sets.newHashSet();
+            List<AstNode> values = Lists.newArrayList();
+            for (VariableInitializer variable : ((VariableDeclaration) node).getVariables()) {
+                AstNode initializer = variable.getInitializer();
+                if (!(variable.getTarget() instanceof Name) || (initializer != null && !hasNoSideEffects(initializer))) {
+                    return null;
+                }
+                names.add(((Name) variable.getTarget()).getIdentifier());
+                if (initializer != null) {
+                    values.add(initializer);
+                }
+            }
+            return new Declaration(node, names, values);
+        }
+        if (node instanceof ExpressionStatement && ((ExpressionStatement) node).getExpression() instanceof Assignment) {
+            Assignment assignment = (Assignment) ((ExpressionStatement) node).getExpression();
+            String name = assignment.getOperator() == Token.ASSIGN ? getAssignedName(assignment.getLeft(), localFunctionNames) : null;
+            return name != null ? new Declaration(node, Collections.singleton(name), Collections.singletonList(assignment.getRight())) : null;
+        }
+        return null;
+    }
+
+    private static boolean isStatement(@NotNull AstNode node) {
+        AstNode parent = node.getParent();
+        return parent instanceof Block || (parent instanceof Scope && !(parent instanceof Loop));
+    }
+
+    /**
+     * Kotlin.name = ... declares name, function.property = ... belongs to the declaration of the local function
+     */
+    @Nullable
+    private static String getAssignedName(@NotNull AstNode target, @NotNull Set<String> localFunctionNames) {
+        if (!(target instanceof PropertyGet)) {
+            return null;
+        }
+        AstNode qualifier = ((PropertyGet) target).getTarget();
+        if (qualifier instanceof Name && KOTLIN_OBJECT_NAME.equals(((Name) qualifier).getIdentifier())) {
+            return ((PropertyGet) target).getProperty().getIdentifier();
+        }
+        while (qualifier instanceof PropertyGet) {
+            qualifier = ((PropertyGet) qualifier).getTarget();
+        }
+        if (qualifier instanceof Name && localFunctionNames.contains(((Name) qualifier).getIdentifier())) {
+            return ((Name) qualifier).getIdentifier();
+        }
+        return null;
+    }
+
+    private static boolean hasNoSideEffects(@NotNull AstNode expression) {
+        if (expression instanceof FunctionNode || expression instanceof Name || expression instanceof KeywordLiteral ||
+            expression instanceof NumberLiteral || expression instanceof StringLiteral || expression instanceof RegExpLiteral) {
+            return true;
+        }
+        if (expression instanceof ParenthesizedExpression) {
+            return hasNoSideEffects(((ParenthesizedExpression) expression).getExpression());
+        }
+        if (expression instanceof PropertyGet) {
+            return hasNoSideEffects(((PropertyGet) expression).getTarget());
+        }
+        if (expression instanceof InfixExpression && !(expression instanceof Assignment)) {
+            return hasNoSideEffects(((InfixExpression) expression).getLeft()) &&
+                   hasNoSideEffects(((InfixExpression) expression).getRight());
+        }
+        if (expression instanceof UnaryExpression) {
+            int operator = ((UnaryExpression) expression).getOperator();
+            return (operator == Token.TYPEOF || operator == Token.NOT || operator == Token.BITNOT ||
+                    operator == Token.NEG || operator == Token.POS) &&
+                   hasNoSideEffects(((UnaryExpression) expression).getOperand());
+        }
+        if (expression instanceof ConditionalExpression) {
+            ConditionalExpression conditional = (ConditionalExpression) expression;
+            return hasNoSideEffects(conditional.getTestExpression()) &&
+                   hasNoSideEffects(conditional.getTrueExpression()) &&
+                   hasNoSideEffects(conditional.getFalseExpression());
+        }
+        if (expression instanceof ObjectLiteral) {
+            for (ObjectProperty property : ((ObjectLiteral) expression).getElements()) {
+                if (!hasNoSideEffects(property.getRight())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (expression instanceof ArrayLiteral) {
+            for (AstNode element : ((ArrayLiteral) expression).getElements()) {
+                if (!hasNoSideEffects(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void markUsedNames(@NotNull AstRoot program) {
+        NodeVisitor visitor = new NodeVisitor() {
+            @Override
+            public boolean visit(AstNode node) {
+                if (declarationStatements.contains(node)) {
+                    // visited once its name is used
+                    return false;
+                }
+                if (node instanceof Name) {
+                    use(((Name) node).getIdentifier());
+                }
+                else if (node instanceof StringLiteral) {
+                    use(((StringLiteral) node).getValue());
+                }
+                else if (node instanceof ObjectProperty) {
+                    // labels of object literals don't refer to anything
+                    ((ObjectProperty) node).getRight().visit(this);
+                    return false;
+                }
+                return true;
+            }
+        };
+
+        program.visit(visitor);
+        runtime.visit(visitor);
+        while (!newlyUsedNames.isEmpty()) {
+            for (Declaration declaration : unusedDeclarations.removeAll(newlyUsedNames.poll())) {
+                for (AstNode value : declaration.values) {
+                    value.visit(visitor);
+                }
+            }
+        }
+    }
+
+    private void use(@Nullable String name) {
+        if (name != null && usedNames.add(name)) {
+            newlyUsedNames.add(name);
+        }
+    }
+
+    @NotNull
+    private String removeUnused(@NotNull String runtimeCode) {
+        List<AstNode> unused = Lists.newArrayList();
+        for (Declaration declaration : declarations) {
+            if (Collections.disjoint(declaration.names, usedNames)) {
+                unused.add(declaration.statement);
+            }
+        }
+        Collections.sort(unused, new Comparator<AstNode>() {
+            @Override
+            public int compare(AstNode first, AstNode second) {
+                return first.getAbsolutePosition() - second.getAbsolutePosition();
+            }
+        });
+
+        StringBuilder result = new StringBuilder();
+        int position = 0;
+        for (AstNode statement : unused) {
+            int start = statement.getAbsolutePosition();
+            if (start < position) {
+                // nested in a statement removed already
+                continue;
+            }
+            result.append(runtimeCode, position, start);
+            position = start + statement.getLength();
+        }
+        result.append(runtimeCode, position, runtimeCode.length());
+        return result.toString();
+    }
+}
@@ -143,6 +143,14 @@ public final class StaticContext {
         return name;
     }
 
+    /**
+     * @return the descriptors named so far and their names
+     */
+    @NotNull
+    public Map<DeclarationDescriptor, JsName> getNamedDescriptors() {
+        return names.getGeneratedValues();
+    }
+
     private final class NameGenerator extends Generator<JsName> {
         public NameGenerator() {
             Rule<JsName> namesForStandardClasses = new Rule<JsName>() {
@@ -22,6 +22,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.lang.descriptors.DeclarationDescriptor;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -51,6 +52,11 @@ public class Generator<V> {
         return result;
     }
 
+    @NotNull
+    public Map<DeclarationDescriptor, V> getGeneratedValues() {
+        return Collections.unmodifiableMap(values);
+    }
+
     @Nullable
     private V generate(@NotNull DeclarationDescriptor descriptor) {
         V result = null;
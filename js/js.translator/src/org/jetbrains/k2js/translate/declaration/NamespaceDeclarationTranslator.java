@@ -43,8 +43,21 @@ import static org.jetbrains.k2js.translate.utils.JsAstUtils.setQualifier;
 public final class NamespaceDeclarationTranslator extends AbstractTranslator {
 
     public static List<JsStatement> translateFiles(@NotNull List<JetFile> files, @NotNull TranslationContext context) {
+        List<JsStatement> result = Lists.newArrayList();
+        List<JsStatement> initializers = Lists.newArrayList();
+        translateFiles(files, context, result, initializers);
+        result.addAll(initializers);
+        return result;
+    }
+
+    /**
+     * Adds the statements declaring the classes and namespaces of the files to declarations, and the calls
+     * initializing these namespaces to initializers.
+     */
+    public static void translateFiles(@NotNull List<JetFile> files, @NotNull TranslationContext context,
+                                      @NotNull List<JsStatement> declarations, @NotNull List<JsStatement> initializers) {
         Set<NamespaceDescriptor> namespaceDescriptorSet = getAllNonNativeNamespaceDescriptors(context.bindingContext(), files);
-        return (new NamespaceDeclarationTranslator(Lists.newArrayList(namespaceDescriptorSet), context)).translate();
+        (new NamespaceDeclarationTranslator(Lists.newArrayList(namespaceDescriptorSet), context)).translate(declarations, initializers);
     }
 
     @NotNull
@@ -68,11 +81,11 @@ public final class NamespaceDeclarationTranslator extends AbstractTranslator {
         return result;
     }
 
-    @NotNull
-    private List<JsStatement> translate() {
-        List<JsStatement> result = classesDeclarations();
-        result.addAll(namespacesDeclarations());
-        return result;
+    private void translate(@NotNull List<JsStatement> declarations, @NotNull List<JsStatement> initializers) {
+        declarations.addAll(classesDeclarations());
+        List<NamespaceTranslator> namespaceTranslators = getTranslatorsForNonEmptyNamespaces();
+        declarations.addAll(declarationStatements(namespaceTranslators));
+        initializers.addAll(initializeStatements(namespaceTranslators));
     }
 
     @NotNull
@@ -83,15 +96,6 @@ public final class NamespaceDeclarationTranslator extends AbstractTranslator {
         return result;
     }
 
-    @NotNull
-    private List<JsStatement> namespacesDeclarations() {
-        List<JsStatement> result = Lists.newArrayList();
-        List<NamespaceTranslator> namespaceTranslators = getTranslatorsForNonEmptyNamespaces();
-        result.addAll(declarationStatements(namespaceTranslators));
-        result.addAll(initializeStatements(namespaceTranslators));
-        return result;
-    }
-
     @NotNull
     private List<NamespaceTranslator> getTranslatorsForNonEmptyNamespaces() {
         List<NamespaceTranslator> namespaceTranslators = Lists.newArrayList();
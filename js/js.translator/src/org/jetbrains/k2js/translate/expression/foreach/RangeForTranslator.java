@@ -17,6 +17,7 @@
 package org.jetbrains.k2js.translate.expression.foreach;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.dart.compiler.backend.js.ast.*;
 import com.google.dart.compiler.util.AstUtil;
 import org.jetbrains.annotations.NotNull;
@@ -29,6 +30,7 @@ import org.jetbrains.k2js.translate.general.Translation;
 import org.jetbrains.k2js.translate.utils.BindingUtils;
 
 import java.util.List;
+import java.util.Set;
 
 import static org.jetbrains.k2js.translate.utils.DescriptorUtils.getClassDescriptorForType;
 import static org.jetbrains.k2js.translate.utils.JsAstUtils.*;
@@ -40,6 +42,10 @@ import static org.jetbrains.k2js.translate.utils.TemporariesUtils.temporariesIni
  */
 public final class RangeForTranslator extends ForTranslator {
 
+    // all of them are created as Kotlin.NumberRange
+    @NotNull
+    private static final Set<String> RANGE_CLASS_NAMES = Sets.newHashSet("IntRange", "LongRange", "ShortRange", "ByteRange");
+
     @NotNull
     public static JsStatement doTranslate(@NotNull JetForExpression expression,
                                           @NotNull TranslationContext context) {
@@ -51,8 +57,7 @@ public final class RangeForTranslator extends ForTranslator {
         JetExpression loopRange = getLoopRange(expression);
         JetType rangeType = BindingUtils.getTypeForExpression(context.bindingContext(), loopRange);
         //TODO: better check
-        //TODO: long range?
-        return getClassDescriptorForType(rangeType).getName().equals("IntRange");
+        return RANGE_CLASS_NAMES.contains(getClassDescriptorForType(rangeType).getName());
     }
 
     @NotNull
@@ -17,30 +17,46 @@
 package org.jetbrains.k2js.translate.expression.foreach;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.dart.compiler.backend.js.ast.*;
+import com.google.dart.compiler.util.AstUtil;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.jet.lang.psi.JetBinaryExpression;
-import org.jetbrains.jet.lang.psi.JetExpression;
-import org.jetbrains.jet.lang.psi.JetForExpression;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.lang.descriptors.*;
+import org.jetbrains.jet.lang.psi.*;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.calls.ResolvedCall;
 import org.jetbrains.jet.lexer.JetTokens;
 import org.jetbrains.k2js.translate.context.TemporaryVariable;
 import org.jetbrains.k2js.translate.context.TranslationContext;
+import org.jetbrains.k2js.translate.general.Translation;
+import org.jetbrains.k2js.translate.intrinsic.primitive.PrimitiveRangeToIntrinsic;
 
 import java.util.List;
+import java.util.Set;
 
+import static org.jetbrains.jet.lang.resolve.DescriptorUtils.getFQName;
+import static org.jetbrains.k2js.translate.utils.BindingUtils.getCompileTimeValue;
+import static org.jetbrains.k2js.translate.utils.DescriptorUtils.getClassDescriptorForType;
 import static org.jetbrains.k2js.translate.utils.JsAstUtils.*;
 import static org.jetbrains.k2js.translate.utils.PsiUtils.getLoopRange;
 import static org.jetbrains.k2js.translate.utils.TemporariesUtils.temporariesInitialization;
-import static org.jetbrains.k2js.translate.utils.TranslationUtils.translateLeftExpression;
-import static org.jetbrains.k2js.translate.utils.TranslationUtils.translateRightExpression;
 
 /**
  * @author Pavel Talanov
+ *         <p/>
+ *         Translates loops over a..b, a downto b, array.indices and their step() to numeric loops
+ *         without creating range objects. A step that is not a constant is checked for its sign when the loop starts.
  */
-
-// TODO: implement reverse semantics
 public final class RangeLiteralForTranslator extends ForTranslator {
 
+    @NotNull
+    private static final Set<String> INTEGRAL_TYPE_NAMES = Sets.newHashSet("Int", "Long", "Short", "Byte");
+
+    @NotNull
+    private static final Set<String> STEPPED_RANGE_NAMES = Sets.newHashSet("jet.IntRange", "jet.LongRange",
+                                                                           "jet.ShortRange", "jet.ByteRange");
+
     @NotNull
     public static JsStatement doTranslate(@NotNull JetForExpression expression,
                                           @NotNull TranslationContext context) {
@@ -49,58 +65,218 @@ public final class RangeLiteralForTranslator extends ForTranslator {
 
     public static boolean isApplicable(@NotNull JetForExpression expression,
                                        @NotNull TranslationContext context) {
-        JetExpression loopRange = getLoopRange(expression);
-        if (!(loopRange instanceof JetBinaryExpression)) {
+        return getRangeLiteral(getLoopRange(expression), context) != null;
+    }
+
+    private static final class RangeLiteral {
+        // for indices it is the array
+        @NotNull
+        private final JetExpression start;
+        // null for indices
+        @Nullable
+        private final JetExpression end;
+        private final boolean reversed;
+        // null when the range is not stepped
+        @Nullable
+        private final JetExpression step;
+
+        private RangeLiteral(@NotNull JetExpression start, @Nullable JetExpression end, boolean reversed,
+                             @Nullable JetExpression step) {
+            this.start = start;
+            this.end = end;
+            this.reversed = reversed;
+            this.step = step;
+        }
+    }
+
+    @Nullable
+    private static RangeLiteral getRangeLiteral(@Nullable JetExpression rangeExpression, @NotNull TranslationContext context) {
+        if (rangeExpression == null) {
+            return null;
+        }
+        JetExpression range = JetPsiUtil.deparenthesize(rangeExpression);
+        if (range instanceof JetBinaryExpression) {
+            JetBinaryExpression binary = (JetBinaryExpression) range;
+            return getRangeLiteral(binary.getLeft(), binary.getRight(), binary.getOperationReference(), context);
+        }
+        if (!(range instanceof JetDotQualifiedExpression)) {
+            return null;
+        }
+        JetDotQualifiedExpression qualified = (JetDotQualifiedExpression) range;
+        JetExpression selector = qualified.getSelectorExpression();
+        if (selector instanceof JetCallExpression) {
+            JetCallExpression call = (JetCallExpression) selector;
+            if (call.getValueArguments().size() != 1 || !call.getFunctionLiteralArguments().isEmpty()) {
+                return null;
+            }
+            JetExpression callee = call.getCalleeExpression();
+            return callee != null
+                   ? getRangeLiteral(qualified.getReceiverExpression(), call.getValueArguments().get(0).getArgumentExpression(),
+                                     callee, context)
+                   : null;
+        }
+        if (selector instanceof JetSimpleNameExpression && isArrayIndices(getResultingDescriptor(selector, context), context)) {
+            return new RangeLiteral(qualified.getReceiverExpression(), null, false, null);
+        }
+        return null;
+    }
+
+    @Nullable
+    private static RangeLiteral getRangeLiteral(@Nullable JetExpression receiver, @Nullable JetExpression argument,
+                                                @NotNull JetExpression callee, @NotNull TranslationContext context) {
+        CallableDescriptor descriptor = getResultingDescriptor(callee, context);
+        if (receiver == null || argument == null || !(descriptor instanceof FunctionDescriptor)) {
+            return null;
+        }
+        FunctionDescriptor function = (FunctionDescriptor) descriptor;
+        if (isIntegralRangeIntrinsic(function, context)) {
+            boolean reversed = ((PrimitiveRangeToIntrinsic) context.intrinsics().getFunctionIntrinsic(function)).isReversed();
+            return new RangeLiteral(receiver, argument, reversed, null);
+        }
+        if (!isRangeStep(function)) {
+            return null;
+        }
+        RangeLiteral range = getRangeLiteral(receiver, context);
+        if (range == null || range.step != null) {
+            return null;
+        }
+        return new RangeLiteral(range.start, range.end, range.reversed, argument);
+    }
+
+    // null unless the step is a non-zero int constant, possibly negated
+    @Nullable
+    private static Integer getConstantStep(@NotNull JetExpression stepExpression, @NotNull TranslationContext context) {
+        JetExpression step = JetPsiUtil.deparenthesize(stepExpression);
+        if (step instanceof JetPrefixExpression &&
+            ((JetPrefixExpression) step).getOperationReference().getReferencedNameElementType() == JetTokens.MINUS) {
+            JetExpression base = ((JetPrefixExpression) step).getBaseExpression();
+            Integer value = base != null ? getConstantStep(base, context) : null;
+            return value != null && value != Integer.MIN_VALUE ? -value : null;
+        }
+        Object value = step != null ? getCompileTimeValue(context.bindingContext(), step) : null;
+        if (!(value instanceof Number)) {
+            return null;
+        }
+        long longValue = ((Number) value).longValue();
+        return longValue != 0 && longValue == (int) longValue ? (int) longValue : null;
+    }
+
+    @Nullable
+    private static CallableDescriptor getResultingDescriptor(@NotNull JetExpression callee, @NotNull TranslationContext context) {
+        ResolvedCall<? extends CallableDescriptor> resolvedCall = context.bindingContext().get(BindingContext.RESOLVED_CALL, callee);
+        return resolvedCall != null ? resolvedCall.getResultingDescriptor() : null;
+    }
+
+    private static boolean isIntegralRangeIntrinsic(@NotNull FunctionDescriptor function, @NotNull TranslationContext context) {
+        if (!context.intrinsics().isIntrinsic(function) ||
+            !(context.intrinsics().getFunctionIntrinsic(function) instanceof PrimitiveRangeToIntrinsic)) {
             return false;
         }
-        boolean isRangeToOperation = ((JetBinaryExpression) loopRange).getOperationToken() == JetTokens.RANGE;
-        return isRangeToOperation && RangeForTranslator.isApplicable(expression, context);
+        DeclarationDescriptor receiverClass = function.getContainingDeclaration();
+        List<ValueParameterDescriptor> parameters = function.getValueParameters();
+        return receiverClass instanceof ClassDescriptor &&
+               INTEGRAL_TYPE_NAMES.contains(receiverClass.getName()) &&
+               parameters.size() == 1 &&
+               INTEGRAL_TYPE_NAMES.contains(getClassDescriptorForType(parameters.get(0).getType()).getName());
     }
 
-    @NotNull
-    private final JsExpression rangeStart;
+    private static boolean isRangeStep(@NotNull FunctionDescriptor function) {
+        DeclarationDescriptor rangeClass = function.getContainingDeclaration();
+        return function.getName().equals("step") &&
+               rangeClass instanceof ClassDescriptor &&
+               STEPPED_RANGE_NAMES.contains(getFQName(rangeClass).getFqName());
+    }
 
+    private static boolean isArrayIndices(@Nullable CallableDescriptor descriptor, @NotNull TranslationContext context) {
+        if (!(descriptor instanceof PropertyDescriptor) || !descriptor.getName().equals("indices")) {
+            return false;
+        }
+        PropertyGetterDescriptor getter = ((PropertyDescriptor) descriptor).getGetter();
+        return getter != null && context.intrinsics().isIntrinsic(getter);
+    }
+
+    @NotNull
+    private final List<TemporaryVariable> temporaries = Lists.newArrayList();
     @NotNull
-    private final TemporaryVariable rangeEnd;
+    private final JsExpression start;
+    @NotNull
+    private final JsExpression end;
+    private final boolean reversed;
+    // null when the step is not a constant
+    @Nullable
+    private final Integer constantStep;
+    // null when the step is a constant
+    @Nullable
+    private final JsExpression stepReference;
 
     private RangeLiteralForTranslator(@NotNull JetForExpression forExpression, @NotNull TranslationContext context) {
         super(forExpression, context);
-        JetExpression loopRange = getLoopRange(expression);
-        assert loopRange instanceof JetBinaryExpression;
-        JetBinaryExpression loopRangeAsBinary = ((JetBinaryExpression) loopRange);
-        rangeStart = translateLeftExpression(context, loopRangeAsBinary);
-        rangeEnd = context.declareTemporary(getRangeEnd(loopRangeAsBinary));
+        RangeLiteral range = getRangeLiteral(getLoopRange(expression), context);
+        assert range != null;
+        if (range.end == null) {
+            JsExpression array = Translation.translateAsExpression(range.start, context);
+            start = program().getNumberLiteral(0);
+            end = evaluateOnce(subtract(AstUtil.newNameRef(array, "length"), program().getNumberLiteral(1)));
+        }
+        else {
+            start = evaluateOnce(Translation.translateAsExpression(range.start, context));
+            end = evaluateOnce(Translation.translateAsExpression(range.end, context));
+        }
+        reversed = range.reversed;
+        constantStep = range.step != null ? getConstantStep(range.step, context) : Integer.valueOf(1);
+        stepReference = constantStep == null ? evaluateOnce(Translation.translateAsExpression(range.step, context)) : null;
     }
 
     @NotNull
-    private JsExpression getRangeEnd(@NotNull JetBinaryExpression loopRangeAsBinary) {
-        JsExpression rightExpression = translateRightExpression(context(), loopRangeAsBinary);
-        return new JsBinaryOperation(JsBinaryOperator.ADD, rightExpression, program().getNumberLiteral(1));
+    private JsExpression evaluateOnce(@NotNull JsExpression expression) {
+        if (expression instanceof JsNumberLiteral) {
+            return expression;
+        }
+        TemporaryVariable temporary = context().declareTemporary(expression);
+        temporaries.add(temporary);
+        return temporary.reference();
     }
 
     @NotNull
     private JsBlock translate() {
         List<JsStatement> blockStatements = Lists.newArrayList();
-        blockStatements.add(temporariesInitialization(rangeEnd).makeStmt());
-        blockStatements.add(generateForExpression(initExpression(),
-                                                  getCondition(),
-                                                  getIncrExpression(),
-                                                  translateOriginalBodyExpression()));
+        if (!temporaries.isEmpty()) {
+            blockStatements.add(newSequence(temporariesInitialization(temporaries)).makeStmt());
+        }
+        JsFor loop = constantStep != null
+                     ? translateWithConstantStep(constantStep)
+                     : translateWithStepReference(stepReference);
+        blockStatements.add(loop);
         return newBlock(blockStatements);
     }
 
+    // like the iterators of the ranges, a negative step goes from the end to the start
     @NotNull
-    private JsVars initExpression() {
-        return newVar(parameterName, rangeStart);
+    private JsFor translateWithConstantStep(int step) {
+        boolean forward = (step > 0) != reversed;
+        JsExpression first = step > 0 ? start : end;
+        JsExpression last = step > 0 ? end : start;
+        int stepValue = Math.abs(step);
+        JsExpression increment = stepValue == 1
+                                 ? new JsPrefixOperation(forward ? JsUnaryOperator.INC : JsUnaryOperator.DEC, parameterName.makeRef())
+                                 : new JsBinaryOperation(forward ? JsBinaryOperator.ASG_ADD : JsBinaryOperator.ASG_SUB,
+                                                         parameterName.makeRef(), program().getNumberLiteral(stepValue));
+        return generateForExpression(newVar(parameterName, first), isNotPast(last, forward), increment,
+                                     translateOriginalBodyExpression());
     }
 
     @NotNull
-    private JsExpression getCondition() {
-        return inequality(parameterName.makeRef(), rangeEnd.reference());
+    private JsFor translateWithStepReference(@NotNull JsExpression step) {
+        JsExpression nonNegativeStep = new JsBinaryOperation(JsBinaryOperator.GTE, step, program().getNumberLiteral(0));
+        JsExpression first = new JsConditional(nonNegativeStep, start, end);
+        JsExpression condition = new JsConditional(nonNegativeStep, isNotPast(end, !reversed), isNotPast(start, reversed));
+        JsExpression increment = new JsBinaryOperation(reversed ? JsBinaryOperator.ASG_SUB : JsBinaryOperator.ASG_ADD,
+                                                       parameterName.makeRef(), step);
+        return generateForExpression(newVar(parameterName, first), condition, increment, translateOriginalBodyExpression());
     }
 
     @NotNull
-    private JsExpression getIncrExpression() {
-        return new JsPrefixOperation(JsUnaryOperator.INC, parameterName.makeRef());
+    private JsExpression isNotPast(@NotNull JsExpression last, boolean forward) {
+        return new JsBinaryOperation(forward ? JsBinaryOperator.LTE : JsBinaryOperator.GTE, parameterName.makeRef(), last);
     }
 }
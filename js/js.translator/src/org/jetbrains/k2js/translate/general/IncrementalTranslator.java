@@ -0,0 +1,518 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.k2js.translate.general;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+import com.google.dart.compiler.backend.js.JsPrettyNamer;
+import com.google.dart.compiler.backend.js.ast.*;
+import com.intellij.psi.PsiElement;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.lang.descriptors.*;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.psi.JetReferenceExpression;
+import org.jetbrains.jet.lang.psi.JetVisitorVoid;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.types.lang.JetStandardLibrary;
+import org.jetbrains.jet.resolve.DescriptorRenderer;
+import org.jetbrains.k2js.generate.CodeGenerator;
+import org.jetbrains.k2js.translate.context.StaticContext;
+import org.jetbrains.k2js.translate.context.TranslationContext;
+import org.jetbrains.k2js.translate.declaration.NamespaceDeclarationTranslator;
+
+import java.util.*;
+
+import static org.jetbrains.k2js.translate.utils.BindingUtils.getAllNonNativeNamespaceDescriptors;
+import static org.jetbrains.k2js.translate.utils.BindingUtils.getNamespaceDescriptor;
+import static org.jetbrains.k2js.translate.utils.DescriptorUtils.getAllClassesDefinedInNamespace;
+import static org.jetbrains.k2js.translate.utils.DescriptorUtils.getSuperclassDescriptors;
+import static org.jetbrains.k2js.translate.utils.DescriptorUtils.isTopLevelNamespace;
+
+/**
+ * Translates a program again after some of its files changed, reusing the code generated for the top level namespaces
+ * whose files didn't change.
+ * <p/>
+ * The code of a top level namespace (the declarations of its classes and namespaces and the calls initializing them)
+ * is kept together with the names given to its declarations and the ABI of the namespaces it refers to: the names and
+ * signatures of their declarations and the text of their inline functions. A namespace is translated again if one of
+ * its files or the ABI of a namespace it refers to changed. The changed namespaces are translated and renamed together,
+ * their references to the other namespaces get the names those were translated with, and their code is spliced with
+ * the code kept for the other namespaces.
+ * <p/>
+ * The files are still analyzed as a whole, and unused library declarations are not removed since which of them are
+ * used depends on the whole program. If classes of two namespaces extend each other's classes, their code can't be
+ * ordered, so the whole program is translated and nothing is kept.
+ */
+public final class IncrementalTranslator {
+
+    private static final class Fragment {
+        @NotNull
+        private final String sources;
+        @NotNull
+        private final String declarationsCode;
+        @NotNull
+        private final String initializersCode;
+        @NotNull
+        private final Map<String, String> names;
+        @NotNull
+        private final String abi;
+        @NotNull
+        private final Map<String, String> dependencies;
+
+        private Fragment(@NotNull String sources, @NotNull String declarationsCode, @NotNull String initializersCode,
+                         @NotNull Map<String, String> names, @NotNull String abi, @NotNull Map<String, String> dependencies) {
+            this.sources = sources;
+            this.declarationsCode = declarationsCode;
+            this.initializersCode = initializersCode;
+            this.names = names;
+            this.abi = abi;
+            this.dependencies = dependencies;
+        }
+    }
+
+    @NotNull
+    private Map<String, Fragment> fragments = Maps.newHashMap();
+
+    /**
+     * @param files the files of the program including the library files
+     */
+    @NotNull
+    public String translate(@NotNull BindingContext bindingContext, @NotNull List<JetFile> files) {
+        Map<NamespaceDescriptor, List<JetFile>> filesByNamespace = groupByTopLevelNamespace(bindingContext, files);
+        List<NamespaceDescriptor> namespaces = sortByInheritance(bindingContext, filesByNamespace);
+        if (namespaces == null) {
+            fragments = Maps.newHashMap();
+            return CodeGenerator.toString(Translation.generateAst(bindingContext, files));
+        }
+
+        Set<NamespaceDescriptor> changed = Sets.newHashSet();
+        for (NamespaceDescriptor namespace : namespaces) {
+            Fragment fragment = fragments.get(getKey(namespace));
+            if (fragment == null || !fragment.sources.equals(getSources(filesByNamespace.get(namespace)))) {
+                changed.add(namespace);
+            }
+        }
+        while (true) {
+            Round round = new Round(bindingContext, filesByNamespace, changed);
+            Set<NamespaceDescriptor> invalidated = round.translate(namespaces);
+            if (invalidated.isEmpty()) {
+                fragments = round.result;
+                break;
+            }
+            changed.addAll(invalidated);
+        }
+
+        StringBuilder result = new StringBuilder();
+        for (NamespaceDescriptor namespace : namespaces) {
+            result.append(fragments.get(getKey(namespace)).declarationsCode);
+        }
+        for (NamespaceDescriptor namespace : namespaces) {
+            result.append(fragments.get(getKey(namespace)).initializersCode);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Translates the changed namespaces and checks whether the code kept for the others still fits them.
+     */
+    private final class Round {
+        @NotNull
+        private final BindingContext bindingContext;
+        @NotNull
+        private final Map<NamespaceDescriptor, List<JetFile>> filesByNamespace;
+        @NotNull
+        private final Set<NamespaceDescriptor> changed;
+        @NotNull
+        private final Map<NamespaceDescriptor, List<JsStatement>> declarations = Maps.newHashMap();
+        @NotNull
+        private final Map<NamespaceDescriptor, List<JsStatement>> initializers = Maps.newHashMap();
+        @NotNull
+        private final Map<DeclarationDescriptor, JsName> names = Maps.newHashMap();
+        @NotNull
+        private final Map<DeclarationDescriptor, NamespaceDescriptor> owners = Maps.newHashMap();
+        @NotNull
+        private final Multimap<JsName, NamespaceDescriptor> nameOwners = HashMultimap.create();
+        @NotNull
+        private final Map<JsName, String> pinnedNames = Maps.newHashMap();
+        @NotNull
+        private final Set<NamespaceDescriptor> invalidated = Sets.newHashSet();
+        @NotNull
+        private final Map<String, Fragment> result = Maps.newHashMap();
+
+        private Round(@NotNull BindingContext bindingContext,
+                      @NotNull Map<NamespaceDescriptor, List<JetFile>> filesByNamespace,
+                      @NotNull Set<NamespaceDescriptor> changed) {
+            this.bindingContext = bindingContext;
+            this.filesByNamespace = filesByNamespace;
+            this.changed = changed;
+        }
+
+        /**
+         * @return the namespaces whose kept code doesn't fit the changed ones and has to be translated again
+         */
+        @NotNull
+        private Set<NamespaceDescriptor> translate(@NotNull List<NamespaceDescriptor> namespaces) {
+            StaticContext staticContext = StaticContext.generateStaticContext(JetStandardLibrary.getInstance(), bindingContext);
+            TranslationContext context = TranslationContext.rootContext(staticContext);
+            for (NamespaceDescriptor namespace : namespaces) {
+                if (changed.contains(namespace)) {
+                    List<JsStatement> namespaceDeclarations = Lists.newArrayList();
+                    List<JsStatement> namespaceInitializers = Lists.newArrayList();
+                    NamespaceDeclarationTranslator.translateFiles(filesByNamespace.get(namespace), context,
+                                                                  namespaceDeclarations, namespaceInitializers);
+                    declarations.put(namespace, namespaceDeclarations);
+                    initializers.put(namespace, namespaceInitializers);
+                }
+            }
+            new JsPrettyNamer().exec(context.program());
+
+            collectNames(staticContext);
+            pinNamesOfKeptNamespaces();
+            checkMembersOfChangedClasses();
+            if (!invalidated.isEmpty()) {
+                return invalidated;
+            }
+            for (NamespaceDescriptor namespace : namespaces) {
+                if (changed.contains(namespace)) {
+                    result.put(getKey(namespace), newFragment(namespace));
+                }
+                else {
+                    result.put(getKey(namespace), getKeptFragment(namespace));
+                }
+            }
+            for (NamespaceDescriptor namespace : namespaces) {
+                if (changed.contains(namespace)) {
+                    result.put(getKey(namespace), withDependencies(namespace, result.get(getKey(namespace))));
+                }
+            }
+            for (NamespaceDescriptor namespace : namespaces) {
+                if (!changed.contains(namespace) && !dependenciesAreUpToDate(getKeptFragment(namespace))) {
+                    invalidated.add(namespace);
+                }
+            }
+            return invalidated;
+        }
+
+        private void collectNames(@NotNull StaticContext staticContext) {
+            for (Map.Entry<DeclarationDescriptor, JsName> entry : staticContext.getNamedDescriptors().entrySet()) {
+                NamespaceDescriptor owner = getOwner(entry.getKey());
+                if (entry.getValue() != null && owner != null) {
+                    names.put(entry.getKey(), entry.getValue());
+                    owners.put(entry.getKey(), owner);
+                    nameOwners.put(entry.getValue(), owner);
+                }
+            }
+        }
+
+        /**
+         * The names the kept code was generated with replace the names given in this round.
+         */
+        private void pinNamesOfKeptNamespaces() {
+            for (Map.Entry<DeclarationDescriptor, NamespaceDescriptor> entry : owners.entrySet()) {
+                NamespaceDescriptor owner = entry.getValue();
+                if (changed.contains(owner) || !isDeclaration(entry.getKey())) {
+                    continue;
+                }
+                JsName name = names.get(entry.getKey());
+                String ident = getKeptFragment(owner).names.get(getKey(entry.getKey()));
+                String pinnedIdent = pinnedNames.get(name);
+                if (ident == null || (pinnedIdent != null && !pinnedIdent.equals(ident))) {
+                    invalidated.add(owner);
+                }
+                else {
+                    pinnedNames.put(name, ident);
+                }
+            }
+            for (Map.Entry<JsName, String> entry : pinnedNames.entrySet()) {
+                entry.getKey().setShortIdent(entry.getValue());
+            }
+        }
+
+        /**
+         * Members of a changed class must not get the name of another member of a kept class it extends.
+         */
+        private void checkMembersOfChangedClasses() {
+            Multimap<DeclarationDescriptor, JsName> members = HashMultimap.create();
+            for (Map.Entry<DeclarationDescriptor, JsName> entry : names.entrySet()) {
+                DeclarationDescriptor container = entry.getKey().getContainingDeclaration();
+                if (container instanceof ClassDescriptor && !pinnedNames.containsKey(entry.getValue())) {
+                    members.put(container, entry.getValue());
+                }
+            }
+            for (NamespaceDescriptor namespace : changed) {
+                for (ClassDescriptor descriptor : getClasses(bindingContext, filesByNamespace.get(namespace))) {
+                    for (ClassDescriptor ancestor : getAncestors(descriptor)) {
+                        NamespaceDescriptor owner = getOwner(ancestor);
+                        if (owner != null && !changed.contains(owner) &&
+                            hasMemberNamedAsAnyOf(getKeptFragment(owner), ancestor, members.get(descriptor))) {
+                            invalidated.add(owner);
+                        }
+                    }
+                }
+            }
+        }
+
+        @NotNull
+        private Fragment newFragment(@NotNull NamespaceDescriptor namespace) {
+            Map<String, String> namespaceNames = Maps.newHashMap();
+            SortedMap<String, String> abi = new TreeMap<String, String>();
+            for (Map.Entry<DeclarationDescriptor, NamespaceDescriptor> entry : owners.entrySet()) {
+                DeclarationDescriptor descriptor = entry.getKey();
+                if (entry.getValue() != namespace || !isDeclaration(descriptor)) {
+                    continue;
+                }
+                String key = getKey(descriptor);
+                String ident = names.get(descriptor).getShortIdent();
+                namespaceNames.put(key, ident);
+                abi.put(key, isInline(descriptor) ? ident + " " + getDeclarationText(descriptor) : ident);
+            }
+            return new Fragment(getSources(filesByNamespace.get(namespace)),
+                                CodeGenerator.toString(declarations.get(namespace)),
+                                CodeGenerator.toString(initializers.get(namespace)),
+                                namespaceNames, abi.toString(), Collections.<String, String>emptyMap());
+        }
+
+        @NotNull
+        private Fragment withDependencies(@NotNull NamespaceDescriptor namespace, @NotNull Fragment fragment) {
+            Map<String, String> dependencies = Maps.newHashMap();
+            for (NamespaceDescriptor dependency : getReferencedNamespaces(namespace)) {
+                if (dependency != namespace) {
+                    String key = getKey(dependency);
+                    dependencies.put(key, result.get(key).abi);
+                }
+            }
+            return new Fragment(fragment.sources, fragment.declarationsCode, fragment.initializersCode,
+                                fragment.names, fragment.abi, dependencies);
+        }
+
+        /**
+         * @return the namespaces whose names the generated code contains, and the namespaces whose declarations the
+         *         source code refers to, since calls to inline functions are translated to their bodies
+         */
+        @NotNull
+        private Set<NamespaceDescriptor> getReferencedNamespaces(@NotNull NamespaceDescriptor namespace) {
+            final Set<NamespaceDescriptor> result = Sets.newHashSet();
+            JsVisitor visitor = new JsVisitor() {
+                @Override
+                public boolean visit(JsNameRef x, JsContext ctx) {
+                    if (x.getName() != null) {
+                        result.addAll(nameOwners.get(x.getName()));
+                    }
+                    return true;
+                }
+            };
+            visitor.acceptList(declarations.get(namespace));
+            visitor.acceptList(initializers.get(namespace));
+            for (JetFile file : filesByNamespace.get(namespace)) {
+                file.acceptChildren(new JetVisitorVoid() {
+                    @Override
+                    public void visitElement(PsiElement element) {
+                        element.acceptChildren(this);
+                    }
+
+                    @Override
+                    public void visitReferenceExpression(JetReferenceExpression expression) {
+                        DeclarationDescriptor target = bindingContext.get(BindingContext.REFERENCE_TARGET, expression);
+                        NamespaceDescriptor owner = target != null ? getOwner(target.getOriginal()) : null;
+                        if (owner != null) {
+                            result.add(owner);
+                        }
+                        super.visitReferenceExpression(expression);
+                    }
+                });
+            }
+            return result;
+        }
+
+        private boolean dependenciesAreUpToDate(@NotNull Fragment fragment) {
+            for (Map.Entry<String, String> dependency : fragment.dependencies.entrySet()) {
+                Fragment current = result.get(dependency.getKey());
+                if (current == null || !current.abi.equals(dependency.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Nullable
+        private NamespaceDescriptor getOwner(@NotNull DeclarationDescriptor descriptor) {
+            NamespaceDescriptor namespace = getExportingNamespace(descriptor);
+            return namespace != null && filesByNamespace.containsKey(namespace) ? namespace : null;
+        }
+
+        @NotNull
+        private Fragment getKeptFragment(@NotNull NamespaceDescriptor namespace) {
+            Fragment fragment = fragments.get(getKey(namespace));
+            assert fragment != null : "Namespace which didn't change must have been translated before: " + namespace;
+            return fragment;
+        }
+
+        private boolean isInline(@NotNull DeclarationDescriptor descriptor) {
+            return descriptor instanceof SimpleFunctionDescriptor && ((SimpleFunctionDescriptor) descriptor).isInline();
+        }
+
+        @NotNull
+        private String getDeclarationText(@NotNull DeclarationDescriptor descriptor) {
+            PsiElement declaration = bindingContext.get(BindingContext.DESCRIPTOR_TO_DECLARATION, descriptor);
+            return declaration != null ? declaration.getText() : "";
+        }
+    }
+
+    @NotNull
+    private static Map<NamespaceDescriptor, List<JetFile>> groupByTopLevelNamespace(@NotNull BindingContext bindingContext,
+                                                                                    @NotNull List<JetFile> files) {
+        Map<NamespaceDescriptor, List<JetFile>> result = Maps.newLinkedHashMap();
+        for (JetFile file : files) {
+            NamespaceDescriptor namespace = getNamespaceDescriptor(bindingContext, file);
+            while (!isTopLevelNamespace(namespace)) {
+                namespace = (NamespaceDescriptor) namespace.getContainingDeclaration();
+            }
+            List<JetFile> namespaceFiles = result.get(namespace);
+            if (namespaceFiles == null) {
+                namespaceFiles = Lists.newArrayList();
+                result.put(namespace, namespaceFiles);
+            }
+            namespaceFiles.add(file);
+        }
+        return result;
+    }
+
+    /**
+     * Classes are created when the code of their namespace runs, so the namespaces of the classes they extend must
+     * come first.
+     *
+     * @return the namespaces in the order their code has to run, or null if there is no such order
+     */
+    @Nullable
+    private static List<NamespaceDescriptor> sortByInheritance(@NotNull BindingContext bindingContext,
+                                                               @NotNull Map<NamespaceDescriptor, List<JetFile>> filesByNamespace) {
+        Multimap<NamespaceDescriptor, NamespaceDescriptor> extendedNamespaces = HashMultimap.create();
+        for (Map.Entry<NamespaceDescriptor, List<JetFile>> entry : filesByNamespace.entrySet()) {
+            for (ClassDescriptor descriptor : getClasses(bindingContext, entry.getValue())) {
+                for (ClassDescriptor superclass : getSuperclassDescriptors(descriptor)) {
+                    NamespaceDescriptor namespace = getExportingNamespace(superclass);
+                    if (namespace != null && namespace != entry.getKey() && filesByNamespace.containsKey(namespace)) {
+                        extendedNamespaces.put(entry.getKey(), namespace);
+                    }
+                }
+            }
+        }
+
+        List<NamespaceDescriptor> result = Lists.newArrayList();
+        Set<NamespaceDescriptor> remaining = Sets.newLinkedHashSet(filesByNamespace.keySet());
+        while (!remaining.isEmpty()) {
+            NamespaceDescriptor next = null;
+            for (NamespaceDescriptor namespace : remaining) {
+                if (result.containsAll(extendedNamespaces.get(namespace))) {
+                    next = namespace;
+                    break;
+                }
+            }
+            if (next == null) {
+                return null;
+            }
+            result.add(next);
+            remaining.remove(next);
+        }
+        return result;
+    }
+
+    @NotNull
+    private static List<ClassDescriptor> getClasses(@NotNull BindingContext bindingContext, @NotNull List<JetFile> files) {
+        List<ClassDescriptor> result = Lists.newArrayList();
+        for (NamespaceDescriptor namespace : getAllNonNativeNamespaceDescriptors(bindingContext, files)) {
+            result.addAll(getAllClassesDefinedInNamespace(namespace));
+        }
+        return result;
+    }
+
+    @NotNull
+    private static Set<ClassDescriptor> getAncestors(@NotNull ClassDescriptor descriptor) {
+        Set<ClassDescriptor> result = Sets.newHashSet();
+        Deque<ClassDescriptor> queue = new ArrayDeque<ClassDescriptor>(getSuperclassDescriptors(descriptor));
+        while (!queue.isEmpty()) {
+            ClassDescriptor ancestor = queue.poll();
+            if (result.add(ancestor)) {
+                queue.addAll(getSuperclassDescriptors(ancestor));
+            }
+        }
+        return result;
+    }
+
+    private static boolean hasMemberNamedAsAnyOf(@NotNull Fragment fragment, @NotNull ClassDescriptor descriptor,
+                                                 @NotNull Collection<JsName> names) {
+        String memberKeyPrefix = getKey(descriptor) + "/";
+        Set<String> idents = Sets.newHashSet();
+        for (JsName name : names) {
+            idents.add(name.getShortIdent());
+        }
+        for (Map.Entry<String, String> entry : fragment.names.entrySet()) {
+            if (entry.getKey().startsWith(memberKeyPrefix) && idents.contains(entry.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the top level namespace a namespace or class declares the descriptor in, or null for local declarations
+     */
+    @Nullable
+    private static NamespaceDescriptor getExportingNamespace(@NotNull DeclarationDescriptor descriptor) {
+        DeclarationDescriptor current = descriptor;
+        while (!(current instanceof NamespaceDescriptor && isTopLevelNamespace((NamespaceDescriptor) current))) {
+            current = current.getContainingDeclaration();
+            if (!(current instanceof ClassDescriptor) && !(current instanceof NamespaceDescriptor)) {
+                return null;
+            }
+        }
+        return (NamespaceDescriptor) current;
+    }
+
+    private static boolean isDeclaration(@NotNull DeclarationDescriptor descriptor) {
+        return !(descriptor instanceof CallableMemberDescriptor) || ((CallableMemberDescriptor) descriptor).getKind().isReal();
+    }
+
+    /**
+     * @return a key which identifies the descriptor in the following translations
+     */
+    @NotNull
+    private static String getKey(@NotNull DeclarationDescriptor descriptor) {
+        StringBuilder result = new StringBuilder();
+        for (DeclarationDescriptor current = descriptor;
+             current != null && !(current instanceof ModuleDescriptor);
+             current = current.getContainingDeclaration()) {
+            result.insert(0, "/" + current.getClass().getSimpleName() + " " + current.getName() + " " +
+                             DescriptorRenderer.COMPACT.render(current));
+        }
+        return result.toString();
+    }
+
+    @NotNull
+    private static String getSources(@NotNull List<JetFile> files) {
+        StringBuilder result = new StringBuilder();
+        for (JetFile file : files) {
+            result.append(file.getName()).append('\n').append(file.getText()).append('\n');
+        }
+        return result.toString();
+    }
+}
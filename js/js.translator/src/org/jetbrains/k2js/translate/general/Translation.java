@@ -37,6 +37,8 @@ import org.jetbrains.k2js.translate.initializer.NamespaceInitializerTranslator;
 import org.jetbrains.k2js.translate.utils.dangerous.DangerousData;
 import org.jetbrains.k2js.translate.utils.dangerous.DangerousTranslator;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -133,12 +135,24 @@ public final class Translation {
     @NotNull
     public static JsProgram generateAst(@NotNull BindingContext bindingContext,
                                         @NotNull List<JetFile> files) {
+        return generateAst(bindingContext, files, Collections.<JetFile>emptyList(), Collections.<JetDeclaration>emptyList());
+    }
+
+    /**
+     * @param removableFiles files among {@code files} whose declarations are dropped unless the roots or the other files use them
+     */
+    @NotNull
+    public static JsProgram generateAst(@NotNull BindingContext bindingContext,
+                                        @NotNull List<JetFile> files,
+                                        @NotNull Collection<JetFile> removableFiles,
+                                        @NotNull Collection<? extends JetDeclaration> roots) {
         //TODO: move some of the code somewhere
         JetStandardLibrary standardLibrary = JetStandardLibrary.getInstance();
         StaticContext staticContext = StaticContext.generateStaticContext(standardLibrary, bindingContext);
         JsBlock block = staticContext.getProgram().getFragmentBlock(0);
         TranslationContext context = TranslationContext.rootContext(staticContext);
         block.getStatements().addAll(translateFiles(files, context));
+        UnusedDeclarationsRemover.removeUnusedDeclarations(block, removableFiles, roots, context);
         JsNamer namer = new JsPrettyNamer();
         namer.exec(context.program());
         return context.program();
@@ -0,0 +1,396 @@
+/*
+ * Copyright 2010-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.k2js.translate.general;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+import com.google.dart.compiler.backend.js.ast.*;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.lang.descriptors.NamespaceDescriptor;
+import org.jetbrains.jet.lang.descriptors.PropertyDescriptor;
+import org.jetbrains.jet.lang.descriptors.PropertyGetterDescriptor;
+import org.jetbrains.jet.lang.descriptors.PropertySetterDescriptor;
+import org.jetbrains.jet.lang.psi.*;
+import org.jetbrains.k2js.translate.context.Namer;
+import org.jetbrains.k2js.translate.context.TranslationContext;
+
+import java.util.*;
+
+import static org.jetbrains.k2js.translate.utils.BindingUtils.*;
+
+/**
+ * Removes the top level functions, properties and classes of the given files which the program never uses,
+ * and the namespaces which become empty after that.
+ * <p/>
+ * The roots and everything declared in the other files are considered used, because they can be called from outside
+ * of the program (main, tests, web pages). A declaration is used if its name is mentioned by used code. Names are
+ * compared as strings, so any property access or string with the same name keeps a declaration.
+ */
+public final class UnusedDeclarationsRemover {
+
+    private static final String NAMESPACE_CREATE_METHOD_NAME = "create";
+    private static final String NAMESPACE_OBJECT_NAME = "Namespace";
+    private static final String INITIALIZE_METHOD_NAME = "initialize";
+
+    /**
+     * @param removableFiles files whose declarations are dropped unless they are used
+     * @param roots          declarations of these files which are always used
+     */
+    public static void removeUnusedDeclarations(@NotNull JsBlock block,
+                                                @NotNull Collection<JetFile> removableFiles,
+                                                @NotNull Collection<? extends JetDeclaration> roots,
+                                                @NotNull TranslationContext context) {
+        Set<JsName> removableNames = getDeclarationNames(removableFiles, context);
+        Set<JsName> rootNames = Sets.newHashSet();
+        for (JetDeclaration root : roots) {
+            addDeclarationNames(root, context, rootNames);
+        }
+        removableNames.removeAll(rootNames);
+        if (removableNames.isEmpty()) {
+            return;
+        }
+        new UnusedDeclarationsRemover(block, removableNames).remove();
+    }
+
+    @NotNull
+    private static Set<JsName> getDeclarationNames(@NotNull Collection<JetFile> removableFiles,
+                                                   @NotNull TranslationContext context) {
+        Set<JsName> result = Sets.newHashSet();
+        Set<PsiFile> files = Sets.<PsiFile>newHashSet(removableFiles);
+        List<JetFile> fileList = Lists.newArrayList(removableFiles);
+        for (NamespaceDescriptor namespace : getAllNonNativeNamespaceDescriptors(context.bindingContext(), fileList)) {
+            for (JetDeclaration declaration : getDeclarationsForNamespace(context.bindingContext(), namespace)) {
+                if (files.contains(declaration.getContainingFile())) {
+                    addDeclarationNames(declaration, context, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void addDeclarationNames(@NotNull JetDeclaration declaration, @NotNull TranslationContext context,
+                                            @NotNull Set<JsName> result) {
+        if (declaration instanceof JetNamedFunction) {
+            result.add(context.getNameForDescriptor(getFunctionDescriptor(context.bindingContext(), (JetNamedFunction) declaration)));
+        }
+        else if (declaration instanceof JetProperty) {
+            PropertyDescriptor property = getPropertyDescriptor(context.bindingContext(), (JetProperty) declaration);
+            PropertyGetterDescriptor getter = property.getGetter();
+            if (getter != null) {
+                result.add(context.getNameForDescriptor(getter));
+            }
+            PropertySetterDescriptor setter = property.getSetter();
+            if (setter != null && property.isVar()) {
+                result.add(context.getNameForDescriptor(setter));
+            }
+        }
+        else if (declaration instanceof JetClass) {
+            result.add(context.getNameForElement(declaration));
+        }
+    }
+
+    private static final class Declaration {
+        @NotNull
+        private final JsExpression value;
+        @NotNull
+        private final List<?> container;
+        @NotNull
+        private final Object element;
+
+        private Declaration(@NotNull JsExpression value, @NotNull List<?> container, @NotNull Object element) {
+            this.value = value;
+            this.container = container;
+            this.element = element;
+        }
+    }
+
+    private static final class NamespaceDeclaration {
+        @NotNull
+        private final String name;
+        @NotNull
+        private final String qualifiedName;
+        @NotNull
+        private final JsObjectLiteral members;
+        @NotNull
+        private final JsObjectLiteral classesAndNestedNamespaces;
+        @NotNull
+        private final List<?> container;
+        @NotNull
+        private final Object element;
+
+        private NamespaceDeclaration(@NotNull String name, @NotNull String qualifiedName, @NotNull JsInvocation creation,
+                                     @NotNull List<?> container, @NotNull Object element) {
+            this.name = name;
+            this.qualifiedName = qualifiedName;
+            this.members = (JsObjectLiteral) creation.getArguments().get(0);
+            this.classesAndNestedNamespaces = (JsObjectLiteral) creation.getArguments().get(1);
+            this.container = container;
+            this.element = element;
+        }
+    }
+
+    @NotNull
+    private final JsBlock block;
+    @NotNull
+    private final Set<JsName> removableNames;
+    @NotNull
+    private final Multimap<String, Declaration> unusedDeclarations = ArrayListMultimap.create();
+    @NotNull
+    private final List<NamespaceDeclaration> namespaces = Lists.newArrayList();
+    @NotNull
+    private final Map<String, JsStatement> namespaceInitializations = Maps.newHashMap();
+    @NotNull
+    private final List<JsNode> usedCode = Lists.newArrayList();
+    @NotNull
+    private final Set<String> usedNames = Sets.newHashSet();
+    @NotNull
+    private final Deque<String> newlyUsedNames = new ArrayDeque<String>();
+
+    private UnusedDeclarationsRemover(@NotNull JsBlock block, @NotNull Set<JsName> removableNames) {
+        this.block = block;
+        this.removableNames = removableNames;
+    }
+
+    private void remove() {
+        collectDeclarations();
+        markUsedNames();
+        for (Declaration declaration : unusedDeclarations.values()) {
+            declaration.container.remove(declaration.element);
+        }
+        removeEmptyNamespaces();
+    }
+
+    private void collectDeclarations() {
+        List<JsStatement> statements = block.getStatements();
+        for (JsStatement statement : statements) {
+            JsVars.JsVar var = getSingleVar(statement);
+            if (var != null && isNamespaceCreation(var.getInitExpr())) {
+                String name = var.getName().getIdent();
+                collectNamespace(name, name, (JsInvocation) var.getInitExpr(), statements, statement);
+                continue;
+            }
+            JsFunction classesFunction = var != null ? getClassesFunction(var) : null;
+            if (classesFunction != null) {
+                collectClasses(classesFunction);
+                continue;
+            }
+            String initializedNamespace = getInitializedNamespace(statement);
+            if (initializedNamespace != null) {
+                // namespace initialization only refers to the namespace itself
+                namespaceInitializations.put(initializedNamespace, statement);
+                continue;
+            }
+            usedCode.add(statement);
+        }
+    }
+
+    private void collectNamespace(@NotNull String name, @NotNull String qualifiedName, @NotNull JsInvocation creation,
+                                  @NotNull List<?> container, @NotNull Object element) {
+        NamespaceDeclaration namespace = new NamespaceDeclaration(name, qualifiedName, creation, container, element);
+        collectEntries(namespace.members);
+        for (JsPropertyInitializer entry : namespace.classesAndNestedNamespaces.getPropertyInitializers()) {
+            String nestedName = getLabelName(entry);
+            if (nestedName != null && isNamespaceCreation(entry.getValueExpr())) {
+                collectNamespace(nestedName, qualifiedName + "." + nestedName, (JsInvocation) entry.getValueExpr(),
+                                 namespace.classesAndNestedNamespaces.getPropertyInitializers(), entry);
+            }
+            else {
+                collectEntry(namespace.classesAndNestedNamespaces, entry);
+            }
+        }
+        namespaces.add(namespace);
+    }
+
+    private void collectClasses(@NotNull JsFunction classesFunction) {
+        List<JsStatement> statements = classesFunction.getBody().getStatements();
+        for (JsStatement statement : statements) {
+            JsVars.JsVar classVar = getSingleVar(statement);
+            if (classVar != null && classVar.getInitExpr() != null) {
+                // local aliases of the classes are used through the returned object
+                unusedDeclarations.put(classVar.getName().getIdent(), new Declaration(classVar.getInitExpr(), statements, statement));
+            }
+            else if (statement instanceof JsReturn && ((JsReturn) statement).getExpr() instanceof JsObjectLiteral) {
+                collectEntries((JsObjectLiteral) ((JsReturn) statement).getExpr());
+            }
+            else {
+                usedCode.add(statement);
+            }
+        }
+    }
+
+    private void collectEntries(@NotNull JsObjectLiteral literal) {
+        for (JsPropertyInitializer entry : literal.getPropertyInitializers()) {
+            collectEntry(literal, entry);
+        }
+    }
+
+    private void collectEntry(@NotNull JsObjectLiteral literal, @NotNull JsPropertyInitializer entry) {
+        JsExpression label = entry.getLabelExpr();
+        if (label instanceof JsNameRef && removableNames.contains(((JsNameRef) label).getName())) {
+            unusedDeclarations.put(((JsNameRef) label).getIdent(),
+                                   new Declaration(entry.getValueExpr(), literal.getPropertyInitializers(), entry));
+        }
+        else {
+            usedCode.add(entry.getValueExpr());
+        }
+    }
+
+    private void markUsedNames() {
+        JsVisitor visitor = new JsVisitor() {
+            @Override
+            public boolean visit(JsNameRef x, JsContext ctx) {
+                use(x.getIdent());
+                return true;
+            }
+
+            @Override
+            public boolean visit(JsStringLiteral x, JsContext ctx) {
+                use(x.getValue());
+                return false;
+            }
+
+            @Override
+            public boolean visit(JsPropertyInitializer x, JsContext ctx) {
+                // labels of object literals don't refer to anything
+                accept(x.getValueExpr());
+                return false;
+            }
+        };
+
+        for (JsNode node : usedCode) {
+            visitor.accept(node);
+        }
+        while (!newlyUsedNames.isEmpty()) {
+            for (Declaration declaration : unusedDeclarations.removeAll(newlyUsedNames.poll())) {
+                visitor.accept(declaration.value);
+            }
+        }
+    }
+
+    private void use(@Nullable String name) {
+        if (name != null && usedNames.add(name)) {
+            newlyUsedNames.add(name);
+        }
+    }
+
+    private void removeEmptyNamespaces() {
+        // nested namespaces come before their parents
+        for (NamespaceDeclaration namespace : namespaces) {
+            if (isEmpty(namespace) && !usedNames.contains(namespace.name)) {
+                namespace.container.remove(namespace.element);
+                block.getStatements().remove(namespaceInitializations.get(namespace.qualifiedName));
+            }
+        }
+    }
+
+    private static boolean isEmpty(@NotNull NamespaceDeclaration namespace) {
+        if (!namespace.classesAndNestedNamespaces.getPropertyInitializers().isEmpty()) {
+            return false;
+        }
+        for (JsPropertyInitializer member : namespace.members.getPropertyInitializers()) {
+            JsExpression value = member.getValueExpr();
+            if (!INITIALIZE_METHOD_NAME.equals(getLabelName(member)) ||
+                !(value instanceof JsFunction) ||
+                !((JsFunction) value).getBody().getStatements().isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    private static JsVars.JsVar getSingleVar(@NotNull JsStatement statement) {
+        if (!(statement instanceof JsVars) || ((JsVars) statement).getNumVars() != 1) {
+            return null;
+        }
+        return ((JsVars) statement).iterator().next();
+    }
+
+    private static boolean isNamespaceCreation(@Nullable JsExpression expression) {
+        if (!(expression instanceof JsInvocation)) {
+            return false;
+        }
+        JsInvocation invocation = (JsInvocation) expression;
+        List<JsExpression> arguments = invocation.getArguments();
+        if (arguments.size() != 2 || !(arguments.get(0) instanceof JsObjectLiteral) || !(arguments.get(1) instanceof JsObjectLiteral)) {
+            return false;
+        }
+        if (!(invocation.getQualifier() instanceof JsNameRef)) {
+            return false;
+        }
+        JsNameRef method = (JsNameRef) invocation.getQualifier();
+        return NAMESPACE_CREATE_METHOD_NAME.equals(method.getIdent()) &&
+               method.getQualifier() instanceof JsNameRef &&
+               NAMESPACE_OBJECT_NAME.equals(((JsNameRef) method.getQualifier()).getIdent());
+    }
+
+    @Nullable
+    private static JsFunction getClassesFunction(@NotNull JsVars.JsVar var) {
+        if (!Namer.nameForClassesVariable().equals(var.getName().getIdent()) || !(var.getInitExpr() instanceof JsInvocation)) {
+            return null;
+        }
+        JsExpression qualifier = ((JsInvocation) var.getInitExpr()).getQualifier();
+        return qualifier instanceof JsFunction ? (JsFunction) qualifier : null;
+    }
+
+    @Nullable
+    private static String getInitializedNamespace(@NotNull JsStatement statement) {
+        if (!(statement instanceof JsExprStmt) || !(((JsExprStmt) statement).getExpression() instanceof JsInvocation)) {
+            return null;
+        }
+        JsInvocation invocation = (JsInvocation) ((JsExprStmt) statement).getExpression();
+        if (!invocation.getArguments().isEmpty() || !(invocation.getQualifier() instanceof JsNameRef)) {
+            return null;
+        }
+        JsNameRef method = (JsNameRef) invocation.getQualifier();
+        if (!INITIALIZE_METHOD_NAME.equals(method.getIdent())) {
+            return null;
+        }
+        return getQualifiedName(method.getQualifier());
+    }
+
+    @Nullable
+    private static String getQualifiedName(@Nullable JsExpression expression) {
+        if (!(expression instanceof JsNameRef)) {
+            return null;
+        }
+        JsNameRef reference = (JsNameRef) expression;
+        if (reference.getQualifier() == null) {
+            return reference.getIdent();
+        }
+        String qualifier = getQualifiedName(reference.getQualifier());
+        return qualifier != null ? qualifier + "." + reference.getIdent() : null;
+    }
+
+    @Nullable
+    private static String getLabelName(@NotNull JsPropertyInitializer entry) {
+        JsExpression label = entry.getLabelExpr();
+        if (label instanceof JsNameRef) {
+            return ((JsNameRef) label).getIdent();
+        }
+        if (label instanceof JsStringLiteral) {
+            return ((JsStringLiteral) label).getValue();
+        }
+        return null;
+    }
+}
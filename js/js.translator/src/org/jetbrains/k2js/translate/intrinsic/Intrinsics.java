@@ -263,6 +263,9 @@ public final class Intrinsics {
             if (functionName.equals("rangeTo")) {
                 functionIntrinsics.put(descriptor, PrimitiveRangeToIntrinsic.newInstance());
             }
+            if (functionName.equals("downto")) {
+                functionIntrinsics.put(descriptor, PrimitiveRangeToIntrinsic.newDowntoInstance());
+            }
         }
 
         private void tryResolveAsUnaryIntrinsics(@NotNull FunctionDescriptor descriptor) {
@@ -37,10 +37,22 @@ public final class PrimitiveRangeToIntrinsic implements Intrinsic {
 
     @NotNull
     public static PrimitiveRangeToIntrinsic newInstance() {
-        return new PrimitiveRangeToIntrinsic();
+        return new PrimitiveRangeToIntrinsic(false);
     }
 
-    private PrimitiveRangeToIntrinsic() {
+    @NotNull
+    public static PrimitiveRangeToIntrinsic newDowntoInstance() {
+        return new PrimitiveRangeToIntrinsic(true);
+    }
+
+    private final boolean reversed;
+
+    private PrimitiveRangeToIntrinsic(boolean reversed) {
+        this.reversed = reversed;
+    }
+
+    public boolean isReversed() {
+        return reversed;
     }
 
     @NotNull
@@ -50,12 +62,11 @@ public final class PrimitiveRangeToIntrinsic implements Intrinsic {
         assert arguments.size() == 1 : "RangeTo must have one argument.";
         assert rangeStart != null;
         JsExpression rangeEnd = arguments.get(0);
-        JsBinaryOperation rangeSize = sum(subtract(rangeEnd, rangeStart),
+        JsBinaryOperation rangeSize = sum(reversed ? subtract(rangeStart, rangeEnd) : subtract(rangeEnd, rangeStart),
                                           context.program().getNumberLiteral(1));
         //TODO: provide a way not to hard code this value
         JsNew numberRangeConstructorInvocation = new JsNew(AstUtil.newQualifiedNameRef("Kotlin.NumberRange"));
-        //TODO: add tests and correct expression for reversed ranges.
-        JsBooleanLiteral isRangeReversed = context.program().getFalseLiteral();
+        JsBooleanLiteral isRangeReversed = reversed ? context.program().getTrueLiteral() : context.program().getFalseLiteral();
         setArguments(numberRangeConstructorInvocation, rangeStart, rangeSize, isRangeReversed);
         return numberRangeConstructorInvocation;
     }
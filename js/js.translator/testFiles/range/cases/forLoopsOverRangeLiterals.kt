@@ -0,0 +1,76 @@
+package foo
+
+fun box() : Boolean {
+    var s = ""
+    for (i in 1..4) {
+        s += i
+    }
+    if (s != "1234") return false
+
+    s = ""
+    for (i in 4..1) {
+        s += i
+    }
+    if (s != "") return false
+
+    s = ""
+    val five = 5
+    for (i in five downto 2) {
+        s += i
+    }
+    if (s != "5432") return false
+
+    s = ""
+    for (i in (1..10).step(3)) {
+        s += i
+    }
+    if (s != "14710") return false
+
+    s = ""
+    for (i in (1..10).step(-4)) {
+        s += i
+    }
+    if (s != "1062") return false
+
+    s = ""
+    for (i in (five downto 0).step(2)) {
+        s += i
+    }
+    if (s != "531") return false
+
+    s = ""
+    val minusThree = -3
+    for (i in (1..10).step(minusThree)) {
+        s += i
+    }
+    if (s != "10741") return false
+
+    s = ""
+    val two = 2
+    for (i in (five downto 0).step(two)) {
+        s += i
+    }
+    if (s != "531") return false
+
+    s = ""
+    for (i in (five downto 0).step(-two)) {
+        s += i
+    }
+    if (s != "024") return false
+
+    s = ""
+    val a = Array<Int>(3, {(i : Int) -> i * 2})
+    for (i in a.indices) {
+        s += a[i]
+    }
+    if (s != "024") return false
+
+    val from : Long = 1
+    val to : Long = 3
+    val expected : Long = 6
+    var sum : Long = 0
+    for (l in from..to) {
+        sum += l
+    }
+    return sum == expected
+}